@@ -10,8 +10,8 @@ public class Asset {
     private String name;
     private String tickerSymbol;
     private double quantity;
-    private double purchasePrice;
-    private double currentPrice;
+    private Money purchasePrice = Money.ZERO;
+    private Money currentPrice = Money.ZERO;
     private String assetType;
 
     // このFORMATTERが使われていなかった
@@ -19,7 +19,7 @@ public class Asset {
 
     public Asset() {}
 
-    public Asset(int id, String name, String tickerSymbol, double quantity, double purchasePrice, double currentPrice, String assetType) {
+    public Asset(int id, String name, String tickerSymbol, double quantity, Money purchasePrice, Money currentPrice, String assetType) {
         this.id = id;
         this.name = name;
         this.tickerSymbol = tickerSymbol;
@@ -34,17 +34,17 @@ public class Asset {
     public String getName() { return name; }
     public String getTickerSymbol() { return tickerSymbol; }
     public double getQuantity() { return quantity; }
-    public double getPurchasePrice() { return purchasePrice; }
-    public double getCurrentPrice() { return currentPrice; }
+    public Money getPurchasePrice() { return purchasePrice; }
+    public Money getCurrentPrice() { return currentPrice; }
     public String getAssetType() { return assetType; }
 
     // --- 計算プロパティ ---
     public double getPurchaseValue() {
-        return quantity * purchasePrice;
+        return quantity * purchasePrice.toDouble();
     }
 
     public double getCurrentValue() {
-        return quantity * currentPrice;
+        return quantity * currentPrice.toDouble();
     }
 
     public double getGainLoss() {
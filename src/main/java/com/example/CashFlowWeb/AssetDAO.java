@@ -3,35 +3,62 @@ package com.example.CashFlowWeb;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
 
 /**
  * 資産(assets)テーブルのデータベース操作を担当するクラス。
  */
+@Repository
 public class AssetDAO {
 
+    private final DataSource dataSource;
+    private final DataVersions versions;
+    private final WriteQueue writeQueue;
+
+    public AssetDAO(DataSource dataSource) {
+        this(dataSource, new DataVersions(), WriteQueue.direct(dataSource));
+    }
+
+    /**
+     * 書き込みは writeQueue の書き込み専用スレッドでまとめてコミットされます。
+     */
+    @Autowired
+    public AssetDAO(DataSource dataSource, DataVersions versions, WriteQueue writeQueue) {
+        this.dataSource = dataSource;
+        this.versions = versions;
+        this.writeQueue = writeQueue;
+    }
+
     /**
      * 新しい資産を登録します (Create)。
      */
     public boolean addAsset(Asset asset, int userId) {
-        // ★ user_id を追加
-        String sql = "INSERT INTO assets(user_id, name, ticker_symbol, quantity, purchase_price, current_price, asset_type) VALUES(?, ?, ?, ?, ?, ?, ?)";
-        try (Connection conn = DBManager.connect();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        return WriteQueue.await(addAssetAsync(asset, userId));
+    }
 
-            pstmt.setInt(1, userId); // ★ ユーザーIDをセット
-            pstmt.setString(2, asset.getName());
-            pstmt.setString(3, asset.getTickerSymbol());
-            pstmt.setDouble(4, asset.getQuantity());
-            pstmt.setDouble(5, asset.getPurchasePrice());
-            pstmt.setDouble(6, asset.getCurrentPrice());
-            pstmt.setString(7, asset.getAssetType());
-
-            pstmt.executeUpdate();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("資産登録エラー: " + e.getMessage());
-            return false;
-        }
+    public CompletableFuture<Boolean> addAssetAsync(Asset asset, int userId) {
+        // ★ user_id を追加
+        String sql = "INSERT INTO assets(id, user_id, name, ticker_symbol, quantity, purchase_price_minor, current_price_minor, asset_type) " +
+                     "VALUES(" + ShardedDataSource.nextId("assets") + ", ?, ?, ?, ?, ?, ?, ?)";
+        return writeQueue.submitUpdate(userId, "資産登録エラー", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId); // ★ ユーザーIDをセット
+                pstmt.setString(2, asset.getName());
+                pstmt.setString(3, asset.getTickerSymbol());
+                pstmt.setDouble(4, asset.getQuantity());
+                pstmt.setLong(5, asset.getPurchasePrice().minor());
+                pstmt.setLong(6, asset.getCurrentPrice().minor());
+                pstmt.setString(7, asset.getAssetType());
+
+                pstmt.executeUpdate();
+                return true;
+            }
+        }).thenApply(added -> versions.bumpIf(userId, added));
     }
 
     /**
@@ -40,9 +67,9 @@ public class AssetDAO {
     public List<Asset> getAllAssets(int userId) {
         List<Asset> assets = new ArrayList<>();
         // ★ WHERE user_id = ? を追加
-        String sql = "SELECT id, name, ticker_symbol, quantity, purchase_price, current_price, asset_type FROM assets WHERE user_id = ?";
+        String sql = "SELECT id, name, ticker_symbol, quantity, purchase_price_minor, current_price_minor, asset_type FROM assets WHERE user_id = ?";
 
-        try (Connection conn = DBManager.connect();
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, userId); // ★ ユーザーIDをセット
@@ -54,8 +81,8 @@ public class AssetDAO {
                             rs.getString("name"),
                             rs.getString("ticker_symbol"),
                             rs.getDouble("quantity"),
-                            rs.getDouble("purchase_price"),
-                            rs.getDouble("current_price"),
+                            Money.ofMinor(rs.getLong("purchase_price_minor")),
+                            Money.ofMinor(rs.getLong("current_price_minor")),
                             rs.getString("asset_type")));
                 }
             }
@@ -70,8 +97,8 @@ public class AssetDAO {
      */
     public Asset getAssetById(int id, int userId) {
         // ★ WHERE id = ? AND user_id = ? に変更
-        String sql = "SELECT id, name, ticker_symbol, quantity, purchase_price, current_price, asset_type FROM assets WHERE id = ? AND user_id = ?";
-        try (Connection conn = DBManager.connect();
+        String sql = "SELECT id, name, ticker_symbol, quantity, purchase_price_minor, current_price_minor, asset_type FROM assets WHERE id = ? AND user_id = ?";
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, id);
@@ -84,8 +111,8 @@ public class AssetDAO {
                             rs.getString("name"),
                             rs.getString("ticker_symbol"),
                             rs.getDouble("quantity"),
-                            rs.getDouble("purchase_price"),
-                            rs.getDouble("current_price"),
+                            Money.ofMinor(rs.getLong("purchase_price_minor")),
+                            Money.ofMinor(rs.getLong("current_price_minor")),
                             rs.getString("asset_type"));
                 }
             }
@@ -99,44 +126,44 @@ public class AssetDAO {
      * 既存の資産情報を更新します (Update)。
      */
     public boolean updateAsset(Asset asset, int userId) {
-        // ★ user_id 条件を追加
-        String sql = "UPDATE assets SET name = ?, ticker_symbol = ?, quantity = ?, purchase_price = ?, current_price = ?, asset_type = ? WHERE id = ? AND user_id = ?";
-        try (Connection conn = DBManager.connect();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        return WriteQueue.await(updateAssetAsync(asset, userId));
+    }
 
-            pstmt.setString(1, asset.getName());
-            pstmt.setString(2, asset.getTickerSymbol());
-            pstmt.setDouble(3, asset.getQuantity());
-            pstmt.setDouble(4, asset.getPurchasePrice());
-            pstmt.setDouble(5, asset.getCurrentPrice());
-            pstmt.setString(6, asset.getAssetType());
-            pstmt.setInt(7, asset.getId());
-            pstmt.setInt(8, userId); // ★ ユーザーID確認
-
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-        } catch (SQLException e) {
-            System.err.println("資産更新エラー: " + e.getMessage());
-            return false;
-        }
+    public CompletableFuture<Boolean> updateAssetAsync(Asset asset, int userId) {
+        // ★ user_id 条件を追加
+        String sql = "UPDATE assets SET name = ?, ticker_symbol = ?, quantity = ?, purchase_price_minor = ?, current_price_minor = ?, asset_type = ? WHERE id = ? AND user_id = ?";
+        return writeQueue.submitUpdate(userId, "資産更新エラー", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, asset.getName());
+                pstmt.setString(2, asset.getTickerSymbol());
+                pstmt.setDouble(3, asset.getQuantity());
+                pstmt.setLong(4, asset.getPurchasePrice().minor());
+                pstmt.setLong(5, asset.getCurrentPrice().minor());
+                pstmt.setString(6, asset.getAssetType());
+                pstmt.setInt(7, asset.getId());
+                pstmt.setInt(8, userId); // ★ ユーザーID確認
+
+                return pstmt.executeUpdate() > 0;
+            }
+        }).thenApply(updated -> versions.bumpIf(userId, updated));
     }
 
     /**
      * 指定されたIDの資産を削除します (Delete)。
      */
     public boolean deleteAsset(int id, int userId) {
+        return WriteQueue.await(deleteAssetAsync(id, userId));
+    }
+
+    public CompletableFuture<Boolean> deleteAssetAsync(int id, int userId) {
         // ★ user_id 条件を追加
         String sql = "DELETE FROM assets WHERE id = ? AND user_id = ?";
-        try (Connection conn = DBManager.connect();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, id);
-            pstmt.setInt(2, userId); // ★ ユーザーID確認
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
-        } catch (SQLException e) {
-            System.err.println("資産削除エラー: " + e.getMessage());
-            return false;
-        }
+        return writeQueue.submitUpdate(userId, "資産削除エラー", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, userId); // ★ ユーザーID確認
+                return pstmt.executeUpdate() > 0;
+            }
+        }).thenApply(deleted -> versions.bumpIf(userId, deleted));
     }
 }
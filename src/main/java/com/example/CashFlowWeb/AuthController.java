@@ -18,8 +18,8 @@ public class AuthController {
      * コンストラクタ (依存性の注入)
      */
     @Autowired
-    public AuthController(PasswordEncoder passwordEncoder) {
-        this.userDAO = new UserDAO();
+    public AuthController(UserDAO userDAO, PasswordEncoder passwordEncoder) {
+        this.userDAO = userDAO;
         this.passwordEncoder = passwordEncoder;
     }
 
@@ -90,7 +90,7 @@ public class AuthController {
         User newUser = new User(username, hashedPassword);
         newUser.setRole("USER"); // デフォルトロール
 
-        // 7. データベースに保存
+        // 7. データベースに保存 (初期カテゴリも同じトランザクションで作成される)
         boolean success = userDAO.saveUser(newUser);
 
         if (success) {
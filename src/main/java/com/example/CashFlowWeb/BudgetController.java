@@ -5,42 +5,48 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/budgets")
 public class BudgetController {
 
-    private final BudgetDAO budgetDAO = new BudgetDAO();
-    private final UserDAO userDAO = new UserDAO();
+    private final BudgetDAO budgetDAO;
+    private final UserIdentityCache identityCache;
+
+    public BudgetController(BudgetDAO budgetDAO, UserIdentityCache identityCache) {
+        this.budgetDAO = budgetDAO;
+        this.identityCache = identityCache;
+    }
 
     /**
      * 指定された月の予算状況を取得します。
      */
     @GetMapping
     public List<Budget> getBudgets(@RequestParam String yearMonth, @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
+        int userId = identityCache.userId(userDetails);
         // ★ userId を渡す
-        return budgetDAO.getBudgetsForMonth(yearMonth, user.getId());
+        return budgetDAO.getBudgetsForMonth(yearMonth, userId);
     }
 
     /**
      * 新しい予算を設定（または更新）します。
      */
     @PostMapping
-    public ResponseEntity<Boolean> setBudget(@RequestBody Budget budget,
+    public CompletableFuture<ResponseEntity<Boolean>> setBudget(@RequestBody Budget budget,
             @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
+        int userId = identityCache.userId(userDetails);
 
         // ★ userId を渡す
-        boolean success = budgetDAO.saveOrUpdateBudget(
+        return budgetDAO.saveOrUpdateBudgetAsync(
                 budget.getYearMonth(),
                 budget.getCategoryId(),
                 budget.getBudgetAmount(),
-                user.getId());
-
-        if (success) {
-            return ResponseEntity.ok(true);
-        }
-        return ResponseEntity.badRequest().build();
+                userId).thenApply(success -> {
+                    if (success) {
+                        return ResponseEntity.ok(true);
+                    }
+                    return ResponseEntity.badRequest().build();
+                });
     }
 }
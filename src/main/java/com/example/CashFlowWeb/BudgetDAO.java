@@ -1,41 +1,76 @@
 package com.example.CashFlowWeb;
 
 import java.sql.*;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+@Repository
 public class BudgetDAO {
 
+    private final DataSource dataSource;
+    private final DataVersions versions;
+    private final WriteQueue writeQueue;
+    private final TransactionProjection projection;
+
+    public BudgetDAO(DataSource dataSource) {
+        this(dataSource, new DataVersions(), WriteQueue.direct(dataSource), TransactionProjection.disabled());
+    }
+
+    /**
+     * 書き込みは writeQueue の書き込み専用スレッドでまとめてコミットされます。
+     * 実績は projection にユーザーの取引が読み込まれていればそこから求めます。
+     */
+    @Autowired
+    public BudgetDAO(DataSource dataSource, DataVersions versions, WriteQueue writeQueue, TransactionProjection projection) {
+        this.dataSource = dataSource;
+        this.versions = versions;
+        this.writeQueue = writeQueue;
+        this.projection = projection;
+    }
+
     /**
      * 指定された月の支出カテゴリに対する予算と実績を取得します。
      * ユーザーIDに基づいてフィルタリングを行います。
      */
     public List<Budget> getBudgetsForMonth(String yearMonth, int userId) {
+        YearMonth month = parseYearMonth(yearMonth);
+        TransactionColumns columns = month != null ? projection.columns(userId) : null;
+        if (columns != null) {
+            return getBudgetsForMonth(yearMonth, month, userId, columns);
+        }
         List<Budget> budgetStatusList = new ArrayList<>();
 
         // ★ categories テーブルを user_id でフィルタリングすることが最重要
         // ★ budgets テーブルも user_id で結合条件を追加
         String sql = "SELECT " +
                 "  c.id AS category_id, c.name AS category_name, " +
-                "  COALESCE(b.amount, 0) AS budget_amount, " +
-                "  COALESCE(t.total_spent, 0) AS actual_amount " +
+                "  COALESCE(b.amount_minor, 0) AS budget_minor, " +
+                "  COALESCE(t.total_spent, 0) AS actual_minor " +
                 "FROM categories c " +
                 // 自分の予算データを結合
-                "LEFT JOIN (SELECT category_id, amount FROM budgets WHERE year_month = ? AND user_id = ?) b ON c.id = b.category_id "
+                "LEFT JOIN (SELECT category_id, amount_minor FROM budgets WHERE year_month = ? AND user_id = ?) b ON c.id = b.category_id "
                 +
-                // 自分の取引実績を結合
-                "LEFT JOIN (SELECT category_id, SUM(amount) AS total_spent FROM transactions WHERE strftime('%Y-%m', date) = ? AND type = 'EXPENSE' AND user_id = ? GROUP BY category_id) t ON c.id = t.category_id "
+                // 自分の取引実績を結合 (取引テーブルではなく月次ロールアップから読む)
+                "LEFT JOIN (SELECT category_id, total_minor AS total_spent FROM transaction_rollups WHERE user_id = ? AND year_month = ? AND type = 'EXPENSE') t ON c.id = t.category_id "
                 +
                 "WHERE c.type = 'EXPENSE' AND c.user_id = ? " + // ★ 他人のカテゴリを除外
                 "ORDER BY c.name";
 
-        try (Connection conn = DBManager.connect();
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setString(1, yearMonth);
             pstmt.setInt(2, userId); // 予算テーブルの絞り込み
-            pstmt.setString(3, yearMonth);
-            pstmt.setInt(4, userId); // 取引テーブルの絞り込み
+            pstmt.setInt(3, userId); // 取引実績の絞り込み
+            pstmt.setInt(4, month != null ? DateColumns.yearMonth(month) : 0); // ロールアップの年月は整数
             pstmt.setInt(5, userId); // カテゴリテーブルの絞り込み
 
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -43,8 +78,8 @@ public class BudgetDAO {
                     Budget budget = new Budget();
                     budget.setCategoryId(rs.getInt("category_id"));
                     budget.setCategoryName(rs.getString("category_name"));
-                    budget.setBudgetAmount(rs.getDouble("budget_amount"));
-                    budget.setActualAmount(rs.getDouble("actual_amount"));
+                    budget.setBudgetAmount(Money.ofMinor(rs.getLong("budget_minor")));
+                    budget.setActualAmount(Money.ofMinor(rs.getLong("actual_minor")));
                     budgetStatusList.add(budget);
                 }
             }
@@ -55,33 +90,82 @@ public class BudgetDAO {
     }
 
     /**
-     * 予算を保存または更新します。
+     * 予算とカテゴリだけを読み、実績は取引の列指向コピーから求めます。
      */
-    public boolean saveOrUpdateBudget(String yearMonth, int categoryId, double amount, int userId) {
-        // ★ user_id を追加
-        // INSERT OR REPLACE は UNIQUE(user_id, year_month, category_id) 制約に基づいて動作します
-        String sql = "INSERT OR REPLACE INTO budgets (id, user_id, year_month, category_id, amount) " +
-                "VALUES ((SELECT id FROM budgets WHERE user_id = ? AND year_month = ? AND category_id = ?), ?, ?, ?, ?)";
+    private List<Budget> getBudgetsForMonth(String yearMonth, YearMonth month, int userId, TransactionColumns columns) {
+        List<Budget> budgetStatusList = new ArrayList<>();
+        String sql = "SELECT c.id AS category_id, c.name AS category_name, COALESCE(b.amount_minor, 0) AS budget_minor " +
+                "FROM categories c " +
+                "LEFT JOIN (SELECT category_id, amount_minor FROM budgets WHERE year_month = ? AND user_id = ?) b ON c.id = b.category_id " +
+                "WHERE c.type = 'EXPENSE' AND c.user_id = ? " +
+                "ORDER BY c.name";
 
-        try (Connection conn = DBManager.connect();
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            // サブクエリ用パラメータ
-            pstmt.setInt(1, userId);
-            pstmt.setString(2, yearMonth);
-            pstmt.setInt(3, categoryId);
-
-            // INSERT用パラメータ
-            pstmt.setInt(4, userId); // ★ userId
-            pstmt.setString(5, yearMonth);
-            pstmt.setInt(6, categoryId);
-            pstmt.setDouble(7, amount);
+            pstmt.setString(1, yearMonth);
+            pstmt.setInt(2, userId);
+            pstmt.setInt(3, userId);
 
-            pstmt.executeUpdate();
-            return true;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Budget budget = new Budget();
+                    budget.setCategoryId(rs.getInt("category_id"));
+                    budget.setCategoryName(rs.getString("category_name"));
+                    budget.setBudgetAmount(Money.ofMinor(rs.getLong("budget_minor")));
+                    budgetStatusList.add(budget);
+                }
+            }
         } catch (SQLException e) {
-            System.err.println("予算保存エラー: " + e.getMessage());
-            return false;
+            System.err.println("予算データ取得エラー: " + e.getMessage());
+        }
+
+        int[] categoryIds = budgetStatusList.stream().mapToInt(Budget::getCategoryId).toArray();
+        long[] actual = columns.expenseTotals(month, categoryIds);
+        for (int i = 0; i < budgetStatusList.size(); i++) {
+            budgetStatusList.get(i).setActualAmount(Money.ofMinor(actual[i]));
         }
+        return budgetStatusList;
+    }
+
+    private static YearMonth parseYearMonth(String yearMonth) {
+        try {
+            return YearMonth.parse(yearMonth);
+        } catch (DateTimeParseException e) {
+            return null; // 形式が違う場合は SQL 側の結果（該当なし）に任せる
+        }
+    }
+
+    /**
+     * 予算を保存または更新します。
+     */
+    public boolean saveOrUpdateBudget(String yearMonth, int categoryId, Money amount, int userId) {
+        return WriteQueue.await(saveOrUpdateBudgetAsync(yearMonth, categoryId, amount, userId));
+    }
+
+    public CompletableFuture<Boolean> saveOrUpdateBudgetAsync(String yearMonth, int categoryId, Money amount, int userId) {
+        // ★ user_id を追加
+        // INSERT OR REPLACE は UNIQUE(user_id, year_month, category_id) 制約に基づいて動作します
+        String sql = "INSERT OR REPLACE INTO budgets (id, user_id, year_month, category_id, amount_minor) " +
+                "VALUES (COALESCE((SELECT id FROM budgets WHERE user_id = ? AND year_month = ? AND category_id = ?), " +
+                ShardedDataSource.nextId("budgets") + "), ?, ?, ?, ?)";
+
+        return writeQueue.submitUpdate(userId, "予算保存エラー", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                // サブクエリ用パラメータ
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, yearMonth);
+                pstmt.setInt(3, categoryId);
+
+                // INSERT用パラメータ
+                pstmt.setInt(4, userId); // ★ userId
+                pstmt.setString(5, yearMonth);
+                pstmt.setInt(6, categoryId);
+                pstmt.setLong(7, amount.minor());
+
+                pstmt.executeUpdate();
+                return true;
+            }
+        }).thenApply(saved -> versions.bumpIf(userId, saved));
     }
 }
@@ -0,0 +1,46 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 資産予測に使う収支の統計値を保持するモデルクラス。
+ * SummaryDAO が1回の集計クエリで作成します。
+ */
+public class CashFlowStats {
+    private final double totalIncome;
+    private final double totalExpense;
+    private final LocalDate firstDate; // 取引がなければ null
+    private final LocalDate lastDate;
+    private final int monthCount;     // 取引のある月の数
+
+    public CashFlowStats(double totalIncome, double totalExpense, LocalDate firstDate, LocalDate lastDate, int monthCount) {
+        this.totalIncome = totalIncome;
+        this.totalExpense = totalExpense;
+        this.firstDate = firstDate;
+        this.lastDate = lastDate;
+        this.monthCount = monthCount;
+    }
+
+    public double getTotalIncome() { return totalIncome; }
+    public double getTotalExpense() { return totalExpense; }
+    public LocalDate getFirstDate() { return firstDate; }
+    public LocalDate getLastDate() { return lastDate; }
+    public int getMonthCount() { return monthCount; }
+
+    public boolean isEmpty() {
+        return monthCount == 0;
+    }
+
+    /**
+     * 平均月次損益（最初の取引から最後の取引までの月数で割る。最低1ヶ月）。
+     */
+    public double getAverageMonthlyProfit() {
+        if (isEmpty()) {
+            return 0;
+        }
+        long months = ChronoUnit.MONTHS.between(firstDate, lastDate);
+        if (months < 1) months = 1;
+        return (totalIncome - totalExpense) / months;
+    }
+}
@@ -2,8 +2,10 @@ package com.example.CashFlowWeb;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling // 為替レートの定期取得 (FxQuotePoller) に使用
 public class CashFlowWebApplication {
 
     public static void main(String[] args) {
@@ -2,27 +2,88 @@ package com.example.CashFlowWeb;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+/**
+ * カテゴリ(categories)テーブルのデータベース操作を担当するクラス。
+ * カテゴリはほとんど変わらないため、ユーザーごとの一覧をメモリに保持し、
+ * 追加・更新・削除が成功したときにそのユーザーの分だけ捨てます。
+ * 保持するユーザー数には上限があり、超えると最も古く使われたユーザーの分から捨てます。
+ */
+@Repository
 public class CategoryDAO {
 
-    // ※今回はシンプル化とバグ防止のため、メモリキャッシュ(Map)を廃止し、常にDBを参照します。
+    /**
+     * 新規ユーザーに用意するカテゴリ（名前, 種別）。※貯金カテゴリはシステム上重要
+     */
+    static final List<String[]> DEFAULT_CATEGORIES = List.of(
+            new String[] { "給料", "INCOME" },
+            new String[] { "ボーナス", "INCOME" },
+            new String[] { "副業", "INCOME" },
+            new String[] { "食費", "EXPENSE" },
+            new String[] { "日用品", "EXPENSE" },
+            new String[] { "交通費", "EXPENSE" },
+            new String[] { "家賃", "EXPENSE" },
+            new String[] { "通信費", "EXPENSE" },
+            new String[] { "娯楽", "EXPENSE" },
+            new String[] { "貯金", "EXPENSE" });
+
+    static final int DEFAULT_CACHE_USERS = 1024;
+
+    private final DataSource dataSource;
+    private final DataVersions versions;
+    private final WriteQueue writeQueue;
+    private final Map<Integer, List<Category>> cache;
+    // 読み込み中に書き込みがあった場合、古い一覧をキャッシュに入れないための世代番号
+    private final AtomicLong generation = new AtomicLong();
+
+    public CategoryDAO(DataSource dataSource) {
+        this(dataSource, new DataVersions(), WriteQueue.direct(dataSource), DEFAULT_CACHE_USERS);
+    }
+
+    @Autowired
+    public CategoryDAO(DataSource dataSource, DataVersions versions, WriteQueue writeQueue,
+            @Value("${cashflow.categories.cache-users:1024}") int maxUsers) {
+        this.dataSource = dataSource;
+        this.versions = versions;
+        this.writeQueue = writeQueue;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Category>> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
 
     /**
-     * すべてのカテゴリのリストを取得します。
-     * ★カテゴリが1つもない場合は、初期カテゴリ（給料、食費など）を自動作成します。
+     * ユーザーのカテゴリ一覧（種別・名前順、変更不可）を返します。キャッシュにあれば DB にはアクセスしません。
+     * 初期カテゴリはユーザー登録時に作成済みです（UserDAO.saveUser）。
      */
     public List<Category> getAllCategories(int userId) {
-        // 1. まず、このユーザーのカテゴリが存在するかチェック
-        if (!hasCategories(userId)) {
-            createDefaultCategories(userId);
+        synchronized (cache) {
+            List<Category> cached = cache.get(userId);
+            if (cached != null) {
+                return cached;
+            }
         }
 
+        long seen = generation.get();
         List<Category> categories = new ArrayList<>();
         // ★ user_id でフィルタリング
         String sql = "SELECT id, name, type FROM categories WHERE user_id = ? ORDER BY type, name";
 
-        try (Connection conn = DBManager.connect();
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, userId);
@@ -37,133 +98,136 @@ public class CategoryDAO {
             }
         } catch (SQLException e) {
             System.err.println("カテゴリ取得エラー: " + e.getMessage());
+            return categories; // 失敗した結果はキャッシュしない
+        }
+
+        List<Category> result = Collections.unmodifiableList(categories);
+        synchronized (cache) {
+            if (generation.get() == seen) {
+                cache.put(userId, result);
+            }
         }
-        return categories;
+        return result;
     }
 
     /**
-     * ユーザーがカテゴリを持っているか確認します。
+     * 新規ユーザーの初期カテゴリを1つの INSERT でまとめて作成します。
+     * 呼び出し側のトランザクション内で実行されます（ユーザーの登録と同時にコミットされる）。
      */
-    private boolean hasCategories(int userId) {
-        String sql = "SELECT COUNT(*) FROM categories WHERE user_id = ?";
-        try (Connection conn = DBManager.connect();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, userId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1) > 0;
-                }
+    static void insertDefaultCategories(Connection conn, int userId) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO categories(id, user_id, name, type) VALUES ");
+        for (int i = 0; i < DEFAULT_CATEGORIES.size(); i++) {
+            sql.append(i == 0 ? "(" : ", (").append(ShardedDataSource.nextId("categories", i + 1)).append(", ?, ?, ?)");
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (String[] cat : DEFAULT_CATEGORIES) {
+                pstmt.setInt(index++, userId);
+                pstmt.setString(index++, cat[0]);
+                pstmt.setString(index++, cat[1]);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            pstmt.executeUpdate();
         }
-        return false;
     }
 
     /**
-     * ★新規ユーザー用のデフォルトカテゴリを作成します。
+     * 書き込みが成功していればユーザーのキャッシュを捨て、データのバージョンを進めます。コミット後に呼びます。
      */
-    private void createDefaultCategories(int userId) {
-        System.out.println("新規ユーザー(ID:" + userId + ")用のデフォルトカテゴリを作成します...");
-
-        // デフォルトのカテゴリリスト
-        String[][] defaults = {
-                { "給料", "INCOME" },
-                { "ボーナス", "INCOME" },
-                { "副業", "INCOME" },
-                { "食費", "EXPENSE" },
-                { "日用品", "EXPENSE" },
-                { "交通費", "EXPENSE" },
-                { "家賃", "EXPENSE" },
-                { "通信費", "EXPENSE" },
-                { "娯楽", "EXPENSE" },
-                { "貯金", "EXPENSE" } // ※貯金カテゴリはシステム上重要
-        };
-
-        String sql = "INSERT INTO categories(user_id, name, type) VALUES(?, ?, ?)";
+    private boolean invalidateIf(int userId, boolean changed) {
+        if (changed) {
+            invalidate(userId);
+        }
+        return changed;
+    }
 
-        try (Connection conn = DBManager.connect();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    /**
+     * ユーザーのキャッシュを捨て、データのバージョンを進めます（DAO を通さずにカテゴリが変わったとき用）。
+     */
+    public void invalidate(int userId) {
+        synchronized (cache) {
+            generation.incrementAndGet();
+            cache.remove(userId);
+        }
+        versions.bump(userId);
+    }
 
-            conn.setAutoCommit(false); // 一括登録のためトランザクション開始
+    public boolean addCategory(String name, String type, int userId) {
+        return WriteQueue.await(addCategoryAsync(name, type, userId));
+    }
 
-            for (String[] cat : defaults) {
+    public CompletableFuture<Boolean> addCategoryAsync(String name, String type, int userId) {
+        String sql = "INSERT INTO categories(id, user_id, name, type) VALUES(" + ShardedDataSource.nextId("categories") + ", ?, ?, ?)";
+        return writeQueue.submitUpdate(userId, "カテゴリ追加エラー", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                 pstmt.setInt(1, userId);
-                pstmt.setString(2, cat[0]);
-                pstmt.setString(3, cat[1]);
-                pstmt.addBatch();
+                pstmt.setString(2, name);
+                pstmt.setString(3, type);
+                pstmt.executeUpdate();
+                return true;
             }
-
-            pstmt.executeBatch();
-            conn.commit(); // コミット
-
-        } catch (SQLException e) {
-            System.err.println("デフォルトカテゴリ作成エラー: " + e.getMessage());
-        }
+        }).thenApply(added -> invalidateIf(userId, added));
     }
 
-    public boolean addCategory(String name, String type, int userId) {
-        String sql = "INSERT INTO categories(user_id, name, type) VALUES(?, ?, ?)";
-        try (Connection conn = DBManager.connect();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, userId);
-            pstmt.setString(2, name);
-            pstmt.setString(3, type);
-            pstmt.executeUpdate();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("カテゴリ追加エラー: " + e.getMessage());
-            return false;
-        }
+    public boolean updateCategory(int id, String name, String type, int userId) {
+        return WriteQueue.await(updateCategoryAsync(id, name, type, userId));
     }
 
-    public boolean updateCategory(int id, String name, String type, int userId) {
+    public CompletableFuture<Boolean> updateCategoryAsync(int id, String name, String type, int userId) {
         String sql = "UPDATE categories SET name = ?, type = ? WHERE id = ? AND user_id = ?";
-        try (Connection conn = DBManager.connect();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, name);
-            pstmt.setString(2, type);
-            pstmt.setInt(3, id);
-            pstmt.setInt(4, userId);
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+        return writeQueue.submitUpdate(userId, "カテゴリ更新エラー", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, name);
+                pstmt.setString(2, type);
+                pstmt.setInt(3, id);
+                pstmt.setInt(4, userId);
+                return pstmt.executeUpdate() > 0;
+            }
+        }).thenApply(updated -> invalidateIf(userId, updated));
     }
 
     public boolean deleteCategory(int id, int userId) {
-        if (isCategoryUsed(id)) {
-            System.err.println("カテゴリ削除エラー: 関連取引が存在するため削除できません。");
-            return false;
-        }
+        return WriteQueue.await(deleteCategoryAsync(id, userId));
+    }
 
+    /**
+     * 使用中の確認も同じ書き込みの中で行います（確認と削除の間に取引が追加されることがないように）。
+     */
+    public CompletableFuture<Boolean> deleteCategoryAsync(int id, int userId) {
+        // foreign_keys が有効なため、このカテゴリの予算を先に削除する
+        String budgetSql = "DELETE FROM budgets WHERE category_id = ? AND user_id = ?";
         String sql = "DELETE FROM categories WHERE id = ? AND user_id = ?";
-        try (Connection conn = DBManager.connect();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            pstmt.setInt(2, userId);
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+        return writeQueue.submitUpdate(userId, "カテゴリ削除エラー", conn -> {
+            if (isCategoryUsed(conn, id)) {
+                System.err.println("カテゴリ削除エラー: 関連取引が存在するため削除できません。");
+                return false;
+            }
+            Savepoint savepoint = conn.setSavepoint();
+            try (PreparedStatement budgetStmt = conn.prepareStatement(budgetSql);
+                    PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                budgetStmt.setInt(1, id);
+                budgetStmt.setInt(2, userId);
+                budgetStmt.executeUpdate();
+
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, userId);
+                boolean deleted = pstmt.executeUpdate() > 0;
+                if (!deleted) {
+                    conn.rollback(savepoint); // カテゴリがなければ予算の削除も元に戻す
+                }
+                conn.releaseSavepoint(savepoint);
+                return deleted;
+            }
+        }).thenApply(deleted -> invalidateIf(userId, deleted));
     }
 
     // ※単純化のため userId チェックは省略していますが、transaction側で整合性が取れていれば問題ありません
-    private boolean isCategoryUsed(int categoryId) {
+    private static boolean isCategoryUsed(Connection conn, int categoryId) throws SQLException {
         String sql = "SELECT COUNT(*) FROM transactions WHERE category_id = ?";
-        try (Connection conn = DBManager.connect();
-                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, categoryId);
             try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next() && rs.getInt(1) > 0) {
-                    return true;
-                }
+                return rs.next() && rs.getInt(1) > 0;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
-        return false;
     }
 }
@@ -0,0 +1,110 @@
+package com.example.CashFlowWeb;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 外部の取得元1つ分のサーキットブレーカー。
+ * 連続して failureThreshold 回失敗すると OPEN になり、一定時間は呼び出しを行わずにすぐ諦めます。
+ * 時間が経つと HALF_OPEN になって試しに1回だけ呼び出し、成功すれば CLOSED に戻り、失敗すれば再び OPEN になります。
+ * OPEN の時間は続けて開くたびに2倍にし（上限 maxOpenMillis）、CLOSED に戻ったら元の長さに戻します。
+ */
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * 状態が変わるたびに呼ばれます（ブレーカーのロックを持ったまま呼ぶため、軽い処理にしてください）。
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onTransition(String name, State from, State to, long openMillis);
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long baseOpenMillis;
+    private final long maxOpenMillis;
+    private final LongSupplier clock;
+    private final Listener listener;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openMillis;      // 直近で OPEN にした長さ
+    private long openUntil;
+    private boolean trialInFlight; // HALF_OPEN の試し呼び出しが進行中
+
+    public CircuitBreaker(String name, int failureThreshold, long baseOpenMillis, long maxOpenMillis,
+            LongSupplier clock, Listener listener) {
+        if (failureThreshold < 1 || baseOpenMillis < 1 || maxOpenMillis < baseOpenMillis) {
+            throw new IllegalArgumentException("サーキットブレーカーの設定が正しくありません: " + name);
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.baseOpenMillis = baseOpenMillis;
+        this.maxOpenMillis = maxOpenMillis;
+        this.clock = clock;
+        this.listener = listener;
+    }
+
+    /**
+     * 呼び出してよいかを返します。true を返した場合は、結果を必ず onSuccess / onFailure で報告してください。
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() < openUntil) {
+                    return false;
+                }
+                transition(State.HALF_OPEN);
+                trialInFlight = true;
+                return true;
+            default: // HALF_OPEN: 試し呼び出しは同時に1つだけ
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        if (state != State.CLOSED) {
+            openMillis = 0;
+            transition(State.CLOSED);
+        }
+    }
+
+    public synchronized void onFailure() {
+        trialInFlight = false;
+        if (state == State.HALF_OPEN) {
+            open(Math.min(openMillis * 2, maxOpenMillis));
+        } else if (state == State.CLOSED && ++consecutiveFailures >= failureThreshold) {
+            open(baseOpenMillis);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void open(long millis) {
+        consecutiveFailures = 0;
+        openMillis = millis;
+        openUntil = clock.getAsLong() + millis;
+        transition(State.OPEN);
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        listener.onTransition(name, from, to, to == State.OPEN ? openMillis : 0);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.CashFlowWeb;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Enumeration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * ユーザーデータを返す GET に ETag を付け、If-None-Match が一致すればコントローラーを呼ばずに 304 を返すインターセプター。
+ * ETag は 起動ごとの epoch・ユーザーID・データのバージョン（DataVersions）・今日の日付 から作ります。
+ * 日付を含めるのは、予測など「今日」を基準にする結果が日付の変わり目で変わるためです。
+ * 判定はメモリ上の値だけで行うため、304 を返すときは DB にアクセスしません。
+ * ブラウザが再検証できるよう Cache-Control は "private, no-cache" にします（Spring Security の no-store を上書き）。
+ */
+@Component
+public class ConditionalGetInterceptor implements HandlerInterceptor {
+
+    static final String CACHE_CONTROL = "private, no-cache";
+
+    private final DataVersions versions;
+    private final UserIdentityCache identityCache;
+    private final Clock clock;
+
+    @Autowired
+    public ConditionalGetInterceptor(DataVersions versions, UserIdentityCache identityCache) {
+        this(versions, identityCache, Clock.systemDefaultZone());
+    }
+
+    ConditionalGetInterceptor(DataVersions versions, UserIdentityCache identityCache, Clock clock) {
+        this.versions = versions;
+        this.identityCache = identityCache;
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())) {
+            return true;
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || !(auth.getPrincipal() instanceof UserDetails principal)) {
+            return true;
+        }
+
+        int userId = identityCache.userId(principal);
+        String etag = "\"" + Long.toString(versions.getEpoch(), 36) + "-" + userId + "-" + versions.current(userId)
+                + "-" + LocalDate.now(clock).toEpochDay() + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+
+        if (matches(request.getHeaders(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * If-None-Match のいずれかが ETag と一致するか（GET では弱い比較なので W/ は無視する）。
+     */
+    private static boolean matches(Enumeration<String> headers, String etag) {
+        while (headers != null && headers.hasMoreElements()) {
+            for (String candidate : headers.nextElement().split(",")) {
+                candidate = candidate.trim();
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
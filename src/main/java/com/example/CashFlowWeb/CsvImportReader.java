@@ -0,0 +1,156 @@
+package com.example.CashFlowWeb;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * CSV から取引を読むリーダー。1行目のヘッダーの列名で、どの列が日付・金額などかを判断します。
+ * 金額は「金額」列（と任意の「種別」列）か、銀行の明細によくある「入金」「出金」の2列のどちらかで指定します。
+ * 種別がなく金額が負の行は支出、正の行は収入として扱います。
+ * ダブルクォートで囲んだ値（カンマ・改行・"" を含むもの）にも対応します。
+ */
+final class CsvImportReader implements ImportReader {
+
+    private static final int DATE = 0;
+    private static final int AMOUNT = 1;
+    private static final int INCOME = 2;
+    private static final int EXPENSE = 3;
+    private static final int TYPE = 4;
+    private static final int CATEGORY = 5;
+    private static final int MEMO = 6;
+    private static final int ACCOUNT = 7;
+
+    // ヘッダーの列名（小文字）→ 列の役割
+    private static final Map<String, Integer> HEADERS = Map.ofEntries(
+            Map.entry("date", DATE), Map.entry("日付", DATE), Map.entry("取引日", DATE), Map.entry("利用日", DATE),
+            Map.entry("amount", AMOUNT), Map.entry("金額", AMOUNT), Map.entry("取引金額", AMOUNT), Map.entry("利用金額", AMOUNT),
+            Map.entry("income", INCOME), Map.entry("deposit", INCOME), Map.entry("入金", INCOME), Map.entry("入金額", INCOME),
+            Map.entry("expense", EXPENSE), Map.entry("withdrawal", EXPENSE), Map.entry("出金", EXPENSE), Map.entry("出金額", EXPENSE),
+            Map.entry("type", TYPE), Map.entry("種別", TYPE), Map.entry("収支", TYPE),
+            Map.entry("category", CATEGORY), Map.entry("カテゴリ", CATEGORY), Map.entry("カテゴリー", CATEGORY),
+            Map.entry("memo", MEMO), Map.entry("description", MEMO), Map.entry("メモ", MEMO), Map.entry("摘要", MEMO),
+            Map.entry("内容", MEMO),
+            Map.entry("account", ACCOUNT), Map.entry("口座", ACCOUNT));
+
+    private final Reader in;
+    // 役割 → 列番号（その列がなければ -1）
+    private final int[] columns = new int[ACCOUNT + 1];
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private int line;
+
+    /**
+     * ヘッダー行を読み、列の役割を決めます。
+     *
+     * @throws IllegalArgumentException 日付の列、または金額（入金・出金）の列がない場合
+     */
+    CsvImportReader(Reader in) throws IOException {
+        this.in = in;
+        Arrays.fill(columns, -1);
+        if (!readRecord()) {
+            throw new IllegalArgumentException("CSV が空です");
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            String name = fields.get(i).trim().toLowerCase(Locale.ROOT);
+            Integer role = HEADERS.get(name);
+            if (role != null && columns[role] < 0) {
+                columns[role] = i;
+            }
+        }
+        if (columns[DATE] < 0) {
+            throw new IllegalArgumentException("CSV のヘッダーに日付の列（date / 日付）がありません");
+        }
+        if (columns[AMOUNT] < 0 && columns[INCOME] < 0 && columns[EXPENSE] < 0) {
+            throw new IllegalArgumentException("CSV のヘッダーに金額の列（amount / 金額、または入金・出金）がありません");
+        }
+    }
+
+    @Override
+    public Row next() throws IOException {
+        while (true) {
+            int start = line + 1;
+            if (!readRecord()) {
+                return null;
+            }
+            if (fields.size() == 1 && fields.get(0).isBlank()) {
+                continue; // 空行
+            }
+            Row row = new Row(start);
+            row.date = get(DATE);
+            if (columns[AMOUNT] >= 0) {
+                row.amount = get(AMOUNT);
+                row.type = get(TYPE);
+            } else if (get(INCOME) != null) {
+                row.amount = get(INCOME);
+                row.type = "INCOME";
+            } else {
+                row.amount = get(EXPENSE);
+                row.type = "EXPENSE";
+            }
+            row.category = get(CATEGORY);
+            row.memo = get(MEMO);
+            row.account = get(ACCOUNT);
+            return row;
+        }
+    }
+
+    /**
+     * 役割に対応する列の値。列がない・空の場合は null。
+     */
+    private String get(int role) {
+        int column = columns[role];
+        if (column < 0 || column >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(column).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * 1レコード分を fields に読みます。ファイルの終わりなら false。
+     */
+    private boolean readRecord() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        int c = in.read();
+        if (c == '\uFEFF' && line == 0) {
+            c = in.read(); // 先頭の BOM
+        }
+        if (c == -1) {
+            return false;
+        }
+        line++;
+        boolean quoted = false;
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    c = in.read();
+                    if (c != '"') {
+                        quoted = false; // 閉じクォート。c はその次の文字として下で扱う
+                        continue;
+                    }
+                } else if (c == '\n') {
+                    line++;
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+        fields.add(field.toString());
+        return true;
+    }
+}
@@ -19,6 +19,10 @@ public class CustomUserDetailsService implements UserDetailsService {
     @Autowired
     private UserDAO userDAO;
 
+    // ログインしたユーザーのIDを覚えておき、以降のAPIでは DB を引かずに済ませる
+    @Autowired
+    private UserIdentityCache identityCache;
+
     /**
      * Spring Securityがログイン処理（/login）を実行する際に、
      * ユーザー名（username）を引数としてこのメソッドを呼び出します。
@@ -39,6 +43,7 @@ public class CustomUserDetailsService implements UserDetailsService {
         }
 
         // 3. ユーザーが見つかった場合
+        identityCache.remember(user);
         // User.java (モデル) は既に UserDetails インターフェースを実装しているため、
         // そのまま返すだけでSpring Securityがパスワードの比較などを行います。
         return user;
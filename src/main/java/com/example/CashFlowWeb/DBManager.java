@@ -1,100 +1,155 @@
 package com.example.CashFlowWeb;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * SQLiteへの接続を管理するクラス。
+ * 以前は呼び出しのたびに DriverManager で新しい接続を開いていましたが、
+ * 現在は HikariCP のコネクションプールを Spring の DataSource Bean として公開し、
+ * 各DAOにはこの DataSource を注入します。
+ * cashflow.db.shards を指定すると、ユーザーごとのデータを複数の SQLite ファイルに分けて保存します（ShardedDataSource）。
+ */
+@Configuration
 public class DBManager {
 
-    private static final String URL = "jdbc:sqlite:cashflow.db";
+    @Value("${cashflow.db.url:jdbc:sqlite:cashflow.db}")
+    private String url;
+
+    @Value("${cashflow.db.pool.max-size:8}")
+    private int maxPoolSize;
+
+    @Value("${cashflow.db.pool.min-idle:2}")
+    private int minIdle;
+
+    @Value("${cashflow.db.pool.connection-timeout-ms:5000}")
+    private long connectionTimeoutMs;
+
+    @Value("${cashflow.db.statement-cache-size:64}")
+    private int statementCacheSize;
+
+    @Value("${cashflow.db.busy-timeout-ms:5000}")
+    private int busyTimeoutMs;
+
+    @Value("${cashflow.db.cache-size-kib:8192}")
+    private int cacheSizeKib;
+
+    @Value("${cashflow.db.mmap-size-bytes:268435456}")
+    private long mmapSizeBytes;
+
+    @Value("${cashflow.db.read-pool.max-size:4}")
+    private int readPoolSize;
+
+    @Value("${cashflow.db.shards:0}")
+    private int shardCount;
+
+    @Value("${cashflow.db.shard-url-pattern:jdbc:sqlite:cashflow-shard-%d.db}")
+    private String shardUrlPattern;
+
+    @Value("${cashflow.db.shard-pool.max-size:4}")
+    private int shardPoolSize;
 
-    public static Connection connect() throws SQLException {
-        return DriverManager.getConnection(URL);
+    /**
+     * プール済みの DataSource を生成します。
+     * PRAGMA は SQLiteConfig 経由で「物理接続を開いたときに一度だけ」適用されるため、
+     * プールから借りるたびに再設定されることはありません。
+     * cashflow.db.shards が1以上なら、cashflow.db.url をディレクトリDBとして、
+     * シャードごとのファイル（cashflow.db.shard-url-pattern）とプールを持つ ShardedDataSource を返します。
+     */
+    @Bean(destroyMethod = "close")
+    @Primary
+    public DataSource dataSource(DBPoolMetrics poolMetrics) {
+        HikariDataSource directory = writePool("cashflow-sqlite", url, maxPoolSize, minIdle, poolMetrics);
+        // スキーマの作成・更新は起動時にここで一度だけ行う（シャードも同じスキーマ）
+        SchemaMigrator.migrate(directory);
+        if (shardCount <= 0) {
+            return directory;
+        }
+        List<DataSource> shards = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            HikariDataSource pool = writePool("cashflow-sqlite-shard-" + shard, shardUrl(shard), shardPoolSize,
+                    Math.min(minIdle, shardPoolSize), poolMetrics);
+            SchemaMigrator.migrate(pool);
+            shards.add(pool);
+        }
+        return new ShardedDataSource(directory, shards);
     }
 
-    public static void initializeDatabase() {
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement()) {
-
-            // ユーザーテーブル
-            String sqlUsers = "CREATE TABLE IF NOT EXISTS users (" +
-                              "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                              "username TEXT NOT NULL UNIQUE, " +
-                              "password_hash TEXT NOT NULL, " +
-                              "role TEXT NOT NULL DEFAULT 'USER'" +
-                              ");";
-            stmt.execute(sqlUsers);
-
-            // カテゴリテーブル
-            String sqlCategory = "CREATE TABLE IF NOT EXISTS categories (" +
-                                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                                 "user_id INTEGER NOT NULL," +
-                                 "name TEXT NOT NULL," +
-                                 "type TEXT NOT NULL CHECK(type IN ('INCOME', 'EXPENSE'))," +
-                                 "FOREIGN KEY (user_id) REFERENCES users(id)" +
-                                 ");";
-            stmt.execute(sqlCategory);
-
-            // 目標テーブル (先に作成が必要)
-            String sqlGoals = "CREATE TABLE IF NOT EXISTS goals (" +
-                         "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                         "user_id INTEGER NOT NULL, " +
-                         "name TEXT NOT NULL, " +
-                         "target_amount REAL NOT NULL, " +
-                         "current_amount REAL NOT NULL DEFAULT 0, " +
-                         "target_date TEXT, " +
-                         "image_url TEXT, " +
-                         "FOREIGN KEY (user_id) REFERENCES users(id)" +
-                         ")";
-            stmt.execute(sqlGoals);
-
-            // 取引テーブル (goal_id を追加)
-            String sqlTransaction = "CREATE TABLE IF NOT EXISTS transactions (" +
-                                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                                    "user_id INTEGER NOT NULL," +
-                                    "date TEXT NOT NULL," +
-                                    "amount REAL NOT NULL," +
-                                    "type TEXT NOT NULL CHECK(type IN ('INCOME', 'EXPENSE'))," +
-                                    "category_id INTEGER," +
-                                    "goal_id INTEGER," + // ★追加: どの目標への入金か
-                                    "is_future BOOLEAN NOT NULL DEFAULT FALSE," +
-                                    "is_extraordinary BOOLEAN NOT NULL DEFAULT FALSE," +
-                                    "FOREIGN KEY (category_id) REFERENCES categories(id)," +
-                                    "FOREIGN KEY (goal_id) REFERENCES goals(id)," + // ★追加
-                                    "FOREIGN KEY (user_id) REFERENCES users(id)" +
-                                    ");";
-            stmt.execute(sqlTransaction);
-
-            // 資産テーブル
-            String sqlAssets = "CREATE TABLE IF NOT EXISTS assets (" +
-                               "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                               "user_id INTEGER NOT NULL," +
-                               "name TEXT NOT NULL," +
-                               "ticker_symbol TEXT," +
-                               "quantity REAL NOT NULL," +
-                               "purchase_price REAL NOT NULL," +
-                               "current_price REAL NOT NULL," +
-                               "asset_type TEXT," +
-                               "FOREIGN KEY (user_id) REFERENCES users(id)" +
-                               ");";
-            stmt.execute(sqlAssets);
-
-            // 予算テーブル
-            String sqlBudgets = "CREATE TABLE IF NOT EXISTS budgets (" +
-                                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                                "user_id INTEGER NOT NULL," +
-                                "year_month TEXT NOT NULL," +
-                                "category_id INTEGER NOT NULL," +
-                                "amount REAL NOT NULL," +
-                                "UNIQUE(user_id, year_month, category_id)," +
-                                "FOREIGN KEY (category_id) REFERENCES categories(id)," +
-                                "FOREIGN KEY (user_id) REFERENCES users(id)" +
-                                ");";
-            stmt.execute(sqlBudgets);
-            
-        } catch (SQLException e) {
-            System.err.println("データベース初期化エラー: " + e.getMessage());
+    /**
+     * 読み取り専用の接続だけを持つ DataSource を生成します（/api/dashboard の並列読み取り用）。
+     * SQLite を読み取り専用で開くため、誤って書き込むと失敗します。WAL モードなので書き込み中でも読めます。
+     * 書き込み用のプールを引数に取るのは、マイグレーションが終わってから開くためです。
+     * シャード化している場合は、シャードごとの読み取り専用プールを書き込み用と同じ割り当てで振り分けます。
+     */
+    @Bean(destroyMethod = "close")
+    public DataSource readOnlyDataSource(DataSource dataSource) {
+        HikariDataSource directory = readPool("cashflow-sqlite-read", url, readPoolSize);
+        if (!(dataSource instanceof ShardedDataSource sharded)) {
+            return directory;
         }
+        List<DataSource> shards = new ArrayList<>();
+        for (int shard = 0; shard < sharded.shardCount(); shard++) {
+            shards.add(readPool("cashflow-sqlite-shard-" + shard + "-read", shardUrl(shard), shardPoolSize));
+        }
+        return sharded.withPools(directory, shards);
+    }
+
+    private String shardUrl(int shard) {
+        return String.format(shardUrlPattern, shard);
+    }
+
+    private HikariDataSource writePool(String poolName, String jdbcUrl, int maxSize, int minIdleSize, DBPoolMetrics poolMetrics) {
+        SQLiteConfig sqliteConfig = new SQLiteConfig();
+        sqliteConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        sqliteConfig.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        sqliteConfig.setBusyTimeout(busyTimeoutMs);
+        sqliteConfig.setCacheSize(-cacheSizeKib); // 負の値はKiB単位の指定
+        sqliteConfig.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(mmapSizeBytes));
+        sqliteConfig.enforceForeignKeys(true);
+
+        SQLiteDataSource sqliteDataSource = new SQLiteDataSource(sqliteConfig);
+        sqliteDataSource.setUrl(jdbcUrl);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setDataSource(new StatementCachingDataSource(sqliteDataSource, statementCacheSize));
+        config.setMaximumPoolSize(maxSize);
+        config.setMinimumIdle(minIdleSize);
+        config.setConnectionTimeout(connectionTimeoutMs);
+        config.setMetricsTrackerFactory(poolMetrics);
+        config.setRegisterMbeans(true); // JMX からも active/idle 数を確認できるようにする
+        return new HikariDataSource(config);
+    }
+
+    private HikariDataSource readPool(String poolName, String jdbcUrl, int maxSize) {
+        SQLiteConfig sqliteConfig = new SQLiteConfig();
+        sqliteConfig.setReadOnly(true);
+        sqliteConfig.setBusyTimeout(busyTimeoutMs);
+        sqliteConfig.setCacheSize(-cacheSizeKib);
+        sqliteConfig.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(mmapSizeBytes));
+
+        SQLiteDataSource sqliteDataSource = new SQLiteDataSource(sqliteConfig);
+        sqliteDataSource.setUrl(jdbcUrl);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setReadOnly(true); // SQLite は開いた後に切り替えられないため、プール側の既定値も合わせる
+        config.setDataSource(new StatementCachingDataSource(sqliteDataSource, statementCacheSize));
+        config.setMaximumPoolSize(maxSize);
+        config.setMinimumIdle(0);
+        config.setConnectionTimeout(connectionTimeoutMs);
+        return new HikariDataSource(config);
     }
 }
@@ -0,0 +1,106 @@
+package com.example.CashFlowWeb;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * コネクションプールの統計情報を集計するクラス。
+ * HikariCP から接続の取得待ち時間・使用時間・タイムアウトを受け取り、
+ * プールサイズのチューニング用に /api/system/db-pool で公開します。
+ */
+@Component
+public class DBPoolMetrics implements MetricsTrackerFactory {
+
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanosTotal = new LongAdder();
+    private final LongAccumulator acquireNanosMax = new LongAccumulator(Long::max, 0);
+    private final LongAdder usageCount = new LongAdder();
+    private final LongAdder usageMillisTotal = new LongAdder();
+    private final LongAccumulator usageMillisMax = new LongAccumulator(Long::max, 0);
+    private final LongAdder timeoutCount = new LongAdder();
+
+    // シャード化している場合はシャードごとにプールがあるため、プール名ごとに持って合計する
+    private final Map<String, PoolStats> poolStats = new ConcurrentHashMap<>();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats.put(poolName, poolStats);
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireCount.increment();
+                acquireNanosTotal.add(elapsedAcquiredNanos);
+                acquireNanosMax.accumulate(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageCount.increment();
+                usageMillisTotal.add(elapsedBorrowedMillis);
+                usageMillisMax.accumulate(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeoutCount.increment();
+            }
+        };
+    }
+
+    /**
+     * 現時点の統計のスナップショットを返します。
+     */
+    public Snapshot snapshot() {
+        Snapshot s = new Snapshot();
+        for (PoolStats stats : poolStats.values()) {
+            s.pools++;
+            s.activeConnections += stats.getActiveConnections();
+            s.idleConnections += stats.getIdleConnections();
+            s.totalConnections += stats.getTotalConnections();
+            s.pendingThreads += stats.getPendingThreads();
+            s.maxPoolSize += stats.getMaxConnections();
+            s.minIdle += stats.getMinConnections();
+        }
+        long acquired = acquireCount.sum();
+        s.acquireCount = acquired;
+        s.avgWaitMillis = acquired == 0 ? 0 : nanosToMillis(acquireNanosTotal.sum()) / acquired;
+        s.maxWaitMillis = nanosToMillis(acquireNanosMax.get());
+        long used = usageCount.sum();
+        s.avgUsageMillis = used == 0 ? 0 : (double) usageMillisTotal.sum() / used;
+        s.maxUsageMillis = usageMillisMax.get();
+        s.timeoutCount = timeoutCount.sum();
+        return s;
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * JSONとして返すための統計値。接続数はすべての書き込み用プールの合計（pools はプールの数）。
+     */
+    public static class Snapshot {
+        public int pools;
+        public int activeConnections;
+        public int idleConnections;
+        public int totalConnections;
+        public int pendingThreads;
+        public int maxPoolSize;
+        public int minIdle;
+        public long acquireCount;
+        public double avgWaitMillis;
+        public double maxWaitMillis;
+        public double avgUsageMillis;
+        public long maxUsageMillis;
+        public long timeoutCount;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.CashFlowWeb;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /api/dashboard の応答。ダッシュボードの初期表示に必要なデータをまとめて返します。
+ * 取得できたセクションだけが data に入り、全セクションの結果と所要時間が sections に入ります。
+ * 一部のセクションが失敗・タイムアウトしても、残りは表示できるように 200 で返します（complete が false）。
+ */
+public class Dashboard {
+
+    public enum Status { OK, ERROR, TIMEOUT, REJECTED }
+
+    private final Map<String, Object> data = new LinkedHashMap<>();
+    private final Map<String, Section> sections = new LinkedHashMap<>();
+    private boolean complete = true;
+    private long totalMillis;
+
+    void put(String name, Object value, double millis) {
+        data.put(name, value);
+        sections.put(name, new Section(Status.OK, millis, null));
+    }
+
+    void fail(String name, Status status, double millis, String error) {
+        sections.put(name, new Section(status, millis, error));
+        complete = false;
+    }
+
+    public Map<String, Object> getData() { return data; }
+    public Map<String, Section> getSections() { return sections; }
+    public boolean isComplete() { return complete; }
+    public long getTotalMillis() { return totalMillis; }
+    void setTotalMillis(long totalMillis) { this.totalMillis = totalMillis; }
+
+    /**
+     * セクションごとの結果。millis はクエリの実行時間（タイムアウト時は待った時間）。
+     */
+    public static class Section {
+        private final Status status;
+        private final double millis;
+        private final String error;
+
+        Section(Status status, double millis, String error) {
+            this.status = status;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        public Status getStatus() { return status; }
+        public double getMillis() { return millis; }
+        public String getError() { return error; }
+    }
+}
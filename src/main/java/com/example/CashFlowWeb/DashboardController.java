@@ -0,0 +1,69 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * ダッシュボードの初期表示に必要なデータを1回のリクエストで返すAPI。
+ * 各セクションの所要時間は応答の sections と Server-Timing ヘッダー（ブラウザの開発者ツールで確認できる）に入ります。
+ * 為替レートは /api/fx/stream の接続時に最新値が届くため、ここには含めません。
+ */
+@RestController
+@RequestMapping("/api/dashboard")
+public class DashboardController {
+
+    private static final int RECENT_TRANSACTIONS = 10;
+
+    private final DashboardLoader loader;
+    private final UserIdentityCache identityCache;
+
+    public DashboardController(DashboardLoader loader, UserIdentityCache identityCache) {
+        this.loader = loader;
+        this.identityCache = identityCache;
+    }
+
+    /**
+     * @param startDate 円グラフの期間（省略時は今月）
+     * @param endDate   同じく終了日
+     */
+    @GetMapping
+    public ResponseEntity<Dashboard> getDashboard(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "12") int monthsToPredict,
+            @RequestParam(defaultValue = "" + RECENT_TRANSACTIONS) int limit,
+            @AuthenticationPrincipal UserDetails userDetails, HttpServletResponse servletResponse) {
+        int userId = identityCache.userId(userDetails);
+        LocalDate today = LocalDate.now();
+        LocalDate from = startDate != null ? startDate : today.withDayOfMonth(1);
+        LocalDate to = endDate != null ? endDate : today.withDayOfMonth(today.lengthOfMonth());
+        int months = Math.max(1, Math.min(monthsToPredict, TransactionController.MAX_PREDICT_MONTHS));
+
+        Dashboard dashboard = loader.load(userId, from, to, months, Math.max(1, Math.min(limit, 100)), today);
+
+        StringJoiner timing = new StringJoiner(", ");
+        for (Map.Entry<String, Dashboard.Section> entry : dashboard.getSections().entrySet()) {
+            timing.add(String.format(Locale.ROOT, "%s;dur=%.1f", entry.getKey(), entry.getValue().getMillis()));
+        }
+        timing.add("total;dur=" + dashboard.getTotalMillis());
+        if (!dashboard.isComplete()) {
+            // 欠けた結果がキャッシュされて 304 で返され続けないよう、ConditionalGetInterceptor の指定を上書きして保存させない
+            servletResponse.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        }
+        return ResponseEntity.ok().header("Server-Timing", timing.toString()).body(dashboard);
+    }
+}
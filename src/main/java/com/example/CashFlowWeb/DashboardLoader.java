@@ -0,0 +1,178 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * ダッシュボードの各セクションを並列に読み込むクラス。
+ * 取引・集計・資産・目標の読み取りは読み取り専用プール（DBManager.readOnlyDataSource）を使う DAO で行い、
+ * スレッド数と待ち行列に上限のあるスレッドプールに同時に投入します。応答時間は合計ではなく最も遅いクエリで決まります。
+ * カテゴリは共有の CategoryDAO のキャッシュから返し、予測は取得済みの統計・資産・目標から計算するだけなので追加のクエリはありません。
+ * 期限（cashflow.dashboard.timeout-ms）までに終わらなかったセクションは打ち切り、残りだけで応答します。
+ */
+@Component
+public class DashboardLoader {
+
+    private final TransactionDAO transactionDAO;
+    private final SummaryDAO summaryDAO;
+    private final AssetDAO assetDAO;
+    private final GoalDAO goalDAO;
+    private final CategoryDAO categoryDAO;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    @Autowired
+    public DashboardLoader(@Qualifier("readOnlyDataSource") DataSource readOnly, CategoryDAO categoryDAO,
+            TransactionProjection projection,
+            @Value("${cashflow.dashboard.threads:4}") int threads,
+            @Value("${cashflow.dashboard.queue-size:64}") int queueSize,
+            @Value("${cashflow.dashboard.timeout-ms:3000}") long timeoutMillis) {
+        this(new TransactionDAO(readOnly), new SummaryDAO(readOnly, projection, categoryDAO), new AssetDAO(readOnly),
+                new GoalDAO(readOnly, new DataVersions(), WriteQueue.direct(readOnly), projection),
+                categoryDAO, threads, queueSize, timeoutMillis);
+    }
+
+    DashboardLoader(TransactionDAO transactionDAO, SummaryDAO summaryDAO, AssetDAO assetDAO, GoalDAO goalDAO,
+            CategoryDAO categoryDAO, int threads, int queueSize, long timeoutMillis) {
+        this.transactionDAO = transactionDAO;
+        this.summaryDAO = summaryDAO;
+        this.assetDAO = assetDAO;
+        this.goalDAO = goalDAO;
+        this.categoryDAO = categoryDAO;
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger threadCount = new AtomicInteger();
+        // 待ち行列が一杯なら投入を断り、そのセクションは REJECTED として返す（リクエストスレッドでは実行しない）
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "dashboard-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param startDate 円グラフ（カテゴリ別支出）の期間の開始日
+     * @param endDate   同じく終了日
+     * @param months    予測する月数
+     * @param limit     最近の取引の件数
+     */
+    public Dashboard load(int userId, LocalDate startDate, LocalDate endDate, int months, int limit, LocalDate today) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        List<Section<?>> sections = new ArrayList<>();
+        submit(sections, "categories", () -> categoryDAO.getAllCategories(userId));
+        Section<List<Goal>> goals = submit(sections, "goals", () -> goalDAO.getAllGoals(userId));
+        Section<List<Asset>> assets = submit(sections, "assets", () -> assetDAO.getAllAssets(userId));
+        submit(sections, "transactions",
+                () -> transactionDAO.getTransactionPage(userId, null, null, null, null, null, limit).getItems());
+        submit(sections, "monthlySummary", () -> summaryDAO.getMonthlySummaries(userId, null, null));
+        submit(sections, "balance", () -> transactionDAO.getCashBalance(userId));
+        submit(sections, "categorySummary",
+                () -> summaryDAO.getCategorySummaries(userId, "EXPENSE", startDate, endDate));
+        Section<CashFlowStats> stats = submit(sections, "stats", () -> summaryDAO.getCashFlowStats(userId, true));
+
+        Dashboard dashboard = new Dashboard();
+        for (Section<?> section : sections) {
+            section.await(deadline, dashboard);
+        }
+
+        // 予測は取得済みのデータから組み立てるだけ（どれかが欠けていれば作らない）
+        if (stats.value != null && assets.value != null && goals.value != null) {
+            long predictStart = System.nanoTime();
+            PredictionResult prediction = TransactionController.buildPrediction(
+                    stats.value, assets.value, goals.value, months, today);
+            dashboard.put("predict", prediction, millisSince(predictStart));
+        } else {
+            dashboard.fail("predict", Dashboard.Status.ERROR, 0, "統計・資産・目標のいずれかを取得できませんでした");
+        }
+        dashboard.setTotalMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return dashboard;
+    }
+
+    private <T> Section<T> submit(List<Section<?>> sections, String name, Callable<T> query) {
+        Section<T> section = new Section<>(name);
+        sections.add(section);
+        try {
+            section.future = executor.submit(() -> {
+                section.startNanos = System.nanoTime();
+                try {
+                    return query.call();
+                } finally {
+                    section.endNanos = System.nanoTime();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            section.rejected = true;
+        }
+        return section;
+    }
+
+    private static double millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000.0;
+    }
+
+    /**
+     * 1つのセクションの実行状態。startNanos / endNanos は実行したスレッドが書き込みます。
+     */
+    private static final class Section<T> {
+        final String name;
+        final long submittedNanos = System.nanoTime();
+        Future<T> future;
+        boolean rejected;
+        volatile long startNanos;
+        volatile long endNanos;
+        T value;
+
+        Section(String name) {
+            this.name = name;
+        }
+
+        void await(long deadline, Dashboard dashboard) {
+            if (rejected) {
+                dashboard.fail(name, Dashboard.Status.REJECTED, 0, "混雑しているため実行できませんでした");
+                return;
+            }
+            try {
+                value = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                dashboard.put(name, value, (endNanos - startNanos) / 1_000_000.0);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                dashboard.fail(name, Dashboard.Status.TIMEOUT, millisSince(submittedNanos), "時間内に終わりませんでした");
+            } catch (ExecutionException e) {
+                System.err.println("ダッシュボード読み込みエラー (" + name + "): " + e.getCause());
+                dashboard.fail(name, Dashboard.Status.ERROR, (endNanos - startNanos) / 1_000_000.0,
+                        String.valueOf(e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                dashboard.fail(name, Dashboard.Status.TIMEOUT, millisSince(submittedNanos), "中断されました");
+            }
+        }
+    }
+}
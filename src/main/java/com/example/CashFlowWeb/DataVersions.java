@@ -0,0 +1,47 @@
+package com.example.CashFlowWeb;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * ユーザーごとのデータのバージョン番号。
+ * 取引・資産・目標・予算・カテゴリの各DAOが書き込みをコミットした後に bump() で1つ増やし、
+ * ConditionalGetInterceptor がこの番号から ETag を作ります。番号が変わらない限り、GET の結果も変わりません。
+ * 番号はメモリ上にしかないため、再起動のたびに変わる epoch を ETag に含めて、前回の起動時の ETag と区別します。
+ */
+@Component
+public class DataVersions {
+
+    private final long epoch = System.currentTimeMillis();
+    private final ConcurrentMap<Integer, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public long current(int userId) {
+        AtomicLong version = versions.get(userId);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * ユーザーのデータが変わったことを記録します。コミットより後に呼んでください
+     * （先に呼ぶと、古いデータが新しい ETag 付きで返ることがあります）。
+     */
+    public void bump(int userId) {
+        versions.computeIfAbsent(userId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * changed が true のときだけ bump() し、changed をそのまま返します（DAO の Future の後処理用）。
+     */
+    public boolean bumpIf(int userId, boolean changed) {
+        if (changed) {
+            bump(userId);
+        }
+        return changed;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+/**
+ * 取引の日付を保存する整数列との変換。
+ * transactions.epoch_day は 1970-01-01 からの日数（LocalDate.toEpochDay()）、
+ * transactions.year_month と transaction_rollups.year_month は 年 × 100 + 月（2024年5月なら 202405）です。
+ * どちらも整数の比較で範囲を絞り込めるため、インデックスがそのまま使え、読み出しで文字列を解析する必要もありません。
+ */
+final class DateColumns {
+
+    private DateColumns() {
+    }
+
+    static int yearMonth(LocalDate date) {
+        return date.getYear() * 100 + date.getMonthValue();
+    }
+
+    static int yearMonth(YearMonth month) {
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+
+    static YearMonth toYearMonth(int yearMonth) {
+        return YearMonth.of(yearMonth / 100, yearMonth % 100);
+    }
+
+    /** 画面や API で使う "yyyy-MM" 形式に戻します。 */
+    static String format(int yearMonth) {
+        return toYearMonth(yearMonth).toString();
+    }
+}
@@ -1,154 +1,147 @@
 package com.example.CashFlowWeb;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 @RestController
 @RequestMapping("/api/fx")
 public class FXController {
 
-    // チャート履歴を保持するリスト
-    private static final List<Double> priceHistory = new CopyOnWriteArrayList<>();
-    private static double currentRate = 150.0; // 初期プレースホルダー（取得失敗時用）
-
-    // Yahoo Finance API URL (USD/JPY)
-    private static final String YAHOO_API_URL = "https://query1.finance.yahoo.com/v8/finance/chart/USDJPY=X?interval=1m&range=1d";
-
-    // 起動時に初期データを取得
-    static {
-        // 初回の実データ取得
-        double rate = fetchRealTimeRate();
-        if (rate > 0) {
-            currentRate = rate;
-        }
-
-        // グラフがいきなり空っぽにならないよう、現在のレートで初期埋めする
-        // (アプリが動いている間に、ここがリアルな変動データに置き換わっていきます)
-        for (int i = 0; i < 30; i++) {
-            priceHistory.add(currentRate);
-        }
-    }
-
-    // ★重要: Yahoo Financeからリアルタイムレートを取得するメソッド
-    private static double fetchRealTimeRate() {
-        try {
-            RestTemplate restTemplate = new RestTemplate();
-
-            // ブラウザからのアクセスに見せかけるためのヘッダー（これがないと拒否されることがある）
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("User-Agent",
-                    "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            ResponseEntity<String> response = restTemplate.exchange(YAHOO_API_URL, HttpMethod.GET, entity,
-                    String.class);
-
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode root = mapper.readTree(response.getBody());
-
-            // JSON構造: chart -> result -> [0] -> meta -> regularMarketPrice
-            JsonNode meta = root.path("chart").path("result").get(0).path("meta");
-            double price = meta.path("regularMarketPrice").asDouble();
-
-            return price;
-        } catch (Exception e) {
-            System.err.println("リアルタイムレート取得エラー: " + e.getMessage());
-            return -1; // 失敗
-        }
+    // まだ一度もレートを取得できていないときに表示する仮のレート
+    private static final double PLACEHOLDER_RATE = 150.0;
+
+    private final FxQuoteCache quoteCache;
+    private final FxIndicatorEngine indicatorEngine;
+    private final FxStreamPublisher streamPublisher;
+    private final FxTickStore tickStore;
+    private final List<String> pairs;
+    private final String pair;
+
+    public FXController(FxQuoteCache quoteCache, FxIndicatorEngine indicatorEngine, FxStreamPublisher streamPublisher,
+            FxTickStore tickStore, @Value("${cashflow.fx.pairs:USDJPY}") List<String> pairs) {
+        this.quoteCache = quoteCache;
+        this.indicatorEngine = indicatorEngine;
+        this.streamPublisher = streamPublisher;
+        this.tickStore = tickStore;
+        this.pairs = pairs;
+        this.pair = pairs.get(0);
     }
 
     static class FXPrediction {
+        public String pair;
         public double currentRate;
         public String recommendation;
         public String reason;
-        public List<Double> history;
-        public List<Double> prediction;
+        public double[] history;
+        public double[] prediction;
         public double riskPercentage;
+        public Map<String, Double> indicators; // EMA・RSI・MACD・ボリンジャーバンド・実現ボラティリティ
+        public Instant asOf; // レートの取得時刻 (未取得なら null)
+        public boolean stale; // 再生データのレート (外部APIが使えない間の代わり) なら true
 
-        public FXPrediction(double currentRate, String recommendation, String reason, List<Double> history,
-                List<Double> prediction, double riskPercentage) {
+        public FXPrediction(String pair, double currentRate, String recommendation, String reason, double[] history,
+                double[] prediction, double riskPercentage, Map<String, Double> indicators, Instant asOf, boolean stale) {
+            this.pair = pair;
             this.currentRate = currentRate;
             this.recommendation = recommendation;
             this.reason = reason;
             this.history = history;
             this.prediction = prediction;
             this.riskPercentage = riskPercentage;
+            this.indicators = indicators;
+            this.asOf = asOf;
+            this.stale = stale;
         }
     }
 
-    @GetMapping("/analysis")
-    public FXPrediction getFXAnalysis() {
-        // 1. リアルタイムレートを取得
-        double realRate = fetchRealTimeRate();
+    /**
+     * 設定されている通貨ペアの一覧を返します（先頭が既定のペア）。
+     */
+    @GetMapping("/pairs")
+    public List<String> getPairs() {
+        return pairs;
+    }
 
-        // 取得成功したら更新、失敗したら前回の値を維持
-        if (realRate > 0) {
-            currentRate = realRate;
+    /**
+     * 為替のAI分析結果を返します。
+     * 指標・シグナル・予測は FxIndicatorEngine がレート更新時に計算済みのものを返すだけで、
+     * リクエストごとの外部API呼び出しや再計算はありません。
+     * 起動直後でレートが未取得の場合は、仮のレートで「取得待ち」を返します。
+     *
+     * @param pair 通貨ペア (例: EURJPY。省略時は cashflow.fx.pairs の先頭)
+     */
+    @GetMapping("/analysis")
+    public ResponseEntity<FXPrediction> getFXAnalysis(@RequestParam(required = false) String pair) {
+        String target = pair != null ? pair : this.pair;
+        if (!indicatorEngine.supports(target)) {
+            return ResponseEntity.badRequest().build();
         }
+        return ResponseEntity.ok(analysis(target));
+    }
 
-        // 履歴に追加 (常に最新30件を保持)
-        priceHistory.add(currentRate);
-        if (priceHistory.size() > 30) {
-            priceHistory.remove(0);
+    private FXPrediction analysis(String pair) {
+        FxAnalysis analysis = indicatorEngine.latest(pair);
+        if (analysis == null) {
+            // まだ一度もレートがない: 仮のレートで平らな線を返す
+            double[] history = new double[FxQuoteCache.HISTORY_SIZE];
+            Arrays.fill(history, PLACEHOLDER_RATE);
+            double[] prediction = new double[FxSignal.HORIZON];
+            Arrays.fill(prediction, PLACEHOLDER_RATE);
+            return new FXPrediction(pair, PLACEHOLDER_RATE, "STAY", "AI分析: レートの取得を待っています。",
+                    history, prediction, 0, Map.of(), null, false);
         }
+        return new FXPrediction(pair, analysis.getPrice(), analysis.getRecommendation(), analysis.getReason(),
+                quoteCache.history(pair), analysis.getPrediction(), analysis.getRiskPercentage(),
+                analysis.getIndicators(), analysis.getAsOf(), analysis.isStale());
+    }
 
-        // 2. AIトレンド判定ロジック (実際の移動平均線との乖離を見る)
-        double recentAvg = priceHistory.stream()
-                .mapToDouble(Double::doubleValue)
-                .average().orElse(currentRate);
-
-        String recommendation;
-        String reason;
-        List<Double> prediction = new ArrayList<>();
-        double predRate = currentRate;
-
-        // トレンド判定の閾値（0.05円の乖離で反応）
-        double threshold = 0.05;
-
-        if (currentRate < recentAvg - threshold) {
-            recommendation = "BUY";
-            reason = "AI分析: 現在値(" + currentRate + ")は平均線(" + String.format("%.2f", recentAvg)
-                    + ")を下回っています。反発（押し目買い）の好機です。";
-            // 上昇トレンド予測を生成
-            for (int i = 0; i < 7; i++) {
-                predRate += 0.02 + (Math.random() * 0.05);
-                prediction.add(predRate);
-            }
-        } else if (currentRate > recentAvg + threshold) {
-            recommendation = "SELL";
-            reason = "AI分析: 現在値(" + currentRate + ")は平均線(" + String.format("%.2f", recentAvg)
-                    + ")を上回っています。高値警戒感があり、利益確定を推奨します。";
-            // 下降トレンド予測を生成
-            for (int i = 0; i < 7; i++) {
-                predRate -= 0.02 + (Math.random() * 0.05);
-                prediction.add(predRate);
-            }
-        } else {
-            recommendation = "STAY";
-            reason = "AI分析: 現在値は平均線付近で推移しており、方向感が定まっていません。明確なトレンド発生を待機してください。";
-            // 横ばい予測を生成
-            for (int i = 0; i < 7; i++) {
-                predRate += (Math.random() - 0.5) * 0.05;
-                prediction.add(predRate);
-            }
+    /**
+     * レートの変化を Server-Sent Events で配信します。
+     * 最初に snapshot イベントで /analysis と同じ内容を送り、その後はレートが変わったときだけ
+     * tick イベント (FxAnalysis) を送ります。
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamRates(@RequestParam(required = false) String pair) {
+        String target = pair != null ? pair : this.pair;
+        if (!indicatorEngine.supports(target)) {
+            return ResponseEntity.badRequest().build();
         }
+        return ResponseEntity.ok(streamPublisher.subscribe(target, () -> analysis(target)));
+    }
 
-        // ボラティリティ（変動幅）からリスクを簡易計算
-        double maxVal = Collections.max(priceHistory);
-        double minVal = Collections.min(priceHistory);
-        double risk = ((maxVal - minVal) / currentRate) * 100 * 10; // 見やすいように係数をかける
-
-        return new FXPrediction(currentRate, recommendation, reason, new ArrayList<>(priceHistory), prediction, risk);
+    /**
+     * 保存済みのティックをローソク足にまとめて返します（チャートの長期表示用）。
+     * to を省略すると現在時刻、from を省略すると to から足 500 本分前までになります。
+     *
+     * @param resolution 足の長さ (1m / 5m / 1h / 1d)
+     */
+    @GetMapping("/candles")
+    public ResponseEntity<FxCandles> getCandles(
+            @RequestParam(required = false) String pair,
+            @RequestParam(defaultValue = "1h") String resolution,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        String target = pair != null ? pair : this.pair;
+        if (!pairs.contains(target)) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            FxTickStore.Resolution r = FxTickStore.Resolution.parse(resolution);
+            long toMillis = (to != null ? to : Instant.now()).toEpochMilli();
+            long fromMillis = from != null ? from.toEpochMilli() : toMillis - r.getMillis() * 500;
+            return ResponseEntity.ok(tickStore.candles(target, fromMillis, toMillis, r));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 }
@@ -0,0 +1,51 @@
+package com.example.CashFlowWeb;
+
+/**
+ * 取引の指紋の Bloom フィルタ。取り込みの前にユーザーの既存の指紋をすべて入れておき、
+ * mightContain が false の行は DB を見ずに新しい取引と判断します。
+ * true の行だけを一意インデックスで確認します（偽陽性の割合は作るときに指定）。
+ * 1件あたり約 10 ビット（偽陽性 1% のとき）なので、指紋そのものを持つより大幅に小さくなります。
+ */
+final class FingerprintFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expected 入れる件数
+     * @param falsePositiveRate 偽陽性の割合（0.01 なら 1%）
+     */
+    FingerprintFilter(long expected, double falsePositiveRate) {
+        long n = Math.max(1, expected);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, Math.min((m + 63) / 64, Integer.MAX_VALUE - 8));
+        this.bits = new long[words];
+        this.bitCount = (long) words * 64;
+        this.hashCount = (int) Math.max(1, Math.min(16, Math.round((double) bitCount / n * Math.log(2))));
+    }
+
+    void add(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = TransactionFingerprint.mix(fingerprint) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * false ならこの指紋は入っていません。true なら入っている可能性があります。
+     */
+    boolean mightContain(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = TransactionFingerprint.mix(fingerprint) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.CashFlowWeb;
+
+import java.util.List;
+
+/**
+ * モンテカルロ法による資産予測の結果（月ごとの P10/P50/P90 と目標ごとの達成確率）。
+ */
+public class ForecastResult {
+    private int months;
+    private int paths;
+    private double initialBalance;
+    private double[] p10;
+    private double[] p50;
+    private double[] p90;
+    private List<GoalProbability> goalProbabilities;
+
+    public ForecastResult() {}
+
+    public ForecastResult(int months, int paths, double initialBalance,
+                          double[] p10, double[] p50, double[] p90,
+                          List<GoalProbability> goalProbabilities) {
+        this.months = months;
+        this.paths = paths;
+        this.initialBalance = initialBalance;
+        this.p10 = p10;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.goalProbabilities = goalProbabilities;
+    }
+
+    public int getMonths() { return months; }
+    public int getPaths() { return paths; }
+    public double getInitialBalance() { return initialBalance; }
+    public double[] getP10() { return p10; }
+    public double[] getP50() { return p50; }
+    public double[] getP90() { return p90; }
+    public List<GoalProbability> getGoalProbabilities() { return goalProbabilities; }
+
+    /**
+     * 目標1件分の達成確率（期日の月に目標額以上となったパスの割合）。
+     * 期日を過ぎた目標と、予測できる期間（MonteCarloForecaster.MAX_MONTHS）より先の目標は null です。
+     */
+    public static class GoalProbability {
+        private int goalId;
+        private String goalName;
+        private String targetDate;
+        private Double probability;
+
+        public GoalProbability(int goalId, String goalName, String targetDate, Double probability) {
+            this.goalId = goalId;
+            this.goalName = goalName;
+            this.targetDate = targetDate;
+            this.probability = probability;
+        }
+
+        public int getGoalId() { return goalId; }
+        public String getGoalName() { return goalName; }
+        public String getTargetDate() { return targetDate; }
+        public Double getProbability() { return probability; }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.CashFlowWeb;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * 通貨ペア1つ分の分析結果（最新レート・テクニカル指標・シグナル・予測）。
+ * FxIndicatorEngine がティックごとに作る不変のスナップショットで、
+ * /api/fx/analysis はこれをそのまま読み、/api/fx/stream は tick イベントとして配信します。
+ * stale は再生データのレート（外部APIが使えない間の代わり）から作ったことを表します。
+ */
+public class FxAnalysis {
+    private final String pair;
+    private final double price;
+    private final Instant asOf;
+    private final boolean stale;
+    private final long ticks;                     // これまでに反映したティック数
+    private final Map<String, Double> indicators; // 例: "ema12", "rsi14", "macd", "bollingerUpper", "realizedVolatility"
+    private final String recommendation;
+    private final String reason;
+    private final double riskPercentage;
+    private final double[] prediction;            // 1〜HORIZON ティック先の予測レート
+
+    public FxAnalysis(FxQuote quote, long ticks, Map<String, Double> indicators, FxSignal signal, double[] prediction) {
+        this.pair = quote.getPair();
+        this.price = quote.getPrice();
+        this.asOf = quote.getAsOf();
+        this.stale = quote.isReplayed();
+        this.ticks = ticks;
+        this.indicators = indicators;
+        this.recommendation = signal.getRecommendation();
+        this.reason = signal.getReason();
+        this.riskPercentage = signal.getRiskPercentage();
+        this.prediction = prediction;
+    }
+
+    public String getPair() { return pair; }
+    public double getPrice() { return price; }
+    public Instant getAsOf() { return asOf; }
+    public boolean isStale() { return stale; }
+    public long getTicks() { return ticks; }
+    public Map<String, Double> getIndicators() { return indicators; }
+    public String getRecommendation() { return recommendation; }
+    public String getReason() { return reason; }
+    public double getRiskPercentage() { return riskPercentage; }
+    public double[] getPrediction() { return prediction; }
+}
@@ -0,0 +1,33 @@
+package com.example.CashFlowWeb;
+
+/**
+ * /api/fx/candles で返すローソク足の列。
+ * 足1本ごとにオブジェクトを作らず、項目ごとの配列（同じ添字が同じ足）で保持します。
+ */
+public class FxCandles {
+    private final String pair;
+    private final String resolution; // "1m" / "5m" / "1h" / "1d"
+    private final long[] time;       // 足の開始時刻 (epochミリ秒, UTC)
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+
+    public FxCandles(String pair, String resolution, long[] time, double[] open, double[] high, double[] low, double[] close) {
+        this.pair = pair;
+        this.resolution = resolution;
+        this.time = time;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+    }
+
+    public String getPair() { return pair; }
+    public String getResolution() { return resolution; }
+    public long[] getTime() { return time; }
+    public double[] getOpen() { return open; }
+    public double[] getHigh() { return high; }
+    public double[] getLow() { return low; }
+    public double[] getClose() { return close; }
+}
@@ -0,0 +1,22 @@
+package com.example.CashFlowWeb;
+
+import java.util.Map;
+
+/**
+ * 為替レートのテクニカル指標1つ分の計算器。
+ * ティックごとに update が呼ばれ、状態はプリミティブのフィールドだけで O(1) で更新します。
+ * 通貨ペアごとに別のインスタンスを使うため、スレッドセーフである必要はありません。
+ * 標準の指標は FxIndicators にあります。
+ */
+public interface FxIndicator {
+
+    /**
+     * 新しいレートを1件反映します。
+     */
+    void update(double price);
+
+    /**
+     * 現在の値を out に書き込みます（キーは "rsi14" のような指標名。値が未確定の項目は書きません）。
+     */
+    void publish(Map<String, Double> out);
+}
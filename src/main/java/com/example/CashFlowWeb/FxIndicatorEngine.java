@@ -0,0 +1,141 @@
+package com.example.CashFlowWeb;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 設定された通貨ペアごとにテクニカル指標を保持し、レートが入るたびに更新するエンジン。
+ * 指標の更新・シグナルの判定・予測の計算はティックごとに1回だけ行い、結果（FxAnalysis）を差し替えます。
+ * リクエストは最新の結果を読むだけなので、利用者やペアが増えてもリクエストあたりの計算は増えません。
+ * メモリはペア数に比例します（ペアごとに指標一式と最新の結果を1つ）。
+ */
+@Component
+public class FxIndicatorEngine {
+
+    // 予測の傾きに使う短期・長期EMA（線形トレンドに対する遅れの差は (26 − 12) / 2 = 7 ティック）
+    private static final String FAST_EMA = "ema12";
+    private static final String SLOW_EMA = "ema26";
+    private static final double EMA_LAG_GAP = (26 - 12) / 2.0;
+
+    private final Map<String, PairState> states;
+    private final List<Consumer<FxAnalysis>> listeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public FxIndicatorEngine(FxQuoteCache cache, @Value("${cashflow.fx.pairs:USDJPY}") List<String> pairs) {
+        this(cache, pairs, FxIndicators::defaults);
+    }
+
+    /**
+     * @param indicators ペアごとに呼ばれ、そのペア専用の指標一式を返す
+     */
+    FxIndicatorEngine(FxQuoteCache cache, List<String> pairs, Supplier<List<FxIndicator>> indicators) {
+        Map<String, PairState> map = new LinkedHashMap<>();
+        for (String pair : pairs) {
+            map.put(pair, new PairState(indicators.get()));
+        }
+        this.states = Collections.unmodifiableMap(map);
+        cache.addListener(this::onQuote);
+    }
+
+    /**
+     * 分析結果が更新されるたびに呼ばれるリスナーを登録します（更新したスレッドで呼ばれます）。
+     */
+    public void addListener(Consumer<FxAnalysis> listener) {
+        listeners.add(listener);
+    }
+
+    public boolean supports(String pair) {
+        return states.containsKey(pair);
+    }
+
+    /**
+     * 最新の分析結果を返します（まだレートがない、または対象外のペアなら null）。
+     */
+    public FxAnalysis latest(String pair) {
+        PairState state = states.get(pair);
+        return state == null ? null : state.latest;
+    }
+
+    /**
+     * 過去のレート（古い順）で指標を温めます。結果は作らず、次のティックから反映されます（起動時の復元用）。
+     */
+    public void warmUp(String pair, double[] prices) {
+        PairState state = states.get(pair);
+        if (state != null) {
+            state.warmUp(prices);
+        }
+    }
+
+    private void onQuote(FxQuote quote) {
+        PairState state = states.get(quote.getPair());
+        if (state == null) {
+            return;
+        }
+        FxAnalysis analysis = state.update(quote);
+        for (Consumer<FxAnalysis> listener : listeners) {
+            listener.accept(analysis);
+        }
+    }
+
+    /**
+     * 1つの通貨ペアの指標と最新の結果。更新は同時に1つだけで、読み取り側は volatile の結果を読むだけです。
+     */
+    private static final class PairState {
+        private final List<FxIndicator> indicators;
+        private long ticks;
+        private volatile FxAnalysis latest;
+
+        PairState(List<FxIndicator> indicators) {
+            this.indicators = indicators;
+        }
+
+        synchronized void warmUp(double[] prices) {
+            for (double price : prices) {
+                for (FxIndicator indicator : indicators) {
+                    indicator.update(price);
+                }
+                ticks++;
+            }
+        }
+
+        synchronized FxAnalysis update(FxQuote quote) {
+            double price = quote.getPrice();
+            Map<String, Double> values = new LinkedHashMap<>();
+            for (FxIndicator indicator : indicators) {
+                indicator.update(price);
+                indicator.publish(values);
+            }
+            ticks++;
+            FxSignal signal = FxSignal.evaluate(price, values);
+            FxAnalysis analysis = new FxAnalysis(quote, ticks, Collections.unmodifiableMap(values), signal,
+                    predict(price, values));
+            latest = analysis;
+            return analysis;
+        }
+
+        /**
+         * 短期EMAと長期EMAの差から1ティックあたりの傾きを求め、直線で先の値を予測します。
+         * 傾き s の直線的なトレンドでは、期間 n のEMAは (n − 1) / 2 ティック遅れるため、
+         * 2本のEMAの差は s × 7 になります。
+         */
+        private static double[] predict(double price, Map<String, Double> values) {
+            Double fast = values.get(FAST_EMA);
+            Double slow = values.get(SLOW_EMA);
+            double slope = fast != null && slow != null ? (fast - slow) / EMA_LAG_GAP : 0;
+            double[] prediction = new double[FxSignal.HORIZON];
+            for (int h = 1; h <= prediction.length; h++) {
+                prediction[h - 1] = price + slope * h;
+            }
+            return prediction;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.CashFlowWeb;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 標準のテクニカル指標（EMA・RSI・MACD・ボリンジャーバンド・実現ボラティリティ）の実装。
+ * いずれも1ティックあたり O(1) で、窓が必要なものは固定長の double 配列をリングバッファとして使います。
+ */
+public final class FxIndicators {
+
+    private FxIndicators() {
+    }
+
+    /**
+     * 通貨ペア1つ分の標準の指標一式を新しく作ります。
+     */
+    public static List<FxIndicator> defaults() {
+        return List.of(new Ema(12), new Ema(26), new Rsi(14), new Macd(12, 26, 9), new Bollinger(20, 2.0),
+                new RealizedVolatility(30));
+    }
+
+    /**
+     * 指数移動平均。最初のレートを初期値にします。
+     */
+    public static final class Ema implements FxIndicator {
+        private final int period;
+        private final double alpha;
+        private final String key;
+        private double value;
+        private long count;
+
+        public Ema(int period) {
+            this.period = period;
+            this.alpha = 2.0 / (period + 1);
+            this.key = "ema" + period;
+        }
+
+        @Override
+        public void update(double price) {
+            value = count++ == 0 ? price : value + alpha * (price - value);
+        }
+
+        @Override
+        public void publish(Map<String, Double> out) {
+            if (count > 0) {
+                out.put(key, value);
+            }
+        }
+
+        double value() { return value; }
+        long count() { return count; }
+        int period() { return period; }
+    }
+
+    /**
+     * RSI（ワイルダーの平滑化）。最初の period 個の変化は単純平均し、その後は指数平滑します。
+     */
+    public static final class Rsi implements FxIndicator {
+        private final int period;
+        private final String key;
+        private double avgGain;
+        private double avgLoss;
+        private double previous;
+        private long changes = -1; // 最初のレートでは変化がない
+
+        public Rsi(int period) {
+            this.period = period;
+            this.key = "rsi" + period;
+        }
+
+        @Override
+        public void update(double price) {
+            if (changes++ >= 0) {
+                double change = price - previous;
+                double gain = Math.max(change, 0);
+                double loss = Math.max(-change, 0);
+                int n = (int) Math.min(changes, period);
+                avgGain += (gain - avgGain) / n;
+                avgLoss += (loss - avgLoss) / n;
+            }
+            previous = price;
+        }
+
+        @Override
+        public void publish(Map<String, Double> out) {
+            if (changes < period) {
+                return;
+            }
+            double total = avgGain + avgLoss;
+            out.put(key, total == 0 ? 50.0 : 100.0 * avgGain / total);
+        }
+    }
+
+    /**
+     * MACD（短期EMA − 長期EMA）、そのシグナル線（MACDのEMA）とヒストグラム（差）。
+     */
+    public static final class Macd implements FxIndicator {
+        private final Ema fast;
+        private final Ema slow;
+        private final Ema signal;
+
+        public Macd(int fastPeriod, int slowPeriod, int signalPeriod) {
+            this.fast = new Ema(fastPeriod);
+            this.slow = new Ema(slowPeriod);
+            this.signal = new Ema(signalPeriod);
+        }
+
+        @Override
+        public void update(double price) {
+            fast.update(price);
+            slow.update(price);
+            signal.update(fast.value() - slow.value());
+        }
+
+        @Override
+        public void publish(Map<String, Double> out) {
+            if (slow.count() < slow.period()) {
+                return;
+            }
+            double macd = fast.value() - slow.value();
+            out.put("macd", macd);
+            out.put("macdSignal", signal.value());
+            out.put("macdHistogram", macd - signal.value());
+        }
+    }
+
+    /**
+     * ボリンジャーバンド（単純移動平均 ± k × 標準偏差）。合計と二乗和を差分更新します。
+     */
+    public static final class Bollinger implements FxIndicator {
+        private final double k;
+        private final double[] window;
+        private long count;
+        private double sum;
+        private double sumSquares;
+
+        public Bollinger(int period, double k) {
+            this.k = k;
+            this.window = new double[period];
+        }
+
+        @Override
+        public void update(double price) {
+            int slot = (int) (count % window.length);
+            if (count >= window.length) {
+                double old = window[slot];
+                sum -= old;
+                sumSquares -= old * old;
+            }
+            window[slot] = price;
+            sum += price;
+            sumSquares += price * price;
+            count++;
+            if (count % window.length == 0) {
+                // 引き算による誤差が積み重ならないよう、一周ごとに計算し直す
+                sum = 0;
+                sumSquares = 0;
+                for (double p : window) {
+                    sum += p;
+                    sumSquares += p * p;
+                }
+            }
+        }
+
+        @Override
+        public void publish(Map<String, Double> out) {
+            if (count < window.length) {
+                return;
+            }
+            int n = window.length;
+            double mean = sum / n;
+            double sd = Math.sqrt(Math.max(0, sumSquares / n - mean * mean));
+            out.put("bollingerMiddle", mean);
+            out.put("bollingerUpper", mean + k * sd);
+            out.put("bollingerLower", mean - k * sd);
+        }
+    }
+
+    /**
+     * 実現ボラティリティ。直近 period 個の対数収益率の標準偏差を % で表します（ティック間隔あたり、年率換算なし）。
+     */
+    public static final class RealizedVolatility implements FxIndicator {
+        private final double[] returns;
+        private long count;
+        private double sum;
+        private double sumSquares;
+        private double previous = Double.NaN;
+
+        public RealizedVolatility(int period) {
+            this.returns = new double[period];
+        }
+
+        @Override
+        public void update(double price) {
+            if (Double.isNaN(previous)) {
+                previous = price;
+                return;
+            }
+            double r = Math.log(price / previous);
+            previous = price;
+            int slot = (int) (count % returns.length);
+            if (count >= returns.length) {
+                double old = returns[slot];
+                sum -= old;
+                sumSquares -= old * old;
+            }
+            returns[slot] = r;
+            sum += r;
+            sumSquares += r * r;
+            count++;
+            if (count % returns.length == 0) {
+                sum = 0;
+                sumSquares = 0;
+                for (double x : returns) {
+                    sum += x;
+                    sumSquares += x * x;
+                }
+            }
+        }
+
+        @Override
+        public void publish(Map<String, Double> out) {
+            int n = (int) Math.min(count, returns.length);
+            if (n < 2) {
+                return;
+            }
+            double mean = sum / n;
+            double variance = Math.max(0, (sumSquares - n * mean * mean) / (n - 1));
+            out.put("realizedVolatility", Math.sqrt(variance) * 100);
+        }
+    }
+}
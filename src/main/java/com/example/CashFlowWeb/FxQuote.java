@@ -0,0 +1,36 @@
+package com.example.CashFlowWeb;
+
+import java.time.Instant;
+
+/**
+ * 為替レート1件（通貨ペア・価格・取得時刻・取得元）を表す不変のモデルクラス。
+ */
+public class FxQuote {
+    private final String pair;    // 例: "USDJPY"
+    private final double price;
+    private final Instant asOf;   // プロバイダーから取得した時刻
+    private final String source;  // 取得元の名前 (QuoteProvider.name())。保存済みのレートから読んだものは null
+
+    public FxQuote(String pair, double price, Instant asOf) {
+        this(pair, price, asOf, null);
+    }
+
+    public FxQuote(String pair, double price, Instant asOf, String source) {
+        this.pair = pair;
+        this.price = price;
+        this.asOf = asOf;
+        this.source = source;
+    }
+
+    public String getPair() { return pair; }
+    public double getPrice() { return price; }
+    public Instant getAsOf() { return asOf; }
+    public String getSource() { return source; }
+
+    /**
+     * 記録したレートを再生したもの（実際の相場ではない）なら true。保存も履歴への追記もしません。
+     */
+    public boolean isReplayed() {
+        return ReplayQuoteProvider.NAME.equals(source);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.CashFlowWeb;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 通貨ペアごとの最新レートと直近の履歴を保持する共有キャッシュ。
+ * 通常は FxQuotePoller が定期的に更新し、リクエストはキャッシュから返します。
+ * キャッシュが空のペアに同時にアクセスが来た場合でも、プロバイダーへの問い合わせは1回にまとめます。
+ * 同じペアの更新は同時に1つしか走らないため、PriceWindow への書き込みは常に1スレッドです。
+ */
+@Component
+public class FxQuoteCache {
+
+    // チャート用に返す履歴の件数
+    static final int HISTORY_SIZE = 30;
+
+    private final QuoteProvider provider;
+    private final int windowSize;
+    private final Map<String, FxQuote> latest = new ConcurrentHashMap<>();
+    private final Map<String, PriceWindow> windows = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<FxQuote>> inFlight = new ConcurrentHashMap<>();
+    private final List<Consumer<FxQuote>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param windowSize 平均・最小・最大を計算する窓の件数（チャートに返す HISTORY_SIZE 件とは別）
+     */
+    public FxQuoteCache(QuoteProvider provider, @Value("${cashflow.fx.window-size:30}") int windowSize) {
+        this.provider = provider;
+        this.windowSize = Math.max(windowSize, HISTORY_SIZE);
+    }
+
+    /**
+     * レートがキャッシュに入るたびに呼ばれるリスナーを登録します。
+     * リスナーは更新したスレッドで呼ばれるため、時間のかかる処理は別スレッドに渡してください。
+     */
+    public void addListener(Consumer<FxQuote> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * キャッシュ済みの最新レートを返します（なければ null）。
+     */
+    public FxQuote peek(String pair) {
+        return latest.get(pair);
+    }
+
+    /**
+     * キャッシュ済みの最新レートを返し、なければ取得します。取得に失敗した場合は null を返します。
+     */
+    public FxQuote get(String pair) {
+        FxQuote quote = latest.get(pair);
+        if (quote != null) {
+            return quote;
+        }
+        return refresh(pair).exceptionally(e -> null).join();
+    }
+
+    /**
+     * プロバイダーから最新レートを取得してキャッシュを更新します。
+     * 同じペアの取得がすでに進行中なら、新たに問い合わせずにその結果を待ちます。
+     */
+    public CompletableFuture<FxQuote> refresh(String pair) {
+        CompletableFuture<FxQuote> mine = new CompletableFuture<>();
+        CompletableFuture<FxQuote> running = inFlight.putIfAbsent(pair, mine);
+        if (running != null) {
+            return running;
+        }
+        try {
+            FxQuote quote = provider.fetch(pair);
+            store(quote);
+            mine.complete(quote);
+        } catch (Exception e) {
+            System.err.println("為替レート取得エラー (" + pair + "): " + e.getMessage());
+            mine.completeExceptionally(e);
+        } finally {
+            inFlight.remove(pair, mine);
+        }
+        return mine;
+    }
+
+    /**
+     * プロバイダーに問い合わせずにレートを登録します（前回保存したレートの読み込み用）。
+     * すでに新しいレートがあれば何もしません。
+     */
+    public void seed(FxQuote quote) {
+        seed(quote, new double[0]);
+    }
+
+    /**
+     * 前回保存したレートと、それより前の履歴（古い順）をまとめて登録します。
+     * 再起動後もチャートと統計値が平らな線から始まらないようにするためのものです。
+     */
+    public void seed(FxQuote quote, double[] history) {
+        if (latest.putIfAbsent(quote.getPair(), quote) == null) {
+            PriceWindow window = windows.computeIfAbsent(quote.getPair(), p -> new PriceWindow(windowSize));
+            for (double price : history) {
+                window.add(price);
+            }
+            store(quote);
+        }
+    }
+
+    /**
+     * 直近のレート履歴を古い順に返します（最大 HISTORY_SIZE 件。未取得なら空の配列）。
+     */
+    public double[] history(String pair) {
+        PriceWindow window = windows.get(pair);
+        return window == null ? new double[0] : window.latest(HISTORY_SIZE);
+    }
+
+    /**
+     * 窓全体の統計値（最新値・平均・最小・最大）を返します（未取得なら null）。
+     */
+    public PriceWindow.Stats stats(String pair) {
+        PriceWindow window = windows.get(pair);
+        return window == null ? null : window.stats();
+    }
+
+    private void store(FxQuote quote) {
+        latest.put(quote.getPair(), quote);
+        PriceWindow window = windows.computeIfAbsent(quote.getPair(), p -> new PriceWindow(windowSize));
+        if (window.stats().getCount() == 0) {
+            // グラフがいきなり空っぽにならないよう、最初のレートで埋めておく
+            window.fill(quote.getPrice());
+        } else {
+            window.add(quote.getPrice());
+        }
+        for (Consumer<FxQuote> listener : listeners) {
+            listener.accept(quote);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.CashFlowWeb;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 設定された通貨ペアのレートを一定間隔で取得し、FxQuoteCache を更新するポーラー。
+ * 外部APIへのアクセスは利用者数にかかわらずここからの1系統だけになります。
+ * 取得したレートは fx_rates（最新値）と FxTickStore（履歴）に保存します。
+ * 再生データのレート（外部APIが使えない間の代わり）は実際の相場ではないため保存しません。
+ * 起動時はネットワークに出ず、前回保存したレートと履歴でキャッシュを埋めるだけです。
+ * 最初の取得はアプリ起動後にスケジューラーのスレッドで行われます。
+ */
+@Component
+public class FxQuotePoller {
+
+    // 起動時に指標を温めるために読み込む過去のティック数
+    private static final int WARM_UP_TICKS = 200;
+
+    private final FxQuoteCache cache;
+    private final FxRateDAO fxRateDAO;
+    private final FxTickStore tickStore;
+    private final FxIndicatorEngine indicatorEngine;
+    private final List<String> pairs;
+    private final int windowSize;
+
+    public FxQuotePoller(FxQuoteCache cache, FxRateDAO fxRateDAO, FxTickStore tickStore, FxIndicatorEngine indicatorEngine,
+            @Value("${cashflow.fx.pairs:USDJPY}") List<String> pairs,
+            @Value("${cashflow.fx.window-size:30}") int windowSize) {
+        this.cache = cache;
+        this.fxRateDAO = fxRateDAO;
+        this.tickStore = tickStore;
+        this.indicatorEngine = indicatorEngine;
+        this.pairs = pairs;
+        this.windowSize = Math.max(windowSize, FxQuoteCache.HISTORY_SIZE);
+    }
+
+    /**
+     * 前回保存したレートと、それより前の履歴をキャッシュと指標に読み込みます（ローカルのDBとティックファイルのみ）。
+     */
+    @PostConstruct
+    public void seedFromLastRates() {
+        for (String pair : pairs) {
+            FxQuote last = fxRateDAO.findLatest(pair);
+            if (last != null) {
+                // 指標（EMAなど）が落ち着くよう、窓より長めに読み込む。窓には収まる分だけ残る
+                double[] history = tickStore.latestPrices(pair, last.getAsOf().toEpochMilli(),
+                        Math.max(windowSize - 1, WARM_UP_TICKS));
+                indicatorEngine.warmUp(pair, history);
+                cache.seed(last, history);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cashflow.fx.poll-interval-ms:10000}")
+    public void poll() {
+        for (String pair : pairs) {
+            // 失敗してもキャッシュは前回の値のまま
+            cache.refresh(pair).thenAccept(quote -> {
+                if (quote.isReplayed()) {
+                    return;
+                }
+                fxRateDAO.saveAsync(quote); // コミットは待たない（失敗してもメッセージを出すだけ）
+                tickStore.append(quote);
+            });
+        }
+    }
+}
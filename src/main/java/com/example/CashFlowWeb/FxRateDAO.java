@@ -0,0 +1,75 @@
+package com.example.CashFlowWeb;
+
+import java.sql.*;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 通貨ペアごとに最後に取得した為替レート(fx_rates)を保存・読み込みするクラス。
+ * 起動時はネットワークに出ず、ここに残したレートでキャッシュを埋めます。
+ */
+@Repository
+public class FxRateDAO {
+
+    private final DataSource dataSource;
+    private final WriteQueue writeQueue;
+
+    public FxRateDAO(DataSource dataSource) {
+        this(dataSource, WriteQueue.direct(dataSource));
+    }
+
+    @Autowired
+    public FxRateDAO(DataSource dataSource, WriteQueue writeQueue) {
+        this.dataSource = dataSource;
+        this.writeQueue = writeQueue;
+    }
+
+    /**
+     * 最後に保存したレートを返します（なければ null）。
+     */
+    public FxQuote findLatest(String pair) {
+        String sql = "SELECT price, as_of FROM fx_rates WHERE pair = ?";
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, pair);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new FxQuote(pair, rs.getDouble("price"), Instant.ofEpochMilli(rs.getLong("as_of")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("為替レート読み込みエラー: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * レートを保存します（同じ通貨ペアは上書き）。
+     */
+    public boolean save(FxQuote quote) {
+        return WriteQueue.await(saveAsync(quote));
+    }
+
+    /**
+     * レートの保存を書き込みキュー（シャード化している場合はディレクトリDB）に入れます。
+     */
+    public CompletableFuture<Boolean> saveAsync(FxQuote quote) {
+        String sql = "INSERT INTO fx_rates(pair, price, as_of) VALUES(?, ?, ?) " +
+                     "ON CONFLICT(pair) DO UPDATE SET price = excluded.price, as_of = excluded.as_of";
+        return writeQueue.submitUpdate("為替レート保存エラー", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, quote.getPair());
+                pstmt.setDouble(2, quote.getPrice());
+                pstmt.setLong(3, quote.getAsOf().toEpochMilli());
+                pstmt.executeUpdate();
+                return true;
+            }
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.CashFlowWeb;
+
+import java.util.Map;
+
+/**
+ * テクニカル指標から、売買シグナル（BUY/SELL/STAY）・根拠の文章・リスクを求めるクラス。
+ * 判定は RSI の過熱感 → ボリンジャーバンドからのはみ出し → MACD ヒストグラムの向き の順に見ます。
+ * FxIndicatorEngine がティックごとに1回だけ評価し、/api/fx/analysis と /api/fx/stream はその結果を返します。
+ */
+public class FxSignal {
+
+    // リスク（予測変動幅）を見積もる先のティック数
+    static final int HORIZON = 7;
+    private static final double OVERSOLD = 30;
+    private static final double OVERBOUGHT = 70;
+    // MACD ヒストグラムがレートのこの割合より小さければ方向感なしとみなす
+    private static final double FLAT_HISTOGRAM = 1e-4;
+
+    private final String recommendation;
+    private final String reason;
+    private final double riskPercentage;
+
+    private FxSignal(String recommendation, String reason, double riskPercentage) {
+        this.recommendation = recommendation;
+        this.reason = reason;
+        this.riskPercentage = riskPercentage;
+    }
+
+    public static FxSignal evaluate(double currentRate, Map<String, Double> indicators) {
+        Double rsi = indicators.get("rsi14");
+        Double lower = indicators.get("bollingerLower");
+        Double upper = indicators.get("bollingerUpper");
+        Double histogram = indicators.get("macdHistogram");
+        Double volatility = indicators.get("realizedVolatility");
+        // 実現ボラティリティ（1ティックあたり）を HORIZON ティック先まで広げた変動幅
+        double risk = volatility != null ? volatility * Math.sqrt(HORIZON) : 0;
+
+        if (rsi != null && rsi <= OVERSOLD) {
+            return new FxSignal("BUY", "AI分析: RSI(14)が" + format(rsi) + "と売られすぎの水準です。反発（押し目買い）の好機です。", risk);
+        }
+        if (rsi != null && rsi >= OVERBOUGHT) {
+            return new FxSignal("SELL", "AI分析: RSI(14)が" + format(rsi) + "と買われすぎの水準です。高値警戒感があり、利益確定を推奨します。", risk);
+        }
+        if (lower != null && currentRate < lower) {
+            return new FxSignal("BUY", "AI分析: 現在値(" + format(currentRate) + ")がボリンジャーバンドの下限(" + format(lower)
+                    + ")を割り込んでいます。平均への回帰を狙った買いの好機です。", risk);
+        }
+        if (upper != null && currentRate > upper) {
+            return new FxSignal("SELL", "AI分析: 現在値(" + format(currentRate) + ")がボリンジャーバンドの上限(" + format(upper)
+                    + ")を超えています。行き過ぎの反落に注意し、利益確定を推奨します。", risk);
+        }
+        if (histogram != null && Math.abs(histogram) >= currentRate * FLAT_HISTOGRAM) {
+            return histogram > 0
+                    ? new FxSignal("BUY", "AI分析: MACDがシグナル線を上回っており、上昇トレンドが続いています。", risk)
+                    : new FxSignal("SELL", "AI分析: MACDがシグナル線を下回っており、下降トレンドが続いています。", risk);
+        }
+        if (histogram == null) {
+            return new FxSignal("STAY", "AI分析: 指標の計算に必要なレートを蓄積中です。しばらくお待ちください。", risk);
+        }
+        return new FxSignal("STAY", "AI分析: 現在値はバンド内で推移しており、方向感が定まっていません。明確なトレンド発生を待機してください。", risk);
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+
+    public String getRecommendation() { return recommendation; }
+    public String getReason() { return reason; }
+    public double getRiskPercentage() { return riskPercentage; }
+}
@@ -0,0 +1,168 @@
+package com.example.CashFlowWeb;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 為替レートの変化を Server-Sent Events で購読者に配信するクラス。
+ * レートが変わったときだけ FxIndicatorEngine の分析結果を1回JSONにし、そのバイト列を全購読者で共有します。
+ * 購読者ごとに上限付きのキューを持ち、送信は少数の送信スレッドが行います。
+ * 遅い購読者のキューがあふれた場合は古いイベントから捨てます（各イベントは最新の状態を丸ごと持つため）。
+ */
+@Component
+public class FxStreamPublisher {
+
+    // 購読者ごとのキューの上限
+    static final int BUFFER_SIZE = 16;
+
+    private final ObjectMapper mapper;
+    private final long timeoutMs;
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+    private final Map<String, Double> lastPublished = new ConcurrentHashMap<>();
+    private final ExecutorService senders;
+
+    public FxStreamPublisher(FxIndicatorEngine engine, ObjectMapper mapper,
+            @Value("${cashflow.fx.stream.timeout-ms:1800000}") long timeoutMs,
+            @Value("${cashflow.fx.stream.sender-threads:2}") int senderThreads) {
+        this.mapper = mapper;
+        this.timeoutMs = timeoutMs;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senderThreads, r -> {
+            Thread t = new Thread(r, "fx-stream-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        engine.addListener(this::onAnalysis);
+    }
+
+    /**
+     * 開いたままのストリームは Tomcat のグレースフルシャットダウンを待たせるため、
+     * Webサーバーの停止より前（コンテキストのクローズ開始時）にすべて閉じます。
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void closeStreams() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closeStreams();
+        senders.shutdownNow();
+    }
+
+    /**
+     * 購読を開始します。最初に snapshot イベント（全体の状態）を送り、その後は tick イベント（差分）を送ります。
+     * 登録してから snapshot を作るため、取りこぼしはありません（先に届いた tick は snapshot に含まれます）。
+     */
+    public SseEmitter subscribe(String pair, Supplier<Object> snapshot) {
+        return subscribe(pair, snapshot, new SseEmitter(timeoutMs));
+    }
+
+    SseEmitter subscribe(String pair, Supplier<Object> snapshot, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(pair, emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        subscribers.add(subscriber);
+        subscriber.offer(SseEmitter.event().name("snapshot").data(snapshot.get()).build());
+        return emitter;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * 分析結果の更新時に呼ばれます。レートが変わっていなければ何も送りません。
+     */
+    private void onAnalysis(FxAnalysis analysis) {
+        Double previous = lastPublished.put(analysis.getPair(), analysis.getPrice());
+        if (previous != null && previous == analysis.getPrice()) {
+            return;
+        }
+        Set<DataWithMediaType> event;
+        try {
+            String json = mapper.writeValueAsString(analysis);
+            event = Collections.unmodifiableSet(SseEmitter.event().name("tick").data(json).build()); // 順序を保つ
+        } catch (JsonProcessingException e) {
+            System.err.println("為替イベント作成エラー: " + e.getMessage());
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.pair.equals(analysis.getPair())) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    /**
+     * 購読者1人分の送信キュー。キューに何かあるときだけ送信タスクを1つ走らせます。
+     */
+    private final class Subscriber {
+        private final String pair;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Set<DataWithMediaType>> queue = new ArrayBlockingQueue<>(BUFFER_SIZE);
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        Subscriber(String pair, SseEmitter emitter) {
+            this.pair = pair;
+            this.emitter = emitter;
+        }
+
+        void offer(Set<DataWithMediaType> event) {
+            while (!queue.offer(event)) {
+                queue.poll(); // あふれたら古いものを捨てる
+            }
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                Set<DataWithMediaType> event;
+                while ((event = queue.poll()) != null) {
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // 切断済み
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            // drain を抜ける間に追加されたイベントを取りこぼさない
+            if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.example.CashFlowWeb;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 為替ティック（取得時刻・レート）をファイルに追記していく時系列ストア。
+ * 通貨ペアごとのディレクトリに、1件16バイト固定長（epochミリ秒 long + レート double）のレコードを
+ * 並べたセグメントファイルを作り、メモリマップして読み書きします。
+ * セグメントが一杯になると次のファイルに切り替え、保存期間を過ぎたセグメントはファイルごと削除します。
+ * 読み取りは時刻で二分探索した位置から必要な範囲だけを走査し、ローソク足（OHLC）にまとめて返します。
+ * 追記も集計もプリミティブのまま扱うため、ティック1件ごとのオブジェクト生成はありません。
+ *
+ * 書き込みはペアごとに1スレッド（ポーラー）の前提で、読み取り側はロックを取りません。
+ */
+@Component
+public class FxTickStore {
+
+    static final int RECORD_BYTES = 16;
+    // 1回の問い合わせで返すローソク足の上限
+    static final int MAX_CANDLES = 5000;
+
+    private static final Pattern PAIR = Pattern.compile("[A-Z]{6}");
+    private static final String SUFFIX = ".ticks";
+
+    private final Path dir;
+    private final int segmentRecords;
+    private final long retentionMillis;
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    /**
+     * @param segmentRecords 1セグメントのレコード数（既定の65536件で1MiB。1分間隔なら約45日分）
+     * @param retentionDays  この日数より古いティックだけを含むセグメントを削除する
+     */
+    public FxTickStore(@Value("${cashflow.fx.store.dir:fx-ticks}") String dir,
+            @Value("${cashflow.fx.store.segment-records:65536}") int segmentRecords,
+            @Value("${cashflow.fx.store.retention-days:400}") int retentionDays) {
+        if (segmentRecords < 1) {
+            throw new IllegalArgumentException("セグメントのレコード数は1以上で指定してください: " + segmentRecords);
+        }
+        this.dir = Paths.get(dir);
+        this.segmentRecords = segmentRecords;
+        this.retentionMillis = Duration.ofDays(retentionDays).toMillis();
+    }
+
+    /**
+     * ティックを1件追記します。直前のティックより古い時刻のものは追記せず false を返します。
+     */
+    public boolean append(String pair, long epochMillis, double price) {
+        try {
+            return series(pair, true).append(epochMillis, price);
+        } catch (IOException e) {
+            System.err.println("ティック保存エラー (" + pair + "): " + e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean append(FxQuote quote) {
+        return append(quote.getPair(), quote.getAsOf().toEpochMilli(), quote.getPrice());
+    }
+
+    /**
+     * [fromMillis, toMillis] のティックを resolution ごとのローソク足にまとめて返します。
+     * ティックのない区間の足は含みません。
+     *
+     * @throws IllegalArgumentException 足の本数が MAX_CANDLES を超える範囲を指定した場合
+     */
+    public FxCandles candles(String pair, long fromMillis, long toMillis, Resolution resolution) {
+        long width = resolution.millis;
+        long firstBucket = Math.floorDiv(fromMillis, width) * width;
+        long buckets = toMillis < fromMillis ? 0 : (toMillis - firstBucket) / width + 1;
+        if (buckets > MAX_CANDLES) {
+            throw new IllegalArgumentException("ローソク足が多すぎます (" + buckets + "本)。期間を短くするか足を長くしてください");
+        }
+
+        int capacity = (int) buckets;
+        long[] time = new long[capacity];
+        double[] open = new double[capacity];
+        double[] high = new double[capacity];
+        double[] low = new double[capacity];
+        double[] close = new double[capacity];
+        int n = 0;
+
+        Series s = capacity == 0 ? null : existingSeries(pair);
+        if (s != null) {
+            Segment[] segments = s.segments;
+            for (int k = firstSegment(segments, fromMillis); k < segments.length; k++) {
+                Segment seg = segments[k];
+                if (seg.firstMillis > toMillis) {
+                    break;
+                }
+                int count = seg.count;
+                for (int i = seg.lowerBound(fromMillis, count); i < count; i++) {
+                    long t = seg.millisAt(i);
+                    if (t > toMillis) {
+                        break;
+                    }
+                    double p = seg.priceAt(i);
+                    long bucket = Math.floorDiv(t, width) * width;
+                    if (n == 0 || time[n - 1] != bucket) {
+                        time[n] = bucket;
+                        open[n] = high[n] = low[n] = close[n] = p;
+                        n++;
+                    } else {
+                        int c = n - 1;
+                        if (p > high[c]) high[c] = p;
+                        if (p < low[c]) low[c] = p;
+                        close[c] = p;
+                    }
+                }
+            }
+        }
+        return new FxCandles(pair, resolution.label, Arrays.copyOf(time, n), Arrays.copyOf(open, n),
+                Arrays.copyOf(high, n), Arrays.copyOf(low, n), Arrays.copyOf(close, n));
+    }
+
+    /**
+     * beforeMillis より前の直近 max 件のレートを古い順に返します（起動時に履歴を復元するため）。
+     */
+    public double[] latestPrices(String pair, long beforeMillis, int max) {
+        Series s = existingSeries(pair);
+        if (s == null || max <= 0) {
+            return new double[0];
+        }
+        double[] prices = new double[max];
+        int filled = 0;
+        Segment[] segments = s.segments;
+        for (int k = segments.length - 1; k >= 0 && filled < max; k--) {
+            Segment seg = segments[k];
+            for (int i = seg.lowerBound(beforeMillis, seg.count) - 1; i >= 0 && filled < max; i--) {
+                prices[max - 1 - filled++] = seg.priceAt(i);
+            }
+        }
+        return Arrays.copyOfRange(prices, max - filled, max);
+    }
+
+    /**
+     * 保存期間を過ぎたセグメントを削除します。書き込み中の最新セグメントは残します。
+     */
+    @Scheduled(fixedDelayString = "${cashflow.fx.store.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        purgeBefore(System.currentTimeMillis() - retentionMillis);
+    }
+
+    void purgeBefore(long cutoffMillis) {
+        for (Series s : series.values()) {
+            s.purgeBefore(cutoffMillis);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Series s : series.values()) {
+            s.flush();
+        }
+    }
+
+    private Series existingSeries(String pair) {
+        try {
+            return series(pair, false);
+        } catch (IOException e) {
+            System.err.println("ティック読み込みエラー (" + pair + "): " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * ペアのセグメント一覧を返します。初回はディレクトリから読み込みます。
+     * create が false でディレクトリがない場合は null を返します（参照だけでファイルを作らない）。
+     */
+    private Series series(String pair, boolean create) throws IOException {
+        if (!PAIR.matcher(pair).matches()) {
+            throw new IllegalArgumentException("通貨ペアの形式が正しくありません: " + pair);
+        }
+        Series s = series.get(pair);
+        if (s != null) {
+            return s;
+        }
+        Path pairDir = dir.resolve(pair);
+        if (!create && !Files.isDirectory(pairDir)) {
+            return null;
+        }
+        synchronized (series) {
+            s = series.get(pair);
+            if (s == null) {
+                Files.createDirectories(pairDir);
+                s = new Series(pairDir, segmentRecords);
+                s.purgeBefore(System.currentTimeMillis() - retentionMillis);
+                series.put(pair, s);
+            }
+            return s;
+        }
+    }
+
+    /**
+     * fromMillis を含みうる最初のセグメントの位置（次のセグメントの先頭が fromMillis より後になるもの）。
+     */
+    private static int firstSegment(Segment[] segments, long fromMillis) {
+        int lo = 0, hi = segments.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (segments[mid].firstMillis <= fromMillis) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * ローソク足の長さ。日足の区切りは UTC の0時です。
+     */
+    public enum Resolution {
+        M1("1m", 60_000L),
+        M5("5m", 300_000L),
+        H1("1h", 3_600_000L),
+        D1("1d", 86_400_000L);
+
+        private final String label;
+        private final long millis;
+
+        Resolution(String label, long millis) {
+            this.label = label;
+            this.millis = millis;
+        }
+
+        public String getLabel() { return label; }
+        public long getMillis() { return millis; }
+
+        public static Resolution parse(String label) {
+            for (Resolution r : values()) {
+                if (r.label.equals(label)) {
+                    return r;
+                }
+            }
+            throw new IllegalArgumentException("足の長さは 1m / 5m / 1h / 1d のいずれかで指定してください: " + label);
+        }
+    }
+
+    /**
+     * 1つの通貨ペアのセグメント群。配列は差し替えで更新するため、読み取り側は取得した時点の一覧をそのまま走査できます。
+     */
+    private static final class Series {
+        private final Path dir;
+        private final int segmentRecords;
+        private volatile Segment[] segments;
+
+        Series(Path dir, int segmentRecords) throws IOException {
+            this.dir = dir;
+            this.segmentRecords = segmentRecords;
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+                stream.forEach(files::add);
+            }
+            files.sort(null); // ファイル名は先頭ティックの時刻を0埋めしたもの
+            List<Segment> opened = new ArrayList<>();
+            for (Path file : files) {
+                Segment seg = Segment.open(file);
+                if (seg.count > 0) {
+                    opened.add(seg);
+                } else {
+                    Files.delete(file); // 作成直後に停止した空のセグメント
+                }
+            }
+            this.segments = opened.toArray(new Segment[0]);
+        }
+
+        synchronized boolean append(long millis, double price) throws IOException {
+            Segment[] current = segments;
+            Segment last = current.length == 0 ? null : current[current.length - 1];
+            if (last != null && millis < last.millisAt(last.count - 1)) {
+                return false;
+            }
+            if (millis <= 0) {
+                return false; // 0 は未使用スロットの印なので保存できない
+            }
+            if (last == null || last.count == last.capacity) {
+                if (last != null) {
+                    last.buffer.force();
+                }
+                last = Segment.create(dir.resolve(String.format("%019d%s", millis, SUFFIX)), millis, segmentRecords);
+                Segment[] next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = last;
+                segments = next;
+            }
+            last.write(millis, price);
+            return true;
+        }
+
+        synchronized void purgeBefore(long cutoffMillis) {
+            Segment[] current = segments;
+            // 次のセグメントの先頭が cutoff 以前なら、そのセグメントのティックはすべて期限切れ
+            int expired = 0;
+            while (expired < current.length - 1 && current[expired + 1].firstMillis <= cutoffMillis) {
+                expired++;
+            }
+            if (expired == 0) {
+                return;
+            }
+            segments = Arrays.copyOfRange(current, expired, current.length);
+            for (int i = 0; i < expired; i++) {
+                try {
+                    // マップ済みの領域は参照がなくなるまで有効なため、読み取り中のスレッドがあっても削除してよい
+                    Files.deleteIfExists(current[i].path);
+                } catch (IOException e) {
+                    System.err.println("ティックセグメント削除エラー: " + e.getMessage());
+                }
+            }
+        }
+
+        void flush() {
+            for (Segment seg : segments) {
+                seg.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * 1つのセグメントファイル。ファイルは作成時に最大サイズまで確保し、未使用スロットの時刻は0のままです。
+     * レートを書いてから時刻を書くため、時刻が0でないスロットまでが書き込み済みとみなせます。
+     */
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final long firstMillis;
+        private volatile int count;
+
+        private Segment(Path path, MappedByteBuffer buffer, long firstMillis, int count) {
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity() / RECORD_BYTES;
+            this.firstMillis = firstMillis;
+            this.count = count;
+        }
+
+        static Segment create(Path path, long firstMillis, int records) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) records * RECORD_BYTES);
+                return new Segment(path, buffer, firstMillis, 0);
+            }
+        }
+
+        static Segment open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size() / RECORD_BYTES * RECORD_BYTES;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                Segment seg = new Segment(path, buffer, 0, 0);
+                int count = seg.firstUnused();
+                return new Segment(path, buffer, count > 0 ? seg.millisAt(0) : 0, count);
+            }
+        }
+
+        void write(long millis, double price) {
+            int offset = count * RECORD_BYTES;
+            buffer.putDouble(offset + 8, price);
+            buffer.putLong(offset, millis);
+            count++; // volatile 書き込みで、読み取り側にレコードの内容が見えるようになる
+        }
+
+        long millisAt(int index) {
+            return buffer.getLong(index * RECORD_BYTES);
+        }
+
+        double priceAt(int index) {
+            return buffer.getDouble(index * RECORD_BYTES + 8);
+        }
+
+        /**
+         * 時刻が0の最初のスロット（= 書き込み済みの件数）を二分探索で求めます。
+         */
+        private int firstUnused() {
+            int lo = 0, hi = capacity;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (millisAt(mid) != 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * [0, count) のうち時刻が millis 以上になる最初の位置。
+         */
+        int lowerBound(long millis, int count) {
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                long t = millisAt(mid);
+                if (t < millis) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
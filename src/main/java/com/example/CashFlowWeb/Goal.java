@@ -3,24 +3,24 @@ package com.example.CashFlowWeb;
 public class Goal {
     private int id;
     private String name;
-    private double targetAmount;
-    private double currentAmount;
+    private Money targetAmount = Money.ZERO;
+    private Money currentAmount = Money.ZERO;
     private String targetDate;
     private String imageUrl;
 
     // Getters
     public int getId() { return id; }
     public String getName() { return name; }
-    public double getTargetAmount() { return targetAmount; }
-    public double getCurrentAmount() { return currentAmount; }
+    public Money getTargetAmount() { return targetAmount; }
+    public Money getCurrentAmount() { return currentAmount; }
     public String getTargetDate() { return targetDate; }
     public String getImageUrl() { return imageUrl; }
 
     // Setters
     public void setId(int id) { this.id = id; }
     public void setName(String name) { this.name = name; }
-    public void setTargetAmount(double targetAmount) { this.targetAmount = targetAmount; }
-    public void setCurrentAmount(double currentAmount) { this.currentAmount = currentAmount; }
+    public void setTargetAmount(Money targetAmount) { this.targetAmount = targetAmount; }
+    public void setCurrentAmount(Money currentAmount) { this.currentAmount = currentAmount; }
     public void setTargetDate(String targetDate) { this.targetDate = targetDate; }
     public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
 }
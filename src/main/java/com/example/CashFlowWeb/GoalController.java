@@ -5,44 +5,50 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/goals")
 public class GoalController {
 
-    private final GoalDAO goalDAO = new GoalDAO();
-    private final UserDAO userDAO = new UserDAO(); // ユーザー特定用
+    private final GoalDAO goalDAO;
+    private final UserIdentityCache identityCache;
+
+    public GoalController(GoalDAO goalDAO, UserIdentityCache identityCache) {
+        this.goalDAO = goalDAO;
+        this.identityCache = identityCache;
+    }
 
     @GetMapping
     public List<Goal> getAllGoals(@AuthenticationPrincipal UserDetails userDetails) {
         // ログイン中のユーザーIDを使って目標を取得
-        User user = userDAO.findByUsername(userDetails.getUsername());
-        return goalDAO.getAllGoals(user.getId());
+        int userId = identityCache.userId(userDetails);
+        return goalDAO.getAllGoals(userId);
     }
 
     @PostMapping
-    public ResponseEntity<Void> addGoal(@RequestBody Goal goal, @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
+    public CompletableFuture<ResponseEntity<Void>> addGoal(@RequestBody Goal goal, @AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
         // ユーザーIDを渡して保存
-        boolean success = goalDAO.addGoal(goal, user.getId());
-        return success ? ResponseEntity.ok().build() : ResponseEntity.badRequest().build();
+        return goalDAO.addGoalAsync(goal, userId)
+                .thenApply(success -> success ? ResponseEntity.ok().build() : ResponseEntity.badRequest().build());
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<Void> updateGoal(@PathVariable int id, @RequestBody Goal goal,
+    public CompletableFuture<ResponseEntity<Void>> updateGoal(@PathVariable int id, @RequestBody Goal goal,
             @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
+        int userId = identityCache.userId(userDetails);
 
         goal.setId(id);
-        boolean success = goalDAO.updateGoal(goal, user.getId());
-        return success ? ResponseEntity.ok().build() : ResponseEntity.badRequest().build();
+        return goalDAO.updateGoalAsync(goal, userId)
+                .thenApply(success -> success ? ResponseEntity.ok().build() : ResponseEntity.badRequest().build());
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteGoal(@PathVariable int id, @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
+    public CompletableFuture<ResponseEntity<Void>> deleteGoal(@PathVariable int id, @AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
 
-        boolean success = goalDAO.deleteGoal(id, user.getId());
-        return success ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+        return goalDAO.deleteGoalAsync(id, userId)
+                .thenApply(success -> success ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build());
     }
 }
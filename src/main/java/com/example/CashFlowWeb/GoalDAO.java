@@ -3,24 +3,56 @@ package com.example.CashFlowWeb;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+@Repository
 public class GoalDAO {
 
+    private final DataSource dataSource;
+    private final DataVersions versions;
+    private final WriteQueue writeQueue;
+    private final TransactionProjection projection;
+
+    public GoalDAO(DataSource dataSource) {
+        this(dataSource, new DataVersions(), WriteQueue.direct(dataSource), TransactionProjection.disabled());
+    }
+
+    /**
+     * 書き込みは writeQueue の書き込み専用スレッドでまとめてコミットされます。
+     * 積立額は projection にユーザーの取引が読み込まれていればそこから求めます。
+     */
+    @Autowired
+    public GoalDAO(DataSource dataSource, DataVersions versions, WriteQueue writeQueue, TransactionProjection projection) {
+        this.dataSource = dataSource;
+        this.versions = versions;
+        this.writeQueue = writeQueue;
+        this.projection = projection;
+    }
+
     public List<Goal> getAllGoals(int userId) {
+        TransactionColumns columns = projection.columns(userId);
+        if (columns != null) {
+            return getAllGoals(userId, columns);
+        }
         List<Goal> goals = new ArrayList<>();
         
         // ★重要: goalsテーブルとtransactionsテーブルを結合し、
         // 紐付いている取引の合計額を current_amount (初期値) に加算して取得するSQL
-        String sql = "SELECT g.id, g.name, g.target_amount, g.target_date, g.image_url, " +
-                     "g.current_amount AS initial_amount, " + // 初期値
-                     "COALESCE(SUM(t.amount), 0) AS accumulated_amount " + // 積立額の合計
+        String sql = "SELECT g.id, g.name, g.target_amount_minor, g.target_date, g.image_url, " +
+                     "g.current_amount_minor AS initial_minor, " + // 初期値
+                     "COALESCE(SUM(t.amount_minor), 0) AS accumulated_minor " + // 積立額の合計
                      "FROM goals g " +
                      "LEFT JOIN transactions t ON g.id = t.goal_id " +
                      "WHERE g.user_id = ? " +
                      "GROUP BY g.id " +
                      "ORDER BY g.target_date";
         
-        try (Connection conn = DBManager.connect(); 
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection(); 
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setInt(1, userId);
@@ -30,11 +62,11 @@ public class GoalDAO {
                     Goal goal = new Goal();
                     goal.setId(rs.getInt("id"));
                     goal.setName(rs.getString("name"));
-                    goal.setTargetAmount(rs.getDouble("target_amount"));
+                    goal.setTargetAmount(Money.ofMinor(rs.getLong("target_amount_minor")));
                     
                     // ★初期値 + 積立額 = 現在の達成額
-                    double totalCurrent = rs.getDouble("initial_amount") + rs.getDouble("accumulated_amount");
-                    goal.setCurrentAmount(totalCurrent);
+                    long totalCurrent = rs.getLong("initial_minor") + rs.getLong("accumulated_minor");
+                    goal.setCurrentAmount(Money.ofMinor(totalCurrent));
                     
                     goal.setTargetDate(rs.getString("target_date"));
                     goal.setImageUrl(rs.getString("image_url"));
@@ -47,24 +79,64 @@ public class GoalDAO {
         return goals;
     }
 
-    public boolean addGoal(Goal goal, int userId) {
-        String sql = "INSERT INTO goals(user_id, name, target_amount, current_amount, target_date, image_url) VALUES(?, ?, ?, ?, ?, ?)";
-        try (Connection conn = DBManager.connect(); 
+    /**
+     * 目標だけを読み、積立額は取引の列指向コピーから足します（取引テーブルとの結合なし）。
+     */
+    private List<Goal> getAllGoals(int userId, TransactionColumns columns) {
+        List<Goal> goals = new ArrayList<>();
+        String sql = "SELECT id, name, target_amount_minor, current_amount_minor, target_date, image_url " +
+                     "FROM goals WHERE user_id = ? ORDER BY target_date";
+
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
+
             pstmt.setInt(1, userId);
-            pstmt.setString(2, goal.getName());
-            pstmt.setDouble(3, goal.getTargetAmount());
-            pstmt.setDouble(4, goal.getCurrentAmount()); // ここは初期貯蓄額として保存される
-            pstmt.setString(5, goal.getTargetDate());
-            pstmt.setString(6, goal.getImageUrl());
-            
-            pstmt.executeUpdate();
-            return true;
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Goal goal = new Goal();
+                    goal.setId(rs.getInt("id"));
+                    goal.setName(rs.getString("name"));
+                    goal.setTargetAmount(Money.ofMinor(rs.getLong("target_amount_minor")));
+                    goal.setCurrentAmount(Money.ofMinor(rs.getLong("current_amount_minor"))); // 初期値（積立額は下で加算）
+                    goal.setTargetDate(rs.getString("target_date"));
+                    goal.setImageUrl(rs.getString("image_url"));
+                    goals.add(goal);
+                }
+            }
         } catch (SQLException e) {
             e.printStackTrace();
-            return false;
         }
+
+        int[] goalIds = goals.stream().mapToInt(Goal::getId).toArray();
+        long[] accumulated = columns.goalTotals(goalIds);
+        for (int i = 0; i < goals.size(); i++) {
+            Goal goal = goals.get(i);
+            goal.setCurrentAmount(goal.getCurrentAmount().plus(Money.ofMinor(accumulated[i])));
+        }
+        return goals;
+    }
+
+    public boolean addGoal(Goal goal, int userId) {
+        return WriteQueue.await(addGoalAsync(goal, userId));
+    }
+
+    public CompletableFuture<Boolean> addGoalAsync(Goal goal, int userId) {
+        String sql = "INSERT INTO goals(id, user_id, name, target_amount_minor, current_amount_minor, target_date, image_url) " +
+                     "VALUES(" + ShardedDataSource.nextId("goals") + ", ?, ?, ?, ?, ?, ?)";
+        return writeQueue.submitUpdate(userId, "目標登録エラー", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, goal.getName());
+                pstmt.setLong(3, goal.getTargetAmount().minor());
+                pstmt.setLong(4, goal.getCurrentAmount().minor()); // ここは初期貯蓄額として保存される
+                pstmt.setString(5, goal.getTargetDate());
+                pstmt.setString(6, goal.getImageUrl());
+
+                pstmt.executeUpdate();
+                return true;
+            }
+        }).thenApply(added -> versions.bumpIf(userId, added));
     }
     
     // updateGoal, deleteGoal は前回のままでOK（IDとUserIDで処理）
@@ -72,35 +144,56 @@ public class GoalDAO {
     // 省略していますが、updateGoal, deleteGoalメソッドも前回のコードを含めてください
     // ...
     public boolean updateGoal(Goal goal, int userId) {
-        String sql = "UPDATE goals SET name = ?, target_amount = ?, current_amount = ?, target_date = ?, image_url = ? WHERE id = ? AND user_id = ?";
-        try (Connection conn = DBManager.connect(); 
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, goal.getName());
-            pstmt.setDouble(2, goal.getTargetAmount());
-            pstmt.setDouble(3, goal.getCurrentAmount());
-            pstmt.setString(4, goal.getTargetDate());
-            pstmt.setString(5, goal.getImageUrl());
-            pstmt.setInt(6, goal.getId());
-            pstmt.setInt(7, userId);
-            
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+        return WriteQueue.await(updateGoalAsync(goal, userId));
+    }
+
+    public CompletableFuture<Boolean> updateGoalAsync(Goal goal, int userId) {
+        String sql = "UPDATE goals SET name = ?, target_amount_minor = ?, current_amount_minor = ?, target_date = ?, image_url = ? WHERE id = ? AND user_id = ?";
+        return writeQueue.submitUpdate(userId, "目標更新エラー", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, goal.getName());
+                pstmt.setLong(2, goal.getTargetAmount().minor());
+                pstmt.setLong(3, goal.getCurrentAmount().minor());
+                pstmt.setString(4, goal.getTargetDate());
+                pstmt.setString(5, goal.getImageUrl());
+                pstmt.setInt(6, goal.getId());
+                pstmt.setInt(7, userId);
+
+                return pstmt.executeUpdate() > 0;
+            }
+        }).thenApply(updated -> versions.bumpIf(userId, updated));
     }
     
     public boolean deleteGoal(int id, int userId) {
+        return WriteQueue.await(deleteGoalAsync(id, userId));
+    }
+
+    public CompletableFuture<Boolean> deleteGoalAsync(int id, int userId) {
+        // foreign_keys が有効なため、紐付いている取引の goal_id を外してから削除する
+        String detachSql = "UPDATE transactions SET goal_id = NULL WHERE goal_id = ? AND user_id = ?";
         String sql = "DELETE FROM goals WHERE id = ? AND user_id = ?";
-        try (Connection conn = DBManager.connect(); 
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            pstmt.setInt(2, userId);
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+        return writeQueue.submitUpdate(userId, "目標削除エラー", conn -> {
+            Savepoint savepoint = conn.setSavepoint();
+            try (PreparedStatement detach = conn.prepareStatement(detachSql);
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                detach.setInt(1, id);
+                detach.setInt(2, userId);
+                detach.executeUpdate();
+
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, userId);
+                boolean deleted = pstmt.executeUpdate() > 0;
+                if (!deleted) {
+                    conn.rollback(savepoint); // 目標がなければ取引も元に戻す
+                }
+                conn.releaseSavepoint(savepoint);
+                return deleted;
+            }
+        }).thenApply(deleted -> {
+            if (deleted) {
+                projection.goalDetached(userId, id);
+            }
+            return versions.bumpIf(userId, deleted);
+        });
     }
 }
@@ -0,0 +1,53 @@
+package com.example.CashFlowWeb;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * 取り込むファイル（CSV / OFX）から取引を1件ずつ読み出すリーダー。
+ * ファイル全体を読み込まずに先頭から順に読むため、何十万行のファイルでも使うメモリは1行分です。
+ * ここでは文字列のまま取り出すだけで、日付や金額の検証・カテゴリの割り当ては TransactionImporter が行います。
+ */
+interface ImportReader {
+
+    /**
+     * 次の取引を返します。ファイルの終わりなら null。
+     */
+    Row next() throws IOException;
+
+    /**
+     * 形式名（csv / ofx）に対応するリーダーを作ります。
+     *
+     * @throws IllegalArgumentException 未対応の形式、または CSV のヘッダーに必要な列がない場合
+     */
+    static ImportReader open(String format, Reader in) throws IOException {
+        switch (format.toLowerCase(Locale.ROOT)) {
+            case "csv":
+                return new CsvImportReader(in);
+            case "ofx":
+                return new OfxImportReader(in);
+            default:
+                throw new IllegalArgumentException("未対応の形式です: " + format);
+        }
+    }
+
+    /**
+     * ファイルから読んだ取引1件分（値は未検証の文字列）。
+     */
+    final class Row {
+        /** エラー表示用の行番号（1から） */
+        final int line;
+        String date;
+        String amount;
+        /** INCOME / EXPENSE など。null なら金額の符号で決める */
+        String type;
+        String category;
+        String memo;
+        String account;
+
+        Row(int line) {
+            this.line = line;
+        }
+    }
+}
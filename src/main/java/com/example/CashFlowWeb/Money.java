@@ -0,0 +1,95 @@
+package com.example.CashFlowWeb;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * 金額を 1/100 単位（補助単位）の整数で持つ値オブジェクト。
+ * DB にも同じ整数（*_minor 列）で保存するため、SQLite の SUM も Java 側の合計も誤差なく計算できます。
+ * JSON では従来どおり円単位の数値として読み書きするため、画面側の変更は要りません。
+ */
+public final class Money implements Comparable<Money> {
+
+    /** 1円あたりの補助単位の数。 */
+    public static final int MINOR_UNITS = 100;
+
+    // MINOR_UNITS の桁数（10 進数で丸めるとき・文字列にするときに使う）
+    private static final int SCALE = 2;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long minor;
+
+    private Money(long minor) {
+        this.minor = minor;
+    }
+
+    public static Money ofMinor(long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    /**
+     * 円単位の値から作ります。補助単位未満は四捨五入します。
+     */
+    public static Money of(double amount) {
+        return ofMinor(toMinor(amount));
+    }
+
+    /**
+     * JSON の数値（整数・小数・文字列）から作ります。10 進数のまま丸めるため 2 進数の誤差が入りません。
+     */
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static Money of(BigDecimal amount) {
+        return ofMinor(amount.movePointRight(SCALE).setScale(0, RoundingMode.HALF_UP).longValueExact());
+    }
+
+    static long toMinor(double amount) {
+        return Math.round(amount * MINOR_UNITS);
+    }
+
+    static double toMajor(long minor) {
+        return (double) minor / MINOR_UNITS;
+    }
+
+    /** 補助単位の整数値（DB に保存する値）。 */
+    public long minor() {
+        return minor;
+    }
+
+    /** 円単位の値。JSON にはこの値を書き出します。 */
+    @JsonValue
+    public double toDouble() {
+        return toMajor(minor);
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minor, other.minor));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minor, other.minor));
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money other && minor == other.minor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor);
+    }
+
+    @Override
+    public String toString() {
+        return BigDecimal.valueOf(minor, SCALE).toPlainString();
+    }
+}
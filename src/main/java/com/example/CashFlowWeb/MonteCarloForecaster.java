@@ -0,0 +1,291 @@
+package com.example.CashFlowWeb;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 過去の月次収支（純額）をブートストラップし、資産推移のパスを大量にシミュレーションするエンジン。
+ * パスは PATHS_PER_TASK 本ずつのブロックに分け、ブロックごとに最初に split() した SplittableRandom を
+ * 最後まで使うため、同じシードなら並列度にかかわらず同じ結果になります。
+ * 月ごとに全パスを1ヶ月分進め（ブロックは Fork/Join プールで並列に処理）、その月の P10/P50/P90 と、
+ * 期日がその月の目標の達成件数だけを記録します。保持するのはパスごとの現在の資産額だけなので、
+ * メモリはパス数に比例し、月数には比例しません。同時に実行するシミュレーションの数は max-concurrent までです。
+ */
+@Component
+public class MonteCarloForecaster {
+
+    public static final int MAX_PATHS = 100_000;
+    public static final int MAX_MONTHS = 120;
+
+    // 1タスクが担当するパス数
+    private static final int PATHS_PER_TASK = 4096;
+
+    /**
+     * 同時に実行できるシミュレーションの数を超えたときの例外。コントローラーからは 503 として返ります。
+     */
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public static class BusyException extends RejectedExecutionException {
+        BusyException(String message) {
+            super(message);
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final Semaphore running;
+
+    @Autowired
+    public MonteCarloForecaster(@Value("${cashflow.forecast.max-concurrent:2}") int maxConcurrent) {
+        this(Runtime.getRuntime().availableProcessors(), maxConcurrent);
+    }
+
+    MonteCarloForecaster(int parallelism, int maxConcurrent) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.running = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * 目標なしでシミュレーションを実行します。
+     */
+    public Simulation simulate(double initialValue, double[] monthlyNetFlows, int months, int paths, long seed) {
+        return simulate(initialValue, monthlyNetFlows, months, paths, seed, new int[0], new double[0]);
+    }
+
+    /**
+     * シミュレーションを実行します。期日が months より先の目標があれば、その月まで進めます。
+     *
+     * @param initialValue     現在の資産額
+     * @param monthlyNetFlows  過去の月次純収支（空なら毎月0として扱う）
+     * @param months           P10/P50/P90 を求める月数 (1〜MAX_MONTHS)
+     * @param paths            パス数 (1〜MAX_PATHS)
+     * @param seed             乱数のシード
+     * @param goalMonths       目標ごとの期日までの月数 (1〜MAX_MONTHS)
+     * @param goalTargets      目標ごとの目標額
+     * @throws BusyException 同時に実行できる数を超えている場合
+     */
+    public Simulation simulate(double initialValue, double[] monthlyNetFlows, int months, int paths, long seed,
+            int[] goalMonths, double[] goalTargets) {
+        if (months < 1 || months > MAX_MONTHS) {
+            throw new IllegalArgumentException("月数は1〜" + MAX_MONTHS + "で指定してください: " + months);
+        }
+        if (paths < 1 || paths > MAX_PATHS) {
+            throw new IllegalArgumentException("パス数は1〜" + MAX_PATHS + "で指定してください: " + paths);
+        }
+        int simulatedMonths = months;
+        for (int goalMonth : goalMonths) {
+            if (goalMonth < 1 || goalMonth > MAX_MONTHS) {
+                throw new IllegalArgumentException("目標の月数は1〜" + MAX_MONTHS + "で指定してください: " + goalMonth);
+            }
+            simulatedMonths = Math.max(simulatedMonths, goalMonth);
+        }
+        if (!running.tryAcquire()) {
+            throw new BusyException("予測の実行数が上限に達しています。しばらくしてから再度お試しください");
+        }
+        try {
+            return run(initialValue, monthlyNetFlows.length == 0 ? new double[] { 0 } : monthlyNetFlows,
+                    months, simulatedMonths, paths, seed, goalMonths, goalTargets);
+        } finally {
+            running.release();
+        }
+    }
+
+    private Simulation run(double initialValue, double[] samples, int months, int simulatedMonths, int paths, long seed,
+            int[] goalMonths, double[] goalTargets) {
+        int blocks = (paths + PATHS_PER_TASK - 1) / PATHS_PER_TASK;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[blocks];
+        for (int b = 0; b < blocks; b++) {
+            randoms[b] = root.split();
+        }
+        double[] current = new double[paths];
+        Arrays.fill(current, initialValue);
+        int[] ranks = {
+            (int) (0.10 * (paths - 1)),
+            (int) (0.50 * (paths - 1)),
+            (int) (0.90 * (paths - 1))
+        };
+        double[][] bands = new double[3][months];
+        int[] hits = new int[goalMonths.length];
+        int n = samples.length;
+
+        for (int m = 0; m < simulatedMonths; m++) {
+            pool.submit(() -> IntStream.range(0, blocks).parallel().forEach(b -> {
+                SplittableRandom random = randoms[b];
+                int to = Math.min(paths, (b + 1) * PATHS_PER_TASK);
+                for (int i = b * PATHS_PER_TASK; i < to; i++) {
+                    current[i] += samples[random.nextInt(n)];
+                }
+            })).join();
+
+            if (m < months) {
+                double[] row = Simulation.percentiles(current, 0, paths, ranks);
+                for (int i = 0; i < 3; i++) {
+                    bands[i][m] = row[i];
+                }
+            }
+            for (int g = 0; g < goalMonths.length; g++) {
+                if (goalMonths[g] == m + 1) {
+                    hits[g] = countAtLeast(current, goalTargets[g]);
+                }
+            }
+        }
+
+        double[] probabilities = new double[hits.length];
+        for (int g = 0; g < hits.length; g++) {
+            probabilities[g] = (double) hits[g] / paths;
+        }
+        return new Simulation(bands, probabilities, paths);
+    }
+
+    private static int countAtLeast(double[] values, double target) {
+        int hits = 0;
+        for (double v : values) {
+            if (v >= target) hits++;
+        }
+        return hits;
+    }
+
+    /**
+     * シミュレーション結果。月ごとの P10/P50/P90 と、目標ごとの達成確率だけを持ちます。
+     */
+    public static final class Simulation {
+        // パーセンタイル計算で値域を分割するバケット数
+        private static final int BUCKETS = 4096;
+
+        private final double[][] bands;
+        private final double[] goalProbabilities;
+        private final int paths;
+
+        private Simulation(double[][] bands, double[] goalProbabilities, int paths) {
+            this.bands = bands;
+            this.goalProbabilities = goalProbabilities;
+            this.paths = paths;
+        }
+
+        public int getMonths() { return bands[0].length; }
+        public int getPaths() { return paths; }
+
+        /**
+         * 1〜monthsヶ月後の P10 / P50 / P90 を返します（[0]=P10, [1]=P50, [2]=P90）。
+         */
+        public double[][] percentileBands() {
+            return bands;
+        }
+
+        /**
+         * 目標ごとに、期日の月に資産額が目標額以上になっているパスの割合を返します（simulate に渡した順）。
+         */
+        public double[] goalProbabilities() {
+            return goalProbabilities;
+        }
+
+        /**
+         * a[base, base + n) の中で、小さい方から ranks[i] 番目の値を返します（元の配列は変更しません）。
+         * 値域をバケットに分けて件数を数え、目的の順位を含むバケットの中だけをクイックセレクトします。
+         */
+        static double[] percentiles(double[] a, int base, int n, int[] ranks) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = base; i < base + n; i++) {
+                double v = a[i];
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+            double[] result = new double[ranks.length];
+            if (min == max) {
+                Arrays.fill(result, min);
+                return result;
+            }
+
+            double scale = BUCKETS / (max - min);
+            int[] counts = new int[BUCKETS];
+            for (int i = base; i < base + n; i++) {
+                counts[bucket(a[i], min, scale)]++;
+            }
+            // 各順位を含むバケットを特定し、その中身を1回の走査でまとめて集める
+            int[] target = new int[ranks.length];
+            int[] below = new int[ranks.length];
+            double[][] members = new double[ranks.length][];
+            for (int r = 0; r < ranks.length; r++) {
+                int b = 0;
+                while (below[r] + counts[b] <= ranks[r]) {
+                    below[r] += counts[b++];
+                }
+                target[r] = b;
+                members[r] = new double[counts[b]];
+            }
+            int[] sizes = new int[ranks.length];
+            for (int i = base; i < base + n; i++) {
+                int b = bucket(a[i], min, scale);
+                for (int r = 0; r < ranks.length; r++) {
+                    if (b == target[r]) members[r][sizes[r]++] = a[i];
+                }
+            }
+            for (int r = 0; r < ranks.length; r++) {
+                result[r] = select(members[r], 0, sizes[r], ranks[r] - below[r]);
+            }
+            return result;
+        }
+
+        private static int bucket(double v, double min, double scale) {
+            return Math.min((int) ((v - min) * scale), BUCKETS - 1);
+        }
+    }
+
+    /**
+     * a[from, to) を部分的に並べ替え、k 番目の位置に来る値を返します（クイックセレクト）。
+     */
+    static double select(double[] a, int from, int to, int k) {
+        int lo = from;
+        int hi = to - 1;
+        while (hi > lo) {
+            int mid = (lo + hi) >>> 1;
+            // 3点の中央値をピボットにする
+            if (a[mid] < a[lo]) swap(a, mid, lo);
+            if (a[hi] < a[lo]) swap(a, hi, lo);
+            if (a[hi] < a[mid]) swap(a, hi, mid);
+            double pivot = a[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    swap(a, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return a[k];
+            }
+        }
+        return a[k];
+    }
+
+    private static void swap(double[] a, int i, int j) {
+        double t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.CashFlowWeb;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * OFX（銀行・カード会社の明細ファイル）から取引を読むリーダー。
+ * 終了タグを省略する OFX 1.x (SGML) と、XML の OFX 2.x のどちらも読めるよう、
+ * タグと値を先頭から順に読み、&lt;STMTTRN&gt; 〜 &lt;/STMTTRN&gt; を1件の取引として返します。
+ * 使う要素は DTPOSTED（日付）・TRNAMT（符号付きの金額）・NAME / MEMO（摘要）と、明細の ACCTID（口座）です。
+ * OFX にはカテゴリがないため、カテゴリは TransactionImporter が摘要から推定します。
+ */
+final class OfxImportReader implements ImportReader {
+
+    private final Reader in;
+    private final StringBuilder text = new StringBuilder();
+    private int pending = -1;
+    private int line = 1;
+    private String account;
+
+    OfxImportReader(Reader in) {
+        this.in = in;
+    }
+
+    @Override
+    public Row next() throws IOException {
+        Row row = null;
+        String tag = null;
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '<') {
+                String name = readTag();
+                if (name.equals("STMTTRN")) {
+                    row = new Row(line);
+                    tag = null;
+                } else if (name.equals("/STMTTRN")) {
+                    if (row != null) {
+                        row.account = account;
+                        return row;
+                    }
+                } else if (name.startsWith("/") || name.startsWith("?") || name.startsWith("!")) {
+                    tag = null;
+                } else {
+                    tag = name;
+                }
+            } else {
+                String value = readText(c);
+                if (tag != null && !value.isEmpty()) {
+                    assign(row, tag, value);
+                }
+                tag = null; // 値は開始タグの直後の1つだけ
+            }
+        }
+        return null;
+    }
+
+    private void assign(Row row, String tag, String value) {
+        if (tag.equals("ACCTID")) {
+            account = value;
+            return;
+        }
+        if (row == null) {
+            return;
+        }
+        switch (tag) {
+            case "DTPOSTED":
+                // 20240131 / 20240131120000[+9:JST] の先頭8桁が日付
+                row.date = value.length() >= 8 ? value.substring(0, 8) : value;
+                break;
+            case "TRNAMT":
+                row.amount = value;
+                break;
+            case "NAME":
+            case "MEMO":
+                row.memo = row.memo == null ? value : row.memo + " " + value;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private String readTag() throws IOException {
+        text.setLength(0);
+        int c;
+        while ((c = read()) != -1 && c != '>') {
+            text.append((char) c);
+        }
+        return text.toString().trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * 次の '<' の手前までを値として読みます（'<' は次の read() で返す）。
+     */
+    private String readText(int first) throws IOException {
+        text.setLength(0);
+        text.append((char) first);
+        int c;
+        while ((c = read()) != -1 && c != '<') {
+            text.append((char) c);
+        }
+        pending = c;
+        return text.toString().trim();
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pending != -1) {
+            c = pending;
+            pending = -1;
+        } else {
+            c = in.read();
+            if (c == '\n') {
+                line++;
+            }
+        }
+        return c;
+    }
+}
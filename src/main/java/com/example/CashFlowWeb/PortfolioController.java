@@ -6,27 +6,33 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/portfolio")
 public class PortfolioController {
 
-    private final AssetDAO assetDAO = new AssetDAO();
-    private final UserDAO userDAO = new UserDAO(); // ★ ユーザーID取得用にUserDAOを追加
+    private final AssetDAO assetDAO;
+    private final UserIdentityCache identityCache;
+
+    public PortfolioController(AssetDAO assetDAO, UserIdentityCache identityCache) {
+        this.assetDAO = assetDAO;
+        this.identityCache = identityCache;
+    }
 
     @GetMapping("/assets")
     public List<Asset> getAllAssets(@AuthenticationPrincipal UserDetails userDetails) {
         // ログイン中のユーザーを特定
-        User user = userDAO.findByUsername(userDetails.getUsername());
+        int userId = identityCache.userId(userDetails);
         // そのユーザーのIDを渡して資産を取得
-        return assetDAO.getAllAssets(user.getId());
+        return assetDAO.getAllAssets(userId);
     }
 
     @GetMapping("/assets/{id}")
     public ResponseEntity<Asset> getAssetById(@PathVariable int id, @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
+        int userId = identityCache.userId(userDetails);
 
-        Asset asset = assetDAO.getAssetById(id, user.getId()); // ★ userIdを追加
+        Asset asset = assetDAO.getAssetById(id, userId); // ★ userIdを追加
         if (asset != null) {
             return ResponseEntity.ok(asset);
         } else {
@@ -35,34 +41,34 @@ public class PortfolioController {
     }
 
     @PostMapping("/assets")
-    public ResponseEntity<Boolean> addAsset(@RequestBody Asset asset,
+    public CompletableFuture<ResponseEntity<Boolean>> addAsset(@RequestBody Asset asset,
             @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
+        int userId = identityCache.userId(userDetails);
 
         // ★ userIdを渡して保存
-        boolean isSuccess = assetDAO.addAsset(asset, user.getId());
-        return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
+        return assetDAO.addAssetAsync(asset, userId)
+                .thenApply(isSuccess -> isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false));
     }
 
     @PutMapping("/assets/{id}")
-    public ResponseEntity<Boolean> updateAsset(@PathVariable int id, @RequestBody Asset asset,
+    public CompletableFuture<ResponseEntity<Boolean>> updateAsset(@PathVariable int id, @RequestBody Asset asset,
             @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
+        int userId = identityCache.userId(userDetails);
 
         Asset assetToUpdate = new Asset(id, asset.getName(), asset.getTickerSymbol(), asset.getQuantity(),
                 asset.getPurchasePrice(), asset.getCurrentPrice(), asset.getAssetType());
 
         // ★ userIdを渡して、自分のデータのみ更新可能にする
-        boolean isSuccess = assetDAO.updateAsset(assetToUpdate, user.getId());
-        return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
+        return assetDAO.updateAssetAsync(assetToUpdate, userId)
+                .thenApply(isSuccess -> isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false));
     }
 
     @DeleteMapping("/assets/{id}")
-    public ResponseEntity<Boolean> deleteAsset(@PathVariable int id, @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
+    public CompletableFuture<ResponseEntity<Boolean>> deleteAsset(@PathVariable int id, @AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
 
         // ★ userIdを渡して、自分のデータのみ削除可能にする
-        boolean isSuccess = assetDAO.deleteAsset(id, user.getId());
-        return isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
+        return assetDAO.deleteAssetAsync(id, userId)
+                .thenApply(isSuccess -> isSuccess ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false));
     }
 }
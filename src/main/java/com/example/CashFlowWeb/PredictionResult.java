@@ -13,13 +13,15 @@ public class PredictionResult {
     private double shortfallAmount;   // 不足額
     private int delayMonths;          // 遅れ月数
     private boolean isAchievable;     // 達成可能かどうか
+    private List<GoalAssessment> goalAssessments; // 目標ごとの診断結果
 
     public PredictionResult() {}
 
     // 全フィールドを受け取るコンストラクタ
     public PredictionResult(double averageMonthlyProfit, int estimatedMonths, String feedback, 
                             double initialBalance, List<Double> projectionPoints,
-                            double shortfallAmount, int delayMonths, boolean isAchievable) {
+                            double shortfallAmount, int delayMonths, boolean isAchievable,
+                            List<GoalAssessment> goalAssessments) {
         this.averageMonthlyProfit = averageMonthlyProfit;
         this.estimatedMonths = estimatedMonths;
         this.feedback = feedback;
@@ -28,6 +30,7 @@ public class PredictionResult {
         this.shortfallAmount = shortfallAmount;
         this.delayMonths = delayMonths;
         this.isAchievable = isAchievable;
+        this.goalAssessments = goalAssessments;
     }
 
     // Getters
@@ -40,4 +43,34 @@ public class PredictionResult {
     public double getShortfallAmount() { return shortfallAmount; }
     public int getDelayMonths() { return delayMonths; }
     public boolean getIsAchievable() { return isAchievable; }
+    public List<GoalAssessment> getGoalAssessments() { return goalAssessments; }
+
+    /**
+     * 目標1件分の診断結果。
+     */
+    public static class GoalAssessment {
+        private int goalId;
+        private String goalName;
+        private boolean isAchievable;
+        private double shortfallAmount;
+        private int delayMonths;
+        private String feedback;
+
+        public GoalAssessment(int goalId, String goalName, boolean isAchievable,
+                              double shortfallAmount, int delayMonths, String feedback) {
+            this.goalId = goalId;
+            this.goalName = goalName;
+            this.isAchievable = isAchievable;
+            this.shortfallAmount = shortfallAmount;
+            this.delayMonths = delayMonths;
+            this.feedback = feedback;
+        }
+
+        public int getGoalId() { return goalId; }
+        public String getGoalName() { return goalName; }
+        public boolean getIsAchievable() { return isAchievable; }
+        public double getShortfallAmount() { return shortfallAmount; }
+        public int getDelayMonths() { return delayMonths; }
+        public String getFeedback() { return feedback; }
+    }
 }
@@ -0,0 +1,158 @@
+package com.example.CashFlowWeb;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * 直近 capacity 件の価格を保持するリングバッファ（double の配列のみで、ボクシングしません）。
+ * 書き込みは1スレッド（ポーラー）だけが行う前提で、読み取り側はロックを取りません。
+ * 平均は累計の差分更新、最小・最大は単調キュー（インデックスを持つ両端キュー）で、
+ * いずれも1件追加あたり O(1)（償却）で更新し、読み取り時に窓全体を走査しません。
+ */
+public final class PriceWindow {
+
+    private final int capacity;
+    private final double[] prices;
+
+    // 最小・最大の候補となる通し番号（古い順）。値は prices[seq % capacity] にある
+    private final long[] minQueue;
+    private final long[] maxQueue;
+    private int minHead, minSize;
+    private int maxHead, maxSize;
+
+    private long nextSeq; // 次に書き込む通し番号（= これまでの追加件数）
+    private double sum;
+
+    // 書き込み中は奇数になる（読み取り側は前後で値が変わっていなければ一貫した内容を読めたとみなす）
+    private volatile long version;
+    private volatile Stats stats;
+
+    public PriceWindow(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("窓の大きさは1以上で指定してください: " + capacity);
+        }
+        this.capacity = capacity;
+        this.prices = new double[capacity];
+        this.minQueue = new long[capacity];
+        this.maxQueue = new long[capacity];
+        this.stats = new Stats(0, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 価格を1件追加します（書き込みスレッドからのみ呼び出すこと）。
+     */
+    public void add(double price) {
+        version++; // 奇数: 書き込み中
+        VarHandle.storeStoreFence(); // 以降の書き込みが version の更新より先に見えないようにする
+        long seq = nextSeq++;
+        int slot = (int) (seq % capacity);
+        if (seq >= capacity) {
+            sum -= prices[slot];
+        }
+        prices[slot] = price;
+        sum += price;
+
+        // 窓から外れた候補を先頭から捨て、新しい値より不利な候補を末尾から捨てる
+        long oldest = seq - capacity + 1;
+        if (minSize > 0 && minQueue[minHead] < oldest) {
+            minHead = (minHead + 1) % capacity;
+            minSize--;
+        }
+        while (minSize > 0 && prices[slotOf(minQueue[(minHead + minSize - 1) % capacity])] >= price) {
+            minSize--;
+        }
+        minQueue[(minHead + minSize++) % capacity] = seq;
+
+        if (maxSize > 0 && maxQueue[maxHead] < oldest) {
+            maxHead = (maxHead + 1) % capacity;
+            maxSize--;
+        }
+        while (maxSize > 0 && prices[slotOf(maxQueue[(maxHead + maxSize - 1) % capacity])] <= price) {
+            maxSize--;
+        }
+        maxQueue[(maxHead + maxSize++) % capacity] = seq;
+
+        // 浮動小数点の誤差が積み重ならないよう、窓が一周するごとに合計を計算し直す
+        int count = (int) Math.min(nextSeq, capacity);
+        if (nextSeq % capacity == 0) {
+            sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += prices[i];
+            }
+        }
+
+        stats = new Stats(count, price, sum / count,
+                prices[slotOf(minQueue[minHead])], prices[slotOf(maxQueue[maxHead])]);
+        version++; // 偶数: 書き込み完了
+    }
+
+    /**
+     * 窓全体を同じ価格で埋めます（最初のレートでグラフを埋める用途。書き込みスレッドからのみ）。
+     */
+    public void fill(double price) {
+        for (int i = 0; i < capacity; i++) {
+            add(price);
+        }
+    }
+
+    /**
+     * 最新の統計値（件数・最新値・平均・最小・最大）を返します。O(1) です。
+     */
+    public Stats stats() {
+        return stats;
+    }
+
+    /**
+     * 直近 n 件の価格を古い順に返します（書き込みと重なった場合は読み直します）。
+     */
+    public double[] latest(int n) {
+        while (true) {
+            long before = version;
+            if ((before & 1) == 0) {
+                long end = nextSeq;
+                int count = (int) Math.min(Math.min(n, end), capacity);
+                double[] copy = new double[count];
+                for (int i = 0; i < count; i++) {
+                    copy[i] = prices[slotOf(end - count + i)];
+                }
+                VarHandle.acquireFence(); // 配列の読み取りを version の再読み込みより前に完了させる
+                if (version == before) {
+                    return copy;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private int slotOf(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    /**
+     * ある時点の窓の統計値（不変）。件数が0のときは各値が NaN です。
+     */
+    public static final class Stats {
+        private final int count;
+        private final double last;
+        private final double mean;
+        private final double min;
+        private final double max;
+
+        Stats(int count, double last, double mean, double min, double max) {
+            this.count = count;
+            this.last = last;
+            this.mean = mean;
+            this.min = min;
+            this.max = max;
+        }
+
+        public int getCount() { return count; }
+        public double getLast() { return last; }
+        public double getMean() { return mean; }
+        public double getMin() { return min; }
+        public double getMax() { return max; }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.CashFlowWeb;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * 為替レートの取得元ごとの呼び出し結果と、サーキットブレーカーの状態遷移を集計するクラス。
+ * /api/system/fx-providers で公開します。
+ */
+@Component
+public class QuoteClientMetrics implements CircuitBreaker.Listener {
+
+    // 保持する直近の状態遷移の件数
+    static final int RECENT_TRANSITIONS = 20;
+
+    private final Map<String, ProviderCounters> providers = new ConcurrentHashMap<>();
+    private final Deque<Transition> recent = new ArrayDeque<>();
+
+    public void recordSuccess(String provider, long elapsedNanos) {
+        ProviderCounters c = counters(provider);
+        c.successes.increment();
+        c.elapsedNanosTotal.add(elapsedNanos);
+    }
+
+    public void recordFailure(String provider, long elapsedNanos) {
+        ProviderCounters c = counters(provider);
+        c.failures.increment();
+        c.elapsedNanosTotal.add(elapsedNanos);
+    }
+
+    /**
+     * ブレーカーが開いていたため呼び出さなかった回数を数えます。
+     */
+    public void recordRejected(String provider) {
+        counters(provider).rejected.increment();
+    }
+
+    @Override
+    public void onTransition(String provider, CircuitBreaker.State from, CircuitBreaker.State to, long openMillis) {
+        ProviderCounters c = counters(provider);
+        c.state = to;
+        c.transitions.computeIfAbsent(from + "->" + to, k -> new LongAdder()).increment();
+        Transition t = new Transition(provider, from, to, openMillis, Instant.now());
+        synchronized (recent) {
+            if (recent.size() == RECENT_TRANSITIONS) {
+                recent.removeFirst();
+            }
+            recent.addLast(t);
+        }
+        System.out.println("為替取得元 " + provider + ": " + from + " -> " + to
+                + (to == CircuitBreaker.State.OPEN ? " (" + openMillis + "ms 停止)" : ""));
+    }
+
+    /**
+     * 現時点の統計のスナップショットを返します。
+     */
+    public Snapshot snapshot() {
+        Snapshot s = new Snapshot();
+        providers.forEach((name, c) -> {
+            ProviderSnapshot p = new ProviderSnapshot();
+            p.state = c.state;
+            p.successes = c.successes.sum();
+            p.failures = c.failures.sum();
+            p.rejected = c.rejected.sum();
+            long calls = p.successes + p.failures;
+            p.avgMillis = calls == 0 ? 0 : c.elapsedNanosTotal.sum() / 1e6 / calls;
+            c.transitions.forEach((k, v) -> p.transitions.put(k, v.sum()));
+            s.providers.put(name, p);
+        });
+        synchronized (recent) {
+            s.recentTransitions = new ArrayList<>(recent);
+        }
+        return s;
+    }
+
+    private ProviderCounters counters(String provider) {
+        return providers.computeIfAbsent(provider, p -> new ProviderCounters());
+    }
+
+    private static final class ProviderCounters {
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder elapsedNanosTotal = new LongAdder();
+        private final Map<String, LongAdder> transitions = new ConcurrentHashMap<>();
+        private volatile CircuitBreaker.State state = CircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * JSONとして返すための統計値。
+     */
+    public static class Snapshot {
+        public Map<String, ProviderSnapshot> providers = new LinkedHashMap<>();
+        public List<Transition> recentTransitions;
+    }
+
+    public static class ProviderSnapshot {
+        public CircuitBreaker.State state;
+        public long successes;
+        public long failures;
+        public long rejected;                 // ブレーカーが開いていて呼ばなかった回数
+        public double avgMillis;
+        public Map<String, Long> transitions = new LinkedHashMap<>(); // 例: "CLOSED->OPEN": 2
+    }
+
+    public static class Transition {
+        public String provider;
+        public CircuitBreaker.State from;
+        public CircuitBreaker.State to;
+        public long openMillis;
+        public Instant at;
+
+        public Transition(String provider, CircuitBreaker.State from, CircuitBreaker.State to, long openMillis, Instant at) {
+            this.provider = provider;
+            this.from = from;
+            this.to = to;
+            this.openMillis = openMillis;
+            this.at = at;
+        }
+    }
+}
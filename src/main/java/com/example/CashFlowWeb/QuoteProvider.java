@@ -0,0 +1,24 @@
+package com.example.CashFlowWeb;
+
+/**
+ * 為替レートの取得元。
+ * Yahoo Finance (YahooQuoteProvider) とファイルを再生する ReplayQuoteProvider があり、
+ * QuoteProviderChain が cashflow.fx.providers の順に試します。
+ */
+public interface QuoteProvider {
+
+    /**
+     * cashflow.fx.providers で指定する名前 (例: "yahoo")。
+     */
+    default String name() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * 指定した通貨ペアの最新レートを取得します。
+     *
+     * @param pair 通貨ペア (例: "USDJPY")
+     * @throws Exception 取得に失敗した場合
+     */
+    FxQuote fetch(String pair) throws Exception;
+}
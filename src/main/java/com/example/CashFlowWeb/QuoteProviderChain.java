@@ -0,0 +1,106 @@
+package com.example.CashFlowWeb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+/**
+ * 複数の取得元を設定された順に試す QuoteProvider（FxQuoteCache はこれを使います）。
+ * 取得元ごとにサーキットブレーカーを持ち、失敗が続いている取得元は一定時間呼ばずに次へ進みます。
+ * 既定の順序は yahoo → replay で、外部APIが使えない間もローカルの再生データでレートを返し続けます。
+ */
+@Component
+@Primary
+public class QuoteProviderChain implements QuoteProvider {
+
+    private final List<Link> links = new ArrayList<>();
+    private final QuoteClientMetrics metrics;
+
+    @Autowired
+    public QuoteProviderChain(List<QuoteProvider> providers, QuoteClientMetrics metrics,
+            @Value("${cashflow.fx.providers:yahoo,replay}") List<String> order,
+            @Value("${cashflow.fx.breaker.failure-threshold:3}") int failureThreshold,
+            @Value("${cashflow.fx.breaker.open-ms:10000}") long openMillis,
+            @Value("${cashflow.fx.breaker.max-open-ms:300000}") long maxOpenMillis) {
+        this(select(providers, order), metrics, failureThreshold, openMillis, maxOpenMillis, System::currentTimeMillis);
+    }
+
+    QuoteProviderChain(List<QuoteProvider> providers, QuoteClientMetrics metrics, int failureThreshold,
+            long openMillis, long maxOpenMillis, LongSupplier clock) {
+        if (providers.isEmpty()) {
+            throw new IllegalArgumentException("為替レートの取得元が1つもありません");
+        }
+        this.metrics = metrics;
+        for (QuoteProvider provider : providers) {
+            links.add(new Link(provider,
+                    new CircuitBreaker(provider.name(), failureThreshold, openMillis, maxOpenMillis, clock, metrics)));
+        }
+    }
+
+    @Override
+    public String name() {
+        return "chain";
+    }
+
+    /**
+     * 先頭の取得元から順に試し、最初に成功した結果を返します。
+     * ブレーカーが開いている取得元は呼ばずに飛ばします。すべて失敗した場合は最後の例外を投げます。
+     */
+    @Override
+    public FxQuote fetch(String pair) throws Exception {
+        Exception last = null;
+        for (Link link : links) {
+            String name = link.provider.name();
+            if (!link.breaker.tryAcquire()) {
+                metrics.recordRejected(name);
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                FxQuote quote = link.provider.fetch(pair);
+                metrics.recordSuccess(name, System.nanoTime() - start);
+                link.breaker.onSuccess();
+                return quote;
+            } catch (Exception e) {
+                metrics.recordFailure(name, System.nanoTime() - start);
+                link.breaker.onFailure();
+                last = e;
+            }
+        }
+        throw last != null ? last : new IllegalStateException("すべての取得元が一時停止中です: " + pair);
+    }
+
+    CircuitBreaker.State state(String provider) {
+        for (Link link : links) {
+            if (link.provider.name().equals(provider)) {
+                return link.breaker.getState();
+            }
+        }
+        return null;
+    }
+
+    private static List<QuoteProvider> select(List<QuoteProvider> providers, List<String> order) {
+        List<QuoteProvider> selected = new ArrayList<>();
+        for (String name : order) {
+            QuoteProvider provider = providers.stream().filter(p -> p.name().equals(name.trim())).findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("不明な為替レートの取得元です: " + name));
+            selected.add(provider);
+        }
+        return selected;
+    }
+
+    private static final class Link {
+        private final QuoteProvider provider;
+        private final CircuitBreaker breaker;
+
+        Link(QuoteProvider provider, CircuitBreaker breaker) {
+            this.provider = provider;
+            this.breaker = breaker;
+        }
+    }
+}
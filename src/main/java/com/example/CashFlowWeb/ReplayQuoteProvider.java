@@ -0,0 +1,88 @@
+package com.example.CashFlowWeb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * ファイルに記録したレートを順番に返すプロバイダー（オフライン開発・テスト用）。
+ * ファイルは "通貨ペア,価格" を1行ずつ並べたCSVで、ペアごとに末尾まで行ったら先頭に戻ります。
+ * '#' で始まる行と空行は無視します。
+ * 既定の取得元チェーンでは最後の砦として、外部APIが使えない間のレートを返します。
+ * 返すレートは取得元 "replay" の印が付き、fx_rates にも履歴にも保存されず、配信では stale として扱われます。
+ */
+@Component
+public class ReplayQuoteProvider implements QuoteProvider {
+
+    static final String NAME = "replay";
+
+    private final Map<String, double[]> prices;
+    private final Map<String, AtomicInteger> positions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ReplayQuoteProvider(@Value("${cashflow.fx.replay-file:}") String replayFile) throws IOException {
+        if (replayFile.isEmpty()) {
+            // 指定がなければクラスパス上のサンプルを使う
+            try (InputStream in = ReplayQuoteProvider.class.getResourceAsStream("/fx-replay.csv")) {
+                if (in == null) {
+                    throw new IOException("fx-replay.csv がクラスパスにありません");
+                }
+                this.prices = parse(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+            }
+        } else {
+            try (BufferedReader reader = Files.newBufferedReader(Path.of(replayFile), StandardCharsets.UTF_8)) {
+                this.prices = parse(reader);
+            }
+        }
+    }
+
+    ReplayQuoteProvider(Map<String, double[]> prices) {
+        this.prices = prices;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public FxQuote fetch(String pair) {
+        double[] series = prices.get(pair);
+        if (series == null || series.length == 0) {
+            throw new IllegalArgumentException("再生データに通貨ペアがありません: " + pair);
+        }
+        int i = positions.computeIfAbsent(pair, p -> new AtomicInteger()).getAndIncrement();
+        return new FxQuote(pair, series[Math.floorMod(i, series.length)], Instant.now(), NAME);
+    }
+
+    private static Map<String, double[]> parse(BufferedReader reader) throws IOException {
+        Map<String, List<Double>> lists = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split(",");
+            lists.computeIfAbsent(parts[0].trim(), p -> new ArrayList<>()).add(Double.parseDouble(parts[1].trim()));
+        }
+        Map<String, double[]> prices = new HashMap<>();
+        lists.forEach((pair, list) -> prices.put(pair, list.stream().mapToDouble(Double::doubleValue).toArray()));
+        return prices;
+    }
+}
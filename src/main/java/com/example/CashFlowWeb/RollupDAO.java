@@ -0,0 +1,132 @@
+package com.example.CashFlowWeb;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 月次ロールアップ(transaction_rollups)の保守を担当するクラス。
+ * 通常の更新はトリガーで行われるため、ここでは再構築と整合性チェックだけを扱います。
+ */
+@Repository
+public class RollupDAO {
+
+    // 取引テーブルからロールアップを作り直すための集計SQL
+    private static final String REBUILD_SELECT =
+            "INSERT INTO transaction_rollups(user_id, year_month, category_id, type, total_minor, tx_count, regular_minor, regular_count) " +
+            "SELECT user_id, year_month, COALESCE(category_id, 0), type, SUM(amount_minor), COUNT(*), " +
+            "SUM(CASE WHEN is_extraordinary OR is_future THEN 0 ELSE amount_minor END), " +
+            "SUM(CASE WHEN is_extraordinary OR is_future THEN 0 ELSE 1 END) " +
+            "FROM transactions";
+    private static final String REBUILD_GROUP_BY = " GROUP BY user_id, year_month, COALESCE(category_id, 0), type";
+
+    private final DataSource dataSource;
+    private final DataVersions versions;
+    private final WriteQueue writeQueue;
+
+    public RollupDAO(DataSource dataSource) {
+        this(dataSource, new DataVersions(), WriteQueue.direct(dataSource));
+    }
+
+    @Autowired
+    public RollupDAO(DataSource dataSource, DataVersions versions, WriteQueue writeQueue) {
+        this.dataSource = dataSource;
+        this.versions = versions;
+        this.writeQueue = writeQueue;
+    }
+
+    /**
+     * 指定ユーザーのロールアップを取引テーブルから作り直します（ユーザーのシャードの書き込みキューを通す）。
+     */
+    public boolean rebuild(int userId) {
+        String deleteSql = "DELETE FROM transaction_rollups WHERE user_id = ?";
+        String insertSql = REBUILD_SELECT + " WHERE user_id = ?" + REBUILD_GROUP_BY;
+        return WriteQueue.await(writeQueue.submitUpdate(userId, "ロールアップ再構築エラー", conn -> {
+            try (PreparedStatement delete = conn.prepareStatement(deleteSql);
+                 PreparedStatement insert = conn.prepareStatement(insertSql)) {
+                delete.setInt(1, userId);
+                delete.executeUpdate();
+                insert.setInt(1, userId);
+                insert.executeUpdate();
+                return true;
+            }
+        }).thenApply(rebuilt -> {
+            if (rebuilt) {
+                versions.bump(userId); // 食い違いが直れば月次集計の結果も変わる
+            }
+            return rebuilt;
+        }));
+    }
+
+    /**
+     * ロールアップと取引テーブルの集計結果を比較し、食い違っているバケットを返します。
+     * 空のリストが返れば整合しています。
+     */
+    public List<Mismatch> findMismatches(int userId) {
+        String actualSql = "SELECT year_month, COALESCE(category_id, 0) AS category_id, type, " +
+                           "SUM(amount_minor) AS total_minor, COUNT(*) AS tx_count FROM transactions WHERE user_id = ? " +
+                           "GROUP BY year_month, COALESCE(category_id, 0), type";
+        String rollupSql = "SELECT year_month, category_id, type, total_minor, tx_count FROM transaction_rollups WHERE user_id = ?";
+
+        List<Mismatch> mismatches = new ArrayList<>();
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection()) {
+            Map<String, long[]> actual = loadBuckets(conn, actualSql, userId);
+            Map<String, long[]> rollup = loadBuckets(conn, rollupSql, userId);
+
+            TreeSet<String> keys = new TreeSet<>(actual.keySet());
+            keys.addAll(rollup.keySet());
+            for (String key : keys) {
+                long[] a = actual.getOrDefault(key, new long[2]);
+                long[] r = rollup.getOrDefault(key, new long[2]);
+                // 金額は整数なので、浮動小数点の誤差を見込まずに完全一致で比較できる
+                if (a[0] != r[0] || a[1] != r[1]) {
+                    mismatches.add(new Mismatch(key, Money.toMajor(a[0]), a[1], Money.toMajor(r[0]), r[1]));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("ロールアップ整合性チェックエラー: " + e.getMessage());
+        }
+        return mismatches;
+    }
+
+    private static Map<String, long[]> loadBuckets(Connection conn, String sql, int userId) throws SQLException {
+        Map<String, long[]> buckets = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String key = DateColumns.format(rs.getInt("year_month")) + "/" + rs.getInt("category_id") + "/" + rs.getString("type");
+                    buckets.put(key, new long[] { rs.getLong("total_minor"), rs.getLong("tx_count") });
+                }
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * 整合性チェックで見つかった食い違い（キーは "年月/カテゴリID/種別"）。
+     */
+    public static class Mismatch {
+        public String bucket;
+        public double expectedAmount;
+        public long expectedCount;
+        public double rollupAmount;
+        public long rollupCount;
+
+        public Mismatch(String bucket, double expectedAmount, long expectedCount, double rollupAmount, long rollupCount) {
+            this.bucket = bucket;
+            this.expectedAmount = expectedAmount;
+            this.expectedCount = expectedCount;
+            this.rollupAmount = rollupAmount;
+            this.rollupCount = rollupCount;
+        }
+    }
+}
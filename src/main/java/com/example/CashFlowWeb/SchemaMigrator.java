@@ -0,0 +1,467 @@
+package com.example.CashFlowWeb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+/**
+ * スキーマのバージョン管理を行うクラス。
+ * schema_version テーブルに適用済みのバージョンを記録し、
+ * 未適用のマイグレーションだけを番号順に1回ずつ実行します。
+ * アプリ起動時に DBManager から一度だけ呼び出されます。
+ */
+public class SchemaMigrator {
+
+    /**
+     * マイグレーションの処理本体。
+     */
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * マイグレーション1件分。version は1から連番で増やしていきます。
+     * ★一度リリースしたマイグレーションは書き換えず、変更は新しい番号で追加してください。
+     */
+    static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "初期スキーマ", SchemaMigrator::createBaseTables),
+
+            // 取引一覧・集計・目標・カテゴリ使用チェック・予算実績がすべてインデックスで引けるようにする
+            new Migration(2, "主要クエリ用のインデックス", sql(
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_user_date ON transactions(user_id, date)",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_user_type_date ON transactions(user_id, type, date)",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_user_category_date ON transactions(user_id, category_id, date)",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_goal ON transactions(goal_id, amount)",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_category ON transactions(category_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_categories_user_type_name ON categories(user_id, type, name)",
+                    "CREATE INDEX IF NOT EXISTS idx_goals_user_target_date ON goals(user_id, target_date)",
+                    "CREATE INDEX IF NOT EXISTS idx_assets_user ON assets(user_id)",
+                    "CREATE INDEX IF NOT EXISTS idx_budgets_category ON budgets(category_id)",
+                    // UserDAO は LOWER(username) で検索するため、式インデックスを用意する
+                    "CREATE INDEX IF NOT EXISTS idx_users_lower_username ON users(LOWER(username))")),
+
+            // 月次ロールアップ: (ユーザー, 年月, カテゴリ, 種別) ごとの合計と件数をトリガーで常に最新に保つ
+            new Migration(3, "月次ロールアップテーブル", SchemaMigrator::createRollups),
+
+            // 起動直後のチャートを前回のレートで表示するため、通貨ペアごとに最後に取得したレートを残す
+            new Migration(4, "最終為替レート", sql(
+                    "CREATE TABLE IF NOT EXISTS fx_rates (" +
+                    "pair TEXT PRIMARY KEY, " +
+                    "price REAL NOT NULL, " +
+                    "as_of INTEGER NOT NULL)")),
+
+            // ログイン時の検索を LOWER() なしで索引に乗せ、大文字小文字違いの重複登録も DB 側で防ぐ
+            new Migration(5, "ユーザー名の大文字小文字を区別しない一意インデックス", sql(
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_users_username_nocase ON users(username COLLATE NOCASE)",
+                    "DROP INDEX IF EXISTS idx_users_lower_username")),
+
+            // 初期カテゴリは登録時に作るようになったため、まだカテゴリのない既存ユーザーの分をここで作る
+            new Migration(6, "既存ユーザーの初期カテゴリ", sql(
+                    "INSERT INTO categories(user_id, name, type) " +
+                    "SELECT u.id, d.column1, d.column2 FROM users u CROSS JOIN (VALUES " +
+                    "('給料', 'INCOME'), ('ボーナス', 'INCOME'), ('副業', 'INCOME'), " +
+                    "('食費', 'EXPENSE'), ('日用品', 'EXPENSE'), ('交通費', 'EXPENSE'), ('家賃', 'EXPENSE'), " +
+                    "('通信費', 'EXPENSE'), ('娯楽', 'EXPENSE'), ('貯金', 'EXPENSE')) d " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM categories c WHERE c.user_id = u.id)")),
+
+            // シャード化したときの、ユーザーのデータがあるシャードの番号（NULL はこのファイル自身）。ShardedDataSource を参照
+            new Migration(7, "ユーザーのシャード番号", SchemaMigrator::addUserShard),
+
+            // 金額を補助単位の整数（Money）、取引日を epoch day と年月の整数で持ち、合計と期間の絞り込みを整数演算にする
+            new Migration(8, "金額と取引日の整数化", SchemaMigrator::convertToIntegerColumns),
+
+            // ファイルから取り込んだ取引の指紋（TransactionFingerprint）。同じ明細を取り込み直しても重複しないようにする。
+            // 画面から登録した取引は NULL のまま（一意性の対象外）
+            new Migration(9, "取り込んだ取引の指紋", sql(
+                    "ALTER TABLE transactions ADD COLUMN fingerprint INTEGER",
+                    "CREATE UNIQUE INDEX idx_transactions_user_fingerprint ON transactions(user_id, fingerprint) " +
+                    "WHERE fingerprint IS NOT NULL")));
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * 未適用のマイグレーションをすべて実行します。
+     * 各マイグレーションは1つのトランザクション内で実行され、失敗した場合はロールバックして起動を中止します。
+     */
+    public static void migrate(DataSource dataSource) {
+        migrate(dataSource, Integer.MAX_VALUE);
+    }
+
+    /**
+     * targetVersion までのマイグレーションだけを実行します（古いバージョンの DB を再現するテスト用）。
+     */
+    static void migrate(DataSource dataSource, int targetVersion) {
+        try (Connection conn = dataSource.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                             "version INTEGER PRIMARY KEY, " +
+                             "description TEXT NOT NULL, " +
+                             "applied_at TEXT NOT NULL" +
+                             ")");
+            }
+
+            int current = currentVersion(conn);
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current || migration.version > targetVersion) {
+                    continue;
+                }
+                apply(conn, migration);
+                System.out.println("スキーマを v" + migration.version + " に更新しました: " + migration.description);
+            }
+        } catch (SQLException e) {
+            System.err.println("スキーママイグレーションエラー: " + e.getMessage());
+            throw new IllegalStateException("スキーママイグレーションに失敗しました", e);
+        }
+    }
+
+    /**
+     * 適用済みの最新バージョンを返します（未適用なら0）。
+     */
+    static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        conn.setAutoCommit(false);
+        try (PreparedStatement record = conn.prepareStatement(
+                "INSERT INTO schema_version(version, description, applied_at) VALUES(?, ?, ?)")) {
+
+            migration.step.apply(conn);
+
+            record.setInt(1, migration.version);
+            record.setString(2, migration.description);
+            record.setString(3, LocalDateTime.now().toString());
+            record.executeUpdate();
+
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * SQL文を順番に実行するだけのマイグレーションを作ります。
+     */
+    static Step sql(String... statements) {
+        return conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                for (String s : statements) {
+                    stmt.execute(s);
+                }
+            }
+        };
+    }
+
+    /**
+     * v7: users.shard を追加します。ALTER TABLE に IF NOT EXISTS がないため、列がなければ追加します。
+     */
+    private static void addUserShard(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM pragma_table_info('users') WHERE name = 'shard'")) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+            stmt.execute("ALTER TABLE users ADD COLUMN shard INTEGER");
+        }
+    }
+
+    /**
+     * v3: transaction_rollups テーブルと、それを維持するトリガーを作成し、既存データから初期値を作ります。
+     * トリガーは取引の INSERT / UPDATE / DELETE と同じトランザクション内で実行されるため、
+     * DAO がどの経路で書き込んでもロールアップがずれることはありません。
+     * category_id が NULL の取引は 0 として集計します（主キーに NULL を含めないため）。
+     * regular_* は臨時収支・将来の予定を除いた値で、予測の平均計算に使います。
+     */
+    private static void createRollups(Connection conn) throws SQLException {
+        sql(
+            "CREATE TABLE IF NOT EXISTS transaction_rollups (" +
+            "user_id INTEGER NOT NULL," +
+            "year_month TEXT NOT NULL," +
+            "category_id INTEGER NOT NULL," +
+            "type TEXT NOT NULL," +
+            "total_amount REAL NOT NULL," +
+            "tx_count INTEGER NOT NULL," +
+            "regular_amount REAL NOT NULL," +
+            "regular_count INTEGER NOT NULL," +
+            "PRIMARY KEY (user_id, year_month, category_id, type)" +
+            ") WITHOUT ROWID",
+
+            "CREATE TRIGGER IF NOT EXISTS trg_transactions_rollup_insert AFTER INSERT ON transactions BEGIN " +
+            V3_ROLLUP_ADD_NEW +
+            "END",
+
+            "CREATE TRIGGER IF NOT EXISTS trg_transactions_rollup_delete AFTER DELETE ON transactions BEGIN " +
+            V3_ROLLUP_REMOVE_OLD +
+            "END",
+
+            // 更新時は旧バケットから差し引いて新バケットに加算する（月やカテゴリをまたぐ移動にも対応）
+            "CREATE TRIGGER IF NOT EXISTS trg_transactions_rollup_update " +
+            "AFTER UPDATE OF user_id, date, amount, type, category_id, is_future, is_extraordinary ON transactions BEGIN " +
+            V3_ROLLUP_REMOVE_OLD +
+            V3_ROLLUP_ADD_NEW +
+            "END"
+        ).apply(conn);
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM transaction_rollups");
+            stmt.execute(V3_REBUILD);
+        }
+    }
+
+    // v3 時点の列（date / amount と REAL の合計）に対する SQL。v8 で作り直したため、v3 の実行にだけ使います
+    private static final String V3_REBUILD =
+            "INSERT INTO transaction_rollups(user_id, year_month, category_id, type, total_amount, tx_count, regular_amount, regular_count) " +
+            "SELECT user_id, substr(date, 1, 7), COALESCE(category_id, 0), type, SUM(amount), COUNT(*), " +
+            "SUM(CASE WHEN is_extraordinary OR is_future THEN 0 ELSE amount END), " +
+            "SUM(CASE WHEN is_extraordinary OR is_future THEN 0 ELSE 1 END) " +
+            "FROM transactions GROUP BY user_id, substr(date, 1, 7), COALESCE(category_id, 0), type";
+
+    private static final String V3_ROLLUP_ADD_NEW =
+            "INSERT INTO transaction_rollups(user_id, year_month, category_id, type, total_amount, tx_count, regular_amount, regular_count) " +
+            "VALUES (NEW.user_id, substr(NEW.date, 1, 7), COALESCE(NEW.category_id, 0), NEW.type, NEW.amount, 1, " +
+            "CASE WHEN NEW.is_extraordinary OR NEW.is_future THEN 0 ELSE NEW.amount END, " +
+            "CASE WHEN NEW.is_extraordinary OR NEW.is_future THEN 0 ELSE 1 END) " +
+            "ON CONFLICT(user_id, year_month, category_id, type) DO UPDATE SET " +
+            "total_amount = total_amount + excluded.total_amount, " +
+            "tx_count = tx_count + excluded.tx_count, " +
+            "regular_amount = regular_amount + excluded.regular_amount, " +
+            "regular_count = regular_count + excluded.regular_count; ";
+
+    private static final String V3_ROLLUP_REMOVE_OLD =
+            "UPDATE transaction_rollups SET " +
+            "total_amount = total_amount - OLD.amount, " +
+            "tx_count = tx_count - 1, " +
+            "regular_amount = regular_amount - CASE WHEN OLD.is_extraordinary OR OLD.is_future THEN 0 ELSE OLD.amount END, " +
+            "regular_count = regular_count - CASE WHEN OLD.is_extraordinary OR OLD.is_future THEN 0 ELSE 1 END " +
+            "WHERE user_id = OLD.user_id AND year_month = substr(OLD.date, 1, 7) " +
+            "AND category_id = COALESCE(OLD.category_id, 0) AND type = OLD.type; " +
+            "DELETE FROM transaction_rollups WHERE user_id = OLD.user_id AND year_month = substr(OLD.date, 1, 7) " +
+            "AND category_id = COALESCE(OLD.category_id, 0) AND type = OLD.type AND tx_count <= 0; ";
+
+    /**
+     * v8: REAL の金額列を補助単位の INTEGER 列（*_minor）に、取引の date(TEXT) を epoch_day と year_month に置き換えます。
+     * テーブルは作り直さず、列を追加して既存の値から埋めてから古い列を削除します（ID と外部キーはそのまま）。
+     * 古い列を参照しているインデックスとトリガーは先に削除し、新しい列で作り直します。
+     * transaction_rollups は合計列の型と年月の形式が変わるため、作り直して取引から再集計します。
+     * 資産の数量は端数があるため REAL のままです。
+     */
+    private static void convertToIntegerColumns(Connection conn) throws SQLException {
+        sql(
+            "DROP TRIGGER IF EXISTS trg_transactions_rollup_insert",
+            "DROP TRIGGER IF EXISTS trg_transactions_rollup_delete",
+            "DROP TRIGGER IF EXISTS trg_transactions_rollup_update",
+            "DROP INDEX IF EXISTS idx_transactions_user_date",
+            "DROP INDEX IF EXISTS idx_transactions_user_type_date",
+            "DROP INDEX IF EXISTS idx_transactions_user_category_date",
+            "DROP INDEX IF EXISTS idx_transactions_goal",
+
+            "ALTER TABLE transactions ADD COLUMN epoch_day INTEGER NOT NULL DEFAULT 0",
+            "ALTER TABLE transactions ADD COLUMN year_month INTEGER NOT NULL DEFAULT 0",
+            "ALTER TABLE transactions ADD COLUMN amount_minor INTEGER NOT NULL DEFAULT 0",
+            // julianday の 2440587.5 が 1970-01-01
+            "UPDATE transactions SET " +
+            "epoch_day = CAST(julianday(date) - 2440587.5 AS INTEGER), " +
+            "year_month = CAST(substr(date, 1, 4) AS INTEGER) * 100 + CAST(substr(date, 6, 2) AS INTEGER), " +
+            "amount_minor = " + toMinor("amount"),
+            "ALTER TABLE transactions DROP COLUMN date",
+            "ALTER TABLE transactions DROP COLUMN amount",
+            "CREATE INDEX idx_transactions_user_day ON transactions(user_id, epoch_day)",
+            "CREATE INDEX idx_transactions_user_type_day ON transactions(user_id, type, epoch_day)",
+            "CREATE INDEX idx_transactions_user_category_day ON transactions(user_id, category_id, epoch_day)",
+            "CREATE INDEX idx_transactions_goal ON transactions(goal_id, amount_minor)",
+
+            "ALTER TABLE goals ADD COLUMN target_amount_minor INTEGER NOT NULL DEFAULT 0",
+            "ALTER TABLE goals ADD COLUMN current_amount_minor INTEGER NOT NULL DEFAULT 0",
+            "UPDATE goals SET target_amount_minor = " + toMinor("target_amount") +
+            ", current_amount_minor = " + toMinor("current_amount"),
+            "ALTER TABLE goals DROP COLUMN target_amount",
+            "ALTER TABLE goals DROP COLUMN current_amount",
+
+            "ALTER TABLE assets ADD COLUMN purchase_price_minor INTEGER NOT NULL DEFAULT 0",
+            "ALTER TABLE assets ADD COLUMN current_price_minor INTEGER NOT NULL DEFAULT 0",
+            "UPDATE assets SET purchase_price_minor = " + toMinor("purchase_price") +
+            ", current_price_minor = " + toMinor("current_price"),
+            "ALTER TABLE assets DROP COLUMN purchase_price",
+            "ALTER TABLE assets DROP COLUMN current_price",
+
+            "ALTER TABLE budgets ADD COLUMN amount_minor INTEGER NOT NULL DEFAULT 0",
+            "UPDATE budgets SET amount_minor = " + toMinor("amount"),
+            "ALTER TABLE budgets DROP COLUMN amount",
+
+            "DROP TABLE transaction_rollups",
+            "CREATE TABLE transaction_rollups (" +
+            "user_id INTEGER NOT NULL," +
+            "year_month INTEGER NOT NULL," +
+            "category_id INTEGER NOT NULL," +
+            "type TEXT NOT NULL," +
+            "total_minor INTEGER NOT NULL," +
+            "tx_count INTEGER NOT NULL," +
+            "regular_minor INTEGER NOT NULL," +
+            "regular_count INTEGER NOT NULL," +
+            "PRIMARY KEY (user_id, year_month, category_id, type)" +
+            ") WITHOUT ROWID",
+
+            "CREATE TRIGGER trg_transactions_rollup_insert AFTER INSERT ON transactions BEGIN " +
+            ROLLUP_ADD_NEW +
+            "END",
+
+            "CREATE TRIGGER trg_transactions_rollup_delete AFTER DELETE ON transactions BEGIN " +
+            ROLLUP_REMOVE_OLD +
+            "END",
+
+            "CREATE TRIGGER trg_transactions_rollup_update " +
+            "AFTER UPDATE OF user_id, year_month, amount_minor, type, category_id, is_future, is_extraordinary ON transactions BEGIN " +
+            ROLLUP_REMOVE_OLD +
+            ROLLUP_ADD_NEW +
+            "END",
+
+            V8_REBUILD
+        ).apply(conn);
+    }
+
+    // v8 時点の列（year_month / amount_minor）に対する SQL。RollupDAO の SQL が変わっても v8 の結果は変えないため、ここに固定します
+    private static final String V8_REBUILD =
+            "INSERT INTO transaction_rollups(user_id, year_month, category_id, type, total_minor, tx_count, regular_minor, regular_count) " +
+            "SELECT user_id, year_month, COALESCE(category_id, 0), type, SUM(amount_minor), COUNT(*), " +
+            "SUM(CASE WHEN is_extraordinary OR is_future THEN 0 ELSE amount_minor END), " +
+            "SUM(CASE WHEN is_extraordinary OR is_future THEN 0 ELSE 1 END) " +
+            "FROM transactions GROUP BY user_id, year_month, COALESCE(category_id, 0), type";
+
+    private static String toMinor(String column) {
+        return "CAST(round(" + column + " * " + Money.MINOR_UNITS + ") AS INTEGER)";
+    }
+
+    private static final String ROLLUP_ADD_NEW =
+            "INSERT INTO transaction_rollups(user_id, year_month, category_id, type, total_minor, tx_count, regular_minor, regular_count) " +
+            "VALUES (NEW.user_id, NEW.year_month, COALESCE(NEW.category_id, 0), NEW.type, NEW.amount_minor, 1, " +
+            "CASE WHEN NEW.is_extraordinary OR NEW.is_future THEN 0 ELSE NEW.amount_minor END, " +
+            "CASE WHEN NEW.is_extraordinary OR NEW.is_future THEN 0 ELSE 1 END) " +
+            "ON CONFLICT(user_id, year_month, category_id, type) DO UPDATE SET " +
+            "total_minor = total_minor + excluded.total_minor, " +
+            "tx_count = tx_count + excluded.tx_count, " +
+            "regular_minor = regular_minor + excluded.regular_minor, " +
+            "regular_count = regular_count + excluded.regular_count; ";
+
+    private static final String ROLLUP_REMOVE_OLD =
+            "UPDATE transaction_rollups SET " +
+            "total_minor = total_minor - OLD.amount_minor, " +
+            "tx_count = tx_count - 1, " +
+            "regular_minor = regular_minor - CASE WHEN OLD.is_extraordinary OR OLD.is_future THEN 0 ELSE OLD.amount_minor END, " +
+            "regular_count = regular_count - CASE WHEN OLD.is_extraordinary OR OLD.is_future THEN 0 ELSE 1 END " +
+            "WHERE user_id = OLD.user_id AND year_month = OLD.year_month " +
+            "AND category_id = COALESCE(OLD.category_id, 0) AND type = OLD.type; " +
+            "DELETE FROM transaction_rollups WHERE user_id = OLD.user_id AND year_month = OLD.year_month " +
+            "AND category_id = COALESCE(OLD.category_id, 0) AND type = OLD.type AND tx_count <= 0; ";
+
+    /**
+     * v1: 旧 DBManager.initializeDatabase() で作成していたテーブル群。
+     * 既存のDBにも適用できるよう IF NOT EXISTS のまま残しています。
+     */
+    private static void createBaseTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+
+            // ユーザーテーブル
+            String sqlUsers = "CREATE TABLE IF NOT EXISTS users (" +
+                              "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                              "username TEXT NOT NULL UNIQUE, " +
+                              "password_hash TEXT NOT NULL, " +
+                              "role TEXT NOT NULL DEFAULT 'USER'" +
+                              ");";
+            stmt.execute(sqlUsers);
+
+            // カテゴリテーブル
+            String sqlCategory = "CREATE TABLE IF NOT EXISTS categories (" +
+                                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                                 "user_id INTEGER NOT NULL," +
+                                 "name TEXT NOT NULL," +
+                                 "type TEXT NOT NULL CHECK(type IN ('INCOME', 'EXPENSE'))," +
+                                 "FOREIGN KEY (user_id) REFERENCES users(id)" +
+                                 ");";
+            stmt.execute(sqlCategory);
+
+            // 目標テーブル (先に作成が必要)
+            String sqlGoals = "CREATE TABLE IF NOT EXISTS goals (" +
+                         "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                         "user_id INTEGER NOT NULL, " +
+                         "name TEXT NOT NULL, " +
+                         "target_amount REAL NOT NULL, " +
+                         "current_amount REAL NOT NULL DEFAULT 0, " +
+                         "target_date TEXT, " +
+                         "image_url TEXT, " +
+                         "FOREIGN KEY (user_id) REFERENCES users(id)" +
+                         ")";
+            stmt.execute(sqlGoals);
+
+            // 取引テーブル (goal_id を追加)
+            String sqlTransaction = "CREATE TABLE IF NOT EXISTS transactions (" +
+                                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                                    "user_id INTEGER NOT NULL," +
+                                    "date TEXT NOT NULL," +
+                                    "amount REAL NOT NULL," +
+                                    "type TEXT NOT NULL CHECK(type IN ('INCOME', 'EXPENSE'))," +
+                                    "category_id INTEGER," +
+                                    "goal_id INTEGER," + // ★追加: どの目標への入金か
+                                    "is_future BOOLEAN NOT NULL DEFAULT FALSE," +
+                                    "is_extraordinary BOOLEAN NOT NULL DEFAULT FALSE," +
+                                    "FOREIGN KEY (category_id) REFERENCES categories(id)," +
+                                    "FOREIGN KEY (goal_id) REFERENCES goals(id)," + // ★追加
+                                    "FOREIGN KEY (user_id) REFERENCES users(id)" +
+                                    ");";
+            stmt.execute(sqlTransaction);
+
+            // 資産テーブル
+            String sqlAssets = "CREATE TABLE IF NOT EXISTS assets (" +
+                               "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                               "user_id INTEGER NOT NULL," +
+                               "name TEXT NOT NULL," +
+                               "ticker_symbol TEXT," +
+                               "quantity REAL NOT NULL," +
+                               "purchase_price REAL NOT NULL," +
+                               "current_price REAL NOT NULL," +
+                               "asset_type TEXT," +
+                               "FOREIGN KEY (user_id) REFERENCES users(id)" +
+                               ");";
+            stmt.execute(sqlAssets);
+
+            // 予算テーブル
+            String sqlBudgets = "CREATE TABLE IF NOT EXISTS budgets (" +
+                                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                                "user_id INTEGER NOT NULL," +
+                                "year_month TEXT NOT NULL," +
+                                "category_id INTEGER NOT NULL," +
+                                "amount REAL NOT NULL," +
+                                "UNIQUE(user_id, year_month, category_id)," +
+                                "FOREIGN KEY (category_id) REFERENCES categories(id)," +
+                                "FOREIGN KEY (user_id) REFERENCES users(id)" +
+                                ");";
+            stmt.execute(sqlBudgets);
+        }
+    }
+}
@@ -24,6 +24,9 @@ public class SecurityConfig {
                     "/api/auth/register", // 【★最重要】登録APIを許可
                     "/style.css"          // CSS
                 ).permitAll()
+
+                // シャード間のデータ移動は管理者だけ (users.role = 'ADMIN')
+                .requestMatchers("/api/system/shards/**", "/api/system/shards").hasRole("ADMIN")
                 
                 // 2. 【認証必須】その他のすべてのリクエスト（index.htmlなど）は認証を必須にする
                 .anyRequest().authenticated()
@@ -0,0 +1,391 @@
+package com.example.CashFlowWeb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.sql.DataSource;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * シャード間でユーザーのデータを移すツール（/api/system/shards/**）。
+ * 移動は移動元シャードの書き込みスレッド上で行うため、その間に同じユーザーの書き込みがコミットされることはありません。
+ * 移動先・ディレクトリDBへの書き込みも、それぞれのファイルの書き込みスレッドにコマンドとして渡します（どのファイルも書き込むのは1本だけ）。
+ * 移動先へは BATCH_SIZE 行ずつ別のコマンドにしてコミットするため、大きなユーザーの移動中も移動先の他の書き込みは待たされません。
+ * 移動先にコピーし終えたら、ディレクトリDBの users.shard を書き換えてから、移動元の行を削除します。
+ * 移動元のスレッドが移動先のスレッドを待つため、移動は同時に1つだけ実行します。
+ * 行は元の ID のままコピーします（ファイルごとに ID の範囲が分かれているため重ならない）。移動しても ID は変わらないので、
+ * 移動前に読み込んだ画面からの更新・削除も同じ行に当たります。移動後はデータのバージョンを進め、
+ * カテゴリのキャッシュと集計用の取引のコピーを捨てます。
+ * 途中で失敗した場合は移動元がそのまま残り、移動先に残った行は次の移動のときに削除されます。
+ */
+@Component
+public class ShardRebalancer {
+
+    // コピーする順（参照される側が先）。取引のロールアップはトリガーが作る
+    private static final String[] COPY_ORDER = { "categories", "goals", "assets", "transactions", "budgets" };
+    // 削除する順（参照する側が先）
+    private static final String[] DELETE_ORDER = { "budgets", "transactions", "transaction_rollups", "goals", "categories", "assets" };
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+    private final WriteQueue writeQueue;
+    private final TransactionProjection projection;
+    private final CategoryDAO categoryDAO;
+
+    public ShardRebalancer(DataSource dataSource, WriteQueue writeQueue, TransactionProjection projection,
+            CategoryDAO categoryDAO) {
+        this.dataSource = dataSource;
+        this.writeQueue = writeQueue;
+        this.projection = projection;
+        this.categoryDAO = categoryDAO;
+    }
+
+    /**
+     * シャードごとのユーザー数を返します（キー -1 はまだディレクトリDBにデータがあるユーザー）。
+     */
+    public Map<Integer, Integer> userCounts() throws SQLException {
+        ShardedDataSource sharded = sharded();
+        Map<Integer, Integer> counts = new TreeMap<>();
+        for (int shard = 0; shard < sharded.shardCount(); shard++) {
+            counts.put(shard, 0);
+        }
+        try (Connection conn = sharded.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(shard, -1), COUNT(*) FROM users GROUP BY 1")) {
+            while (rs.next()) {
+                counts.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * ユーザーのデータを別のシャードに移します。
+     *
+     * @throws IllegalArgumentException ユーザーやシャードが存在しない場合
+     */
+    public synchronized Move moveUser(int userId, int targetShard) throws SQLException {
+        ShardedDataSource sharded = sharded();
+        if (targetShard < 0 || targetShard >= sharded.shardCount()) {
+            throw new IllegalArgumentException("シャード " + targetShard + " はありません");
+        }
+        String[] user = findUser(sharded, userId);
+        int from = sharded.shardOf(userId);
+        Move move = new Move(userId, from, targetShard);
+        if (from == targetShard) {
+            return move;
+        }
+
+        long started = System.nanoTime();
+        // 移動元の書き込みスレッド上で実行する（conn は移動元シャードの接続）
+        CompletableFuture<Integer> copied = writeQueue.submit(userId, conn -> {
+            int rows;
+            try {
+                rows = copy(conn, targetShard, userId, user);
+            } catch (SQLException | RuntimeException e) {
+                discardCopy(targetShard, userId);
+                throw e;
+            }
+            if (from == ShardedDataSource.DIRECTORY) {
+                assign(conn, userId, targetShard); // 同じファイルなので、元の行の削除と一緒にコミットする
+            } else {
+                onShard(ShardedDataSource.DIRECTORY, directory -> assign(directory, userId, targetShard));
+            }
+            sharded.assigned(userId, targetShard); // この後にキューから取り出した同じユーザーの書き込みは断る
+            deleteUserRows(conn, userId, from != ShardedDataSource.DIRECTORY);
+            return rows;
+        });
+        try {
+            move.rows = WriteQueue.await(copied);
+        } catch (RuntimeException e) {
+            sharded.forget(userId); // コミットされた割り当てを読み直す
+            if (e.getCause() instanceof SQLException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        move.millis = (System.nanoTime() - started) / 1_000_000;
+
+        projection.invalidate(userId);
+        categoryDAO.invalidate(userId); // 移動元から読んだキャッシュを捨て、ETag も変える
+        return move;
+    }
+
+    /**
+     * ディレクトリDBに残っているユーザーをシャードへ移し、シャード間のユーザー数の差が1以下になるまで移します。
+     * 1回の呼び出しで移すのは limit 人までです。
+     */
+    public List<Move> rebalance(int limit) throws SQLException {
+        List<Move> moves = new ArrayList<>();
+        while (moves.size() < limit) {
+            Map<Integer, Integer> counts = userCounts();
+            int lightest = lightest(counts);
+            int from = counts.getOrDefault(ShardedDataSource.DIRECTORY, 0) > 0 ? ShardedDataSource.DIRECTORY : heaviest(counts);
+            if (from != ShardedDataSource.DIRECTORY && counts.get(from) - counts.get(lightest) <= 1) {
+                break;
+            }
+            List<Integer> users = usersIn(from, 1);
+            if (users.isEmpty()) {
+                break;
+            }
+            moves.add(moveUser(users.get(0), lightest));
+        }
+        return moves;
+    }
+
+    /**
+     * シャード from のユーザーの半分を to に移します（cashflow.db.shards を増やして再起動した後、新しいシャードに分けるときなど）。
+     */
+    public List<Move> split(int from, int to) throws SQLException {
+        List<Integer> users = usersIn(from, Integer.MAX_VALUE);
+        List<Move> moves = new ArrayList<>();
+        for (int i = 1; i < users.size(); i += 2) {
+            moves.add(moveUser(users.get(i), to));
+        }
+        return moves;
+    }
+
+    private ShardedDataSource sharded() {
+        if (dataSource instanceof ShardedDataSource sharded) {
+            return sharded;
+        }
+        throw new IllegalStateException("シャード化していません（cashflow.db.shards が0）");
+    }
+
+    private static int lightest(Map<Integer, Integer> counts) {
+        int best = 0;
+        for (Map.Entry<Integer, Integer> e : counts.entrySet()) {
+            if (e.getKey() >= 0 && e.getValue() < counts.get(best)) {
+                best = e.getKey();
+            }
+        }
+        return best;
+    }
+
+    private static int heaviest(Map<Integer, Integer> counts) {
+        int best = 0;
+        for (Map.Entry<Integer, Integer> e : counts.entrySet()) {
+            if (e.getKey() >= 0 && e.getValue() > counts.get(best)) {
+                best = e.getKey();
+            }
+        }
+        return best;
+    }
+
+    private List<Integer> usersIn(int shard, int limit) throws SQLException {
+        String sql = shard == ShardedDataSource.DIRECTORY
+                ? "SELECT id FROM users WHERE shard IS NULL ORDER BY id LIMIT ?"
+                : "SELECT id FROM users WHERE shard = ? ORDER BY id LIMIT ?";
+        List<Integer> ids = new ArrayList<>();
+        try (Connection conn = sharded().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (shard != ShardedDataSource.DIRECTORY) {
+                pstmt.setInt(index++, shard);
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static boolean assign(Connection directory, int userId, int shard) throws SQLException {
+        try (PreparedStatement pstmt = directory.prepareStatement("UPDATE users SET shard = ? WHERE id = ?")) {
+            pstmt.setInt(1, shard);
+            pstmt.setInt(2, userId);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    private static String[] findUser(ShardedDataSource sharded, int userId) throws SQLException {
+        try (Connection conn = sharded.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT username, role FROM users WHERE id = ?")) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IllegalArgumentException("ユーザー " + userId + " はいません");
+                }
+                return new String[] { rs.getString(1), rs.getString(2) };
+            }
+        }
+    }
+
+    /**
+     * 移動先に（前回の失敗で残った行を消してから）ユーザー行とデータをコピーします。コピーした行数を返します。
+     * 移動先への書き込みは、移動先の書き込みスレッドで BATCH_SIZE 行ずつコミットします。
+     */
+    private int copy(Connection source, int targetShard, int userId, String[] user) throws SQLException {
+        onShard(targetShard, conn -> {
+            deleteUserRows(conn, userId, true);
+            UserDAO.insertShardUser(conn, userId, user[0], user[1]);
+            return true;
+        });
+        int rows = 0;
+        for (String table : COPY_ORDER) {
+            rows += copyTable(source, targetShard, table, userId);
+        }
+        return rows;
+    }
+
+    /**
+     * テーブルのユーザーの行を、id も含めてそのまま BATCH_SIZE 行ずつコピーします。
+     */
+    private int copyTable(Connection source, int targetShard, String table, int userId) throws SQLException {
+        String sql = "SELECT * FROM " + table + " WHERE user_id = ? AND id > ? ORDER BY id LIMIT " + BATCH_SIZE;
+        int rows = 0;
+        long lastId = 0;
+        try (PreparedStatement select = source.prepareStatement(sql)) {
+            while (true) {
+                select.setInt(1, userId);
+                select.setLong(2, lastId);
+                List<String> columns = new ArrayList<>();
+                List<Object[]> chunk = new ArrayList<>();
+                try (ResultSet rs = select.executeQuery()) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        columns.add(meta.getColumnName(i));
+                    }
+                    while (rs.next()) {
+                        Object[] row = new Object[columns.size()];
+                        for (int i = 0; i < row.length; i++) {
+                            row[i] = rs.getObject(i + 1);
+                        }
+                        chunk.add(row);
+                    }
+                }
+                if (chunk.isEmpty()) {
+                    return rows;
+                }
+                onShard(targetShard, conn -> insertChunk(conn, table, columns, chunk));
+                rows += chunk.size();
+                if (chunk.size() < BATCH_SIZE) {
+                    return rows;
+                }
+                lastId = ((Number) chunk.get(chunk.size() - 1)[columns.indexOf("id")]).longValue();
+            }
+        }
+    }
+
+    /**
+     * 行をそのまま追加します。他の範囲の ID の行を入れると SQLite が sqlite_sequence を進めてしまうため、
+     * 同じコマンドの中で元の値に戻します（この後の他のユーザーの追加は自分の範囲から振られる）。
+     */
+    private static boolean insertChunk(Connection conn, String table, List<String> columns, List<Object[]> chunk)
+            throws SQLException {
+        Map<String, Long> sequences = sequences(conn);
+        String sql = "INSERT INTO " + table + "(" + String.join(", ", columns) + ") VALUES("
+                + String.join(", ", columns.stream().map(c -> "?").toList()) + ")";
+        try (PreparedStatement insert = conn.prepareStatement(sql)) {
+            for (Object[] row : chunk) {
+                for (int i = 0; i < row.length; i++) {
+                    insert.setObject(i + 1, row[i]);
+                }
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        restoreSequences(conn, sequences);
+        return true;
+    }
+
+    /**
+     * 失敗した移動で移動先にコミット済みの行を消します（消せなくても次の移動のときに消える）。
+     */
+    private void discardCopy(int targetShard, int userId) {
+        try {
+            onShard(targetShard, conn -> {
+                deleteUserRows(conn, userId, true);
+                return true;
+            });
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("移動先に残った行の削除エラー (ユーザー " + userId + "): " + e.getMessage());
+        }
+    }
+
+    /**
+     * シャードの書き込みスレッドで実行し、コミットされるまで待ちます（移動元のスレッドから呼ぶ）。
+     */
+    private <T> T onShard(int shard, WriteQueue.Write<T> write) throws SQLException {
+        try {
+            return WriteQueue.await(writeQueue.submitToShard(shard, write));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Map<String, Long> sequences(Connection conn) throws SQLException {
+        Map<String, Long> sequences = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name, seq FROM sqlite_sequence")) {
+            while (rs.next()) {
+                sequences.put(rs.getString(1), rs.getLong(2));
+            }
+        }
+        return sequences;
+    }
+
+    private static void restoreSequences(Connection conn, Map<String, Long> sequences) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE sqlite_sequence SET seq = ? WHERE name = ?")) {
+            for (String table : ShardedDataSource.ID_TABLES) {
+                Long seq = sequences.get(table);
+                if (seq != null) {
+                    pstmt.setLong(1, seq);
+                    pstmt.setString(2, table);
+                    pstmt.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private static void deleteUserRows(Connection conn, int userId, boolean includingUser) throws SQLException {
+        for (String table : DELETE_ORDER) {
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + table + " WHERE user_id = ?")) {
+                pstmt.setInt(1, userId);
+                pstmt.executeUpdate();
+            }
+        }
+        if (includingUser) {
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM users WHERE id = ?")) {
+                pstmt.setInt(1, userId);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * 1人分の移動の結果（JSON）。from が -1 ならディレクトリDBからの移動。rows はコピーした行数。
+     */
+    public static class Move {
+        public int userId;
+        public int from;
+        public int to;
+        public int rows;
+        public long millis;
+
+        Move(int userId, int from, int to) {
+            this.userId = userId;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
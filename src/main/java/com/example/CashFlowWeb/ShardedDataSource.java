@@ -0,0 +1,269 @@
+package com.example.CashFlowWeb;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * ユーザーごとに保存先の SQLite ファイル（シャード）を振り分ける DataSource（cashflow.db.shards が1以上のとき）。
+ * users・fx_rates・schema_version はディレクトリDB（cashflow.db.url）に置き、getConnection() はディレクトリDBを返します。
+ * ユーザーのデータ（カテゴリ・取引・目標・資産・予算・ロールアップ）は users.shard が指すシャードに置きます。
+ * users.shard が NULL のユーザー（シャード化する前からいるユーザー）のデータはディレクトリDBに残っており、
+ * ShardRebalancer で移すまではディレクトリDBから読み書きします。
+ * シャードは別ファイルなので、書き込みのロックもファイルごとに別々です。
+ *
+ * DAO はユーザーのデータにアクセスするとき forUser(dataSource, userId) で接続先を選びます。
+ * シャード化していない DataSource ならそのまま返すため、単一ファイルの構成とテストは従来どおり動きます。
+ *
+ * ID はファイルをまたいで重ならないよう、ファイルごとに範囲を分けます（シャード s は (s + 1) << ID_RANGE_BITS から、
+ * ディレクトリDBはそれより下）。ShardRebalancer は行を元の ID のままコピーするため、移動しても ID は変わりません。
+ * SQLite の AUTOINCREMENT はテーブルの最大の ID の次を振るため、他の範囲の行が移ってきても自分の範囲から振るよう、
+ * INSERT では nextId() の式で sqlite_sequence の次の値を明示します。
+ */
+public class ShardedDataSource implements DataSource, AutoCloseable {
+
+    /** ディレクトリDBを表すシャード番号（users.shard が NULL）。 */
+    public static final int DIRECTORY = -1;
+
+    /** 1つのファイルが振る ID の範囲の大きさ（2^26 = 約6700万件）。ID は int のため、シャードは MAX_SHARDS 個まで。 */
+    static final int ID_RANGE_BITS = 26;
+    public static final int MAX_SHARDS = (1 << (31 - ID_RANGE_BITS)) - 1;
+    /** ID を範囲から振るテーブル（ユーザーはディレクトリDBの ID をそのまま使う）。 */
+    static final String[] ID_TABLES = { "categories", "goals", "assets", "transactions", "budgets" };
+
+    private final DataSource directory;
+    private final List<DataSource> shards;
+    private final Assignments assignments;
+
+    /**
+     * シャードの sqlite_sequence を、まだ自分の範囲に入っていなければ範囲の先頭に進めます。
+     *
+     * @param directory ディレクトリDB
+     * @param shards    シャード（番号順。マイグレーション済み）
+     * @throws IllegalArgumentException シャードが MAX_SHARDS 個より多い場合
+     */
+    public ShardedDataSource(DataSource directory, List<DataSource> shards) {
+        this(directory, shards, new Assignments(directory));
+        if (shards.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("シャードは " + MAX_SHARDS + " 個までです: " + shards.size());
+        }
+        for (int shard = 0; shard < shards.size(); shard++) {
+            try (Connection conn = shards.get(shard).getConnection()) {
+                seedSequences(conn, shard);
+            } catch (SQLException e) {
+                throw new IllegalStateException("シャード " + shard + " の ID の範囲を設定できません", e);
+            }
+        }
+    }
+
+    private ShardedDataSource(DataSource directory, List<DataSource> shards, Assignments assignments) {
+        this.directory = directory;
+        this.shards = List.copyOf(shards);
+        this.assignments = assignments;
+    }
+
+    /**
+     * 同じ割り当てを使い、接続先だけを差し替えた ShardedDataSource を返します（読み取り専用プール用）。
+     */
+    public ShardedDataSource withPools(DataSource directory, List<DataSource> shards) {
+        if (shards.size() != this.shards.size()) {
+            throw new IllegalArgumentException("シャード数が一致しません");
+        }
+        return new ShardedDataSource(directory, shards, assignments);
+    }
+
+    /**
+     * dataSource が ShardedDataSource ならユーザーのデータがあるシャードを、そうでなければ dataSource をそのまま返します。
+     */
+    public static DataSource forUser(DataSource dataSource, int userId) throws SQLException {
+        if (dataSource instanceof ShardedDataSource sharded) {
+            return sharded.shard(sharded.shardOf(userId));
+        }
+        return dataSource;
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    public DataSource directory() {
+        return directory;
+    }
+
+    /**
+     * INSERT の id 列に指定する式。sqlite_sequence の次の値で、まだ1件も追加していないテーブルでは NULL（SQLite が振る）です。
+     * 1つの INSERT で複数行を追加するときは、n 行目に nextId(table, n) を使います（式は文の中で1回だけ評価される）。
+     */
+    static String nextId(String table) {
+        return nextId(table, 1);
+    }
+
+    static String nextId(String table, int n) {
+        return "(SELECT seq + " + n + " FROM sqlite_sequence WHERE name = '" + table + "')";
+    }
+
+    /**
+     * シャード番号のファイルが振る ID の範囲の先頭（DIRECTORY は 1）。
+     */
+    static long firstId(int shard) {
+        return shard == DIRECTORY ? 1 : (long) (shard + 1) << ID_RANGE_BITS;
+    }
+
+    private static void seedSequences(Connection conn, int shard) throws SQLException {
+        long start = firstId(shard) - 1;
+        try (PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO sqlite_sequence(name, seq) SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = ?)");
+             PreparedStatement update = conn.prepareStatement("UPDATE sqlite_sequence SET seq = ? WHERE name = ? AND seq < ?")) {
+            for (String table : ID_TABLES) {
+                insert.setString(1, table);
+                insert.setLong(2, start);
+                insert.setString(3, table);
+                insert.executeUpdate();
+                update.setLong(1, start);
+                update.setString(2, table);
+                update.setLong(3, start);
+                update.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * シャード番号の DataSource を返します（DIRECTORY ならディレクトリDB）。
+     */
+    public DataSource shard(int shard) {
+        return shard == DIRECTORY ? directory : shards.get(shard);
+    }
+
+    /**
+     * ユーザーのデータがあるシャード番号を返します。ディレクトリDBにいないユーザーは DIRECTORY です。
+     */
+    public int shardOf(int userId) throws SQLException {
+        return assignments.shardOf(userId);
+    }
+
+    /**
+     * 新規ユーザーのシャード番号。ユーザーIDは連番なので、剰余で順番に振り分けます。
+     */
+    public int shardForNewUser(int userId) {
+        return Math.floorMod(userId, shards.size());
+    }
+
+    /**
+     * ディレクトリDBの users.shard を更新した後に呼び、以後の接続先を切り替えます。
+     */
+    void assigned(int userId, int shard) {
+        assignments.cache.put(userId, shard);
+    }
+
+    /**
+     * 覚えている割り当てを捨てます（次のアクセスでディレクトリDBを読み直す）。
+     */
+    void forget(int userId) {
+        assignments.cache.remove(userId);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return directory.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return directory.getConnection(username, password);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return directory.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        directory.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        directory.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return directory.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return directory.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return directory.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || directory.isWrapperFor(iface);
+    }
+
+    /**
+     * ディレクトリDBとシャードのプールを閉じます。
+     */
+    @Override
+    public void close() throws Exception {
+        List<DataSource> all = new ArrayList<>(shards);
+        all.add(directory);
+        for (DataSource ds : all) {
+            if (ds instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    /**
+     * ユーザーID → シャード番号。ディレクトリDBを一度引いたら覚えておきます（1件あたり数十バイト）。
+     * 読み取り専用プール用の ShardedDataSource とも共有するため、移動後はどちらも同時に切り替わります。
+     */
+    private static final class Assignments {
+        final DataSource directory;
+        final Map<Integer, Integer> cache = new ConcurrentHashMap<>();
+
+        Assignments(DataSource directory) {
+            this.directory = directory;
+        }
+
+        int shardOf(int userId) throws SQLException {
+            Integer shard = cache.get(userId);
+            if (shard != null) {
+                return shard;
+            }
+            try (Connection conn = directory.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement("SELECT shard FROM users WHERE id = ?")) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return DIRECTORY; // 存在しないユーザーは覚えない（この後で登録されることがある）
+                    }
+                    int value = rs.getInt(1);
+                    shard = rs.wasNull() ? DIRECTORY : value;
+                }
+            }
+            cache.put(userId, shard);
+            return shard;
+        }
+    }
+}
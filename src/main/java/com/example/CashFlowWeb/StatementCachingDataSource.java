@@ -0,0 +1,229 @@
+package com.example.CashFlowWeb;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * 物理接続ごとに PreparedStatement をキャッシュする DataSource ラッパー。
+ * sqlite-jdbc も HikariCP もステートメントキャッシュを持たないため、
+ * 同じSQLを毎回パースし直さないよう、ここで接続単位のLRUキャッシュを持ちます。
+ *
+ * DAO側から見ると通常どおり prepareStatement() / close() するだけで、
+ * close() されたステートメントは破棄されずにキャッシュへ戻ります。
+ */
+class StatementCachingDataSource implements DataSource {
+
+    private final DataSource delegate;
+    private final int cacheSize;
+
+    StatementCachingDataSource(DataSource delegate, int cacheSize) {
+        this.delegate = delegate;
+        this.cacheSize = cacheSize;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(delegate.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(delegate.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection physical) {
+        if (cacheSize <= 0) {
+            return physical;
+        }
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new CachingConnectionHandler(physical, cacheSize));
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 1本の物理接続を包み、prepareStatement(String) の結果をSQL文字列ごとに保持します。
+     * コネクションはプールから同時に1スレッドにしか貸し出されないため、同期は不要です。
+     */
+    private static class CachingConnectionHandler implements InvocationHandler {
+
+        private final Connection physical;
+        private final Map<String, CachedStatementHandler> cache;
+        private Connection proxy;
+
+        CachingConnectionHandler(Connection physical, int cacheSize) {
+            this.physical = physical;
+            this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatementHandler> eldest) {
+                    if (size() > cacheSize && !eldest.getValue().inUse) {
+                        eldest.getValue().closePhysical();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+            proxy = (Connection) self;
+            String name = method.getName();
+
+            if ("prepareStatement".equals(name) && args != null && args.length == 1) {
+                return prepare((String) args[0]);
+            }
+            if ("close".equals(name)) {
+                for (Iterator<CachedStatementHandler> it = cache.values().iterator(); it.hasNext();) {
+                    it.next().closePhysical();
+                    it.remove();
+                }
+                physical.close();
+                return null;
+            }
+            if ("unwrap".equals(name) && ((Class<?>) args[0]).isInstance(physical)) {
+                return physical;
+            }
+            return StatementCachingDataSource.invoke(physical, method, args);
+        }
+
+        private PreparedStatement prepare(String sql) throws SQLException {
+            CachedStatementHandler handler = cache.get(sql);
+            if (handler != null && handler.inUse) {
+                // 同じSQLが同一接続上で入れ子に使われている場合はキャッシュしない
+                return physical.prepareStatement(sql);
+            }
+            if (handler == null) {
+                handler = new CachedStatementHandler(physical.prepareStatement(sql));
+                handler.inUse = true; // put() 中に自分自身が追い出されないようにする
+                cache.put(sql, handler);
+            }
+            handler.inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    handler.bind(proxy));
+        }
+    }
+
+    /**
+     * キャッシュされた PreparedStatement。close() では物理的に閉じず、
+     * パラメータと直前の ResultSet を片付けてから再利用可能な状態に戻します。
+     */
+    private static class CachedStatementHandler implements InvocationHandler {
+
+        private final PreparedStatement statement;
+        private Connection owner;
+        private ResultSet lastResultSet;
+        private boolean inUse;
+
+        CachedStatementHandler(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        CachedStatementHandler bind(Connection owner) {
+            this.owner = owner;
+            return this;
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release();
+                    return null;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                case "getConnection":
+                    return owner;
+                default:
+                    Object result = StatementCachingDataSource.invoke(statement, method, args);
+                    if (result instanceof ResultSet) {
+                        lastResultSet = (ResultSet) result;
+                    }
+                    return result;
+            }
+        }
+
+        private void release() throws SQLException {
+            if (!inUse) {
+                return;
+            }
+            inUse = false;
+            if (lastResultSet != null && !lastResultSet.isClosed()) {
+                lastResultSet.close();
+            }
+            lastResultSet = null;
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+
+        void closePhysical() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                System.err.println("ステートメントクローズエラー: " + e.getMessage());
+            }
+        }
+    }
+}
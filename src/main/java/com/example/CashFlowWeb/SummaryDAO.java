@@ -0,0 +1,274 @@
+package com.example.CashFlowWeb;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 取引の集計（月次・カテゴリ別）を担当するクラス。
+ * Transaction オブジェクトを1件ずつ組み立てて Java 側で合計するのではなく、
+ * SQLite の GROUP BY で集計し、結果の数十行だけを受け取ります。
+ * 期間が月単位（または無指定）の場合は transaction_rollups を読むため、
+ * 読み取る行数は取引件数ではなく「月数 × カテゴリ数」に比例します。
+ * TransactionProjection にユーザーの取引が読み込まれていれば、SQL は使わずにその配列を集計します。
+ */
+@Repository
+public class SummaryDAO {
+
+    private final DataSource dataSource;
+    private final TransactionProjection projection;
+    private final CategoryDAO categoryDAO;
+
+    public SummaryDAO(DataSource dataSource) {
+        this(dataSource, TransactionProjection.disabled(), new CategoryDAO(dataSource));
+    }
+
+    /**
+     * @param categoryDAO カテゴリ別集計でカテゴリ名を引くために使います（一覧はキャッシュされている）
+     */
+    @Autowired
+    public SummaryDAO(DataSource dataSource, TransactionProjection projection, CategoryDAO categoryDAO) {
+        this.dataSource = dataSource;
+        this.projection = projection;
+        this.categoryDAO = categoryDAO;
+    }
+
+    /**
+     * 月ごとの収入・支出の合計を古い順に取得します。
+     *
+     * @param startDate 集計開始日 (null なら制限なし)
+     * @param endDate   集計終了日 (null なら制限なし)
+     */
+    public List<MonthlySummary> getMonthlySummaries(int userId, LocalDate startDate, LocalDate endDate) {
+        TransactionColumns columns = projection.columns(userId);
+        if (columns != null) {
+            return columns.monthlySummaries(startDate, endDate);
+        }
+        List<MonthlySummary> summaries = new ArrayList<>();
+
+        StringBuilder sql;
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        if (isMonthAligned(startDate, endDate)) {
+            sql = new StringBuilder(
+                "SELECT year_month AS month, " +
+                "SUM(CASE WHEN type = 'INCOME' THEN total_minor ELSE 0 END) AS total_income, " +
+                "SUM(CASE WHEN type = 'EXPENSE' THEN total_minor ELSE 0 END) AS total_expense " +
+                "FROM transaction_rollups WHERE user_id = ?");
+            appendMonthRange(sql, params, startDate, endDate);
+        } else {
+            sql = new StringBuilder(
+                "SELECT year_month AS month, " +
+                "SUM(CASE WHEN type = 'INCOME' THEN amount_minor ELSE 0 END) AS total_income, " +
+                "SUM(CASE WHEN type = 'EXPENSE' THEN amount_minor ELSE 0 END) AS total_expense " +
+                "FROM transactions WHERE user_id = ?");
+            appendDateRange(sql, params, startDate, endDate);
+        }
+        sql.append(" GROUP BY month ORDER BY month");
+
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            bind(pstmt, params);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    summaries.add(new MonthlySummary(
+                        DateColumns.format(rs.getInt("month")),
+                        Money.toMajor(rs.getLong("total_income")),
+                        Money.toMajor(rs.getLong("total_expense"))));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("月次集計エラー: " + e.getMessage());
+        }
+        return summaries;
+    }
+
+    /**
+     * カテゴリごとの合計額を取得します（円グラフ用）。
+     * カテゴリ未設定の取引は「未分類」としてまとめます。
+     *
+     * @param type "INCOME" または "EXPENSE"
+     */
+    public List<CategorySummary> getCategorySummaries(int userId, String type, LocalDate startDate, LocalDate endDate) {
+        if ("INCOME".equals(type) || "EXPENSE".equals(type)) {
+            TransactionColumns columns = projection.columns(userId);
+            if (columns != null) {
+                return columns.categorySummaries(type, startDate, endDate, categoryDAO.getAllCategories(userId));
+            }
+        }
+        List<CategorySummary> summaries = new ArrayList<>();
+
+        StringBuilder sql;
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.add(type);
+        if (isMonthAligned(startDate, endDate)) {
+            sql = new StringBuilder(
+                "SELECT COALESCE(c.name, '未分類') AS category_name, s.total_minor " +
+                "FROM (SELECT category_id, SUM(total_minor) AS total_minor FROM transaction_rollups " +
+                "WHERE user_id = ? AND type = ?");
+            appendMonthRange(sql, params, startDate, endDate);
+        } else {
+            sql = new StringBuilder(
+                "SELECT COALESCE(c.name, '未分類') AS category_name, s.total_minor " +
+                "FROM (SELECT category_id, SUM(amount_minor) AS total_minor FROM transactions " +
+                "WHERE user_id = ? AND type = ?");
+            appendDateRange(sql, params, startDate, endDate);
+        }
+        sql.append(" GROUP BY category_id) s " +
+                   "LEFT JOIN categories c ON s.category_id = c.id " +
+                   "ORDER BY s.total_minor DESC");
+
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            bind(pstmt, params);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    summaries.add(new CategorySummary(
+                        rs.getString("category_name"),
+                        Money.toMajor(rs.getLong("total_minor"))));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("カテゴリ別集計エラー: " + e.getMessage());
+        }
+        return summaries;
+    }
+
+    /**
+     * 資産予測用の統計（収入合計・支出合計・最初と最後の取引日・取引のある月数）を1回のクエリで取得します。
+     * 合計はロールアップから、最初と最後の日付は (user_id, epoch_day) インデックスの両端から読むため、
+     * 取引件数が増えても処理時間はほとんど変わりません。
+     *
+     * @param excludeIrregular true の場合、臨時収支・将来の予定を合計・月数・最初と最後の日付から除外する
+     *                         （来年の予定が1件あるだけで平均の分母の期間が延びないように）
+     */
+    public CashFlowStats getCashFlowStats(int userId, boolean excludeIrregular) {
+        TransactionColumns columns = projection.columns(userId);
+        if (columns != null) {
+            return columns.cashFlowStats(excludeIrregular);
+        }
+        String amount = excludeIrregular ? "regular_minor" : "total_minor";
+        String month = excludeIrregular ? "CASE WHEN regular_count > 0 THEN year_month END" : "year_month";
+        String regular = excludeIrregular ? " AND is_future = 0 AND is_extraordinary = 0" : "";
+        String sql = "SELECT " +
+                     "COALESCE(SUM(CASE WHEN type = 'INCOME' THEN " + amount + " ELSE 0 END), 0) AS total_income, " +
+                     "COALESCE(SUM(CASE WHEN type = 'EXPENSE' THEN " + amount + " ELSE 0 END), 0) AS total_expense, " +
+                     "COUNT(DISTINCT " + month + ") AS month_count, " +
+                     "(SELECT MIN(epoch_day) FROM transactions WHERE user_id = ?" + regular + ") AS first_day, " +
+                     "(SELECT MAX(epoch_day) FROM transactions WHERE user_id = ?" + regular + ") AS last_day " +
+                     "FROM transaction_rollups WHERE user_id = ?";
+
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, userId);
+            pstmt.setInt(3, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next() && rs.getObject("first_day") != null) {
+                    return new CashFlowStats(
+                        Money.toMajor(rs.getLong("total_income")),
+                        Money.toMajor(rs.getLong("total_expense")),
+                        LocalDate.ofEpochDay(rs.getLong("first_day")),
+                        LocalDate.ofEpochDay(rs.getLong("last_day")),
+                        rs.getInt("month_count"));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("統計取得エラー: " + e.getMessage());
+        }
+        return new CashFlowStats(0, 0, null, null, 0);
+    }
+
+    /**
+     * 最初の月から最後の月までの月次純収支（収入 − 支出）を古い順に返します。
+     * 取引のない月は 0 として埋めます。モンテカルロ予測のサンプルに使います。
+     *
+     * @param excludeIrregular true の場合、臨時収支・将来の予定を除外する
+     */
+    public double[] getMonthlyNetFlows(int userId, boolean excludeIrregular) {
+        TransactionColumns columns = projection.columns(userId);
+        if (columns != null) {
+            return columns.monthlyNetFlows(excludeIrregular);
+        }
+        String amount = excludeIrregular ? "regular_minor" : "total_minor";
+        String sql = "SELECT year_month, " +
+                     "SUM(CASE WHEN type = 'INCOME' THEN " + amount + " ELSE -" + amount + " END) AS net " +
+                     "FROM transaction_rollups WHERE user_id = ? GROUP BY year_month" +
+                     (excludeIrregular ? " HAVING SUM(regular_count) > 0" : "") +
+                     " ORDER BY year_month";
+
+        List<YearMonth> months = new ArrayList<>();
+        List<Double> nets = new ArrayList<>();
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    months.add(DateColumns.toYearMonth(rs.getInt("year_month")));
+                    nets.add(Money.toMajor(rs.getLong("net")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("月次純収支取得エラー: " + e.getMessage());
+        }
+
+        if (months.isEmpty()) {
+            return new double[0];
+        }
+        YearMonth first = months.get(0);
+        double[] flows = new double[(int) first.until(months.get(months.size() - 1), ChronoUnit.MONTHS) + 1];
+        for (int i = 0; i < months.size(); i++) {
+            flows[(int) first.until(months.get(i), ChronoUnit.MONTHS)] = nets.get(i);
+        }
+        return flows;
+    }
+
+    /**
+     * 期間が月の初日〜月末日で指定されている（または無指定の）場合、ロールアップで答えられます。
+     */
+    static boolean isMonthAligned(LocalDate startDate, LocalDate endDate) {
+        return (startDate == null || startDate.getDayOfMonth() == 1)
+                && (endDate == null || endDate.getDayOfMonth() == endDate.lengthOfMonth());
+    }
+
+    private static void appendMonthRange(StringBuilder sql, List<Object> params, LocalDate startDate, LocalDate endDate) {
+        if (startDate != null) {
+            sql.append(" AND year_month >= ?");
+            params.add(DateColumns.yearMonth(startDate));
+        }
+        if (endDate != null) {
+            sql.append(" AND year_month <= ?");
+            params.add(DateColumns.yearMonth(endDate));
+        }
+    }
+
+    private static void appendDateRange(StringBuilder sql, List<Object> params, LocalDate startDate, LocalDate endDate) {
+        if (startDate != null) {
+            sql.append(" AND epoch_day >= ?");
+            params.add(startDate.toEpochDay());
+        }
+        if (endDate != null) {
+            sql.append(" AND epoch_day <= ?");
+            params.add(endDate.toEpochDay());
+        }
+    }
+
+    private static void bind(PreparedStatement pstmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            pstmt.setObject(i + 1, params.get(i));
+        }
+    }
+}
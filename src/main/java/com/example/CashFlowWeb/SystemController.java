@@ -0,0 +1,145 @@
+package com.example.CashFlowWeb;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 運用・チューニング用の情報を返すAPI。
+ */
+@RestController
+@RequestMapping("/api/system")
+public class SystemController {
+
+    private final DBPoolMetrics poolMetrics;
+    private final QuoteClientMetrics quoteMetrics;
+    private final RollupDAO rollupDAO;
+    private final UserIdentityCache identityCache;
+    private final WriteQueue writeQueue;
+    private final TransactionProjection projection;
+    private final ShardRebalancer rebalancer;
+
+    public SystemController(DBPoolMetrics poolMetrics, QuoteClientMetrics quoteMetrics, RollupDAO rollupDAO,
+            UserIdentityCache identityCache, WriteQueue writeQueue, TransactionProjection projection,
+            ShardRebalancer rebalancer) {
+        this.poolMetrics = poolMetrics;
+        this.quoteMetrics = quoteMetrics;
+        this.rollupDAO = rollupDAO;
+        this.identityCache = identityCache;
+        this.writeQueue = writeQueue;
+        this.projection = projection;
+        this.rebalancer = rebalancer;
+    }
+
+    /**
+     * コネクションプールの使用状況（active/idle数、待ち時間など）を取得します。
+     */
+    @GetMapping("/db-pool")
+    public DBPoolMetrics.Snapshot getDbPoolStats() {
+        return poolMetrics.snapshot();
+    }
+
+    /**
+     * 書き込みキューの状況（待ち件数、1回のコミットでまとめた件数、拒否数など）を取得します。
+     */
+    @GetMapping("/db-writer")
+    public WriteQueue.Snapshot getDbWriterStats() {
+        return writeQueue.snapshot();
+    }
+
+    /**
+     * 集計用に取引を保持しているユーザー数・使用メモリ・読み込みと追い出しの回数を取得します。
+     */
+    @GetMapping("/projection")
+    public TransactionProjection.Snapshot getProjectionStats() {
+        return projection.snapshot();
+    }
+
+    /**
+     * 為替レートの取得元ごとの成功・失敗数、サーキットブレーカーの状態と状態遷移の履歴を取得します。
+     */
+    @GetMapping("/fx-providers")
+    public QuoteClientMetrics.Snapshot getFxProviderStats() {
+        return quoteMetrics.snapshot();
+    }
+
+    /**
+     * ログイン中ユーザーの月次ロールアップと取引データの食い違いを返します（空なら整合）。
+     */
+    @GetMapping("/rollups/check")
+    public List<RollupDAO.Mismatch> checkRollups(@AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
+        return rollupDAO.findMismatches(userId);
+    }
+
+    /**
+     * ログイン中ユーザーの月次ロールアップを取引データから作り直します。
+     */
+    @PostMapping("/rollups/rebuild")
+    public ResponseEntity<Boolean> rebuildRollups(@AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
+        boolean success = rollupDAO.rebuild(userId);
+        return success ? ResponseEntity.ok(true) : ResponseEntity.internalServerError().body(false);
+    }
+
+    // ---- シャードの管理（ADMIN ロールのみ。SecurityConfig を参照） ----
+
+    /**
+     * シャードごとのユーザー数を取得します（-1 はまだディレクトリDBにデータがあるユーザー）。
+     */
+    @GetMapping("/shards")
+    public ResponseEntity<?> getShards() {
+        return shardOperation(rebalancer::userCounts);
+    }
+
+    /**
+     * ユーザーのデータを別のシャードに移します。
+     */
+    @PostMapping("/shards/move")
+    public ResponseEntity<?> moveUser(@RequestParam int userId, @RequestParam int to) {
+        return shardOperation(() -> rebalancer.moveUser(userId, to));
+    }
+
+    /**
+     * ディレクトリDBに残っているユーザーをシャードへ移し、シャード間のユーザー数をならします（1回に limit 人まで）。
+     */
+    @PostMapping("/shards/rebalance")
+    public ResponseEntity<?> rebalance(@RequestParam(defaultValue = "100") int limit) {
+        return shardOperation(() -> rebalancer.rebalance(limit));
+    }
+
+    /**
+     * シャード from のユーザーの半分をシャード to に移します。
+     */
+    @PostMapping("/shards/split")
+    public ResponseEntity<?> split(@RequestParam int from, @RequestParam int to) {
+        return shardOperation(() -> rebalancer.split(from, to));
+    }
+
+    @FunctionalInterface
+    private interface ShardOperation {
+        Object run() throws SQLException;
+    }
+
+    private static ResponseEntity<?> shardOperation(ShardOperation operation) {
+        try {
+            return ResponseEntity.ok(operation.run());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("シャードの操作エラー: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(e.getMessage());
+        }
+    }
+}
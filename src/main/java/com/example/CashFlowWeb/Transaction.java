@@ -6,7 +6,7 @@ import java.time.LocalDate;
 public class Transaction {
     private int id;
     private LocalDate date;
-    private double amount;
+    private Money amount = Money.ZERO;
     private String type;
     private int categoryId;
     private String categoryName;
@@ -19,7 +19,7 @@ public class Transaction {
 
     public Transaction() {}
 
-    public Transaction(int id, LocalDate date, double amount, String type, int categoryId, String categoryName, Integer goalId, String goalName, boolean isFuture, boolean isExtraordinary) {
+    public Transaction(int id, LocalDate date, Money amount, String type, int categoryId, String categoryName, Integer goalId, String goalName, boolean isFuture, boolean isExtraordinary) {
         this.id = id;
         this.date = date;
         this.amount = amount;
@@ -35,7 +35,7 @@ public class Transaction {
     // Getter / Setter
     public int getId() { return id; }
     public LocalDate getDate() { return date; }
-    public double getAmount() { return amount; }
+    public Money getAmount() { return amount; }
     public String getType() { return type; }
     public int getCategoryId() { return categoryId; }
     public String getCategoryName() { return categoryName; }
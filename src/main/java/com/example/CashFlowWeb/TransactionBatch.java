@@ -0,0 +1,270 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 取引の一括変更（POST /api/transactions/batch）を実行するクラス。
+ * 1件ずつの操作（create / update / delete）は、続けて並んでいるものを chunk-size 件ずつ1回の書き込みにまとめます。
+ * 条件で指定する操作（recategorize: 条件に合う取引のカテゴリ変更、deleteRange: 期間内の取引の削除）は
+ * chunk-size 件ずつの UPDATE / DELETE を繰り返し、1回ごとにコミットします。何万件あっても書き込みのロックを
+ * 長く持たず、その間に他の書き込みも進みます。そのため途中で失敗した場合、それまでの分は反映されたままです（affected に件数）。
+ * 操作はリクエストの順に実行し、結果を操作ごとに返します。
+ */
+@Component
+public class TransactionBatch {
+
+    private final TransactionDAO transactionDAO;
+    private final CategoryDAO categoryDAO;
+    private final int chunkSize;
+    private final int maxOperations;
+
+    public TransactionBatch(TransactionDAO transactionDAO, CategoryDAO categoryDAO,
+            @Value("${cashflow.batch.chunk-size:500}") int chunkSize,
+            @Value("${cashflow.batch.max-operations:1000}") int maxOperations) {
+        this.transactionDAO = transactionDAO;
+        this.categoryDAO = categoryDAO;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxOperations = maxOperations;
+    }
+
+    /**
+     * 操作1件分。op によって使う項目が違います。
+     * <ul>
+     * <li>create: transaction</li>
+     * <li>update: id, transaction</li>
+     * <li>delete: id</li>
+     * <li>recategorize: filter（対象の条件）, categoryId（変更後のカテゴリ）</li>
+     * <li>deleteRange: filter（startDate と endDate は必須）</li>
+     * </ul>
+     */
+    public static class Operation {
+        public String op;
+        public Integer id;
+        public Transaction transaction;
+        public Filter filter;
+        public Integer categoryId;
+    }
+
+    /**
+     * 条件で指定する操作の対象。指定しなかった項目は条件にしません。categoryId の 0 は未分類です。
+     */
+    public static class Filter {
+        public LocalDate startDate;
+        public LocalDate endDate;
+        public Integer categoryId;
+        public String type;
+    }
+
+    /**
+     * 操作ごとの結果。status は OK / NOT_FOUND（対象の取引がない）/ INVALID（内容が不正で実行していない）/ FAILED。
+     */
+    public static class OperationResult {
+        public final int index;
+        public final String op;
+        public String status;
+        /** 追加・変更・削除した件数 */
+        public int affected;
+        /** create で追加した取引の ID */
+        public Integer id;
+        public String message;
+
+        OperationResult(int index, String op) {
+            this.index = index;
+            this.op = op;
+        }
+
+        void set(String status, String message) {
+            this.status = status;
+            this.message = message;
+        }
+    }
+
+    /**
+     * 操作を順に実行します。
+     *
+     * @throws IllegalArgumentException 操作の数が max-operations を超える場合（1件も実行しません）
+     */
+    public List<OperationResult> execute(int userId, List<Operation> operations) {
+        if (operations.size() > maxOperations) {
+            throw new IllegalArgumentException("一度に実行できる操作は " + maxOperations + " 件までです");
+        }
+        List<Category> categories = categoryDAO.getAllCategories(userId);
+        List<OperationResult> results = new ArrayList<>(operations.size());
+        List<TransactionDAO.RowChange> changes = new ArrayList<>();
+        List<OperationResult> changeResults = new ArrayList<>();
+
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            String op = operation == null || operation.op == null ? "" : operation.op;
+            OperationResult result = new OperationResult(i, op);
+            results.add(result);
+            switch (op) {
+                case "create":
+                case "update":
+                case "delete":
+                    TransactionDAO.RowChange change = toRowChange(operation, categories, result);
+                    if (change != null) {
+                        changes.add(change);
+                        changeResults.add(result);
+                        if (changes.size() >= chunkSize) {
+                            applyRowChanges(userId, changes, changeResults);
+                            changes = new ArrayList<>();
+                            changeResults = new ArrayList<>();
+                        }
+                    }
+                    break;
+                case "recategorize":
+                case "deleteRange":
+                    // 前に並んでいる1件ずつの操作を先に実行する（順序を保つ）
+                    applyRowChanges(userId, changes, changeResults);
+                    changes = new ArrayList<>();
+                    changeResults = new ArrayList<>();
+                    runFiltered(userId, operation, categories, result);
+                    break;
+                default:
+                    result.set("INVALID", "不明な操作です: " + op);
+                    break;
+            }
+        }
+        applyRowChanges(userId, changes, changeResults);
+        return results;
+    }
+
+    /**
+     * create / update / delete を検証して RowChange にします。不正なら結果に INVALID を設定して null を返します。
+     */
+    private TransactionDAO.RowChange toRowChange(Operation operation, List<Category> categories, OperationResult result) {
+        if (!operation.op.equals("create") && (operation.id == null || operation.id <= 0)) {
+            result.set("INVALID", "id がありません");
+            return null;
+        }
+        if (operation.op.equals("delete")) {
+            return new TransactionDAO.RowChange(TransactionDAO.RowChange.Kind.DELETE, operation.id, null);
+        }
+        Transaction t = operation.transaction;
+        if (t == null || t.getDate() == null || t.getAmount() == null || t.getType() == null) {
+            result.set("INVALID", "transaction の date / amount / type は必須です");
+            return null;
+        }
+        String type = t.getType().toUpperCase(Locale.ROOT);
+        if (!type.equals("INCOME") && !type.equals("EXPENSE")) {
+            result.set("INVALID", "type は INCOME か EXPENSE です: " + t.getType());
+            return null;
+        }
+        if (t.getAmount().minor() < 0) {
+            result.set("INVALID", "amount が負です");
+            return null;
+        }
+        if (t.getCategoryId() > 0 && findCategory(categories, t.getCategoryId()) == null) {
+            result.set("INVALID", "カテゴリがありません: " + t.getCategoryId());
+            return null;
+        }
+        boolean create = operation.op.equals("create");
+        Transaction row = new Transaction(create ? 0 : operation.id, t.getDate(), t.getAmount(), type, t.getCategoryId(),
+                null, t.getGoalId(), null, t.getIsFuture(), t.getIsExtraordinary());
+        return new TransactionDAO.RowChange(
+                create ? TransactionDAO.RowChange.Kind.CREATE : TransactionDAO.RowChange.Kind.UPDATE, row.getId(), row);
+    }
+
+    private void applyRowChanges(int userId, List<TransactionDAO.RowChange> changes, List<OperationResult> results) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        try {
+            transactionDAO.applyRowChangesAsync(userId, changes).join();
+        } catch (CompletionException e) {
+            String message = errorMessage(e);
+            System.err.println("取引一括変更エラー: " + message);
+            for (OperationResult result : results) {
+                result.set("FAILED", message);
+            }
+            return;
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            TransactionDAO.RowChange change = changes.get(i);
+            OperationResult result = results.get(i);
+            result.affected = change.affected;
+            if (change.error != null) {
+                result.set("FAILED", change.error);
+            } else if (change.affected == 0) {
+                result.set("NOT_FOUND", "取引がありません: " + change.id);
+            } else {
+                result.set("OK", null);
+                if (change.kind == TransactionDAO.RowChange.Kind.CREATE) {
+                    result.id = change.createdId;
+                }
+            }
+        }
+    }
+
+    /**
+     * recategorize / deleteRange を chunk-size 件ずつ、対象がなくなるまで繰り返します。
+     */
+    private void runFiltered(int userId, Operation operation, List<Category> categories, OperationResult result) {
+        Filter filter = operation.filter != null ? operation.filter : new Filter();
+        if (filter.startDate != null && filter.endDate != null && filter.startDate.isAfter(filter.endDate)) {
+            result.set("INVALID", "startDate が endDate より後です");
+            return;
+        }
+        String type = filter.type == null || filter.type.isEmpty() ? null : filter.type.toUpperCase(Locale.ROOT);
+        Category target = null;
+        if (operation.op.equals("recategorize")) {
+            target = operation.categoryId == null ? null : findCategory(categories, operation.categoryId);
+            if (target == null) {
+                result.set("INVALID", "変更後のカテゴリがありません: " + operation.categoryId);
+                return;
+            }
+            if (type != null && !type.equals(target.getType())) {
+                result.set("INVALID", "filter の type と変更後のカテゴリの種別が違います");
+                return;
+            }
+            type = target.getType(); // 収入を支出のカテゴリにしない
+        } else if (filter.startDate == null || filter.endDate == null) {
+            result.set("INVALID", "deleteRange には filter の startDate と endDate が必要です");
+            return;
+        }
+
+        while (true) {
+            CompletableFuture<Integer> chunk = target != null
+                    ? transactionDAO.recategorizeChunkAsync(userId, filter.startDate, filter.endDate, filter.categoryId, type,
+                            target.getId(), chunkSize)
+                    : transactionDAO.deleteChunkAsync(userId, filter.startDate, filter.endDate, filter.categoryId, type, chunkSize);
+            int changed;
+            try {
+                changed = chunk.join();
+            } catch (CompletionException e) {
+                String message = errorMessage(e);
+                System.err.println("取引一括変更エラー: " + message);
+                result.set("FAILED", message + "（" + result.affected + " 件は反映済み）");
+                return;
+            }
+            result.affected += changed;
+            if (changed < chunkSize) {
+                break;
+            }
+        }
+        result.set("OK", null);
+    }
+
+    private static Category findCategory(List<Category> categories, int id) {
+        for (Category c : categories) {
+            if (c.getId() == id) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private static String errorMessage(CompletionException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        return cause.getMessage();
+    }
+}
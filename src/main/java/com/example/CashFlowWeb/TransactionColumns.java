@@ -0,0 +1,456 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 1ユーザー分の取引を列ごとのプリミティブ配列で持つ読み取りモデル（TransactionProjection が管理します）。
+ * 行は (日付, ID) の昇順に並べ、期間の絞り込みは二分探索、集計は配列を先頭から読むだけで行います。
+ * 行ごとに Transaction や LocalDate を作らないため、集計中のオブジェクト生成は結果の分だけです。
+ * 金額は DB と同じ補助単位の整数（Money.minor()）で持ち、合計を double で足し込むときの誤差が積み重ならないようにします。
+ * 読み取りも更新もこのオブジェクトで同期します。
+ */
+final class TransactionColumns {
+
+    static final byte INCOME = 1;
+    static final byte EXPENSE = 2;
+    static final byte FUTURE = 4;
+    static final byte EXTRAORDINARY = 8;
+
+    // 1行あたりのバイト数 (id, 日付, 金額, カテゴリ, 目標, フラグ) と配列・オブジェクト自体の分
+    private static final int ROW_BYTES = 4 + 4 + 8 + 4 + 4 + 1;
+    private static final int OVERHEAD_BYTES = 6 * 16 + 32;
+
+    private int size;
+    private int[] ids;
+    private int[] epochDays;
+    private long[] amounts;
+    private int[] categoryIds; // 未分類は 0
+    private int[] goalIds;     // 目標なしは 0
+    private byte[] flags;
+
+    TransactionColumns(int capacity) {
+        int n = Math.max(capacity, 16);
+        ids = new int[n];
+        epochDays = new int[n];
+        amounts = new long[n];
+        categoryIds = new int[n];
+        goalIds = new int[n];
+        flags = new byte[n];
+    }
+
+    static byte flags(String type, boolean isFuture, boolean isExtraordinary) {
+        byte f = "INCOME".equals(type) ? INCOME : "EXPENSE".equals(type) ? EXPENSE : 0;
+        if (isFuture) {
+            f |= FUTURE;
+        }
+        if (isExtraordinary) {
+            f |= EXTRAORDINARY;
+        }
+        return f;
+    }
+
+    /**
+     * epochDay を「年 × 12 + (月 - 1)」に変換します（LocalDate を作らずに月で集計するため）。
+     */
+    static int monthIndex(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 12 + month - 1;
+    }
+
+    /**
+     * monthIndex() の逆: その月の1日の epochDay を返します。
+     */
+    static int firstDayOfMonth(int monthIndex) {
+        int month = monthIndex % 12 + 1;
+        int year = monthIndex / 12 - (month <= 2 ? 1 : 0);
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yoe = year - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    static String yearMonth(int monthIndex) {
+        return YearMonth.of(monthIndex / 12, monthIndex % 12 + 1).toString();
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized long estimatedBytes() {
+        return OVERHEAD_BYTES + (long) ids.length * ROW_BYTES;
+    }
+
+    // ---- 更新（コミット済みの書き込みを反映する。同じ内容を2回反映しても結果は変わらない） ----
+
+    /**
+     * 行を追加します。同じIDの行があれば置き換えます。
+     */
+    synchronized void upsert(int id, int epochDay, long amount, byte rowFlags, int categoryId, int goalId) {
+        int existing = indexOf(id);
+        if (existing >= 0) {
+            removeAt(existing);
+        }
+        if (size == ids.length) {
+            grow();
+        }
+        int at = insertionPoint(epochDay, id);
+        int tail = size - at;
+        System.arraycopy(ids, at, ids, at + 1, tail);
+        System.arraycopy(epochDays, at, epochDays, at + 1, tail);
+        System.arraycopy(amounts, at, amounts, at + 1, tail);
+        System.arraycopy(categoryIds, at, categoryIds, at + 1, tail);
+        System.arraycopy(goalIds, at, goalIds, at + 1, tail);
+        System.arraycopy(flags, at, flags, at + 1, tail);
+        ids[at] = id;
+        epochDays[at] = epochDay;
+        amounts[at] = amount;
+        categoryIds[at] = categoryId;
+        goalIds[at] = goalId;
+        flags[at] = rowFlags;
+        size++;
+    }
+
+    /**
+     * 読み込み用: (日付, ID) の順に並んだ行を末尾に追加します。
+     */
+    synchronized void append(int id, int epochDay, long amount, byte rowFlags, int categoryId, int goalId) {
+        if (size == ids.length) {
+            grow();
+        }
+        ids[size] = id;
+        epochDays[size] = epochDay;
+        amounts[size] = amount;
+        categoryIds[size] = categoryId;
+        goalIds[size] = goalId;
+        flags[size] = rowFlags;
+        size++;
+    }
+
+    /**
+     * 既存の行を更新します（将来の予定フラグは更新の対象外なので元の値を残します）。行がなければ何もしません。
+     */
+    synchronized void update(int id, int epochDay, long amount, byte rowFlags, int categoryId, int goalId) {
+        int existing = indexOf(id);
+        if (existing >= 0) {
+            byte kept = (byte) ((rowFlags & ~FUTURE) | (flags[existing] & FUTURE));
+            upsert(id, epochDay, amount, kept, categoryId, goalId);
+        }
+    }
+
+    synchronized void remove(int id) {
+        int existing = indexOf(id);
+        if (existing >= 0) {
+            removeAt(existing);
+        }
+    }
+
+    /**
+     * 削除された目標への紐付けを外します。
+     */
+    synchronized void detachGoal(int goalId) {
+        for (int i = 0; i < size; i++) {
+            if (goalIds[i] == goalId) {
+                goalIds[i] = 0;
+            }
+        }
+    }
+
+    // ---- 集計（SummaryDAO などの SQL と同じ結果を返す） ----
+
+    /**
+     * 月ごとの収入・支出の合計を古い順に返します。取引のある月だけを含みます。
+     */
+    synchronized List<MonthlySummary> monthlySummaries(LocalDate startDate, LocalDate endDate) {
+        List<MonthlySummary> summaries = new ArrayList<>();
+        int hi = upperBound(endDate);
+        int month = Integer.MIN_VALUE;
+        int nextMonth = Integer.MIN_VALUE; // 行は日付順なので、この日を越えたときだけ月を計算し直す
+        long income = 0;
+        long expense = 0;
+        for (int i = lowerBound(startDate); i < hi; i++) {
+            if (epochDays[i] >= nextMonth) {
+                if (month != Integer.MIN_VALUE) {
+                    summaries.add(new MonthlySummary(yearMonth(month), toMajor(income), toMajor(expense)));
+                }
+                month = monthIndex(epochDays[i]);
+                nextMonth = firstDayOfMonth(month + 1);
+                income = 0;
+                expense = 0;
+            }
+            byte f = flags[i];
+            if ((f & INCOME) != 0) {
+                income += amounts[i];
+            } else if ((f & EXPENSE) != 0) {
+                expense += amounts[i];
+            }
+        }
+        if (month != Integer.MIN_VALUE) {
+            summaries.add(new MonthlySummary(yearMonth(month), toMajor(income), toMajor(expense)));
+        }
+        return summaries;
+    }
+
+    /**
+     * 種別が type の取引のカテゴリ別合計を、金額の大きい順に返します。
+     * categories にないカテゴリ（未設定を含む）は「未分類」にまとめます。
+     *
+     * @param type "INCOME" または "EXPENSE"
+     */
+    synchronized List<CategorySummary> categorySummaries(String type, LocalDate startDate, LocalDate endDate,
+            List<Category> categories) {
+        byte mask = "INCOME".equals(type) ? INCOME : EXPENSE;
+        int[] keys = new int[categories.size()];
+        for (int k = 0; k < keys.length; k++) {
+            keys[k] = categories.get(k).getId();
+        }
+        // 最後の要素が未分類
+        long[] totals = new long[keys.length + 1];
+        boolean[] seen = new boolean[keys.length + 1];
+        int hi = upperBound(endDate);
+        for (int i = lowerBound(startDate); i < hi; i++) {
+            if ((flags[i] & mask) == 0) {
+                continue;
+            }
+            int slot = slotOf(keys, categoryIds[i]);
+            totals[slot] += amounts[i];
+            seen[slot] = true;
+        }
+
+        List<CategorySummary> summaries = new ArrayList<>();
+        for (int k = 0; k < totals.length; k++) {
+            if (seen[k]) {
+                String name = k < keys.length ? categories.get(k).getName() : "未分類";
+                summaries.add(new CategorySummary(name, toMajor(totals[k])));
+            }
+        }
+        summaries.sort((a, b) -> Double.compare(b.getTotalAmount(), a.getTotalAmount()));
+        return summaries;
+    }
+
+    /**
+     * 資産予測用の統計を返します。
+     *
+     * @param excludeIrregular true の場合、臨時収支・将来の予定を合計・月数・最初と最後の日付から除外する
+     */
+    synchronized CashFlowStats cashFlowStats(boolean excludeIrregular) {
+        long income = 0;
+        long expense = 0;
+        int monthCount = 0;
+        int firstRow = -1;
+        int lastRow = -1;
+        int nextMonth = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            byte f = flags[i];
+            if (excludeIrregular && (f & (FUTURE | EXTRAORDINARY)) != 0) {
+                continue;
+            }
+            if (firstRow < 0) {
+                firstRow = i;
+            }
+            lastRow = i;
+            if (epochDays[i] >= nextMonth) {
+                monthCount++;
+                nextMonth = firstDayOfMonth(monthIndex(epochDays[i]) + 1);
+            }
+            if ((f & INCOME) != 0) {
+                income += amounts[i];
+            } else if ((f & EXPENSE) != 0) {
+                expense += amounts[i];
+            }
+        }
+        if (firstRow < 0) {
+            return new CashFlowStats(0, 0, null, null, 0);
+        }
+        return new CashFlowStats(toMajor(income), toMajor(expense),
+                LocalDate.ofEpochDay(epochDays[firstRow]), LocalDate.ofEpochDay(epochDays[lastRow]), monthCount);
+    }
+
+    /**
+     * 最初の月から最後の月までの月次純収支（収入 − 収入以外）を古い順に返します。取引のない月は 0 です。
+     */
+    synchronized double[] monthlyNetFlows(boolean excludeIrregular) {
+        int firstRow = nextRow(0, excludeIrregular);
+        if (firstRow == size) {
+            return new double[0];
+        }
+        int lastRow = firstRow;
+        for (int i = size - 1; i > firstRow; i--) {
+            if (!excludeIrregular || (flags[i] & (FUTURE | EXTRAORDINARY)) == 0) {
+                lastRow = i;
+                break;
+            }
+        }
+        int first = monthIndex(epochDays[firstRow]);
+        long[] nets = new long[monthIndex(epochDays[lastRow]) - first + 1];
+        int slot = -1;
+        int nextMonth = Integer.MIN_VALUE;
+        for (int i = firstRow; i <= lastRow; i = nextRow(i + 1, excludeIrregular)) {
+            if (epochDays[i] >= nextMonth) {
+                int m = monthIndex(epochDays[i]);
+                slot = m - first;
+                nextMonth = firstDayOfMonth(m + 1);
+            }
+            nets[slot] += (flags[i] & INCOME) != 0 ? amounts[i] : -amounts[i];
+        }
+        double[] flows = new double[nets.length];
+        for (int k = 0; k < nets.length; k++) {
+            flows[k] = toMajor(nets[k]);
+        }
+        return flows;
+    }
+
+    /**
+     * 目標ごとの積立額（紐付いた取引の金額の合計、補助単位）を goalIds と同じ順で返します。
+     */
+    synchronized long[] goalTotals(int[] goalIdKeys) {
+        long[] totals = new long[goalIdKeys.length];
+        for (int i = 0; i < size; i++) {
+            int goalId = goalIds[i];
+            if (goalId == 0) {
+                continue;
+            }
+            for (int k = 0; k < goalIdKeys.length; k++) {
+                if (goalIdKeys[k] == goalId) {
+                    totals[k] += amounts[i];
+                    break;
+                }
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * 指定月の支出のカテゴリ別合計（補助単位）を categoryIds と同じ順で返します（予算の実績用）。
+     */
+    synchronized long[] expenseTotals(YearMonth month, int[] categoryIdKeys) {
+        long[] totals = new long[categoryIdKeys.length];
+        int hi = upperBound(month.atEndOfMonth());
+        for (int i = lowerBound(month.atDay(1)); i < hi; i++) {
+            if ((flags[i] & EXPENSE) == 0) {
+                continue;
+            }
+            int categoryId = categoryIds[i];
+            for (int k = 0; k < categoryIdKeys.length; k++) {
+                if (categoryIdKeys[k] == categoryId) {
+                    totals[k] += amounts[i];
+                    break;
+                }
+            }
+        }
+        return totals;
+    }
+
+    // ---- 内部処理 ----
+
+    private static double toMajor(long minor) {
+        return Money.toMajor(minor);
+    }
+
+    /**
+     * from 以降で集計の対象になる最初の行（なければ size）。
+     */
+    private int nextRow(int from, boolean excludeIrregular) {
+        int i = from;
+        while (i < size && excludeIrregular && (flags[i] & (FUTURE | EXTRAORDINARY)) != 0) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int slotOf(int[] keys, int key) {
+        for (int k = 0; k < keys.length; k++) {
+            if (keys[k] == key) {
+                return k;
+            }
+        }
+        return keys.length;
+    }
+
+    private int indexOf(int id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int at) {
+        int tail = size - at - 1;
+        System.arraycopy(ids, at + 1, ids, at, tail);
+        System.arraycopy(epochDays, at + 1, epochDays, at, tail);
+        System.arraycopy(amounts, at + 1, amounts, at, tail);
+        System.arraycopy(categoryIds, at + 1, categoryIds, at, tail);
+        System.arraycopy(goalIds, at + 1, goalIds, at, tail);
+        System.arraycopy(flags, at + 1, flags, at, tail);
+        size--;
+    }
+
+    private void grow() {
+        int n = ids.length * 2;
+        ids = Arrays.copyOf(ids, n);
+        epochDays = Arrays.copyOf(epochDays, n);
+        amounts = Arrays.copyOf(amounts, n);
+        categoryIds = Arrays.copyOf(categoryIds, n);
+        goalIds = Arrays.copyOf(goalIds, n);
+        flags = Arrays.copyOf(flags, n);
+    }
+
+    /**
+     * (epochDay, id) の順で挿入する位置。取引はほとんどが末尾（最近の日付）に追加されます。
+     */
+    private int insertionPoint(int epochDay, int id) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (epochDays[mid] < epochDay || (epochDays[mid] == epochDay && ids[mid] < id)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * startDate 以降の最初の行（null なら先頭）。
+     */
+    private int lowerBound(LocalDate startDate) {
+        return startDate == null ? 0 : firstDayAtLeast((int) startDate.toEpochDay());
+    }
+
+    /**
+     * endDate より後の最初の行（null なら末尾）。
+     */
+    private int upperBound(LocalDate endDate) {
+        return endDate == null ? size : firstDayAtLeast((int) endDate.toEpochDay() + 1);
+    }
+
+    private int firstDayAtLeast(int epochDay) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (epochDays[mid] < epochDay) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
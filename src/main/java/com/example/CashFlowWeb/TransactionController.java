@@ -2,206 +2,350 @@ package com.example.CashFlowWeb;
 
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/transactions")
 public class TransactionController {
 
-    private final TransactionDAO transactionDAO = new TransactionDAO();
-    private final CategoryDAO categoryDAO = new CategoryDAO();
-    private final AssetDAO assetDAO = new AssetDAO();
-    private final UserDAO userDAO = new UserDAO();
-    private final GoalDAO goalDAO = new GoalDAO();
-
-    public TransactionController() {
-        // DB初期化
-        DBManager.initializeDatabase();
+    // 一覧APIのページサイズ (limit 未指定時 / 上限)
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    // 資産予測の最大月数 (10年)
+    static final int MAX_PREDICT_MONTHS = MonteCarloForecaster.MAX_MONTHS;
+    // モンテカルロ予測のパス数 (paths 未指定時)
+    private static final int DEFAULT_FORECAST_PATHS = 20_000;
+
+    private final TransactionDAO transactionDAO;
+    private final CategoryDAO categoryDAO;
+    private final AssetDAO assetDAO;
+    private final UserIdentityCache identityCache;
+    private final GoalDAO goalDAO;
+    private final SummaryDAO summaryDAO;
+    private final MonteCarloForecaster forecaster;
+    private final TransactionImporter importer;
+    private final TransactionBatch batch;
+
+    public TransactionController(TransactionDAO transactionDAO, CategoryDAO categoryDAO, AssetDAO assetDAO,
+            UserIdentityCache identityCache, GoalDAO goalDAO, SummaryDAO summaryDAO, MonteCarloForecaster forecaster,
+            TransactionImporter importer, TransactionBatch batch) {
+        this.transactionDAO = transactionDAO;
+        this.categoryDAO = categoryDAO;
+        this.assetDAO = assetDAO;
+        this.identityCache = identityCache;
+        this.goalDAO = goalDAO;
+        this.summaryDAO = summaryDAO;
+        this.forecaster = forecaster;
+        this.importer = importer;
+        this.batch = batch;
     }
 
     /**
      * 月次収支の集計データを取得します。
+     * 集計はSQL側で行うため、取引件数にかかわらず返すのは月数分の行だけです。
      */
     @GetMapping("/monthly-summary")
-    public List<MonthlySummary> getMonthlySummary(@AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
-        List<Transaction> transactions = transactionDAO.getAllTransactions(user.getId());
-
-        Map<String, double[]> aggMap = new TreeMap<>(); 
-
-        for (Transaction t : transactions) {
-            String month = t.getDate().toString().substring(0, 7);
-            aggMap.putIfAbsent(month, new double[]{0.0, 0.0});
-
-            if ("INCOME".equals(t.getType())) {
-                aggMap.get(month)[0] += t.getAmount();
-            } else if ("EXPENSE".equals(t.getType())) {
-                aggMap.get(month)[1] += t.getAmount();
-            }
-        }
-
-        List<MonthlySummary> summaryList = new ArrayList<>();
-        for (Map.Entry<String, double[]> entry : aggMap.entrySet()) {
-            summaryList.add(new MonthlySummary(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
-        }
-        return summaryList;
+    public List<MonthlySummary> getMonthlySummary(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
+        return summaryDAO.getMonthlySummaries(userId, startDate, endDate);
     }
 
     /**
      * AI資産予測シミュレーションと目標達成診断を行います。
      * ★目標未達時に具体的な遅延月数を計算し、警告を出します。
+     * 収支の統計は集計クエリ1回で取得するため、取引件数が増えても応答時間は変わりません。
+     *
+     * @param monthsToPredict  予測する月数 (1〜MAX_PREDICT_MONTHS)
+     * @param excludeIrregular true の場合、臨時収支・将来の予定を平均月次損益から除外する
      */
     @GetMapping("/predict")
-    public PredictionResult predictAssetGrowth(@AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
-        int userId = user.getId();
+    public PredictionResult predictAssetGrowth(
+            @RequestParam(defaultValue = "6") int monthsToPredict,
+            @RequestParam(defaultValue = "true") boolean excludeIrregular,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
+        int months = Math.max(1, Math.min(monthsToPredict, MAX_PREDICT_MONTHS));
 
         // 1. 平均月次損益の計算
-        List<Transaction> transactions = transactionDAO.getAllTransactions(userId);
-        double averageMonthlyProfit = 0;
-
-        if (!transactions.isEmpty()) {
-            double totalIncome = transactions.stream()
-                    .filter(t -> "INCOME".equals(t.getType()))
-                    .mapToDouble(Transaction::getAmount).sum();
-            double totalExpense = transactions.stream()
-                    .filter(t -> "EXPENSE".equals(t.getType()))
-                    .mapToDouble(Transaction::getAmount).sum();
-            double totalProfit = totalIncome - totalExpense;
-
-            long months = 1;
-            if (transactions.size() > 1) {
-                LocalDate oldest = transactions.stream().map(Transaction::getDate).min(LocalDate::compareTo).orElse(LocalDate.now());
-                LocalDate newest = transactions.stream().map(Transaction::getDate).max(LocalDate::compareTo).orElse(LocalDate.now());
-                
-                months = ChronoUnit.MONTHS.between(oldest, newest);
-                if (months < 1) months = 1;
-            }
-            averageMonthlyProfit = totalProfit / months;
-        }
-
+        CashFlowStats stats = summaryDAO.getCashFlowStats(userId, excludeIrregular);
         // 2. 現在の資産総額を取得
         List<Asset> assets = assetDAO.getAllAssets(userId);
+        List<Goal> goals = goalDAO.getAllGoals(userId);
+        return buildPrediction(stats, assets, goals, months, LocalDate.now());
+    }
+
+    /**
+     * 収支の統計・資産・目標から予測と目標達成診断を組み立てます（DBにはアクセスしません）。
+     * /api/dashboard も同じ計算を使います。
+     */
+    static PredictionResult buildPrediction(CashFlowStats stats, List<Asset> assets, List<Goal> goals,
+            int months, LocalDate today) {
+        double averageMonthlyProfit = stats.getAverageMonthlyProfit();
         double currentTotalAssets = assets.stream().mapToDouble(Asset::getCurrentValue).sum();
 
-        // 3. 将来予測データの作成（6ヶ月分）
-        List<Double> projectionPoints = new ArrayList<>();
+        // 3. 将来予測データの作成（指定された月数分）
+        List<Double> projectionPoints = new ArrayList<>(months);
         double projectedAmount = currentTotalAssets;
-        for (int i = 0; i < 6; i++) {
+        for (int i = 0; i < months; i++) {
             projectedAmount += averageMonthlyProfit;
             projectionPoints.add(projectedAmount);
         }
 
-        // 4. 目標との比較・診断レポート生成
-        List<Goal> goals = goalDAO.getAllGoals(userId);
+        // 4. すべての目標との比較・診断レポート生成（目標は期日の早い順）
+        List<PredictionResult.GoalAssessment> assessments = new ArrayList<>();
+        for (Goal goal : goals) {
+            if (goal.getTargetDate() == null || goal.getTargetDate().isEmpty()) {
+                continue;
+            }
+            assessments.add(assessGoal(goal, today, currentTotalAssets, averageMonthlyProfit));
+        }
 
         String feedback;
         boolean isAchievable = false;
         double shortfallAmount = 0;
         int delayMonths = 0;
 
-        if (goals.isEmpty()) {
+        if (assessments.isEmpty()) {
             feedback = "目標が設定されていません。目標管理ページでゴールを設定すると、AIが達成可能性を診断します。";
         } else {
-            Goal targetGoal = goals.get(0);
-            
-            double targetAmount = targetGoal.getTargetAmount();
-            LocalDate targetDate = LocalDate.parse(targetGoal.getTargetDate());
-            LocalDate today = LocalDate.now();
-
-            long monthsUntilTarget = ChronoUnit.MONTHS.between(today, targetDate);
-            if (monthsUntilTarget <= 0) monthsUntilTarget = 1;
-
-            double futureValueAtTarget = currentTotalAssets + (averageMonthlyProfit * monthsUntilTarget);
-
-            if (futureValueAtTarget >= targetAmount) {
-                // 達成可能
+            // 全体の判定は、期日が最も早い未達成の目標を基準にする
+            PredictionResult.GoalAssessment firstMiss = assessments.stream()
+                    .filter(a -> !a.getIsAchievable())
+                    .findFirst().orElse(null);
+            if (firstMiss == null) {
                 isAchievable = true;
-                feedback = "順調です。このペースなら目標「" + targetGoal.getName() + "」を期日までに達成できる見込みです。";
+                feedback = assessments.size() == 1
+                        ? assessments.get(0).getFeedback()
+                        : "順調です。このペースなら" + assessments.size() + "件の目標すべてを期日までに達成できる見込みです。";
             } else {
-                // 達成困難（赤警告用ロジック）
-                isAchievable = false;
-                shortfallAmount = targetAmount - futureValueAtTarget;
-
-                // 遅延月数の計算
-                if (averageMonthlyProfit > 0) {
-                    double totalMonthsNeeded = (targetAmount - currentTotalAssets) / averageMonthlyProfit;
-                    delayMonths = (int) Math.ceil(totalMonthsNeeded - monthsUntilTarget);
-                } else {
-                    delayMonths = 999; // 利益が出ていないため達成不能
-                }
-                
-                String moneyFormat = String.format("%,.0f", shortfallAmount);
-                String delayMsg;
-                if (delayMonths > 900) {
-                     delayMsg = "現在の収支状況では達成困難です。";
-                } else {
-                     delayMsg = "約" + delayMonths + "ヶ月の遅れが出る見込みです。";
+                shortfallAmount = firstMiss.getShortfallAmount();
+                delayMonths = firstMiss.getDelayMonths();
+                long missCount = assessments.stream().filter(a -> !a.getIsAchievable()).count();
+                feedback = firstMiss.getFeedback();
+                if (missCount > 1) {
+                    feedback += "（ほか" + (missCount - 1) + "件の目標も未達の見込みです）";
                 }
-
-                feedback = "目標「" + targetGoal.getName() + "」に対し、" + delayMsg + 
-                           "（不足額: " + moneyFormat + "円）" +
-                           " 収支を見直してください。";
             }
         }
 
         return new PredictionResult(
             averageMonthlyProfit,
-            6, 
+            months,
             feedback,
             currentTotalAssets,
             projectionPoints,
             shortfallAmount,
             delayMonths,
-            isAchievable
+            isAchievable,
+            assessments
         );
     }
 
     /**
-     * すべての取引履歴を取得します。
+     * 過去の月次純収支をブートストラップしたモンテカルロ法で資産推移を予測します。
+     * 月ごとの P10/P50/P90 と、各目標を期日までに達成できる確率を返します。
+     * 期日が予測期間より先の目標があれば、その月までシミュレーションします（最大 MAX_PREDICT_MONTHS）。
+     * 期日を過ぎた目標と、MAX_PREDICT_MONTHS より先の目標は確率を null で返します。
+     *
+     * @param seed 乱数のシード (未指定ならユーザーごとに固定し、再読み込みで結果が揺れないようにする)
      */
-    @GetMapping
-    public List<Transaction> getTransactions(@AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
-        return transactionDAO.getAllTransactions(user.getId());
+    @GetMapping("/forecast")
+    public ResponseEntity<ForecastResult> forecastAssetGrowth(
+            @RequestParam(defaultValue = "24") int monthsToPredict,
+            @RequestParam(defaultValue = "" + DEFAULT_FORECAST_PATHS) int paths,
+            @RequestParam(defaultValue = "true") boolean excludeIrregular,
+            @RequestParam(required = false) Long seed,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        if (paths < 1 || paths > MonteCarloForecaster.MAX_PATHS) {
+            return ResponseEntity.badRequest().build();
+        }
+        int userId = identityCache.userId(userDetails);
+        int months = Math.max(1, Math.min(monthsToPredict, MAX_PREDICT_MONTHS));
+
+        double currentTotalAssets = assetDAO.getAllAssets(userId).stream().mapToDouble(Asset::getCurrentValue).sum();
+        double[] flows = summaryDAO.getMonthlyNetFlows(userId, excludeIrregular);
+
+        // 目標の期日までの月数を求める（期日が予測期間より先なら、その月までシミュレーションする）
+        List<Goal> goals = new ArrayList<>();
+        List<Goal> simulated = new ArrayList<>();
+        List<Integer> simulatedMonths = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        for (Goal goal : goalDAO.getAllGoals(userId)) {
+            if (goal.getTargetDate() != null && !goal.getTargetDate().isEmpty()) {
+                goals.add(goal);
+                int goalMonth = goalMonth(today, LocalDate.parse(goal.getTargetDate()));
+                if (goalMonth > 0) {
+                    simulated.add(goal);
+                    simulatedMonths.add(goalMonth);
+                }
+            }
+        }
+        int[] goalMonths = new int[simulated.size()];
+        double[] goalTargets = new double[simulated.size()];
+        for (int i = 0; i < simulated.size(); i++) {
+            goalMonths[i] = simulatedMonths.get(i);
+            goalTargets[i] = simulated.get(i).getTargetAmount().toDouble();
+        }
+
+        MonteCarloForecaster.Simulation simulation = forecaster.simulate(
+                currentTotalAssets, flows, months, paths, seed != null ? seed : userId, goalMonths, goalTargets);
+
+        double[] goalProbabilities = simulation.goalProbabilities();
+        List<ForecastResult.GoalProbability> probabilities = new ArrayList<>();
+        int next = 0;
+        for (Goal goal : goals) {
+            Double probability = null; // 期日を過ぎた目標・予測できる期間より先の目標
+            if (next < simulated.size() && simulated.get(next) == goal) {
+                probability = goalProbabilities[next++];
+            }
+            probabilities.add(new ForecastResult.GoalProbability(goal.getId(), goal.getName(), goal.getTargetDate(),
+                    probability));
+        }
+        double[][] bands = simulation.percentileBands();
+
+        return ResponseEntity.ok(new ForecastResult(months, paths, currentTotalAssets,
+                bands[0], bands[1], bands[2], probabilities));
     }
 
     /**
-     * カテゴリ別の支出集計を取得します（円グラフ用）。
+     * 目標を評価する予測の月（1〜MAX_PREDICT_MONTHS）を返します。1か月未満先の期日は1か月後で評価します。
+     * 期日を過ぎている、または MAX_PREDICT_MONTHS より先の場合は 0 を返します。
      */
-    @GetMapping("/category-summary")
-    public List<CategorySummary> getCategorySummary(@AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
-        List<Transaction> transactions = transactionDAO.getAllTransactions(user.getId());
-
-        Map<String, Double> summaryMap = transactions.stream()
-                .filter(t -> "EXPENSE".equals(t.getType()))
-                .collect(Collectors.groupingBy(
-                        Transaction::getCategoryName,
-                        Collectors.summingDouble(Transaction::getAmount)
-                ));
-
-        List<CategorySummary> result = new ArrayList<>();
-        for (Map.Entry<String, Double> entry : summaryMap.entrySet()) {
-            result.add(new CategorySummary(entry.getKey(), entry.getValue()));
+    static int goalMonth(LocalDate today, LocalDate targetDate) {
+        if (targetDate.isBefore(today)) {
+            return 0;
         }
-        return result;
+        long untilTarget = ChronoUnit.MONTHS.between(today, targetDate);
+        return untilTarget > MAX_PREDICT_MONTHS ? 0 : (int) Math.max(1, untilTarget);
+    }
+
+    /**
+     * 1つの目標について、現在の資産と平均月次損益から期日までの達成可否を診断します。
+     */
+    private static PredictionResult.GoalAssessment assessGoal(Goal goal, LocalDate today,
+            double currentTotalAssets, double averageMonthlyProfit) {
+        double targetAmount = goal.getTargetAmount().toDouble();
+        LocalDate targetDate = LocalDate.parse(goal.getTargetDate());
+
+        long monthsUntilTarget = ChronoUnit.MONTHS.between(today, targetDate);
+        if (monthsUntilTarget <= 0) monthsUntilTarget = 1;
+
+        double futureValueAtTarget = currentTotalAssets + (averageMonthlyProfit * monthsUntilTarget);
+
+        if (futureValueAtTarget >= targetAmount) {
+            // 達成可能
+            String feedback = "順調です。このペースなら目標「" + goal.getName() + "」を期日までに達成できる見込みです。";
+            return new PredictionResult.GoalAssessment(goal.getId(), goal.getName(), true, 0, 0, feedback);
+        }
+
+        // 達成困難（赤警告用ロジック）
+        double shortfallAmount = targetAmount - futureValueAtTarget;
+
+        // 遅延月数の計算
+        int delayMonths;
+        if (averageMonthlyProfit > 0) {
+            double totalMonthsNeeded = (targetAmount - currentTotalAssets) / averageMonthlyProfit;
+            delayMonths = (int) Math.ceil(totalMonthsNeeded - monthsUntilTarget);
+        } else {
+            delayMonths = 999; // 利益が出ていないため達成不能
+        }
+
+        String moneyFormat = String.format("%,.0f", shortfallAmount);
+        String delayMsg;
+        if (delayMonths > 900) {
+             delayMsg = "現在の収支状況では達成困難です。";
+        } else {
+             delayMsg = "約" + delayMonths + "ヶ月の遅れが出る見込みです。";
+        }
+
+        String feedback = "目標「" + goal.getName() + "」に対し、" + delayMsg +
+                          "（不足額: " + moneyFormat + "円）" +
+                          " 収支を見直してください。";
+        return new PredictionResult.GoalAssessment(goal.getId(), goal.getName(), false, shortfallAmount, delayMonths, feedback);
+    }
+
+    /**
+     * 取引履歴を新しい順にページ単位で取得します。
+     * 次のページがある場合は X-Next-Cursor ヘッダーにカーソルを返すので、
+     * 同じ絞り込み条件のまま after パラメータに渡してください。
+     */
+    @GetMapping
+    public ResponseEntity<List<Transaction>> getTransactions(
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) Integer categoryId,
+            @RequestParam(required = false) String type,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
+
+        TransactionPage.Cursor cursor = null;
+        if (after != null && !after.isEmpty()) {
+            try {
+                cursor = TransactionPage.Cursor.parse(after);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        String normalizedType = (type == null || type.isEmpty()) ? null : type.toUpperCase();
+
+        TransactionPage page = transactionDAO.getTransactionPage(
+                userId, startDate, endDate, categoryId, normalizedType, cursor, pageSize);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor().toString());
+        }
+        return response.body(page.getItems());
+    }
+
+    /**
+     * 現金残高（全期間の収入合計 - 支出合計）を取得します。
+     */
+    @GetMapping("/balance")
+    public double getCashBalance(@AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
+        return transactionDAO.getCashBalance(userId);
+    }
+
+    /**
+     * カテゴリ別の集計を取得します（円グラフ用）。
+     * type を省略した場合は支出を集計します。
+     */
+    @GetMapping({"/category-summary", "/summary"})
+    public List<CategorySummary> getCategorySummary(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "EXPENSE") String type,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
+        return summaryDAO.getCategorySummaries(userId, type.toUpperCase(), startDate, endDate);
     }
 
     /**
      * 新しい取引を追加します。
      */
     @PostMapping
-    public ResponseEntity<Boolean> addTransaction(@RequestBody Transaction t, @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
-        boolean success = transactionDAO.addTransaction(
-                user.getId(),
+    public CompletableFuture<ResponseEntity<Boolean>> addTransaction(@RequestBody Transaction t, @AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
+        return transactionDAO.addTransactionAsync(
+                userId,
                 t.getDate(),
                 t.getAmount(),
                 t.getType(),
@@ -209,16 +353,59 @@ public class TransactionController {
                 t.getGoalId(),
                 t.getIsFuture(),
                 t.getIsExtraordinary()
-        );
-        return success ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false);
+        ).thenApply(success -> success ? ResponseEntity.ok(true) : ResponseEntity.badRequest().body(false));
+    }
+
+    /**
+     * CSV / OFX ファイル（リクエストボディ）から取引をまとめて取り込みます。
+     * 読めない行は取り込まずに、行番号とエラーを結果に含めます（残りの行は取り込む）。
+     * 形式や文字コードが不正、または CSV のヘッダーに必要な列がない場合は 400 で、1件も取り込みません。
+     *
+     * @param format  csv / ofx
+     * @param charset ファイルの文字コード（銀行の CSV は Shift_JIS が多い）
+     */
+    @PostMapping("/import")
+    public ResponseEntity<TransactionImporter.Result> importTransactions(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "UTF-8") String charset,
+            InputStream body,
+            @AuthenticationPrincipal UserDetails userDetails) throws IOException {
+        int userId = identityCache.userId(userDetails);
+        try {
+            if (!Charset.isSupported(charset)) {
+                throw new IllegalArgumentException("未対応の文字コードです: " + charset);
+            }
+            return ResponseEntity.ok(importer.importTransactions(userId, format, body, Charset.forName(charset)));
+        } catch (IllegalArgumentException e) {
+            TransactionImporter.Result result = new TransactionImporter.Result();
+            result.errors.add(new TransactionImporter.RowError(1, e.getMessage()));
+            return ResponseEntity.badRequest().body(result);
+        }
+    }
+
+    /**
+     * 取引をまとめて追加・更新・削除します（操作の形式は TransactionBatch.Operation）。
+     * 条件に合う取引のカテゴリ変更や期間内の削除は、件数が多くても一定件数ずつコミットしながら実行します。
+     * 一部の操作が失敗しても 200 で、操作ごとの結果（status）を返します。操作の数が上限を超える場合は 400 です。
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<List<TransactionBatch.OperationResult>> batchUpdate(
+            @RequestBody List<TransactionBatch.Operation> operations,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
+        try {
+            return ResponseEntity.ok(batch.execute(userId, operations));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
      * 取引を更新します。
      */
     @PutMapping("/{id}")
-    public ResponseEntity<Void> updateTransaction(@PathVariable int id, @RequestBody Transaction t, @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
+    public CompletableFuture<ResponseEntity<Void>> updateTransaction(@PathVariable int id, @RequestBody Transaction t, @AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
         
         Transaction transactionToUpdate = new Transaction(
             id,
@@ -233,17 +420,17 @@ public class TransactionController {
             t.getIsExtraordinary()
         );
 
-        boolean success = transactionDAO.updateTransaction(transactionToUpdate, user.getId());
-        return success ? ResponseEntity.ok().build() : ResponseEntity.badRequest().build();
+        return transactionDAO.updateTransactionAsync(transactionToUpdate, userId)
+                .thenApply(success -> success ? ResponseEntity.ok().build() : ResponseEntity.badRequest().build());
     }
 
     /**
      * 取引を削除します。
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteTransaction(@PathVariable int id, @AuthenticationPrincipal UserDetails userDetails) {
-        User user = userDAO.findByUsername(userDetails.getUsername());
-        boolean success = transactionDAO.deleteTransaction(id, user.getId());
-        return success ? ResponseEntity.ok().build() : ResponseEntity.badRequest().build();
+    public CompletableFuture<ResponseEntity<Void>> deleteTransaction(@PathVariable int id, @AuthenticationPrincipal UserDetails userDetails) {
+        int userId = identityCache.userId(userDetails);
+        return transactionDAO.deleteTransactionAsync(id, userId)
+                .thenApply(success -> success ? ResponseEntity.ok().build() : ResponseEntity.badRequest().build());
     }
 }
@@ -3,64 +3,187 @@ package com.example.CashFlowWeb;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+@Repository
 public class TransactionDAO {
+
+    // findExistingFingerprints の1回の IN に入れる件数（SQLite のパラメータ数の上限より十分小さく）
+    private static final int FINGERPRINT_LOOKUP_BATCH = 500;
+
+    private final DataSource dataSource;
+    private final DataVersions versions;
+    private final WriteQueue writeQueue;
+    private final TransactionProjection projection;
+
+    public TransactionDAO(DataSource dataSource) {
+        this(dataSource, new DataVersions(), WriteQueue.direct(dataSource));
+    }
+
+    public TransactionDAO(DataSource dataSource, DataVersions versions, WriteQueue writeQueue) {
+        this(dataSource, versions, writeQueue, TransactionProjection.disabled());
+    }
+
+    /**
+     * 書き込みは writeQueue の書き込み専用スレッドでまとめてコミットされ、コミット後に projection にも反映されます。
+     */
+    @Autowired
+    public TransactionDAO(DataSource dataSource, DataVersions versions, WriteQueue writeQueue, TransactionProjection projection) {
+        this.dataSource = dataSource;
+        this.versions = versions;
+        this.writeQueue = writeQueue;
+        this.projection = projection;
+    }
     
-    public boolean addTransaction(int userId, LocalDate date, double amount, String type, int categoryId, Integer goalId, boolean isFuture, boolean isExtraordinary) {
-        String sql = "INSERT INTO transactions(user_id, date, amount, type, category_id, goal_id, is_future, is_extraordinary) VALUES(?, ?, ?, ?, ?, ?, ?, ?)";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    public boolean addTransaction(int userId, LocalDate date, Money amount, String type, int categoryId, Integer goalId, boolean isFuture, boolean isExtraordinary) {
+        return WriteQueue.await(addTransactionAsync(userId, date, amount, type, categoryId, goalId, isFuture, isExtraordinary));
+    }
 
-            pstmt.setInt(1, userId);
-            pstmt.setString(2, date.toString());
-            pstmt.setDouble(3, amount);
-            pstmt.setString(4, type.toUpperCase());
-            pstmt.setInt(5, categoryId);
-            
-            if (goalId != null && goalId > 0) {
-                pstmt.setInt(6, goalId);
-            } else {
-                pstmt.setNull(6, Types.INTEGER);
+    /**
+     * 取引を追加します。返した Future はコミット後に完了します（書き込みが混み合っている場合は QueueFullException）。
+     */
+    public CompletableFuture<Boolean> addTransactionAsync(int userId, LocalDate date, Money amount, String type, int categoryId, Integer goalId, boolean isFuture, boolean isExtraordinary) {
+        int[] newId = new int[1];
+        return writeQueue.submitUpdate(userId, "データ登録エラー", conn -> {
+            newId[0] = insertRow(conn, userId, date, amount, type, categoryId, goalId, isFuture, isExtraordinary);
+            return true;
+        }).thenApply(added -> {
+            if (added) {
+                projection.added(userId, newId[0], date, amount, type.toUpperCase(), categoryId, goalId, isFuture, isExtraordinary);
             }
+            return versions.bumpIf(userId, added);
+        });
+    }
 
-            pstmt.setBoolean(7, isFuture);
-            pstmt.setBoolean(8, isExtraordinary); 
-            
-            pstmt.executeUpdate();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("データ登録エラー: " + e.getMessage());
-            return false;
+    /**
+     * ファイルから取り込んだ取引をまとめて追加します（id・カテゴリ名・目標名は使いません）。
+     * 1つの PreparedStatement に addBatch して executeBatch するため、1件ずつ INSERT するより大幅に速く、
+     * 書き込みキューの1件として同じトランザクション（セーブポイント）で実行されます。
+     * fingerprints[i] は rows[i] の指紋で、同じ指紋の取引がすでにある行は追加せずに飛ばします（一意インデックスで判定）。
+     * 返した Future は実際に追加した件数で完了します。SQL の失敗は SQLException で例外完了します。
+     */
+    public CompletableFuture<Integer> addTransactionsAsync(int userId, List<Transaction> rows, long[] fingerprints) {
+        String sql = "INSERT INTO transactions(id, user_id, epoch_day, year_month, amount_minor, type, category_id, goal_id, is_future, is_extraordinary, fingerprint) " +
+                     "VALUES(" + ShardedDataSource.nextId("transactions") + ", ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                     "ON CONFLICT(user_id, fingerprint) WHERE fingerprint IS NOT NULL DO NOTHING";
+        return writeQueue.submit(userId, conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < rows.size(); i++) {
+                    Transaction t = rows.get(i);
+                    pstmt.setInt(1, userId);
+                    pstmt.setLong(2, t.getDate().toEpochDay());
+                    pstmt.setInt(3, DateColumns.yearMonth(t.getDate()));
+                    pstmt.setLong(4, t.getAmount().minor());
+                    pstmt.setString(5, t.getType());
+                    if (t.getCategoryId() > 0) {
+                        pstmt.setInt(6, t.getCategoryId());
+                    } else {
+                        pstmt.setNull(6, Types.INTEGER);
+                    }
+                    if (t.getGoalId() != null && t.getGoalId() > 0) {
+                        pstmt.setInt(7, t.getGoalId());
+                    } else {
+                        pstmt.setNull(7, Types.INTEGER);
+                    }
+                    pstmt.setBoolean(8, t.getIsFuture());
+                    pstmt.setBoolean(9, t.getIsExtraordinary());
+                    pstmt.setLong(10, fingerprints[i]);
+                    pstmt.addBatch();
+                }
+                int added = 0;
+                for (int count : pstmt.executeBatch()) {
+                    added += count; // 重複で飛ばした行は 0
+                }
+                return added;
+            }
+        }).thenApply(added -> {
+            // 件数が多いため1件ずつ反映せず、次の集計で読み込み直す
+            if (added > 0) {
+                projection.invalidate(userId);
+                versions.bump(userId);
+            }
+            return added;
+        });
+    }
+
+    /**
+     * ユーザーの取り込み済みの指紋をすべて入れた Bloom フィルタを作ります。
+     * 指紋は一意インデックスだけから読むため、取引テーブル本体は読みません。
+     */
+    public FingerprintFilter loadFingerprintFilter(int userId, double falsePositiveRate) throws SQLException {
+        String countSql = "SELECT COUNT(fingerprint) FROM transactions WHERE user_id = ? AND fingerprint IS NOT NULL";
+        String sql = "SELECT fingerprint FROM transactions WHERE user_id = ? AND fingerprint IS NOT NULL";
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection()) {
+            long count;
+            try (PreparedStatement pstmt = conn.prepareStatement(countSql)) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    count = rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+            FingerprintFilter filter = new FingerprintFilter(count, falsePositiveRate);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        filter.add(rs.getLong(1));
+                    }
+                }
+            }
+            return filter;
+        }
+    }
+
+    /**
+     * 指紋のうち、ユーザーの取引にすでにあるものを返します（一意インデックスで引く）。
+     */
+    public Set<Long> findExistingFingerprints(int userId, List<Long> fingerprints) throws SQLException {
+        Set<Long> found = new HashSet<>();
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection()) {
+            for (int from = 0; from < fingerprints.size(); from += FINGERPRINT_LOOKUP_BATCH) {
+                List<Long> batch = fingerprints.subList(from, Math.min(from + FINGERPRINT_LOOKUP_BATCH, fingerprints.size()));
+                StringBuilder sql = new StringBuilder(
+                        "SELECT fingerprint FROM transactions WHERE user_id = ? AND fingerprint IN (");
+                for (int i = 0; i < batch.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(')');
+                try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                    pstmt.setInt(1, userId);
+                    for (int i = 0; i < batch.size(); i++) {
+                        pstmt.setLong(i + 2, batch.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            found.add(rs.getLong(1));
+                        }
+                    }
+                }
+            }
         }
+        return found;
     }
 
     // ▼▼▼ 追加: データの更新用メソッド ▼▼▼
     public boolean updateTransaction(Transaction t, int userId) {
-        String sql = "UPDATE transactions SET date=?, amount=?, type=?, category_id=?, goal_id=?, is_extraordinary=? WHERE id=? AND user_id=?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        return WriteQueue.await(updateTransactionAsync(t, userId));
+    }
 
-            pstmt.setString(1, t.getDate().toString());
-            pstmt.setDouble(2, t.getAmount());
-            pstmt.setString(3, t.getType());
-            pstmt.setInt(4, t.getCategoryId());
-            
-            if (t.getGoalId() != null && t.getGoalId() > 0) {
-                pstmt.setInt(5, t.getGoalId());
-            } else {
-                pstmt.setNull(5, Types.INTEGER);
+    public CompletableFuture<Boolean> updateTransactionAsync(Transaction t, int userId) {
+        return writeQueue.submitUpdate(userId, "取引更新エラー", conn -> updateRow(conn, t, userId)).thenApply(updated -> {
+            if (updated) {
+                projection.updated(userId, t);
             }
-            
-            pstmt.setBoolean(6, t.getIsExtraordinary());
-            pstmt.setInt(7, t.getId());
-            pstmt.setInt(8, userId); // セキュリティのためuserIdも条件に含める
-
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+            return versions.bumpIf(userId, updated);
+        });
     }
     // ▲▲▲ 追加ここまで ▲▲▲
     
@@ -69,10 +192,38 @@ public class TransactionDAO {
     }
 
     public List<Transaction> getFilteredTransactions(int userId, LocalDate startDate, LocalDate endDate, Integer categoryId, String type) {
+        return queryTransactions(userId, startDate, endDate, categoryId, type, null, 0);
+    }
+
+    /**
+     * 取引をキーセット方式（日付, id の降順）で1ページ分取得します。
+     * OFFSET を使わず「前ページの最後の行より古いもの」を条件にするため、
+     * 何ページ目であってもインデックスを辿る量はページサイズ分だけで済みます。
+     *
+     * @param after 前ページの nextCursor（先頭ページなら null）
+     * @param limit 1ページの件数
+     */
+    public TransactionPage getTransactionPage(int userId, LocalDate startDate, LocalDate endDate, Integer categoryId, String type,
+            TransactionPage.Cursor after, int limit) {
+        // 次ページの有無を判定するため1件多く取得する
+        List<Transaction> rows = queryTransactions(userId, startDate, endDate, categoryId, type, after, limit + 1);
+        if (rows.size() <= limit) {
+            return new TransactionPage(rows, null);
+        }
+        List<Transaction> items = new ArrayList<>(rows.subList(0, limit));
+        Transaction last = items.get(items.size() - 1);
+        return new TransactionPage(items, new TransactionPage.Cursor(last.getDate(), last.getId()));
+    }
+
+    /**
+     * 取引一覧の共通クエリ。after / limit を指定しない場合は条件に合う全件を返します。
+     */
+    private List<Transaction> queryTransactions(int userId, LocalDate startDate, LocalDate endDate, Integer categoryId, String type,
+            TransactionPage.Cursor after, int limit) {
         List<Transaction> transactions = new ArrayList<>();
         
         StringBuilder sql = new StringBuilder(
-            "SELECT t.id, t.date, t.amount, t.type, t.category_id, c.name AS category_name, " +
+            "SELECT t.id, t.epoch_day, t.amount_minor, t.type, t.category_id, c.name AS category_name, " +
             "t.goal_id, g.name AS goal_name, " +
             "t.is_future, t.is_extraordinary " +
             "FROM transactions t " +
@@ -84,12 +235,12 @@ public class TransactionDAO {
         params.add(userId);
 
         if (startDate != null) {
-            sql.append(" AND t.date >= ?");
-            params.add(startDate.toString());
+            sql.append(" AND t.epoch_day >= ?");
+            params.add(startDate.toEpochDay());
         }
         if (endDate != null) {
-            sql.append(" AND t.date <= ?");
-            params.add(endDate.toString());
+            sql.append(" AND t.epoch_day <= ?");
+            params.add(endDate.toEpochDay());
         }
         if (categoryId != null) {
             sql.append(" AND t.category_id = ?");
@@ -99,10 +250,20 @@ public class TransactionDAO {
             sql.append(" AND t.type = ?");
             params.add(type);
         }
+        if (after != null) {
+            // 前ページ最後の行 (epoch_day, id) より古いものだけを対象にする
+            sql.append(" AND (t.epoch_day, t.id) < (?, ?)");
+            params.add(after.getDate().toEpochDay());
+            params.add(after.getId());
+        }
         
-        sql.append(" ORDER BY t.date DESC"); // 新しい順
+        sql.append(" ORDER BY t.epoch_day DESC, t.id DESC"); // 新しい順 (同日内はID順で安定させる)
+        if (limit > 0) {
+            sql.append(" LIMIT ?");
+            params.add(limit);
+        }
 
-        try (Connection conn = DBManager.connect();
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
 
             for (int i = 0; i < params.size(); i++) {
@@ -114,8 +275,8 @@ public class TransactionDAO {
                     Integer gId = (Integer) rs.getObject("goal_id");
                     transactions.add(new Transaction(
                         rs.getInt("id"),
-                        LocalDate.parse(rs.getString("date")),
-                        rs.getDouble("amount"),
+                        LocalDate.ofEpochDay(rs.getLong("epoch_day")),
+                        Money.ofMinor(rs.getLong("amount_minor")),
                         rs.getString("type"),
                         rs.getInt("category_id"),
                         rs.getString("category_name"),
@@ -132,14 +293,35 @@ public class TransactionDAO {
         return transactions;
     }
 
+    /**
+     * 現金残高（収入合計 - 支出合計）を取得します。
+     * 一覧をページングするようになったため、画面側で全件を合計する代わりに使います。
+     */
+    public double getCashBalance(int userId) {
+        String sql = "SELECT COALESCE(SUM(CASE WHEN type = 'INCOME' THEN total_minor ELSE -total_minor END), 0) " +
+                     "FROM transaction_rollups WHERE user_id = ?";
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return Money.toMajor(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("残高取得エラー: " + e.getMessage());
+        }
+        return 0;
+    }
+
     public Transaction getTransactionById(int id, int userId) {
-        String sql = "SELECT t.id, t.date, t.amount, t.type, t.category_id, c.name AS category_name, t.goal_id, g.name AS goal_name, t.is_future, t.is_extraordinary " +
+        String sql = "SELECT t.id, t.epoch_day, t.amount_minor, t.type, t.category_id, c.name AS category_name, t.goal_id, g.name AS goal_name, t.is_future, t.is_extraordinary " +
                      "FROM transactions t " +
                      "LEFT JOIN categories c ON t.category_id = c.id " +
                      "LEFT JOIN goals g ON t.goal_id = g.id " +
                      "WHERE t.id = ? AND t.user_id = ?";
 
-        try (Connection conn = DBManager.connect();
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setInt(1, id);
@@ -150,8 +332,8 @@ public class TransactionDAO {
                     Integer gId = (Integer) rs.getObject("goal_id");
                     return new Transaction(
                         rs.getInt("id"),
-                        LocalDate.parse(rs.getString("date")),
-                        rs.getDouble("amount"),
+                        LocalDate.ofEpochDay(rs.getLong("epoch_day")),
+                        Money.ofMinor(rs.getLong("amount_minor")),
                         rs.getString("type"),
                         rs.getInt("category_id"),
                         rs.getString("category_name"),
@@ -169,15 +351,227 @@ public class TransactionDAO {
     }
     
     public boolean deleteTransaction(int id, int userId) {
+        return WriteQueue.await(deleteTransactionAsync(id, userId));
+    }
+
+    public CompletableFuture<Boolean> deleteTransactionAsync(int id, int userId) {
+        return writeQueue.submitUpdate(userId, "取引削除エラー", conn -> deleteRow(conn, id, userId)).thenApply(deleted -> {
+            if (deleted) {
+                projection.removed(userId, id);
+            }
+            return versions.bumpIf(userId, deleted);
+        });
+    }
+
+    /**
+     * 一括変更（TransactionBatch）の1件分。CREATE は transaction を追加、UPDATE は transaction の id の取引を更新、
+     * DELETE は id の取引を削除します。結果（affected / createdId / error）は書き込みスレッドで設定されます。
+     */
+    static final class RowChange {
+        enum Kind { CREATE, UPDATE, DELETE }
+
+        final Kind kind;
+        final int id;
+        final Transaction transaction;
+        int affected;
+        int createdId;
+        String error;
+
+        RowChange(Kind kind, int id, Transaction transaction) {
+            this.kind = kind;
+            this.id = id;
+            this.transaction = transaction;
+        }
+    }
+
+    /**
+     * 1件ずつの追加・更新・削除をまとめて1回の書き込みで実行します。
+     * 変更ごとにセーブポイントを置くため、1件が失敗しても（error に理由が入る）他の変更はコミットされます。
+     */
+    CompletableFuture<List<RowChange>> applyRowChangesAsync(int userId, List<RowChange> changes) {
+        return writeQueue.submit(userId, conn -> {
+            for (RowChange change : changes) {
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    switch (change.kind) {
+                        case CREATE:
+                            Transaction t = change.transaction;
+                            change.createdId = insertRow(conn, userId, t.getDate(), t.getAmount(), t.getType(),
+                                    t.getCategoryId(), t.getGoalId(), t.getIsFuture(), t.getIsExtraordinary());
+                            change.affected = 1;
+                            break;
+                        case UPDATE:
+                            change.affected = updateRow(conn, change.transaction, userId) ? 1 : 0;
+                            break;
+                        case DELETE:
+                            change.affected = deleteRow(conn, change.id, userId) ? 1 : 0;
+                            break;
+                    }
+                    conn.releaseSavepoint(savepoint);
+                } catch (SQLException e) {
+                    conn.rollback(savepoint);
+                    conn.releaseSavepoint(savepoint);
+                    change.affected = 0;
+                    change.error = e.getMessage();
+                }
+            }
+            return changes;
+        }).thenApply(applied -> {
+            // 件数が多いことがあるため1件ずつ反映せず、次の集計で読み込み直す
+            if (applied.stream().anyMatch(change -> change.affected > 0)) {
+                projection.invalidate(userId);
+                versions.bump(userId);
+            }
+            return applied;
+        });
+    }
+
+    /**
+     * 条件に合う取引のカテゴリを toCategoryId に変えます。1回で変えるのは最大 limit 件で、変えた件数を返します。
+     * すでに toCategoryId の取引は対象にしないため、limit 件未満になるまで繰り返せば全件変わります
+     * （1回ごとにコミットされるため、件数が多くても書き込みのロックを長く持ちません）。
+     *
+     * @param categoryId 変更前のカテゴリ（null なら問わない、0 なら未分類）
+     */
+    public CompletableFuture<Integer> recategorizeChunkAsync(int userId, LocalDate startDate, LocalDate endDate,
+            Integer categoryId, String type, int toCategoryId, int limit) {
+        StringBuilder sql = new StringBuilder(
+                "UPDATE transactions SET category_id = ? WHERE id IN (SELECT id FROM transactions WHERE user_id = ?");
+        List<Object> params = new ArrayList<>();
+        params.add(toCategoryId);
+        params.add(userId);
+        appendBatchFilter(sql, params, startDate, endDate, categoryId, type);
+        sql.append(" AND (category_id IS NULL OR category_id <> ?) LIMIT ?)");
+        params.add(toCategoryId);
+        params.add(limit);
+        return executeChunk(userId, sql.toString(), params);
+    }
+
+    /**
+     * 条件に合う取引を最大 limit 件削除し、削除した件数を返します。limit 件未満になるまで繰り返せば全件削除されます。
+     *
+     * @param categoryId null なら問わない、0 なら未分類
+     */
+    public CompletableFuture<Integer> deleteChunkAsync(int userId, LocalDate startDate, LocalDate endDate,
+            Integer categoryId, String type, int limit) {
+        StringBuilder sql = new StringBuilder(
+                "DELETE FROM transactions WHERE id IN (SELECT id FROM transactions WHERE user_id = ?");
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        appendBatchFilter(sql, params, startDate, endDate, categoryId, type);
+        sql.append(" LIMIT ?)");
+        params.add(limit);
+        return executeChunk(userId, sql.toString(), params);
+    }
+
+    private static void appendBatchFilter(StringBuilder sql, List<Object> params, LocalDate startDate, LocalDate endDate,
+            Integer categoryId, String type) {
+        if (startDate != null) {
+            sql.append(" AND epoch_day >= ?");
+            params.add(startDate.toEpochDay());
+        }
+        if (endDate != null) {
+            sql.append(" AND epoch_day <= ?");
+            params.add(endDate.toEpochDay());
+        }
+        if (categoryId != null && categoryId == 0) {
+            sql.append(" AND category_id IS NULL");
+        } else if (categoryId != null) {
+            sql.append(" AND category_id = ?");
+            params.add(categoryId);
+        }
+        if (type != null) {
+            sql.append(" AND type = ?");
+            params.add(type);
+        }
+    }
+
+    private CompletableFuture<Integer> executeChunk(int userId, String sql, List<Object> params) {
+        return writeQueue.submit(userId, conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < params.size(); i++) {
+                    pstmt.setObject(i + 1, params.get(i));
+                }
+                return pstmt.executeUpdate();
+            }
+        }).thenApply(changed -> {
+            if (changed > 0) {
+                projection.invalidate(userId);
+                versions.bump(userId);
+            }
+            return changed;
+        });
+    }
+
+    /**
+     * 取引を1件追加し、振られた ID を返します（呼び出し側の書き込みの中で実行）。
+     */
+    static int insertRow(Connection conn, int userId, LocalDate date, Money amount, String type, int categoryId, Integer goalId,
+            boolean isFuture, boolean isExtraordinary) throws SQLException {
+        String sql = "INSERT INTO transactions(id, user_id, epoch_day, year_month, amount_minor, type, category_id, goal_id, is_future, is_extraordinary) " +
+                     "VALUES(" + ShardedDataSource.nextId("transactions") + ", ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setInt(1, userId);
+            pstmt.setLong(2, date.toEpochDay());
+            pstmt.setInt(3, DateColumns.yearMonth(date));
+            pstmt.setLong(4, amount.minor());
+            pstmt.setString(5, type.toUpperCase());
+            // foreign_keys 有効時に存在しないID(0)で失敗しないよう、未選択はNULLで保存
+            if (categoryId > 0) {
+                pstmt.setInt(6, categoryId);
+            } else {
+                pstmt.setNull(6, Types.INTEGER);
+            }
+
+            if (goalId != null && goalId > 0) {
+                pstmt.setInt(7, goalId);
+            } else {
+                pstmt.setNull(7, Types.INTEGER);
+            }
+
+            pstmt.setBoolean(8, isFuture);
+            pstmt.setBoolean(9, isExtraordinary);
+
+            pstmt.executeUpdate();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                return keys.next() ? keys.getInt(1) : 0;
+            }
+        }
+    }
+
+    static boolean updateRow(Connection conn, Transaction t, int userId) throws SQLException {
+        String sql = "UPDATE transactions SET epoch_day=?, year_month=?, amount_minor=?, type=?, category_id=?, goal_id=?, is_extraordinary=? WHERE id=? AND user_id=?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, t.getDate().toEpochDay());
+            pstmt.setInt(2, DateColumns.yearMonth(t.getDate()));
+            pstmt.setLong(3, t.getAmount().minor());
+            pstmt.setString(4, t.getType());
+            if (t.getCategoryId() > 0) {
+                pstmt.setInt(5, t.getCategoryId());
+            } else {
+                pstmt.setNull(5, Types.INTEGER);
+            }
+
+            if (t.getGoalId() != null && t.getGoalId() > 0) {
+                pstmt.setInt(6, t.getGoalId());
+            } else {
+                pstmt.setNull(6, Types.INTEGER);
+            }
+
+            pstmt.setBoolean(7, t.getIsExtraordinary());
+            pstmt.setInt(8, t.getId());
+            pstmt.setInt(9, userId); // セキュリティのためuserIdも条件に含める
+
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    static boolean deleteRow(Connection conn, int id, int userId) throws SQLException {
         String sql = "DELETE FROM transactions WHERE id = ? AND user_id = ?";
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
             pstmt.setInt(2, userId);
             return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
         }
     }
 }
@@ -0,0 +1,85 @@
+package com.example.CashFlowWeb;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 取り込んだ取引の指紋（transactions.fingerprint）を計算するクラス。
+ * 指紋は取引日・符号付きの金額・正規化した摘要・口座から作る 64 ビットの値で、同じ明細を取り込み直したときに
+ * 同じ値になるため、(user_id, fingerprint) の一意インデックスで重複を検出できます。
+ * 同じファイルに同じ日・同じ金額・同じ摘要の行が複数ある場合（同じ店で2回買い物した等）は、
+ * ファイル内で何番目かを指紋に含めて別の取引として扱います。1つのファイルにつき1つ作って使います。
+ */
+final class TransactionFingerprint {
+
+    // 行の内容から作った値 → 同じ内容の行がこのファイルにこれまで何件あったか
+    private final Map<Long, Integer> occurrences = new HashMap<>();
+    private final MessageDigest digest;
+
+    TransactionFingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 はすべての JRE にある
+        }
+    }
+
+    /**
+     * ファイルの次の行の指紋を返します。
+     *
+     * @param type INCOME / EXPENSE（支出は金額を負にして含める）
+     */
+    long next(LocalDate date, Money amount, String type, String memo, String account) {
+        long signed = "EXPENSE".equals(type) ? -amount.minor() : amount.minor();
+        String key = date.toEpochDay() + "|" + signed + "|" + normalize(memo) + "|" + normalize(account);
+        byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+        long base = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            base = (base << 8) | (hash[i] & 0xff);
+        }
+        int occurrence = occurrences.merge(base, 1, Integer::sum) - 1;
+        return occurrence == 0 ? base : mix(base + occurrence * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * 全角・半角、大文字・小文字、空白の違いで別の指紋にならないようにそろえます。
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String s = Normalizer.isNormalized(value, Normalizer.Form.NFKC)
+                ? value : Normalizer.normalize(value, Normalizer.Form.NFKC);
+        // 連続する空白を1つにし、前後の空白を除く（1行ごとに呼ぶため正規表現は使わない）
+        StringBuilder out = new StringBuilder(s.length());
+        boolean space = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = out.length() > 0;
+            } else {
+                if (space) {
+                    out.append(' ');
+                    space = false;
+                }
+                out.append(c);
+            }
+        }
+        return out.toString().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * 64 ビット値のビットをよく混ぜます（SplitMix64 の最終段）。
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
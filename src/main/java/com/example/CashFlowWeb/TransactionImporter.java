@@ -0,0 +1,398 @@
+package com.example.CashFlowWeb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * CSV / OFX ファイルから取引をまとめて取り込むクラス。
+ * ファイルは ImportReader で先頭から1行ずつ読み、chunk-size 件ごとに TransactionDAO.addTransactionsAsync で
+ * まとめて INSERT します。1つの塊を書き込んでいる間に次の塊を読むため、読み込みと書き込みが並行して進みます。
+ * 日付・金額が読めない行は取り込まずにエラーとして行番号を返し、残りの行は取り込みを続けます。
+ * カテゴリは、ファイルのカテゴリ名と同じ名前のカテゴリ、なければ摘要に名前が含まれるカテゴリを割り当てます。
+ * 取り込み済みの明細と重なる行は指紋（TransactionFingerprint）で見分けて飛ばします。最初にユーザーの既存の指紋を
+ * Bloom フィルタに読み込み、フィルタにない行は DB を見ずに新しい行とし、ある可能性がある行だけを一意インデックスで確認します。
+ */
+@Component
+public class TransactionImporter {
+
+    // 結果に含めるエラーの件数の上限（それ以上は件数だけ数える）
+    static final int MAX_ERRORS = 100;
+    // 既存の指紋の Bloom フィルタの偽陽性の割合（新しい行のうちこの割合だけインデックスを引く）
+    private static final double FINGERPRINT_FALSE_POSITIVE_RATE = 0.01;
+
+    private final TransactionDAO transactionDAO;
+    private final CategoryDAO categoryDAO;
+    private final int chunkSize;
+
+    public TransactionImporter(TransactionDAO transactionDAO, CategoryDAO categoryDAO,
+            @Value("${cashflow.import.chunk-size:5000}") int chunkSize) {
+        this.transactionDAO = transactionDAO;
+        this.categoryDAO = categoryDAO;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * 取り込み結果。
+     */
+    public static class Result {
+        public int imported;
+        public int failed;
+        /** カテゴリを割り当てられなかった（未分類で取り込んだ）件数 */
+        public int uncategorized;
+        /** 取り込み済みの取引と同じだったため飛ばした件数 */
+        public int duplicates;
+        /** Bloom フィルタで既存の可能性があり、インデックスで確認した件数 */
+        public int indexLookups;
+        public long millis;
+        /** 失敗した行（先頭の MAX_ERRORS 件） */
+        public final List<RowError> errors = new ArrayList<>();
+        public boolean errorsTruncated;
+
+        void error(int line, String message) {
+            failed++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(new RowError(line, message));
+            } else {
+                errorsTruncated = true;
+            }
+        }
+    }
+
+    public static class RowError {
+        public final int line;
+        public final String message;
+
+        RowError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+    }
+
+    public Result importTransactions(int userId, String format, InputStream in, Charset charset) throws IOException {
+        return importTransactions(userId, format, new BufferedReader(new InputStreamReader(in, charset)));
+    }
+
+    /**
+     * ファイルを取り込みます。
+     *
+     * @throws IllegalArgumentException 未対応の形式、または CSV のヘッダーに必要な列がない場合（1件も取り込みません）
+     */
+    public Result importTransactions(int userId, String format, Reader in) throws IOException {
+        long start = System.nanoTime();
+        Result result = new Result();
+        ImportReader reader = ImportReader.open(format, in);
+        CategoryMatcher categories = new CategoryMatcher(categoryDAO.getAllCategories(userId));
+        FingerprintFilter existing = loadFingerprints(userId);
+        TransactionFingerprint fingerprint = new TransactionFingerprint();
+        LocalDate today = LocalDate.now();
+
+        Chunk chunk = new Chunk(chunkSize);
+        Pending pending = null;
+        ImportReader.Row row;
+        while ((row = reader.next()) != null) {
+            Transaction t = toTransaction(row, categories, today, result);
+            if (t == null) {
+                continue;
+            }
+            long fp = fingerprint.next(t.getDate(), t.getAmount(), t.getType(), row.memo, row.account);
+            chunk.add(t, row.line, fp, existing == null || existing.mightContain(fp));
+            if (chunk.size() >= chunkSize) {
+                Chunk ready = chunk;
+                chunk = new Chunk(chunkSize);
+                skipExisting(userId, ready, result);
+                // 前の塊の完了を待ってから次を送る（書き込み中に次の塊を読んでおく）
+                finish(pending, result);
+                pending = submit(userId, ready);
+            }
+        }
+        skipExisting(userId, chunk, result);
+        finish(pending, result);
+        finish(submit(userId, chunk), result);
+        result.millis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    /**
+     * ユーザーの既存の指紋の Bloom フィルタ。読めなかった場合は null（全行をインデックスで確認する）。
+     */
+    private FingerprintFilter loadFingerprints(int userId) {
+        try {
+            return transactionDAO.loadFingerprintFilter(userId, FINGERPRINT_FALSE_POSITIVE_RATE);
+        } catch (SQLException e) {
+            System.err.println("指紋の読み込みエラー: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Bloom フィルタで既存の可能性がある行だけを一意インデックスで確認し、既存の行を塊から外します。
+     * ここで確認できなかった行も、INSERT のときに一意インデックスで重複は飛ばされます。
+     */
+    private void skipExisting(int userId, Chunk chunk, Result result) {
+        if (chunk.possibleHits.isEmpty()) {
+            return;
+        }
+        result.indexLookups += chunk.possibleHits.size();
+        Set<Long> found;
+        try {
+            found = transactionDAO.findExistingFingerprints(userId, chunk.possibleHits);
+        } catch (SQLException e) {
+            System.err.println("指紋の確認エラー: " + e.getMessage());
+            return;
+        }
+        if (!found.isEmpty()) {
+            result.duplicates += chunk.removeAll(found);
+        }
+    }
+
+    private Pending submit(int userId, Chunk chunk) {
+        if (chunk.size() == 0) {
+            return null;
+        }
+        return new Pending(transactionDAO.addTransactionsAsync(userId, chunk.rows, chunk.fingerprints()), chunk);
+    }
+
+    /**
+     * 1行分を取引にします。読めない行はエラーを記録して null を返します。
+     */
+    private Transaction toTransaction(ImportReader.Row row, CategoryMatcher categories, LocalDate today, Result result) {
+        if (row.date == null) {
+            result.error(row.line, "日付がありません");
+            return null;
+        }
+        LocalDate date = parseDate(row.date);
+        if (date == null) {
+            result.error(row.line, "日付を読めません: " + row.date);
+            return null;
+        }
+        if (row.amount == null) {
+            result.error(row.line, "金額がありません");
+            return null;
+        }
+        Money amount = parseAmount(row.amount);
+        if (amount == null) {
+            result.error(row.line, "金額を読めません: " + row.amount);
+            return null;
+        }
+        String type;
+        if (row.type == null) {
+            // 種別がなければ符号で決める（銀行の明細は出金が負）
+            type = amount.minor() < 0 ? "EXPENSE" : "INCOME";
+            amount = Money.ofMinor(Math.abs(amount.minor()));
+        } else {
+            type = parseType(row.type);
+            if (type == null) {
+                result.error(row.line, "種別を読めません: " + row.type);
+                return null;
+            }
+            if (amount.minor() < 0) {
+                result.error(row.line, "種別を指定した行の金額が負です: " + row.amount);
+                return null;
+            }
+        }
+        int categoryId = categories.match(type, row.category, row.memo);
+        if (categoryId == 0) {
+            result.uncategorized++;
+        }
+        return new Transaction(0, date, amount, type, categoryId, null, null, null, date.isAfter(today), false);
+    }
+
+    /**
+     * 送った塊の完了を待ち、結果を集計します。失敗した塊は全行をエラーにします（塊の中の行は1件も追加されていない）。
+     * 送った件数より追加された件数が少ない分は、INSERT のときに一意インデックスで見つかった重複です。
+     */
+    private static void finish(Pending pending, Result result) {
+        if (pending == null) {
+            return;
+        }
+        try {
+            int added = pending.future.join();
+            result.imported += added;
+            result.duplicates += pending.chunk.size() - added;
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            String message = "書き込みに失敗しました: " + cause.getMessage();
+            System.err.println("取引取り込みエラー: " + cause.getMessage());
+            for (int line : pending.chunk.lines) {
+                result.error(line, message);
+            }
+        }
+    }
+
+    /** まとめて INSERT する行と、その行番号・指紋。 */
+    private static final class Chunk {
+        final List<Transaction> rows;
+        final List<Integer> lines;
+        final List<Long> fingerprints;
+        // Bloom フィルタで既存の可能性がある指紋
+        final List<Long> possibleHits = new ArrayList<>();
+
+        Chunk(int capacity) {
+            rows = new ArrayList<>(capacity);
+            lines = new ArrayList<>(capacity);
+            fingerprints = new ArrayList<>(capacity);
+        }
+
+        void add(Transaction t, int line, long fingerprint, boolean possibleHit) {
+            rows.add(t);
+            lines.add(line);
+            fingerprints.add(fingerprint);
+            if (possibleHit) {
+                possibleHits.add(fingerprint);
+            }
+        }
+
+        int size() {
+            return rows.size();
+        }
+
+        /**
+         * 指紋が found にある行を外し、外した件数を返します。
+         */
+        int removeAll(Set<Long> found) {
+            int kept = 0;
+            for (int i = 0; i < rows.size(); i++) {
+                if (!found.contains(fingerprints.get(i))) {
+                    rows.set(kept, rows.get(i));
+                    lines.set(kept, lines.get(i));
+                    fingerprints.set(kept, fingerprints.get(i));
+                    kept++;
+                }
+            }
+            int removed = rows.size() - kept;
+            rows.subList(kept, rows.size()).clear();
+            lines.subList(kept, lines.size()).clear();
+            fingerprints.subList(kept, fingerprints.size()).clear();
+            return removed;
+        }
+
+        long[] fingerprints() {
+            return fingerprints.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    /** 書き込み中の塊。 */
+    private static final class Pending {
+        final CompletableFuture<Integer> future;
+        final Chunk chunk;
+
+        Pending(CompletableFuture<Integer> future, Chunk chunk) {
+            this.future = future;
+            this.chunk = chunk;
+        }
+    }
+
+    /**
+     * yyyy-MM-dd / yyyy/M/d / yyyy.M.d / yyyyMMdd を読みます。読めなければ null。
+     */
+    static LocalDate parseDate(String value) {
+        String s = value.trim();
+        int space = s.indexOf(' ');
+        if (space > 0) {
+            s = s.substring(0, space); // "2024/01/31 12:00" の時刻は使わない
+        }
+        try {
+            if (s.length() == 8 && s.chars().allMatch(Character::isDigit)) {
+                return LocalDate.of(Integer.parseInt(s.substring(0, 4)),
+                        Integer.parseInt(s.substring(4, 6)), Integer.parseInt(s.substring(6, 8)));
+            }
+            String[] parts = s.split("[-/.]");
+            if (parts.length != 3 || parts[0].length() != 4) {
+                return null;
+            }
+            return LocalDate.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } catch (NumberFormatException | DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * "1,234"、"¥1,234"、"-500円"、"12.5" などを読みます。読めなければ null。
+     */
+    static Money parseAmount(String value) {
+        StringBuilder s = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != ',' && c != '¥' && c != '￥' && c != '円' && !Character.isWhitespace(c)) {
+                s.append(c);
+            }
+        }
+        try {
+            return Money.of(new BigDecimal(s.toString()));
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    static String parseType(String value) {
+        switch (value.trim().toUpperCase(Locale.ROOT)) {
+            case "INCOME":
+            case "収入":
+            case "入金":
+                return "INCOME";
+            case "EXPENSE":
+            case "支出":
+            case "出金":
+                return "EXPENSE";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * カテゴリ名・摘要からカテゴリIDを決めます（同じ種別のカテゴリだけが対象）。
+     */
+    static final class CategoryMatcher {
+        // 種別/名前 → ID
+        private final Map<String, Integer> byName = new HashMap<>();
+        // 摘要との照合用。長い名前を先に見る（「日用品」より「日用品雑貨」を優先する）
+        private final List<Category> byLength;
+
+        CategoryMatcher(List<Category> categories) {
+            for (Category c : categories) {
+                byName.putIfAbsent(c.getType() + "/" + c.getName(), c.getId());
+            }
+            byLength = new ArrayList<>(categories);
+            byLength.sort((a, b) -> Integer.compare(b.getName().length(), a.getName().length()));
+        }
+
+        /**
+         * 見つからなければ 0（未分類）。
+         */
+        int match(String type, String category, String memo) {
+            if (category != null) {
+                Integer id = byName.get(type + "/" + category);
+                if (id != null) {
+                    return id;
+                }
+            }
+            if (memo != null) {
+                for (Category c : byLength) {
+                    if (c.getType().equals(type) && memo.contains(c.getName())) {
+                        return c.getId();
+                    }
+                }
+            }
+            return 0;
+        }
+    }
+}
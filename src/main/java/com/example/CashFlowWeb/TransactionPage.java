@@ -0,0 +1,61 @@
+package com.example.CashFlowWeb;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * 取引一覧の1ページ分を保持するモデルクラス。
+ * nextCursor が null の場合は最後のページです。
+ */
+public class TransactionPage {
+    private final List<Transaction> items;
+    private final Cursor nextCursor;
+
+    public TransactionPage(List<Transaction> items, Cursor nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Transaction> getItems() { return items; }
+    public Cursor getNextCursor() { return nextCursor; }
+
+    /**
+     * キーセットページングのカーソル（ページ最後の行の日付とID）。
+     * 文字列表現は "2025-04-15:123" の形式です。
+     */
+    public static class Cursor {
+        private final LocalDate date;
+        private final int id;
+
+        public Cursor(LocalDate date, int id) {
+            this.date = date;
+            this.id = id;
+        }
+
+        public LocalDate getDate() { return date; }
+        public int getId() { return id; }
+
+        /**
+         * 文字列からカーソルを復元します。
+         *
+         * @throws IllegalArgumentException 形式が不正な場合
+         */
+        public static Cursor parse(String value) {
+            int sep = value.lastIndexOf(':');
+            if (sep < 0) {
+                throw new IllegalArgumentException("カーソルの形式が不正です: " + value);
+            }
+            try {
+                return new Cursor(LocalDate.parse(value.substring(0, sep)), Integer.parseInt(value.substring(sep + 1)));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("カーソルの形式が不正です: " + value, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return date + ":" + id;
+        }
+    }
+}
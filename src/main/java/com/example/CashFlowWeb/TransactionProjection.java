@@ -0,0 +1,236 @@
+package com.example.CashFlowWeb;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 集計API（月次・カテゴリ別・予測・目標の進捗・予算の実績）のための、ユーザーごとの取引の列指向コピー（TransactionColumns）。
+ * 最初に集計されたときに読み込み、以後は取引・目標のDAOがコミット後に変更を反映します。
+ * 保持する量は cashflow.projection.memory-budget-mb までで、超えると最も古く使われたユーザーから捨てます。
+ * columns() が null を返した場合（無効・読み込み中・予算超過など）、呼び出し側は従来どおり SQL で集計します。
+ */
+@Component
+public class TransactionProjection {
+
+    private static final String LOAD_SQL = "SELECT id, epoch_day, amount_minor, type, category_id, goal_id, is_future, is_extraordinary " +
+            "FROM transactions WHERE user_id = ? ORDER BY epoch_day, id";
+
+    // 読み込み中に invalidate() されたことを示す印
+    private static final Consumer<TransactionColumns> DISCARD = columns -> { };
+
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final long budgetBytes;
+    private final LinkedHashMap<Integer, TransactionColumns> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    // 読み込み中のユーザー → その間にコミットされた変更（読み込み後に順に反映する）
+    private final Map<Integer, List<Consumer<TransactionColumns>>> loading = new HashMap<>();
+    private long usedBytes;
+    private long hits;
+    private long loads;
+    private long evictions;
+
+    @Autowired
+    public TransactionProjection(@Qualifier("readOnlyDataSource") DataSource dataSource,
+            @Value("${cashflow.projection.enabled:true}") boolean enabled,
+            @Value("${cashflow.projection.memory-budget-mb:64}") long budgetMegabytes) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.budgetBytes = budgetMegabytes * 1024 * 1024;
+    }
+
+    /**
+     * テスト用: 予算をバイト単位で指定します。
+     */
+    TransactionProjection(DataSource dataSource, long budgetBytes) {
+        this.dataSource = dataSource;
+        this.enabled = true;
+        this.budgetBytes = budgetBytes;
+    }
+
+    private TransactionProjection() {
+        this.dataSource = null;
+        this.enabled = false;
+        this.budgetBytes = 0;
+    }
+
+    /**
+     * 何も保持しない TransactionProjection を返します（columns() は常に null）。
+     * DataSource だけで作った DAO（テストなど）はこれを使い、常に SQL で集計します。
+     */
+    public static TransactionProjection disabled() {
+        return new TransactionProjection();
+    }
+
+    /**
+     * ユーザーの取引の列指向コピーを返します。なければこの場で読み込みます。
+     * 無効な場合、他のスレッドが同じユーザーを読み込み中の場合、読み込みに失敗した場合は null です。
+     */
+    public TransactionColumns columns(int userId) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (this) {
+            TransactionColumns columns = loaded.get(userId);
+            if (columns != null) {
+                hits++;
+                return columns;
+            }
+            if (loading.containsKey(userId)) {
+                return null;
+            }
+            loading.put(userId, new ArrayList<>());
+        }
+
+        TransactionColumns built = load(userId);
+        synchronized (this) {
+            List<Consumer<TransactionColumns>> pending = loading.remove(userId);
+            if (built == null || pending.contains(DISCARD)) {
+                return null;
+            }
+            pending.forEach(mutation -> mutation.accept(built));
+            loads++;
+            long bytes = built.estimatedBytes();
+            if (bytes > budgetBytes) {
+                return built; // 1人で予算を超える場合は保持せず、この1回だけ使う
+            }
+            loaded.put(userId, built);
+            usedBytes += bytes;
+            evictOverBudget();
+            return built;
+        }
+    }
+
+    // ---- コミット後の変更の反映（TransactionDAO / GoalDAO から呼ばれる） ----
+
+    public void added(int userId, int id, LocalDate date, Money amount, String type, int categoryId, Integer goalId,
+            boolean isFuture, boolean isExtraordinary) {
+        byte flags = TransactionColumns.flags(type, isFuture, isExtraordinary);
+        int category = Math.max(categoryId, 0);
+        int goal = goalId == null ? 0 : Math.max(goalId, 0);
+        apply(userId, c -> c.upsert(id, (int) date.toEpochDay(), amount.minor(), flags, category, goal));
+    }
+
+    public void updated(int userId, Transaction t) {
+        byte flags = TransactionColumns.flags(t.getType(), false, t.getIsExtraordinary());
+        int category = Math.max(t.getCategoryId(), 0);
+        int goal = t.getGoalId() == null ? 0 : Math.max(t.getGoalId(), 0);
+        apply(userId, c -> c.update(t.getId(), (int) t.getDate().toEpochDay(), t.getAmount().minor(),
+                flags, category, goal));
+    }
+
+    public void removed(int userId, int id) {
+        apply(userId, c -> c.remove(id));
+    }
+
+    public void goalDetached(int userId, int goalId) {
+        apply(userId, c -> c.detachGoal(goalId));
+    }
+
+    /**
+     * ユーザーの分を捨てます（個別に反映できない一括変更の後に呼びます）。次の集計で読み込み直します。
+     */
+    public synchronized void invalidate(int userId) {
+        List<Consumer<TransactionColumns>> pending = loading.get(userId);
+        if (pending != null) {
+            pending.add(DISCARD);
+        }
+        TransactionColumns columns = loaded.remove(userId);
+        if (columns != null) {
+            usedBytes -= columns.estimatedBytes();
+        }
+    }
+
+    private synchronized void apply(int userId, Consumer<TransactionColumns> mutation) {
+        if (!enabled) {
+            return;
+        }
+        List<Consumer<TransactionColumns>> pending = loading.get(userId);
+        if (pending != null) {
+            pending.add(mutation);
+        }
+        TransactionColumns columns = loaded.get(userId);
+        if (columns != null) {
+            long before = columns.estimatedBytes();
+            mutation.accept(columns);
+            usedBytes += columns.estimatedBytes() - before;
+            evictOverBudget();
+        }
+    }
+
+    /**
+     * 予算を超えている間、最も古く使われたユーザーから捨てます（最後に使われた1人は残す）。
+     */
+    private void evictOverBudget() {
+        Iterator<TransactionColumns> it = loaded.values().iterator();
+        while (usedBytes > budgetBytes && loaded.size() > 1 && it.hasNext()) {
+            usedBytes -= it.next().estimatedBytes();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private TransactionColumns load(int userId) {
+        try (Connection conn = ShardedDataSource.forUser(dataSource, userId).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(LOAD_SQL)) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                TransactionColumns columns = new TransactionColumns(256);
+                while (rs.next()) {
+                    columns.append(
+                            rs.getInt("id"),
+                            rs.getInt("epoch_day"),
+                            rs.getLong("amount_minor"),
+                            TransactionColumns.flags(rs.getString("type"), rs.getBoolean("is_future"), rs.getBoolean("is_extraordinary")),
+                            rs.getInt("category_id"),
+                            rs.getInt("goal_id"));
+                }
+                return columns;
+            }
+        } catch (SQLException e) {
+            System.err.println("取引の読み込みエラー: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized Snapshot snapshot() {
+        Snapshot s = new Snapshot();
+        s.enabled = enabled;
+        s.users = loaded.size();
+        s.usedBytes = usedBytes;
+        s.budgetBytes = budgetBytes;
+        s.hits = hits;
+        s.loads = loads;
+        s.evictions = evictions;
+        return s;
+    }
+
+    /**
+     * JSONとして返すための統計値。
+     */
+    public static class Snapshot {
+        public boolean enabled;
+        public int users;
+        public long usedBytes;
+        public long budgetBytes;
+        public long hits;
+        public long loads;
+        public long evictions;
+    }
+}
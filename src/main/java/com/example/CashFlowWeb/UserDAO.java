@@ -4,7 +4,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
 // ▼▼▼ この1行を追加 ▼▼▼
 import org.springframework.stereotype.Repository;
 // ▲▲▲ この1行を追加 ▲▲▲
@@ -15,6 +21,19 @@ import org.springframework.stereotype.Repository;
 @Repository // 👈 1. このクラスをSpringのBeanとして登録する
 public class UserDAO {
 
+    private final DataSource dataSource;
+    private final WriteQueue writeQueue;
+
+    public UserDAO(DataSource dataSource) {
+        this(dataSource, WriteQueue.direct(dataSource));
+    }
+
+    @Autowired
+    public UserDAO(DataSource dataSource, WriteQueue writeQueue) {
+        this.dataSource = dataSource;
+        this.writeQueue = writeQueue;
+    }
+
     /**
      * ユーザー名（username）を指定して、データベースからユーザー情報を検索します。
      * Spring Securityの認証処理（ログイン時）に使われます。
@@ -23,10 +42,10 @@ public class UserDAO {
      * @return 見つかったUserオブジェクト。見つからなければnull。
      */
     public User findByUsername(String username) {
-        // ユーザー名は大文字小文字を区別しない（toLowerCase()）
-        String sql = "SELECT id, username, password_hash, role FROM users WHERE LOWER(username) = LOWER(?)";
+        // ユーザー名は大文字小文字を区別しない（COLLATE NOCASE の一意インデックスを使う）
+        String sql = "SELECT id, username, password_hash, role FROM users WHERE username = ? COLLATE NOCASE";
         
-        try (Connection conn = DBManager.connect();
+        try (Connection conn = dataSource.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setString(1, username);
@@ -49,28 +68,118 @@ public class UserDAO {
     }
 
     /**
-     * 新しいユーザーをデータベースに保存します。
+     * 新しいユーザーをデータベースに保存し、初期カテゴリを作成します。
      * 登録API（AuthController）で使われます。
+     * ユーザーと初期カテゴリは書き込みキューの同じコマンドでコミットされるため、カテゴリのないユーザーはできません。
+     * シャード化している場合は saveShardedUser() を参照してください。
      *
-     * @param user 保存するUserオブジェクト
+     * @param user 保存するUserオブジェクト（成功するとIDが設定されます）
      * @return 保存に成功した場合はtrue
      */
     public boolean saveUser(User user) {
+        if (dataSource instanceof ShardedDataSource sharded) {
+            return saveShardedUser(sharded, user);
+        }
         // パスワードは、AuthController側でハッシュ化されてから渡される想定
         String sql = "INSERT INTO users(username, password_hash, role) VALUES(?, ?, ?)";
 
-        try (Connection conn = DBManager.connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        Integer userId = awaitWrite(writeQueue.submit(conn -> {
+            int id = insertUser(conn, sql, user);
+            CategoryDAO.insertDefaultCategories(conn, id);
+            return id;
+        }), "ユーザー保存エラー (ユーザー名が重複している可能性あり)");
+        if (userId == null) {
+            return false;
+        }
+        user.setId(userId);
+        return true;
+    }
+
+    /**
+     * シャード化している場合の登録。ディレクトリDBにユーザーとシャード番号を登録してから、
+     * シャードに外部キー用のユーザー行（パスワードは持たない）と初期カテゴリを作ります。
+     * それぞれのファイルの書き込みキューを通すため、シャード側で失敗した場合はディレクトリDBのユーザーを削除して取り消します。
+     */
+    private boolean saveShardedUser(ShardedDataSource sharded, User user) {
+        String sql = "INSERT INTO users(username, password_hash, role) VALUES(?, ?, ?)";
+        int[] shard = new int[1];
+        Integer userId = awaitWrite(writeQueue.submit(conn -> {
+            int id = insertUser(conn, sql, user);
+            shard[0] = sharded.shardForNewUser(id);
+            try (PreparedStatement assign = conn.prepareStatement("UPDATE users SET shard = ? WHERE id = ?")) {
+                assign.setInt(1, shard[0]);
+                assign.setInt(2, id);
+                assign.executeUpdate();
+            }
+            return id;
+        }), "ユーザー保存エラー (ユーザー名が重複している可能性あり)");
+        if (userId == null) {
+            return false;
+        }
+
+        Integer created = awaitWrite(writeQueue.submitToShard(shard[0], conn -> {
+            insertShardUser(conn, userId, user.getUsername(), user.getRole());
+            CategoryDAO.insertDefaultCategories(conn, userId);
+            return userId;
+        }), "ユーザー保存エラー (シャード " + shard[0] + ")");
+        if (created == null) {
+            deleteDirectoryUser(userId);
+            return false;
+        }
+        sharded.assigned(userId, shard[0]);
+        user.setId(userId);
+        return true;
+    }
 
+    private static int insertUser(Connection conn, String sql, User user) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             pstmt.setString(1, user.getUsername());
             pstmt.setString(2, user.getPassword()); // ハッシュ化済みパスワード
             pstmt.setString(3, user.getRole());
+            pstmt.executeUpdate();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("ユーザーIDを取得できませんでした");
+                }
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * コミットを待ってユーザーIDを返します。SQL の失敗はメッセージを表示して null を返します。
+     */
+    private static Integer awaitWrite(CompletableFuture<Integer> future, String errorMessage) {
+        try {
+            return WriteQueue.await(future);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException cause) {
+                System.err.println(errorMessage + ": " + cause.getMessage());
+                return null;
+            }
+            throw e;
+        }
+    }
 
+    /**
+     * シャードにユーザー行を作ります。シャードの各テーブルの外部キーを満たすためだけのもので、ログインには使いません。
+     */
+    static void insertShardUser(Connection conn, int userId, String username, String role) throws SQLException {
+        String sql = "INSERT INTO users(id, username, password_hash, role) VALUES(?, ?, '', ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            pstmt.setString(2, username);
+            pstmt.setString(3, role);
             pstmt.executeUpdate();
-            return true;
-        } catch (SQLException e) {
-            System.err.println("ユーザー保存エラー (ユーザー名が重複している可能性あり): " + e.getMessage());
-            return false;
         }
     }
+
+    private void deleteDirectoryUser(int userId) {
+        WriteQueue.await(writeQueue.submitUpdate("ユーザー登録の取り消しエラー", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM users WHERE id = ?")) {
+                pstmt.setInt(1, userId);
+                return pstmt.executeUpdate() > 0;
+            }
+        }));
+    }
 }
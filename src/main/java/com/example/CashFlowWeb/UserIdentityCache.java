@@ -0,0 +1,77 @@
+package com.example.CashFlowWeb;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+/**
+ * ログイン中のユーザーのIDを求めるクラス。
+ * ログイン時に CustomUserDetailsService が読み込んだ User がそのままセッションの principal になるため、
+ * 通常は principal が持つIDを返すだけで DB にはアクセスしません。
+ * principal が User 以外の場合（テストのモックユーザーなど）に限り users テーブルを検索し、
+ * 結果をユーザー名（小文字）→ID の LRU キャッシュに保持します。上限を超えると最も古く使われたものから捨てます。
+ */
+@Component
+public class UserIdentityCache {
+
+    private final UserDAO userDAO;
+    private final Map<String, Integer> ids;
+
+    public UserIdentityCache(UserDAO userDAO, @Value("${cashflow.auth.identity-cache-size:1024}") int maxSize) {
+        this.userDAO = userDAO;
+        this.ids = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * principal のユーザーIDを返します。
+     *
+     * @throws UsernameNotFoundException ユーザーが削除されていた場合（Spring Security が未認証として扱う）
+     */
+    public int userId(UserDetails principal) {
+        if (principal instanceof User user && user.getId() > 0) {
+            return user.getId();
+        }
+        String key = key(principal.getUsername());
+        synchronized (ids) {
+            Integer id = ids.get(key);
+            if (id != null) {
+                return id;
+            }
+        }
+        User user = userDAO.findByUsername(principal.getUsername());
+        if (user == null) {
+            throw new UsernameNotFoundException("ユーザーが見つかりません: " + principal.getUsername());
+        }
+        remember(user);
+        return user.getId();
+    }
+
+    /**
+     * DB から読み込んだユーザーを登録します（ログイン時に呼ばれます）。
+     */
+    public void remember(User user) {
+        synchronized (ids) {
+            ids.put(key(user.getUsername()), user.getId());
+        }
+    }
+
+    int size() {
+        synchronized (ids) {
+            return ids.size();
+        }
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.CashFlowWeb;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Spring MVC の設定。
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final ConditionalGetInterceptor conditionalGetInterceptor;
+
+    public WebConfig(ConditionalGetInterceptor conditionalGetInterceptor) {
+        this.conditionalGetInterceptor = conditionalGetInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // 結果がユーザーのデータ（と日付）だけで決まるAPIに限る。為替・システム情報はデータのバージョンと無関係に変わる
+        registry.addInterceptor(conditionalGetInterceptor).addPathPatterns(
+                "/api/transactions/**", "/api/goals/**", "/api/portfolio/**",
+                "/api/categories/**", "/api/budgets/**", "/api/dashboard");
+    }
+}
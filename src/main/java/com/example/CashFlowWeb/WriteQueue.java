@@ -0,0 +1,402 @@
+package com.example.CashFlowWeb;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * SQLite への書き込みを1本のスレッドにまとめるキュー。
+ * SQLite は同時に1つしか書き込めないため、各DAOが別々の接続で書き込むと SQLITE_BUSY で待たされたり失敗したりします。
+ * ここでは書き込み専用スレッドがキューに溜まった書き込みをまとめて取り出し、1つのトランザクションでコミットします
+ * （グループコミット: 書き込みが多いときほど、1回の fsync で多くの書き込みを確定できる）。
+ * 書き込みごとにセーブポイントを置くため、1件が失敗しても同じグループの他の書き込みには影響しません。
+ * 結果はコミット後に CompletableFuture で返します。キューが一杯なら offer-timeout-ms だけ待ち、空かなければ
+ * QueueFullException（503）で断ります。
+ * シャード化している場合（ShardedDataSource）は、キューと書き込みスレッドをシャードのファイルごとに持ちます。
+ */
+@Component
+public class WriteQueue {
+
+    /**
+     * 書き込み1件分の処理。渡された接続でSQLを実行します（コミットはしない）。
+     */
+    @FunctionalInterface
+    public interface Write<T> {
+        T apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * キューが一杯で書き込みを受け付けられなかったときの例外。コントローラーからは 503 として返ります。
+     */
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public static class QueueFullException extends RejectedExecutionException {
+        QueueFullException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * シャードの移動より前に受け付けた書き込みを、移動後に実行しようとしたときの例外（409）。
+     * 移動元のファイルにはもうデータがないため、やり直してもらいます（ID は移動先でも変わらない）。
+     */
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public static class ShardMovedException extends RejectedExecutionException {
+        ShardMovedException(String message) {
+            super(message);
+        }
+    }
+
+    // ユーザーを指定しない書き込み（ディレクトリDBへの書き込み）
+    private static final int NO_USER = -1;
+
+    private final DataSource dataSource;
+    // 書き込みスレッド。シャード化している場合はディレクトリDB（先頭）とシャードごとに1本ずつ。
+    // null のときはキューを使わず、呼び出したスレッドでそのまま書き込む（テスト・ベンチマーク用）
+    private final Lane[] lanes;
+    private final int maxBatch;
+    private final long offerTimeoutMillis;
+    private volatile boolean running = true;
+
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder failedWrites = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAccumulator largestBatch = new LongAccumulator(Long::max, 0);
+
+    /**
+     * dataSource が ShardedDataSource の場合はシャードごとに書き込みスレッドを立て、
+     * 同じファイルへの書き込みだけを1本にまとめます（別のシャードへの書き込みは並行してコミットされる）。
+     */
+    @Autowired
+    public WriteQueue(DataSource dataSource,
+            @Value("${cashflow.db.writer.queue-size:1024}") int queueSize,
+            @Value("${cashflow.db.writer.max-batch:256}") int maxBatch,
+            @Value("${cashflow.db.writer.offer-timeout-ms:1000}") long offerTimeoutMillis) {
+        this.dataSource = dataSource;
+        this.maxBatch = maxBatch;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        if (dataSource instanceof ShardedDataSource sharded) {
+            this.lanes = new Lane[sharded.shardCount() + 1];
+            for (int shard = ShardedDataSource.DIRECTORY; shard < sharded.shardCount(); shard++) {
+                String name = shard == ShardedDataSource.DIRECTORY ? "db-writer-directory" : "db-writer-shard-" + shard;
+                lanes[shard + 1] = new Lane(shard, sharded.shard(shard), queueSize, name);
+            }
+        } else {
+            this.lanes = new Lane[] { new Lane(ShardedDataSource.DIRECTORY, dataSource, queueSize, "db-writer") };
+        }
+    }
+
+    private WriteQueue(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.lanes = null;
+        this.maxBatch = 1;
+        this.offerTimeoutMillis = 0;
+    }
+
+    /**
+     * キューを使わず、呼び出したスレッドで1件ずつコミットする WriteQueue を返します。
+     * DataSource だけで作った DAO（テストなど）はこれを使います。
+     */
+    public static WriteQueue direct(DataSource dataSource) {
+        return new WriteQueue(dataSource);
+    }
+
+    /**
+     * 書き込みをキューに入れます。返した Future はコミット後に完了します。
+     * SQL の失敗は SQLException、キューが一杯なら QueueFullException で例外完了します。
+     * シャード化している場合はディレクトリDBへの書き込みになります（ユーザーのデータは submit(userId, write) を使う）。
+     */
+    public <T> CompletableFuture<T> submit(Write<T> write) {
+        return submit(NO_USER, write);
+    }
+
+    /**
+     * ユーザーのデータへの書き込みをキューに入れます。シャード化している場合は、そのユーザーのシャードの書き込みスレッドに入ります。
+     */
+    public <T> CompletableFuture<T> submit(int userId, Write<T> write) {
+        if (lanes == null) {
+            try {
+                return runDirect(userId == NO_USER ? dataSource : ShardedDataSource.forUser(dataSource, userId), write);
+            } catch (SQLException e) {
+                failedWrites.increment();
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        Command<T> command = new Command<>(userId, write);
+        Lane lane;
+        try {
+            lane = laneFor(userId);
+        } catch (SQLException e) {
+            failedWrites.increment();
+            command.future.completeExceptionally(e);
+            return command.future;
+        }
+        return offer(lane, command);
+    }
+
+    /**
+     * シャードを指定して書き込みをキューに入れます（ShardRebalancer が移動先・ディレクトリDBに書き込む用）。
+     * ユーザーの割り当てにかかわらず、そのファイルの書き込みスレッドで実行します。
+     */
+    <T> CompletableFuture<T> submitToShard(int shard, Write<T> write) {
+        if (lanes == null) {
+            DataSource target = dataSource instanceof ShardedDataSource sharded ? sharded.shard(shard) : dataSource;
+            return runDirect(target, write);
+        }
+        return offer(lanes.length == 1 ? lanes[0] : lanes[shard + 1], new Command<>(NO_USER, write));
+    }
+
+    private <T> CompletableFuture<T> offer(Lane lane, Command<T> command) {
+        boolean accepted = false;
+        if (running) {
+            try {
+                accepted = lane.queue.offer(command, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!accepted) {
+            rejected.increment();
+            command.future.completeExceptionally(new QueueFullException("書き込みが混み合っています。しばらくしてから再度お試しください。"));
+        }
+        return command.future;
+    }
+
+    /**
+     * DAO 向けの submit。SQL の失敗はメッセージを表示して false を返します（DAO の従来の戻り値に合わせる）。
+     * キューが一杯の場合は例外のまま返します。シャード化している場合はディレクトリDBへの書き込みになります。
+     */
+    public CompletableFuture<Boolean> submitUpdate(String errorMessage, Write<Boolean> write) {
+        return submitUpdate(NO_USER, errorMessage, write);
+    }
+
+    /**
+     * ユーザーのデータへの submitUpdate。シャード化している場合は、そのユーザーのシャードの書き込みスレッドに入ります。
+     */
+    public CompletableFuture<Boolean> submitUpdate(int userId, String errorMessage, Write<Boolean> write) {
+        return submit(userId, write).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof SQLException) {
+                System.err.println(errorMessage + ": " + cause.getMessage());
+                return false;
+            }
+            throw e instanceof CompletionException ce ? ce : new CompletionException(cause);
+        });
+    }
+
+    /**
+     * Future の完了を待って結果を返します（同期版のDAOメソッド用）。QueueFullException はそのまま投げます。
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (lanes != null) {
+            for (Lane lane : lanes) {
+                lane.writer.join(TimeUnit.SECONDS.toMillis(10)); // 受け付け済みの書き込みはコミットしてから止める
+            }
+        }
+    }
+
+    private Lane laneFor(int userId) throws SQLException {
+        if (lanes.length == 1 || userId == NO_USER) {
+            return lanes[0];
+        }
+        return lanes[((ShardedDataSource) dataSource).shardOf(userId) + 1];
+    }
+
+    private <T> CompletableFuture<T> runDirect(DataSource target, Write<T> write) {
+        writes.increment();
+        try (Connection conn = target.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                T result = write.apply(conn);
+                conn.commit();
+                commits.increment();
+                return CompletableFuture.completedFuture(result);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            failedWrites.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 1つのファイルへの書き込みを受け持つキューと書き込みスレッド。
+     */
+    private final class Lane {
+        final int shard;
+        final DataSource target;
+        final BlockingQueue<Command<?>> queue;
+        final Thread writer;
+
+        Lane(int shard, DataSource target, int queueSize, String threadName) {
+            this.shard = shard;
+            this.target = target;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.writer = new Thread(this::run, threadName);
+            this.writer.setDaemon(true);
+            this.writer.start();
+        }
+
+        private void run() {
+            List<Command<?>> batch = new ArrayList<>(maxBatch);
+            while (running || !queue.isEmpty()) {
+                try {
+                    Command<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                } catch (InterruptedException e) {
+                    continue; // 停止は running で判断する
+                }
+                queue.drainTo(batch, maxBatch - 1);
+                commitBatch(batch);
+                batch.clear();
+            }
+        }
+
+        /**
+         * 取り出した書き込みを1つのトランザクションで実行してコミットし、その後で Future を完了させます。
+         */
+        private void commitBatch(List<Command<?>> batch) {
+            writes.add(batch.size());
+            largestBatch.accumulate(batch.size());
+            try (Connection conn = target.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    for (Command<?> command : batch) {
+                        if (moved(command)) {
+                            command.error = new ShardMovedException("データの保存先が移動しました。画面を読み込み直してから再度お試しください。");
+                            continue;
+                        }
+                        Savepoint savepoint = conn.setSavepoint();
+                        try {
+                            command.execute(conn);
+                            conn.releaseSavepoint(savepoint);
+                        } catch (SQLException | RuntimeException e) {
+                            conn.rollback(savepoint); // この1件だけ取り消す
+                            conn.releaseSavepoint(savepoint);
+                            command.error = e;
+                        }
+                    }
+                    conn.commit();
+                    commits.increment();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("書き込みのコミットに失敗しました (" + batch.size() + "件): " + e.getMessage());
+                for (Command<?> command : batch) {
+                    command.error = e;
+                }
+            }
+            for (Command<?> command : batch) {
+                if (command.error != null) {
+                    failedWrites.increment();
+                }
+                command.complete();
+            }
+        }
+
+        /**
+         * キューに入れた後で、ユーザーのデータが別のシャードへ移動したか（ShardRebalancer はこのスレッド上で移動する）。
+         */
+        private boolean moved(Command<?> command) throws SQLException {
+            return command.userId != NO_USER && dataSource instanceof ShardedDataSource sharded
+                    && sharded.shardOf(command.userId) != shard;
+        }
+    }
+
+    public Snapshot snapshot() {
+        Snapshot s = new Snapshot();
+        if (lanes != null) {
+            s.writers = lanes.length;
+            for (Lane lane : lanes) {
+                s.queued += lane.queue.size();
+            }
+        }
+        s.writes = writes.sum();
+        s.commits = commits.sum();
+        s.avgBatchSize = s.commits == 0 ? 0 : (double) s.writes / s.commits;
+        s.largestBatch = largestBatch.get();
+        s.failedWrites = failedWrites.sum();
+        s.rejected = rejected.sum();
+        return s;
+    }
+
+    /**
+     * JSONとして返すための統計値。avgBatchSize は1回のコミットでまとめた書き込みの平均件数。
+     * writers は書き込みスレッドの数（シャード化している場合はシャード数+1）。
+     */
+    public static class Snapshot {
+        public int writers;
+        public int queued;
+        public long writes;
+        public long commits;
+        public double avgBatchSize;
+        public long largestBatch;
+        public long failedWrites;
+        public long rejected;
+    }
+
+    private static final class Command<T> {
+        final int userId;
+        final Write<T> write;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+        Exception error;
+
+        Command(int userId, Write<T> write) {
+            this.userId = userId;
+            this.write = write;
+        }
+
+        void execute(Connection conn) throws SQLException {
+            result = write.apply(conn);
+        }
+
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
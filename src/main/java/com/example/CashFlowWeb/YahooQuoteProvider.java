@@ -0,0 +1,75 @@
+package com.example.CashFlowWeb;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Yahoo Finance のチャートAPIから為替レートを取得するプロバイダー。
+ * HttpClient・RestTemplate・ObjectMapper は1つを使い回し、接続はキープアライブでプールして再利用します。
+ * 接続・読み取りにはタイムアウトを設定し、失敗が続いた場合は QuoteProviderChain のブレーカーが呼び出しを止めます。
+ */
+@Component
+public class YahooQuoteProvider implements QuoteProvider {
+
+    // Yahoo Finance API URL (%s には "USDJPY" などの通貨ペアが入る)
+    private static final String YAHOO_API_URL = "https://query1.finance.yahoo.com/v8/finance/chart/%s=X?interval=1m&range=1d";
+
+    private final String urlTemplate;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpEntity<String> entity;
+
+    public YahooQuoteProvider(
+            @Value("${cashflow.fx.yahoo-url:" + YAHOO_API_URL + "}") String urlTemplate,
+            @Value("${cashflow.fx.http.connect-timeout-ms:2000}") long connectTimeoutMs,
+            @Value("${cashflow.fx.http.read-timeout-ms:3000}") long readTimeoutMs) {
+        this.urlTemplate = urlTemplate;
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        this.restTemplate = new RestTemplate(factory);
+
+        // ブラウザからのアクセスに見せかけるためのヘッダー（これがないと拒否されることがある）
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent",
+                "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
+        this.entity = new HttpEntity<>(headers);
+    }
+
+    @Override
+    public String name() {
+        return "yahoo";
+    }
+
+    @Override
+    public FxQuote fetch(String pair) throws Exception {
+        ResponseEntity<String> response = restTemplate.exchange(String.format(urlTemplate, pair), HttpMethod.GET, entity,
+                String.class);
+
+        // JSON構造: chart -> result -> [0] -> meta -> regularMarketPrice / regularMarketTime (秒)
+        JsonNode meta = mapper.readTree(response.getBody()).path("chart").path("result").path(0).path("meta");
+        double price = meta.path("regularMarketPrice").asDouble();
+        if (price <= 0) {
+            throw new IllegalStateException("レートが含まれていません: " + pair);
+        }
+        long marketTime = meta.path("regularMarketTime").asLong();
+        Instant asOf = marketTime > 0 ? Instant.ofEpochSecond(marketTime) : Instant.now();
+        return new FxQuote(pair, price, asOf, name());
+    }
+}
@@ -3,7 +3,11 @@ package com.example.CashFlowWeb;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = {
+		"cashflow.db.url=jdbc:sqlite:target/test-cashflow.db",
+		"cashflow.fx.providers=replay",
+		"cashflow.fx.store.dir=target/test-fx-ticks"
+})
 class CashFlowWebApplicationTests {
 
 	@Test
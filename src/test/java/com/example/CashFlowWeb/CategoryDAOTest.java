@@ -0,0 +1,111 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * 初期カテゴリがユーザー登録と同時に作られ、カテゴリ一覧のキャッシュが書き込みのたびに捨てられることを確認するテスト。
+ */
+class CategoryDAOTest {
+
+	@TempDir
+	Path tempDir;
+
+	private SQLiteDataSource dataSource;
+	private UserDAO userDAO;
+
+	@BeforeEach
+	void setUp() {
+		SQLiteConfig config = new SQLiteConfig();
+		config.enforceForeignKeys(true);
+		dataSource = new SQLiteDataSource(config);
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("categories.db"));
+		SchemaMigrator.migrate(dataSource);
+		userDAO = new UserDAO(dataSource);
+	}
+
+	@Test
+	void registrationSeedsDefaultsAtomically() throws SQLException {
+		User user = new User("new_user", "hash");
+		assertTrue(userDAO.saveUser(user));
+		assertTrue(user.getId() > 0);
+		assertEquals(CategoryDAO.DEFAULT_CATEGORIES.size(), countCategories(user.getId()));
+
+		// 登録に失敗した場合はカテゴリも残らない
+		assertFalse(userDAO.saveUser(new User("NEW_USER", "hash")));
+		assertEquals(CategoryDAO.DEFAULT_CATEGORIES.size(), countCategories(null));
+	}
+
+	@Test
+	void cachedListIsDroppedOnEveryWrite() throws SQLException {
+		User user = new User("cache_user", "hash");
+		userDAO.saveUser(user);
+		int userId = user.getId();
+		CategoryDAO categoryDAO = new CategoryDAO(dataSource, new DataVersions(), WriteQueue.direct(dataSource), 1);
+
+		List<Category> first = categoryDAO.getAllCategories(userId);
+		assertEquals(CategoryDAO.DEFAULT_CATEGORIES.size(), first.size());
+		execute("DELETE FROM categories WHERE name = '娯楽'"); // DAO を通さない変更はキャッシュに映らない
+		assertSame(first, categoryDAO.getAllCategories(userId));
+
+		assertTrue(categoryDAO.addCategory("医療費", "EXPENSE", userId));
+		List<Category> added = categoryDAO.getAllCategories(userId);
+		assertEquals(first.size(), added.size()); // 娯楽が消え、医療費が増えた
+		assertTrue(added.stream().anyMatch(c -> c.getName().equals("医療費")));
+
+		Category medical = added.stream().filter(c -> c.getName().equals("医療費")).findFirst().get();
+		assertTrue(categoryDAO.updateCategory(medical.getId(), "病院", "EXPENSE", userId));
+		assertTrue(categoryDAO.getAllCategories(userId).stream().anyMatch(c -> c.getName().equals("病院")));
+		assertTrue(categoryDAO.deleteCategory(medical.getId(), userId));
+		assertEquals(first.size() - 1, categoryDAO.getAllCategories(userId).size());
+
+		// 上限1件: 別のユーザーを読むと前のユーザーの分は捨てられる
+		User other = new User("other_user", "hash");
+		userDAO.saveUser(other);
+		List<Category> cached = categoryDAO.getAllCategories(userId);
+		categoryDAO.getAllCategories(other.getId());
+		assertFalse(cached == categoryDAO.getAllCategories(userId));
+	}
+
+	@Test
+	void migrationSeedsExistingUsersWithoutCategories() throws SQLException {
+		SQLiteDataSource legacy = new SQLiteDataSource();
+		legacy.setUrl("jdbc:sqlite:" + tempDir.resolve("legacy.db"));
+		SchemaMigrator.migrate(legacy, 5); // v5 までの DB
+		try (Connection conn = legacy.getConnection(); Statement stmt = conn.createStatement()) {
+			stmt.execute("INSERT INTO users(username, password_hash, role) VALUES('old', 'hash', 'USER')");
+		}
+		SchemaMigrator.migrate(legacy);
+		assertEquals(CategoryDAO.DEFAULT_CATEGORIES.size(), new CategoryDAO(legacy).getAllCategories(1).size());
+	}
+
+	private int countCategories(Integer userId) throws SQLException {
+		String sql = "SELECT COUNT(*) FROM categories" + (userId == null ? "" : " WHERE user_id = " + userId);
+		try (Connection conn = dataSource.getConnection();
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery(sql)) {
+			return rs.getInt(1);
+		}
+	}
+
+	private void execute(String sql) throws SQLException {
+		try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+			stmt.execute(sql);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * データのバージョンが変わらない間は If-None-Match に 304 を返し、
+ * DAO から書き込むと ETag が変わることを確認するテスト。
+ */
+class ConditionalGetInterceptorTest {
+
+	@TempDir
+	Path tempDir;
+
+	private final DataVersions versions = new DataVersions();
+	private ConditionalGetInterceptor interceptor;
+	private TransactionDAO transactionDAO;
+	private User alice;
+	private User bob;
+
+	@BeforeEach
+	void setUp() {
+		SQLiteConfig config = new SQLiteConfig();
+		config.enforceForeignKeys(true);
+		SQLiteDataSource dataSource = new SQLiteDataSource(config);
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("etag.db"));
+		SchemaMigrator.migrate(dataSource);
+		UserDAO userDAO = new UserDAO(dataSource);
+		alice = new User("alice", "hash");
+		bob = new User("bob", "hash");
+		userDAO.saveUser(alice);
+		userDAO.saveUser(bob);
+
+		transactionDAO = new TransactionDAO(dataSource, versions, WriteQueue.direct(dataSource));
+		Clock clock = Clock.fixed(Instant.parse("2025-06-01T00:00:00Z"), ZoneOffset.UTC);
+		interceptor = new ConditionalGetInterceptor(versions, new UserIdentityCache(userDAO, 16), clock);
+	}
+
+	@AfterEach
+	void clearContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void answersNotModifiedUntilTheUserWrites() {
+		MockHttpServletResponse first = get(alice, null);
+		String etag = first.getHeader("ETag");
+		assertEquals(200, first.getStatus());
+		assertEquals(ConditionalGetInterceptor.CACHE_CONTROL, first.getHeader("Cache-Control"));
+
+		MockHttpServletResponse repeat = get(alice, "\"other\", W/" + etag);
+		assertEquals(304, repeat.getStatus());
+
+		// 他のユーザーの書き込みでは変わらない
+		transactionDAO.addTransaction(bob.getId(), LocalDate.of(2025, 5, 1), Money.of(100), "EXPENSE", 0, null, false, false);
+		assertEquals(304, get(alice, etag).getStatus());
+		assertNotEquals(etag, get(bob, null).getHeader("ETag"));
+
+		transactionDAO.addTransaction(alice.getId(), LocalDate.of(2025, 5, 1), Money.of(100), "EXPENSE", 0, null, false, false);
+		MockHttpServletResponse changed = get(alice, etag);
+		assertEquals(200, changed.getStatus());
+		assertNotEquals(etag, changed.getHeader("ETag"));
+
+		// 失敗した書き込み（存在しない取引の削除）ではバージョンは進まない
+		String current = changed.getHeader("ETag");
+		assertFalse(transactionDAO.deleteTransaction(9999, alice.getId()));
+		assertEquals(304, get(alice, current).getStatus());
+	}
+
+	@Test
+	void writesAreNotConditional() throws Exception {
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken(alice, null, alice.getAuthorities()));
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/transactions");
+		request.addHeader("If-None-Match", "*");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		assertTrue(interceptor.preHandle(request, response, null));
+		assertEquals(null, response.getHeader("ETag"));
+	}
+
+	private MockHttpServletResponse get(User user, String ifNoneMatch) {
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/transactions");
+		if (ifNoneMatch != null) {
+			request.addHeader("If-None-Match", ifNoneMatch);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		boolean proceed = interceptor.preHandle(request, response, null);
+		assertEquals(response.getStatus() != 304, proceed);
+		return response;
+	}
+}
@@ -0,0 +1,130 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * ダッシュボードの各セクションが個別のAPIと同じ結果になり、
+ * 遅いセクションがあっても残りのセクションと所要時間が返ることを確認するテスト。
+ */
+class DashboardLoaderTest {
+
+	private static final LocalDate TODAY = LocalDate.of(2025, 6, 15);
+
+	@TempDir
+	Path tempDir;
+
+	private SQLiteDataSource readOnly;
+	private CategoryDAO categoryDAO;
+	private DashboardLoader loader;
+	private int userId;
+
+	@BeforeEach
+	void setUp() {
+		SQLiteDataSource dataSource = new SQLiteDataSource();
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("dashboard.db"));
+		SchemaMigrator.migrate(dataSource);
+		User user = new User("dash_user", "hash");
+		new UserDAO(dataSource).saveUser(user);
+		userId = user.getId();
+		categoryDAO = new CategoryDAO(dataSource);
+		int food = categoryDAO.getAllCategories(userId).stream()
+				.filter(c -> c.getName().equals("食費")).findFirst().get().getId();
+		TransactionDAO transactionDAO = new TransactionDAO(dataSource);
+		transactionDAO.addTransaction(userId, LocalDate.of(2025, 5, 25), Money.of(300000), "INCOME", 0, null, false, false);
+		transactionDAO.addTransaction(userId, LocalDate.of(2025, 6, 3), Money.of(1200), "EXPENSE", food, null, false, false);
+		Goal goal = new Goal();
+		goal.setName("旅行");
+		goal.setTargetAmount(Money.of(500000));
+		goal.setTargetDate("2026-01-01");
+		new GoalDAO(dataSource).addGoal(goal, userId);
+
+		SQLiteConfig config = new SQLiteConfig();
+		config.setReadOnly(true);
+		readOnly = new SQLiteDataSource(config);
+		readOnly.setUrl(dataSource.getUrl());
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (loader != null) {
+			loader.shutdown();
+		}
+	}
+
+	@Test
+	void sectionsMatchTheIndividualEndpoints() {
+		SummaryDAO summaryDAO = new SummaryDAO(readOnly);
+		AssetDAO assetDAO = new AssetDAO(readOnly);
+		GoalDAO goalDAO = new GoalDAO(readOnly);
+		loader = new DashboardLoader(new TransactionDAO(readOnly), summaryDAO, assetDAO, goalDAO, categoryDAO, 4, 16, 5000);
+
+		Dashboard dashboard = loader.load(userId, TODAY.withDayOfMonth(1), TODAY.withDayOfMonth(30), 12, 10, TODAY);
+		assertTrue(dashboard.isComplete());
+		assertEquals(List.of("categories", "goals", "assets", "transactions", "monthlySummary", "balance",
+				"categorySummary", "stats", "predict"), List.copyOf(dashboard.getSections().keySet()));
+		assertEquals(298800.0, dashboard.getData().get("balance"));
+		assertEquals(2, ((List<?>) dashboard.getData().get("transactions")).size());
+		List<?> pie = (List<?>) dashboard.getData().get("categorySummary");
+		assertEquals(1, pie.size());
+		assertEquals(1200.0, ((CategorySummary) pie.get(0)).getTotalAmount());
+
+		PredictionResult expected = TransactionController.buildPrediction(summaryDAO.getCashFlowStats(userId, true),
+				assetDAO.getAllAssets(userId), goalDAO.getAllGoals(userId), 12, TODAY);
+		PredictionResult actual = (PredictionResult) dashboard.getData().get("predict");
+		assertEquals(expected.getProjectionPoints(), actual.getProjectionPoints());
+		assertEquals(expected.getFeedback(), actual.getFeedback());
+	}
+
+	@Test
+	void slowSectionsAreCutOffAndTheRestIsReturned() {
+		GoalDAO slowGoals = new GoalDAO(readOnly) {
+			@Override
+			public List<Goal> getAllGoals(int userId) {
+				try {
+					Thread.sleep(2000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return List.of();
+			}
+		};
+		loader = new DashboardLoader(new TransactionDAO(readOnly), new SummaryDAO(readOnly), new AssetDAO(readOnly),
+				slowGoals, categoryDAO, 4, 16, 200);
+
+		long start = System.nanoTime();
+		Dashboard dashboard = loader.load(userId, TODAY.withDayOfMonth(1), TODAY.withDayOfMonth(30), 12, 10, TODAY);
+		assertTrue((System.nanoTime() - start) / 1_000_000 < 1500);
+		assertFalse(dashboard.isComplete());
+		assertEquals(Dashboard.Status.TIMEOUT, dashboard.getSections().get("goals").getStatus());
+		assertEquals(Dashboard.Status.ERROR, dashboard.getSections().get("predict").getStatus());
+		assertFalse(dashboard.getData().containsKey("goals"));
+		assertEquals(Dashboard.Status.OK, dashboard.getSections().get("balance").getStatus());
+		assertEquals(298800.0, dashboard.getData().get("balance"));
+	}
+
+	@Test
+	void readOnlyConnectionsRejectWrites() {
+		assertThrows(SQLException.class, () -> {
+			try (Connection conn = readOnly.getConnection(); Statement stmt = conn.createStatement()) {
+				stmt.execute("DELETE FROM transactions");
+			}
+		});
+	}
+}
@@ -0,0 +1,141 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 差分更新している各指標が、全レートから毎回計算し直した値と一致することと、
+ * エンジンが通貨ペアごとに独立した結果を保持することを確認するテスト。
+ */
+class FxIndicatorEngineTest {
+
+	@Test
+	void incrementalIndicatorsMatchBruteForce() {
+		SplittableRandom random = new SplittableRandom(3);
+		double[] prices = new double[500];
+		prices[0] = 150;
+		for (int i = 1; i < prices.length; i++) {
+			prices[i] = prices[i - 1] + (random.nextDouble() - 0.5) * 0.4;
+		}
+
+		List<FxIndicator> indicators = FxIndicators.defaults();
+		Map<String, Double> values = new HashMap<>();
+		double[] macd = new double[prices.length];
+		for (int i = 0; i < prices.length; i++) {
+			values.clear();
+			for (FxIndicator indicator : indicators) {
+				indicator.update(prices[i]);
+				indicator.publish(values);
+			}
+			double[] seen = Arrays.copyOf(prices, i + 1);
+
+			assertEquals(ema(seen, 12), values.get("ema12"), 1e-9);
+			assertEquals(ema(seen, 26), values.get("ema26"), 1e-9);
+			if (i >= 14) {
+				assertEquals(rsi(seen, 14), values.get("rsi14"), 1e-9);
+			} else {
+				assertFalse(values.containsKey("rsi14"));
+			}
+			if (i >= 19) {
+				double[] window = Arrays.copyOfRange(seen, seen.length - 20, seen.length);
+				double mean = Arrays.stream(window).average().getAsDouble();
+				double sd = Math.sqrt(Arrays.stream(window).map(p -> (p - mean) * (p - mean)).sum() / 20);
+				assertEquals(mean, values.get("bollingerMiddle"), 1e-9);
+				assertEquals(mean + 2 * sd, values.get("bollingerUpper"), 1e-6);
+				assertEquals(mean - 2 * sd, values.get("bollingerLower"), 1e-6);
+			}
+			if (i >= 2) {
+				assertEquals(realizedVolatility(seen, 30), values.get("realizedVolatility"), 1e-6);
+			}
+			macd[i] = ema(seen, 12) - ema(seen, 26);
+			if (i >= 25) {
+				assertEquals(macd[i], values.get("macd"), 1e-9);
+				assertEquals(ema(Arrays.copyOf(macd, i + 1), 9), values.get("macdSignal"), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	void pairsAreIndependentAndReadsDoNotRecompute() throws Exception {
+		FxQuoteCache cache = new FxQuoteCache(new ReplayQuoteProvider(Map.of(
+				"USDJPY", new double[] { 150.0, 150.2 },
+				"EURJPY", new double[] { 162.0, 161.5 })), FxQuoteCache.HISTORY_SIZE);
+		FxIndicatorEngine engine = new FxIndicatorEngine(cache, List.of("USDJPY", "EURJPY"));
+		assertNull(engine.latest("USDJPY"));
+		assertFalse(engine.supports("GBPJPY"));
+
+		cache.refresh("USDJPY");
+		cache.refresh("EURJPY");
+		cache.refresh("EURJPY");
+		FxAnalysis usd = engine.latest("USDJPY");
+		FxAnalysis eur = engine.latest("EURJPY");
+		assertEquals(150.0, usd.getPrice());
+		assertEquals(1, usd.getTicks());
+		assertEquals(161.5, eur.getPrice());
+		assertEquals(2, eur.getTicks());
+		assertEquals(ema(new double[] { 162.0, 161.5 }, 12), eur.getIndicators().get("ema12"), 1e-9);
+		assertSame(eur, engine.latest("EURJPY")); // 読み取りは計算済みの結果を返すだけ
+
+		// 下降トレンドでは予測も下向き
+		assertTrue(eur.getPrediction()[FxSignal.HORIZON - 1] < eur.getPrice());
+	}
+
+	@Test
+	void signalFollowsRsiBandsAndMacd() {
+		assertEquals("BUY", FxSignal.evaluate(150, Map.of("rsi14", 25.0)).getRecommendation());
+		assertEquals("SELL", FxSignal.evaluate(150, Map.of("rsi14", 75.0)).getRecommendation());
+		assertEquals("BUY", FxSignal.evaluate(149, Map.of("rsi14", 50.0, "bollingerLower", 149.5, "bollingerUpper", 151.0))
+				.getRecommendation());
+		assertEquals("SELL", FxSignal.evaluate(150, Map.of("rsi14", 50.0, "macdHistogram", -0.05)).getRecommendation());
+		assertEquals("STAY", FxSignal.evaluate(150, Map.of("rsi14", 50.0, "macdHistogram", 0.001)).getRecommendation());
+		assertEquals(0.1 * Math.sqrt(FxSignal.HORIZON),
+				FxSignal.evaluate(150, Map.of("realizedVolatility", 0.1)).getRiskPercentage(), 1e-12);
+	}
+
+	private static double ema(double[] prices, int period) {
+		double alpha = 2.0 / (period + 1);
+		double value = prices[0];
+		for (int i = 1; i < prices.length; i++) {
+			value += alpha * (prices[i] - value);
+		}
+		return value;
+	}
+
+	private static double rsi(double[] prices, int period) {
+		double gain = 0, loss = 0;
+		for (int i = 1; i <= period; i++) {
+			double change = prices[i] - prices[i - 1];
+			gain += Math.max(change, 0) / period;
+			loss += Math.max(-change, 0) / period;
+		}
+		for (int i = period + 1; i < prices.length; i++) {
+			double change = prices[i] - prices[i - 1];
+			gain = (gain * (period - 1) + Math.max(change, 0)) / period;
+			loss = (loss * (period - 1) + Math.max(-change, 0)) / period;
+		}
+		return 100 * gain / (gain + loss);
+	}
+
+	private static double realizedVolatility(double[] prices, int period) {
+		int n = Math.min(prices.length - 1, period);
+		double[] returns = new double[n];
+		for (int i = 0; i < n; i++) {
+			int j = prices.length - n + i;
+			returns[i] = Math.log(prices[j] / prices[j - 1]);
+		}
+		double mean = Arrays.stream(returns).average().getAsDouble();
+		double variance = Arrays.stream(returns).map(r -> (r - mean) * (r - mean)).sum() / (n - 1);
+		return Math.sqrt(variance) * 100;
+	}
+}
@@ -0,0 +1,101 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 為替レートキャッシュが同時の取得をまとめ、履歴を一定件数に保つことを確認するテスト。
+ */
+class FxQuoteCacheTest {
+
+	@Test
+	void concurrentMissesShareOneFetch() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		FxQuoteCache cache = new FxQuoteCache(pair -> {
+			calls.incrementAndGet();
+			release.await(5, TimeUnit.SECONDS);
+			return new FxQuote(pair, 151.5, Instant.now());
+		}, FxQuoteCache.HISTORY_SIZE);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<FxQuote>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> cache.get("USDJPY")));
+			}
+			Thread.sleep(200); // 全スレッドが取得待ちに入るまで待つ
+			release.countDown();
+
+			FxQuote first = results.get(0).get(5, TimeUnit.SECONDS);
+			for (Future<FxQuote> result : results) {
+				assertSame(first, result.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, calls.get());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// キャッシュ済みなら問い合わせない
+		cache.get("USDJPY");
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	void failedFetchKeepsPreviousQuote() {
+		AtomicInteger calls = new AtomicInteger();
+		FxQuoteCache cache = new FxQuoteCache(pair -> {
+			if (calls.incrementAndGet() > 1) {
+				throw new IllegalStateException("offline");
+			}
+			return new FxQuote(pair, 150.0, Instant.now());
+		}, FxQuoteCache.HISTORY_SIZE);
+		assertNull(new FxQuoteCache(pair -> { throw new IllegalStateException("offline"); }, FxQuoteCache.HISTORY_SIZE).get("USDJPY"));
+
+		FxQuote quote = cache.get("USDJPY");
+		assertTrue(cache.refresh("USDJPY").isCompletedExceptionally());
+		assertSame(quote, cache.peek("USDJPY"));
+	}
+
+	@Test
+	void historyIsSeededAndBounded() {
+		ReplayQuoteProvider provider = new ReplayQuoteProvider(Map.of("USDJPY", new double[] { 150.0, 151.0, 152.0 }));
+		FxQuoteCache cache = new FxQuoteCache(provider, 100);
+
+		cache.refresh("USDJPY");
+		double[] history = cache.history("USDJPY");
+		assertEquals(FxQuoteCache.HISTORY_SIZE, history.length);
+		assertEquals(150.0, history[0]);
+
+		for (int i = 0; i < 4; i++) {
+			cache.refresh("USDJPY");
+		}
+		history = cache.history("USDJPY");
+		assertEquals(FxQuoteCache.HISTORY_SIZE, history.length);
+		assertArrayEquals(new double[] { 151.0, 152.0, 150.0, 151.0 }, Arrays.copyOfRange(history, history.length - 4, history.length));
+		assertEquals(151.0, cache.peek("USDJPY").getPrice());
+
+		// 統計は表示用の30件ではなく窓全体 (100件) が対象
+		PriceWindow.Stats stats = cache.stats("USDJPY");
+		assertEquals(100, stats.getCount());
+		assertEquals(152.0, stats.getMax());
+		assertEquals((96 * 150.0 + 151.0 + 152.0 + 150.0 + 151.0) / 100, stats.getMean(), 1e-9);
+	}
+}
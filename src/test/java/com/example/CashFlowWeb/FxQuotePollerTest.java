@@ -0,0 +1,83 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * 再生データのレートはキャッシュと分析には反映されるが、stale の印が付き、fx_rates と履歴には保存されないことを確認するテスト。
+ */
+class FxQuotePollerTest {
+
+	private static final List<String> PAIRS = List.of("USDJPY");
+
+	@TempDir
+	Path tempDir;
+
+	private FxRateDAO fxRateDAO;
+	private FxTickStore tickStore;
+
+	@BeforeEach
+	void setUp() {
+		SQLiteDataSource dataSource = new SQLiteDataSource();
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("fx.db"));
+		SchemaMigrator.migrate(dataSource);
+		fxRateDAO = new FxRateDAO(dataSource);
+		tickStore = new FxTickStore(tempDir.resolve("ticks").toString(), 65536, 400);
+	}
+
+	@AfterEach
+	void tearDown() {
+		tickStore.close();
+	}
+
+	@Test
+	void replayedQuotesAreNotStoredAndAreMarkedStale() {
+		FxQuoteCache cache = new FxQuoteCache(new ReplayQuoteProvider(Map.of("USDJPY", new double[] { 150.0, 151.0 })),
+				FxQuoteCache.HISTORY_SIZE);
+		FxIndicatorEngine engine = new FxIndicatorEngine(cache, PAIRS);
+		FxQuotePoller poller = new FxQuotePoller(cache, fxRateDAO, tickStore, engine, PAIRS, FxQuoteCache.HISTORY_SIZE);
+
+		poller.poll();
+		poller.poll();
+
+		assertEquals(151.0, cache.peek("USDJPY").getPrice());
+		assertTrue(engine.latest("USDJPY").isStale());
+		assertNull(fxRateDAO.findLatest("USDJPY"));
+		assertEquals(0, tickStore.latestPrices("USDJPY", Long.MAX_VALUE, 10).length);
+	}
+
+	@Test
+	void liveQuotesAreStored() {
+		Instant asOf = Instant.parse("2025-04-01T09:00:00Z");
+		FxQuoteCache cache = new FxQuoteCache(new QuoteProvider() {
+			@Override
+			public String name() {
+				return "yahoo";
+			}
+
+			@Override
+			public FxQuote fetch(String pair) {
+				return new FxQuote(pair, 152.5, asOf, name());
+			}
+		}, FxQuoteCache.HISTORY_SIZE);
+		FxIndicatorEngine engine = new FxIndicatorEngine(cache, PAIRS);
+		new FxQuotePoller(cache, fxRateDAO, tickStore, engine, PAIRS, FxQuoteCache.HISTORY_SIZE).poll();
+
+		assertFalse(engine.latest("USDJPY").isStale());
+		assertEquals(asOf, fxRateDAO.findLatest("USDJPY").getAsOf());
+		assertEquals(1, tickStore.latestPrices("USDJPY", Long.MAX_VALUE, 10).length);
+	}
+}
@@ -0,0 +1,56 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * 為替APIに接続できない状態でも、アプリが時間内に起動し、前回保存したレートを返すことを確認するテスト。
+ * 接続先には応答しないアドレスを指定し、タイムアウトも長くしておくため、
+ * 起動処理が1回でもネットワークを待つと予算を超えて失敗します。
+ */
+class FxStartupTest {
+
+	// 起動時間の上限 (テスト用コンテキストの通常の起動時間に十分な余裕を持たせた値)
+	private static final Duration STARTUP_BUDGET = Duration.ofSeconds(20);
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void contextStartsWithoutTheNetwork() {
+		String url = "jdbc:sqlite:" + tempDir.resolve("startup.db");
+		SQLiteDataSource dataSource = new SQLiteDataSource();
+		dataSource.setUrl(url);
+		SchemaMigrator.migrate(dataSource);
+		Instant savedAt = Instant.parse("2025-04-01T09:00:00Z");
+		assertTrue(new FxRateDAO(dataSource).save(new FxQuote("USDJPY", 152.34, savedAt)));
+
+		long start = System.nanoTime();
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(CashFlowWebApplication.class)
+				.run(
+						"--server.port=0",
+						"--cashflow.db.url=" + url,
+						"--cashflow.fx.store.dir=" + tempDir.resolve("ticks"),
+						"--cashflow.fx.providers=yahoo",
+						"--cashflow.fx.yahoo-url=http://10.255.255.1/%s", // 応答しないアドレス
+						"--cashflow.fx.http.connect-timeout-ms=60000",
+						"--cashflow.fx.http.read-timeout-ms=60000")) {
+			Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+			assertTrue(elapsed.compareTo(STARTUP_BUDGET) < 0, "起動に " + elapsed.toMillis() + "ms かかりました");
+
+			FXController.FXPrediction analysis = context.getBean(FXController.class).getFXAnalysis(null).getBody();
+			assertEquals(152.34, analysis.currentRate, 1e-9);
+			assertEquals(savedAt, analysis.asOf);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * レートが変わったときだけ差分イベントが配信され、遅い購読者のキューが上限を超えないことを確認するテスト。
+ */
+class FxStreamPublisherTest {
+
+	private FxStreamPublisher publisher;
+
+	@AfterEach
+	void tearDown() {
+		publisher.shutdown();
+	}
+
+	@Test
+	void ticksAreSentOnlyWhenTheRateChanges() throws Exception {
+		FxQuoteCache cache = new FxQuoteCache(
+				new ReplayQuoteProvider(Map.of("USDJPY", new double[] { 150.0, 150.0, 150.5 })), FxQuoteCache.HISTORY_SIZE);
+		publisher = newPublisher(cache);
+		RecordingEmitter emitter = new RecordingEmitter(null);
+		publisher.subscribe("USDJPY", () -> "snapshot", emitter);
+
+		for (int i = 0; i < 3; i++) {
+			cache.refresh("USDJPY");
+		}
+		waitFor(() -> emitter.events.size() == 3);
+		Thread.sleep(100); // 余分なイベントが来ないこと
+
+		assertEquals(3, emitter.events.size());
+		assertTrue(emitter.events.get(0).startsWith("event:snapshot"));
+		assertTrue(emitter.events.get(1).startsWith("event:tick") && emitter.events.get(1).contains("\"price\":150.0"));
+		assertTrue(emitter.events.get(2).contains("\"price\":150.5"));
+	}
+
+	@Test
+	void slowSubscriberKeepsOnlyTheLatestEvents() throws Exception {
+		double[] prices = new double[200];
+		for (int i = 0; i < prices.length; i++) {
+			prices[i] = 150 + i * 0.01;
+		}
+		FxQuoteCache cache = new FxQuoteCache(new ReplayQuoteProvider(Map.of("USDJPY", prices)), FxQuoteCache.HISTORY_SIZE);
+		publisher = newPublisher(cache);
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingEmitter slow = new RecordingEmitter(release);
+		publisher.subscribe("USDJPY", () -> "snapshot", slow);
+
+		for (int i = 0; i < prices.length; i++) {
+			cache.refresh("USDJPY");
+		}
+		release.countDown();
+		Thread.sleep(300);
+
+		// 送信中の1件 + キューの上限まで。最後のレートは必ず届く
+		assertTrue(slow.events.size() <= FxStreamPublisher.BUFFER_SIZE + 1, "届いたイベント数: " + slow.events.size());
+		String last = slow.events.get(slow.events.size() - 1);
+		assertTrue(last.contains("\"price\":" + prices[prices.length - 1]), last);
+	}
+
+	private static FxStreamPublisher newPublisher(FxQuoteCache cache) {
+		FxIndicatorEngine engine = new FxIndicatorEngine(cache, List.of("USDJPY"));
+		return new FxStreamPublisher(engine, new ObjectMapper().registerModule(new JavaTimeModule()), 60_000, 1);
+	}
+
+	private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+		for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+			Thread.sleep(20);
+		}
+	}
+
+	/**
+	 * 送信内容を文字列として記録する SseEmitter（release が指定されていれば最初の送信で待たされる）。
+	 */
+	private static final class RecordingEmitter extends SseEmitter {
+		private final List<String> events = new CopyOnWriteArrayList<>();
+		private final CountDownLatch release;
+
+		RecordingEmitter(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		public void send(Set<DataWithMediaType> items) throws IOException {
+			if (release != null) {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			StringBuilder text = new StringBuilder();
+			for (DataWithMediaType item : items) {
+				text.append(item.getData());
+			}
+			events.add(text.toString());
+		}
+	}
+}
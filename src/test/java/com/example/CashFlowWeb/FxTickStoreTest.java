@@ -0,0 +1,137 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * ティックストアのローソク足が全ティックから直接計算した結果と一致し、
+ * 再起動・セグメントの切り替え・保存期間の削除をまたいでも内容が保たれることを確認するテスト。
+ */
+class FxTickStoreTest {
+
+	private static final long T0 = 1_735_689_600_000L; // 2025-01-01T00:00:00Z
+	// T0 のティックが開いた時点で削除されないよう十分長くする
+	private static final int RETENTION_DAYS = 36500;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void candlesMatchBruteForceAcrossSegmentsAndRestart() {
+		SplittableRandom random = new SplittableRandom(12);
+		long[] times = new long[3000];
+		double[] prices = new double[times.length];
+		FxTickStore store = new FxTickStore(tempDir.toString(), 256, RETENTION_DAYS);
+		long t = T0;
+		for (int i = 0; i < times.length; i++) {
+			t += 1000 + random.nextInt(120_000); // 1秒〜2分間隔
+			times[i] = t;
+			prices[i] = 140 + random.nextInt(2000) / 100.0;
+			assertTrue(store.append("USDJPY", times[i], prices[i]));
+		}
+		store.close();
+
+		// 開き直しても同じ内容が読める
+		FxTickStore reopened = new FxTickStore(tempDir.toString(), 256, RETENTION_DAYS);
+		for (FxTickStore.Resolution resolution : FxTickStore.Resolution.values()) {
+			long from = times[100] + 1;
+			long to = times[2500];
+			if ((to - from) / resolution.getMillis() >= FxTickStore.MAX_CANDLES) {
+				continue;
+			}
+			assertCandles(bruteForce(times, prices, from, to, resolution.getMillis()),
+					reopened.candles("USDJPY", from, to, resolution));
+		}
+
+		// 新しいティックは最後のセグメントの続きに書かれる
+		assertTrue(reopened.append("USDJPY", t + 60_000, 150.0));
+		FxCandles last = reopened.candles("USDJPY", t + 60_000, t + 60_000, FxTickStore.Resolution.M1);
+		assertArrayEquals(new double[] { 150.0 }, last.getClose());
+		assertArrayEquals(new double[] { prices[prices.length - 2], prices[prices.length - 1] },
+				reopened.latestPrices("USDJPY", t + 1, 2));
+	}
+
+	@Test
+	void rejectsOutOfOrderTicksAndHugeRanges() {
+		FxTickStore store = new FxTickStore(tempDir.toString(), 16, RETENTION_DAYS);
+		assertTrue(store.append("USDJPY", T0 + 1000, 150.0));
+		assertTrue(store.append("USDJPY", T0 + 1000, 150.1)); // 同時刻は可
+		assertFalse(store.append("USDJPY", T0, 149.0));
+
+		assertThrows(IllegalArgumentException.class,
+				() -> store.candles("USDJPY", T0, T0 + 365L * 86_400_000, FxTickStore.Resolution.M1));
+		assertThrows(IllegalArgumentException.class, () -> store.append("../etc", T0 + 2000, 1.0));
+		assertEquals(0, store.candles("EURJPY", T0, T0 + 1000, FxTickStore.Resolution.M1).getTime().length);
+		assertFalse(Files.exists(tempDir.resolve("EURJPY"))); // 参照だけではディレクトリを作らない
+	}
+
+	@Test
+	void retentionDropsWholeExpiredSegments() throws IOException {
+		FxTickStore store = new FxTickStore(tempDir.toString(), 10, RETENTION_DAYS);
+		for (int i = 0; i < 35; i++) {
+			store.append("USDJPY", T0 + i * 60_000L, 150 + i);
+		}
+		assertEquals(4, segmentFiles());
+
+		// 先頭2セグメント (0〜19分) はすべて cutoff より前。3番目は一部が残るため消さない
+		store.purgeBefore(T0 + 25 * 60_000L);
+		assertEquals(2, segmentFiles());
+		FxCandles candles = store.candles("USDJPY", T0, T0 + 40 * 60_000L, FxTickStore.Resolution.M1);
+		assertEquals(15, candles.getTime().length);
+		assertEquals(T0 + 20 * 60_000L, candles.getTime()[0]);
+
+		// 最新のセグメントは期限切れでも残す
+		store.purgeBefore(Long.MAX_VALUE);
+		assertEquals(1, segmentFiles());
+		assertTrue(store.append("USDJPY", T0 + 40 * 60_000L, 200.0));
+	}
+
+	private long segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(tempDir.resolve("USDJPY"))) {
+			return files.count();
+		}
+	}
+
+	private static TreeMap<Long, double[]> bruteForce(long[] times, double[] prices, long from, long to, long width) {
+		TreeMap<Long, double[]> candles = new TreeMap<>();
+		for (int i = 0; i < times.length; i++) {
+			if (times[i] < from || times[i] > to) {
+				continue;
+			}
+			long bucket = times[i] / width * width;
+			double[] c = candles.get(bucket);
+			if (c == null) {
+				candles.put(bucket, new double[] { prices[i], prices[i], prices[i], prices[i] });
+			} else {
+				c[1] = Math.max(c[1], prices[i]);
+				c[2] = Math.min(c[2], prices[i]);
+				c[3] = prices[i];
+			}
+		}
+		return candles;
+	}
+
+	private static void assertCandles(TreeMap<Long, double[]> expected, FxCandles actual) {
+		assertEquals(expected.size(), actual.getTime().length);
+		int i = 0;
+		for (var entry : expected.entrySet()) {
+			assertEquals(entry.getKey(), actual.getTime()[i]);
+			assertArrayEquals(entry.getValue(), new double[] {
+					actual.getOpen()[i], actual.getHigh()[i], actual.getLow()[i], actual.getClose()[i] });
+			i++;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.CashFlowWeb;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * モンテカルロ予測（シミュレーション + P10/P50/P90 集計）1回分の所要時間を測る JMH ベンチマーク。
+ * 目標は 100,000 パス × 24ヶ月を 4 コアで 100ms 未満。
+ *
+ * 実行方法:
+ *   mvn -B test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.example.CashFlowWeb.MonteCarloForecasterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MonteCarloForecasterBenchmark {
+
+	@Param({ "4" })
+	int parallelism;
+
+	@Param({ "100000" })
+	int paths;
+
+	@Param({ "24" })
+	int months;
+
+	private MonteCarloForecaster forecaster;
+	private double[] flows;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		forecaster = new MonteCarloForecaster(parallelism, 1);
+		// 3年分の月次純収支（給与 + ばらつきのある支出）
+		SplittableRandom random = new SplittableRandom(1);
+		flows = new double[36];
+		for (int i = 0; i < flows.length; i++) {
+			flows[i] = 300_000 - random.nextDouble(150_000, 350_000);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		forecaster.shutdown();
+	}
+
+	@Benchmark
+	public double[][] forecast() {
+		return forecaster.simulate(1_000_000, flows, months, paths, 42L,
+				new int[] { months }, new double[] { 2_000_000 }).percentileBands();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(MonteCarloForecasterBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,144 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * モンテカルロ予測エンジンの結果が正しく、並列度によらず再現できることを確認するテスト。
+ */
+class MonteCarloForecasterTest {
+
+	private final MonteCarloForecaster forecaster = new MonteCarloForecaster(4, 8);
+
+	@AfterEach
+	void tearDown() {
+		forecaster.shutdown();
+	}
+
+	@Test
+	void constantFlowsGiveAStraightLine() {
+		double[][] bands = forecaster.simulate(1000, new double[] { 50, 50, 50 }, 12, 1000, 1L).percentileBands();
+		for (int m = 0; m < 12; m++) {
+			double expected = 1000 + 50 * (m + 1);
+			assertEquals(expected, bands[0][m], 1e-9);
+			assertEquals(expected, bands[1][m], 1e-9);
+			assertEquals(expected, bands[2][m], 1e-9);
+		}
+	}
+
+	@Test
+	void resultsDoNotDependOnParallelism() {
+		double[] flows = { -30000, 120000, 45000, -80000, 60000, 10000 };
+		MonteCarloForecaster single = new MonteCarloForecaster(1, 8);
+		try {
+			double[][] a = forecaster.simulate(0, flows, 24, 50_000, 42L).percentileBands();
+			double[][] b = single.simulate(0, flows, 24, 50_000, 42L).percentileBands();
+			for (int i = 0; i < 3; i++) {
+				assertArrayEquals(a[i], b[i]);
+			}
+		} finally {
+			single.shutdown();
+		}
+	}
+
+	@Test
+	void bandsAreOrderedAndCentredOnTheMean() {
+		double[] flows = { -100, 300 }; // 平均 +100
+		double[][] bands = forecaster.simulate(0, flows, 24, 20_000, 7L).percentileBands();
+		for (int m = 0; m < 24; m++) {
+			assertTrue(bands[0][m] <= bands[1][m] && bands[1][m] <= bands[2][m]);
+		}
+		assertEquals(2400, bands[1][23], 200);
+		assertTrue(bands[2][23] - bands[0][23] > 0);
+	}
+
+	@Test
+	void goalProbabilityCountsPathsAboveTarget() {
+		double[] probabilities = forecaster.simulate(0, new double[] { 0, 100 }, 1, 10_000, 3L,
+				new int[] { 1, 1, 1 }, new double[] { 100, 0, 101 }).goalProbabilities();
+		assertEquals(0.5, probabilities[0], 0.03);
+		assertEquals(1.0, probabilities[1], 0);
+		assertEquals(0.0, probabilities[2], 0);
+	}
+
+	@Test
+	void goalsBeyondTheBandsExtendTheSimulation() {
+		MonteCarloForecaster.Simulation simulation = forecaster.simulate(1000, new double[] { 50 }, 3, 100, 5L,
+				new int[] { 2, 10 }, new double[] { 1100, 1500 });
+		assertEquals(3, simulation.percentileBands()[1].length);
+		assertEquals(1.0, simulation.goalProbabilities()[0], 0);
+		assertEquals(1.0, simulation.goalProbabilities()[1], 0); // 10ヶ月後は 1500
+		assertEquals(0.0, forecaster.simulate(1000, new double[] { 50 }, 3, 100, 5L,
+				new int[] { 9 }, new double[] { 1500 }).goalProbabilities()[0], 0);
+	}
+
+	@Test
+	void simulationsBeyondTheLimitAreRejected() throws Exception {
+		MonteCarloForecaster limited = new MonteCarloForecaster(1, 1);
+		try {
+			double[] flows = { -30000, 120000, 45000 };
+			// 大きなシミュレーションの実行中は、小さなものも受け付けない
+			CompletableFuture<MonteCarloForecaster.Simulation> large = CompletableFuture.supplyAsync(() -> {
+				while (true) {
+					try {
+						return limited.simulate(0, flows, MonteCarloForecaster.MAX_MONTHS, MonteCarloForecaster.MAX_PATHS, 1L);
+					} catch (MonteCarloForecaster.BusyException e) {
+						Thread.onSpinWait(); // 小さい方が先に取った場合は空くまで待つ
+					}
+				}
+			});
+			boolean rejected = false;
+			while (!rejected && !large.isDone()) {
+				Thread.sleep(1); // 大きい方が実行数の枠を取れるようにする
+				try {
+					limited.simulate(0, flows, 1, 10, 1L);
+				} catch (MonteCarloForecaster.BusyException e) {
+					rejected = true;
+				}
+			}
+			assertTrue(rejected);
+			assertEquals(MonteCarloForecaster.MAX_MONTHS, large.join().getMonths());
+			// 終われば次を受け付ける
+			assertEquals(1, limited.simulate(0, flows, 1, 10, 1L).getMonths());
+		} finally {
+			limited.shutdown();
+		}
+	}
+
+	@Test
+	void selectMatchesSorting() {
+		SplittableRandom random = new SplittableRandom(9);
+		double[] data = random.doubles(5001).toArray();
+		double[] sorted = data.clone();
+		Arrays.sort(sorted);
+		for (int k : new int[] { 0, 500, 2500, 4500, 5000 }) {
+			assertEquals(sorted[k], MonteCarloForecaster.select(data.clone(), 0, data.length, k));
+		}
+	}
+
+	@Test
+	void percentilesMatchSortingWithoutTouchingTheRow() {
+		SplittableRandom random = new SplittableRandom(11);
+		double[] data = new double[20_000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = random.nextInt(50) * 1000.0 + (i % 7 == 0 ? 1e7 : 0); // 重複と外れ値を含む
+		}
+		double[] original = data.clone();
+		double[] sorted = data.clone();
+		Arrays.sort(sorted);
+		int[] ranks = { 1999, 9999, 17999 };
+		double[] p = MonteCarloForecaster.Simulation.percentiles(data, 0, data.length, ranks);
+		for (int r = 0; r < ranks.length; r++) {
+			assertEquals(sorted[ranks[r]], p[r]);
+		}
+		assertArrayEquals(original, data);
+	}
+}
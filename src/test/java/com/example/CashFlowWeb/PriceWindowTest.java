@@ -0,0 +1,68 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * リングバッファの平均・最小・最大が、窓を毎回走査した結果と一致することを確認するテスト。
+ */
+class PriceWindowTest {
+
+	@Test
+	void rollingStatsMatchBruteForce() {
+		SplittableRandom random = new SplittableRandom(5);
+		for (int capacity : new int[] { 1, 2, 7, 30, 1440 }) {
+			PriceWindow window = new PriceWindow(capacity);
+			double[] all = new double[5000];
+			for (int i = 0; i < all.length; i++) {
+				all[i] = 140 + random.nextInt(200) / 10.0; // 重複する値を含める
+				window.add(all[i]);
+
+				double[] expected = Arrays.copyOfRange(all, Math.max(0, i + 1 - capacity), i + 1);
+				PriceWindow.Stats stats = window.stats();
+				assertEquals(expected.length, stats.getCount());
+				assertEquals(all[i], stats.getLast());
+				assertEquals(Arrays.stream(expected).min().getAsDouble(), stats.getMin());
+				assertEquals(Arrays.stream(expected).max().getAsDouble(), stats.getMax());
+				assertEquals(Arrays.stream(expected).average().getAsDouble(), stats.getMean(), 1e-9);
+				assertArrayEquals(expected, window.latest(capacity));
+			}
+		}
+	}
+
+	@Test
+	void readersNeverSeeATornWindow() throws InterruptedException {
+		PriceWindow window = new PriceWindow(64);
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicReference<String> failure = new AtomicReference<>();
+
+		Thread reader = new Thread(() -> {
+			while (!done.get()) {
+				double[] copy = window.latest(64);
+				for (int i = 1; i < copy.length; i++) {
+					if (copy[i] != copy[i - 1] + 1) {
+						failure.set(Arrays.toString(copy));
+						return;
+					}
+				}
+			}
+		});
+		reader.start();
+		for (int i = 0; i < 2_000_000; i++) {
+			window.add(i); // 書き込みは1スレッドだけ
+		}
+		done.set(true);
+		reader.join();
+
+		assertTrue(failure.get() == null, "連続していない履歴を読みました: " + failure.get());
+		assertEquals(2_000_000 - 1 - 63 / 2.0, window.stats().getMean(), 1e-6);
+	}
+}
@@ -0,0 +1,236 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * すべてのDAOクエリに対して EXPLAIN QUERY PLAN を実行し、
+ * テーブルのフルスキャンになっているものがあれば失敗させるテスト。
+ * DAOが実際に発行したSQLを記録して検査するため、クエリを追加しても自動的に対象になります。
+ */
+class QueryPlanTest {
+
+	@TempDir
+	Path tempDir;
+
+	private SQLiteDataSource raw;
+	private final Set<String> capturedSql = new LinkedHashSet<>();
+	private DataSource capturing;
+
+	@BeforeEach
+	void setUp() {
+		SQLiteConfig config = new SQLiteConfig();
+		config.enforceForeignKeys(true);
+		raw = new SQLiteDataSource(config);
+		raw.setUrl("jdbc:sqlite:" + tempDir.resolve("plan.db"));
+		SchemaMigrator.migrate(raw);
+		capturing = capturingDataSource(raw);
+	}
+
+	@Test
+	void migrationsAreRecordedOnce() throws SQLException {
+		SchemaMigrator.migrate(raw); // 2回目は何もしない
+		try (Connection conn = raw.getConnection()) {
+			assertEquals(SchemaMigrator.MIGRATIONS.size(), SchemaMigrator.currentVersion(conn));
+			try (Statement stmt = conn.createStatement();
+				 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM schema_version")) {
+				rs.next();
+				assertEquals(SchemaMigrator.MIGRATIONS.size(), rs.getInt(1));
+			}
+		}
+	}
+
+	@Test
+	void everyDaoQueryUsesAnIndex() throws SQLException {
+		exerciseAllDaos();
+		assertFalse(capturedSql.isEmpty());
+
+		List<String> fullScans = new ArrayList<>();
+		try (Connection conn = raw.getConnection()) {
+			for (String sql : capturedSql) {
+				for (String detail : fullTableScans(conn, sql)) {
+					fullScans.add(detail + "  <=  " + sql);
+				}
+			}
+		}
+		assertTrue(fullScans.isEmpty(), "フルスキャンになっているクエリがあります:\n" + String.join("\n", fullScans));
+	}
+
+	/**
+	 * 各DAOの全メソッドを一通り呼び出し、発行されたSQLを記録します。
+	 */
+	private void exerciseAllDaos() {
+		UserDAO userDAO = new UserDAO(capturing);
+		User user = new User("plan_user", "hash");
+		assertTrue(userDAO.saveUser(user));
+		int userId = userDAO.findByUsername("PLAN_USER").getId();
+
+		CategoryDAO categoryDAO = new CategoryDAO(capturing);
+		List<Category> categories = categoryDAO.getAllCategories(userId);
+		int categoryId = categories.get(0).getId();
+		categoryDAO.addCategory("テスト", "EXPENSE", userId);
+		categoryDAO.updateCategory(categoryId, categories.get(0).getName(), categories.get(0).getType(), userId);
+
+		GoalDAO goalDAO = new GoalDAO(capturing);
+		Goal goal = new Goal();
+		goal.setName("旅行");
+		goal.setTargetAmount(Money.of(100000));
+		goal.setTargetDate("2030-01-01");
+		goalDAO.addGoal(goal, userId);
+		int goalId = goalDAO.getAllGoals(userId).get(0).getId();
+		goal.setId(goalId);
+		goalDAO.updateGoal(goal, userId);
+
+		TransactionDAO transactionDAO = new TransactionDAO(capturing);
+		LocalDate today = LocalDate.of(2025, 4, 15);
+		transactionDAO.addTransaction(userId, today, Money.of(1000), "EXPENSE", categoryId, goalId, false, false);
+		Transaction t = transactionDAO.getAllTransactions(userId).get(0);
+		transactionDAO.getFilteredTransactions(userId, today.minusMonths(1), today, categoryId, "EXPENSE");
+		transactionDAO.getFilteredTransactions(userId, today.minusMonths(1), today, null, "EXPENSE");
+		transactionDAO.getFilteredTransactions(userId, today.minusMonths(1), null, categoryId, null);
+		TransactionPage.Cursor cursor = new TransactionPage.Cursor(today, t.getId() + 1);
+		transactionDAO.getTransactionPage(userId, null, null, null, null, cursor, 10);
+		transactionDAO.getTransactionPage(userId, null, null, null, "EXPENSE", cursor, 10);
+		transactionDAO.getTransactionPage(userId, null, null, categoryId, null, cursor, 10);
+		transactionDAO.getCashBalance(userId);
+		transactionDAO.getTransactionById(t.getId(), userId);
+		// 取り込み（指紋での重複確認）
+		WriteQueue.await(transactionDAO.addTransactionsAsync(userId, List.of(t), new long[] { 42 }));
+		try {
+			transactionDAO.loadFingerprintFilter(userId, 0.01);
+			transactionDAO.findExistingFingerprints(userId, List.of(42L, 43L));
+		} catch (SQLException e) {
+			throw new AssertionError(e);
+		}
+
+		SummaryDAO summaryDAO = new SummaryDAO(capturing);
+		summaryDAO.getMonthlySummaries(userId, null, null);
+		summaryDAO.getMonthlySummaries(userId, today.minusYears(1), today);
+		summaryDAO.getCategorySummaries(userId, "EXPENSE", null, null);
+		summaryDAO.getCategorySummaries(userId, "EXPENSE", today.withDayOfMonth(1), today);
+		summaryDAO.getMonthlySummaries(userId, today.withDayOfMonth(1), today.withDayOfMonth(today.lengthOfMonth()));
+		summaryDAO.getCategorySummaries(userId, "EXPENSE", today.withDayOfMonth(1), today.withDayOfMonth(today.lengthOfMonth()));
+		summaryDAO.getCashFlowStats(userId, true);
+		summaryDAO.getCashFlowStats(userId, false);
+		summaryDAO.getMonthlyNetFlows(userId, true);
+		summaryDAO.getMonthlyNetFlows(userId, false);
+
+		RollupDAO rollupDAO = new RollupDAO(capturing);
+		rollupDAO.findMismatches(userId);
+		rollupDAO.rebuild(userId);
+
+		transactionDAO.updateTransaction(t, userId);
+		// 一括変更の条件指定の操作
+		WriteQueue.await(transactionDAO.recategorizeChunkAsync(userId, today.minusMonths(1), today, 0, "EXPENSE", categoryId, 10));
+		WriteQueue.await(transactionDAO.deleteChunkAsync(userId, today.minusYears(5), today.minusYears(4), null, null, 10));
+
+		AssetDAO assetDAO = new AssetDAO(capturing);
+		assetDAO.addAsset(new Asset(0, "株", "TEST", 1, Money.of(100), Money.of(120), "STOCK"), userId);
+		int assetId = assetDAO.getAllAssets(userId).get(0).getId();
+		assetDAO.getAssetById(assetId, userId);
+		assetDAO.updateAsset(new Asset(assetId, "株", "TEST", 2, Money.of(100), Money.of(120), "STOCK"), userId);
+		assetDAO.deleteAsset(assetId, userId);
+
+		FxRateDAO fxRateDAO = new FxRateDAO(capturing);
+		fxRateDAO.save(new FxQuote("USDJPY", 150.0, Instant.now()));
+		fxRateDAO.findLatest("USDJPY");
+
+		BudgetDAO budgetDAO = new BudgetDAO(capturing);
+		budgetDAO.saveOrUpdateBudget("2025-04", categoryId, Money.of(5000), userId);
+		budgetDAO.getBudgetsForMonth("2025-04", userId);
+
+		// 集計用の列指向コピーの読み込みと、それを使う場合の目標・予算のクエリ
+		TransactionProjection projection = new TransactionProjection(capturing, 1024 * 1024);
+		new GoalDAO(capturing, new DataVersions(), WriteQueue.direct(capturing), projection).getAllGoals(userId);
+		new BudgetDAO(capturing, new DataVersions(), WriteQueue.direct(capturing), projection).getBudgetsForMonth("2025-04", userId);
+
+		categoryDAO.deleteCategory(categoryId, userId); // 使用中チェックのクエリ
+		transactionDAO.deleteTransaction(t.getId(), userId);
+		categoryDAO.deleteCategory(categoryId, userId);
+		goalDAO.deleteGoal(goalId, userId);
+	}
+
+	/**
+	 * クエリプランのうち、実テーブルを先頭から読む "SCAN" 行を返します。
+	 * サブクエリを実体化した一時テーブルのスキャンは対象外です。
+	 */
+	private static List<String> fullTableScans(Connection conn, String sql) throws SQLException {
+		List<String> details = new ArrayList<>();
+		Set<String> derived = new HashSet<>();
+		try (Statement stmt = conn.createStatement();
+			 ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN " + sql)) {
+			while (rs.next()) {
+				details.add(rs.getString("detail"));
+			}
+		}
+		List<String> scans = new ArrayList<>();
+		for (String detail : details) {
+			if (detail.startsWith("MATERIALIZE ") || detail.startsWith("CO-ROUTINE ")) {
+				derived.add(detail.substring(detail.indexOf(' ') + 1).trim());
+			}
+		}
+		for (String detail : details) {
+			if (!detail.startsWith("SCAN ")) {
+				continue;
+			}
+			String target = detail.substring("SCAN ".length()).split(" ")[0];
+			// 複数行の VALUES は "SCAN 10 CONSTANT ROWS" になるが、テーブルの走査ではない
+			// sqlite_sequence は AUTOINCREMENT のテーブルごとに1行だけの SQLite の内部テーブルで、索引を作れない
+			if (!derived.contains(target) && !"CONSTANT".equals(target) && !detail.endsWith(" CONSTANT ROWS")
+					&& !"sqlite_sequence".equals(target)) {
+				scans.add(detail);
+			}
+		}
+		return scans;
+	}
+
+	private DataSource capturingDataSource(DataSource delegate) {
+		return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class },
+				(proxy, method, args) -> {
+					Object result = invoke(delegate, method, args);
+					if (result instanceof Connection) {
+						Connection conn = (Connection) result;
+						return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+								(p, m, a) -> {
+									if ("prepareStatement".equals(m.getName())) {
+										capturedSql.add((String) a[0]);
+									}
+									return invoke(conn, m, a);
+								});
+					}
+					return result;
+				});
+	}
+
+	private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 取得元チェーンが失敗した取得元を飛ばして次へ進み、サーキットブレーカーが
+ * OPEN → HALF_OPEN → CLOSED と遷移して、その回数がメトリクスに記録されることを確認するテスト。
+ */
+class QuoteProviderChainTest {
+
+	private final AtomicLong now = new AtomicLong(1_000_000);
+	private final QuoteClientMetrics metrics = new QuoteClientMetrics();
+
+	@Test
+	void fallsBackAndBacksOffUntilThePrimaryRecovers() throws Exception {
+		AtomicBoolean down = new AtomicBoolean(true);
+		AtomicInteger primaryCalls = new AtomicInteger();
+		QuoteProvider primary = new NamedProvider("primary", pair -> {
+			primaryCalls.incrementAndGet();
+			if (down.get()) {
+				throw new IOException("接続タイムアウト");
+			}
+			return new FxQuote(pair, 151.0, Instant.now());
+		});
+		QuoteProvider replay = new ReplayQuoteProvider(Map.of("USDJPY", new double[] { 150.0 }));
+		QuoteProviderChain chain = new QuoteProviderChain(List.of(primary, replay), metrics, 3, 1000, 4000, now::get);
+
+		// 3回失敗するまでは毎回試し、その後は呼ばずに replay で返す
+		for (int i = 0; i < 5; i++) {
+			assertEquals(150.0, chain.fetch("USDJPY").getPrice());
+		}
+		assertEquals(3, primaryCalls.get());
+		assertEquals(CircuitBreaker.State.OPEN, chain.state("primary"));
+
+		// 開いている時間が過ぎると1回だけ試す。失敗すると次は倍の時間止める
+		now.addAndGet(1000);
+		chain.fetch("USDJPY");
+		assertEquals(4, primaryCalls.get());
+		assertEquals(CircuitBreaker.State.OPEN, chain.state("primary"));
+		now.addAndGet(1000);
+		chain.fetch("USDJPY");
+		assertEquals(4, primaryCalls.get());
+
+		// 復旧後の試し呼び出しで CLOSED に戻る
+		down.set(false);
+		now.addAndGet(1000);
+		assertEquals(151.0, chain.fetch("USDJPY").getPrice());
+		assertEquals(CircuitBreaker.State.CLOSED, chain.state("primary"));
+
+		QuoteClientMetrics.ProviderSnapshot stats = metrics.snapshot().providers.get("primary");
+		assertEquals(1, stats.successes);
+		assertEquals(4, stats.failures);
+		assertEquals(Map.of("CLOSED->OPEN", 1L, "OPEN->HALF_OPEN", 2L, "HALF_OPEN->OPEN", 1L, "HALF_OPEN->CLOSED", 1L),
+				stats.transitions);
+		assertEquals(5, metrics.snapshot().recentTransitions.size());
+		assertEquals(2000, metrics.snapshot().recentTransitions.get(2).openMillis);
+	}
+
+	@Test
+	void halfOpenAllowsASingleTrialAndBackoffIsCapped() {
+		AtomicInteger transitions = new AtomicInteger();
+		CircuitBreaker breaker = new CircuitBreaker("yahoo", 1, 1000, 3000, now::get,
+				(name, from, to, openMillis) -> transitions.incrementAndGet());
+		breaker.tryAcquire();
+		breaker.onFailure();
+		for (long expected : new long[] { 2000, 3000, 3000 }) {
+			now.addAndGet(3000);
+			assertEquals(true, breaker.tryAcquire());
+			assertEquals(false, breaker.tryAcquire()); // 試し呼び出しは1つだけ
+			breaker.onFailure();
+			now.addAndGet(expected - 1);
+			assertEquals(false, breaker.tryAcquire());
+			now.addAndGet(-(expected - 1));
+		}
+		assertEquals(7, transitions.get());
+	}
+
+	@Test
+	void throwsTheLastErrorWhenEveryProviderFails() {
+		QuoteProvider broken = new NamedProvider("broken", pair -> {
+			throw new IOException("503");
+		});
+		QuoteProviderChain chain = new QuoteProviderChain(List.of(broken), metrics, 1, 1000, 1000, now::get);
+		assertThrows(IOException.class, () -> chain.fetch("USDJPY"));
+		assertThrows(IllegalStateException.class, () -> chain.fetch("USDJPY")); // ブレーカーが開いている
+		assertEquals(1, metrics.snapshot().providers.get("broken").rejected);
+	}
+
+	private static final class NamedProvider implements QuoteProvider {
+		private final String name;
+		private final QuoteProvider delegate;
+
+		NamedProvider(String name, QuoteProvider delegate) {
+			this.name = name;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public String name() {
+			return name;
+		}
+
+		@Override
+		public FxQuote fetch(String pair) throws Exception {
+			return delegate.fetch(pair);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * 取引の追加・更新・削除で月次ロールアップが取引テーブルと一致し続けることを確認するテスト。
+ */
+class RollupDAOTest {
+
+	@TempDir
+	Path tempDir;
+
+	private SQLiteDataSource dataSource;
+	private TransactionDAO transactionDAO;
+	private SummaryDAO summaryDAO;
+	private RollupDAO rollupDAO;
+	private int userId;
+	private int food;
+	private int rent;
+
+	@BeforeEach
+	void setUp() {
+		SQLiteConfig config = new SQLiteConfig();
+		config.enforceForeignKeys(true);
+		dataSource = new SQLiteDataSource(config);
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("rollup.db"));
+		SchemaMigrator.migrate(dataSource);
+
+		UserDAO userDAO = new UserDAO(dataSource);
+		userDAO.saveUser(new User("rollup_user", "hash"));
+		userId = userDAO.findByUsername("rollup_user").getId();
+
+		CategoryDAO categoryDAO = new CategoryDAO(dataSource);
+		List<Category> categories = categoryDAO.getAllCategories(userId);
+		food = categories.stream().filter(c -> c.getName().equals("食費")).findFirst().get().getId();
+		rent = categories.stream().filter(c -> c.getName().equals("家賃")).findFirst().get().getId();
+
+		transactionDAO = new TransactionDAO(dataSource);
+		summaryDAO = new SummaryDAO(dataSource);
+		rollupDAO = new RollupDAO(dataSource);
+	}
+
+	@Test
+	void rollupsFollowEveryWrite() {
+		transactionDAO.addTransaction(userId, LocalDate.of(2025, 3, 10), Money.of(1200), "EXPENSE", food, null, false, false);
+		transactionDAO.addTransaction(userId, LocalDate.of(2025, 3, 20), Money.of(800), "EXPENSE", food, null, false, true);
+		transactionDAO.addTransaction(userId, LocalDate.of(2025, 4, 1), Money.of(300000), "INCOME", 0, null, false, false);
+		assertTrue(rollupDAO.findMismatches(userId).isEmpty());
+
+		// 月とカテゴリをまたいで移動する更新
+		Transaction moved = transactionDAO.getFilteredTransactions(userId, LocalDate.of(2025, 3, 20), LocalDate.of(2025, 3, 20), null, null).get(0);
+		Transaction updated = new Transaction(moved.getId(), LocalDate.of(2025, 4, 5), Money.of(900), "EXPENSE", rent, null, null, null, false, false);
+		assertTrue(transactionDAO.updateTransaction(updated, userId));
+		assertTrue(rollupDAO.findMismatches(userId).isEmpty());
+
+		List<MonthlySummary> monthly = summaryDAO.getMonthlySummaries(userId, null, null);
+		assertEquals(2, monthly.size());
+		assertEquals(1200, monthly.get(0).getTotalExpense(), 0.001);
+		assertEquals(900, monthly.get(1).getTotalExpense(), 0.001);
+		assertEquals(300000, monthly.get(1).getTotalIncome(), 0.001);
+		assertEquals(300000 - 1200 - 900, transactionDAO.getCashBalance(userId), 0.001);
+
+		assertTrue(transactionDAO.deleteTransaction(moved.getId(), userId));
+		assertTrue(rollupDAO.findMismatches(userId).isEmpty());
+		assertEquals(1, summaryDAO.getCategorySummaries(userId, "EXPENSE", null, null).size());
+	}
+
+	@Test
+	void cashFlowStatsComeFromRollups() {
+		assertTrue(summaryDAO.getCashFlowStats(userId, true).isEmpty());
+
+		transactionDAO.addTransaction(userId, LocalDate.of(2025, 1, 15), Money.of(300000), "INCOME", 0, null, false, false);
+		transactionDAO.addTransaction(userId, LocalDate.of(2025, 1, 20), Money.of(100000), "EXPENSE", rent, null, false, false);
+		transactionDAO.addTransaction(userId, LocalDate.of(2025, 3, 15), Money.of(50000), "EXPENSE", food, null, false, true);
+
+		CashFlowStats all = summaryDAO.getCashFlowStats(userId, false);
+		assertEquals(300000, all.getTotalIncome(), 0.001);
+		assertEquals(150000, all.getTotalExpense(), 0.001);
+		assertEquals(LocalDate.of(2025, 1, 15), all.getFirstDate());
+		assertEquals(LocalDate.of(2025, 3, 15), all.getLastDate());
+		assertEquals(2, all.getMonthCount());
+		assertEquals(75000, all.getAverageMonthlyProfit(), 0.001);
+
+		// 臨時支出を除くと3月には通常の取引がない。来年の予定も、平均を割る期間を延ばさない
+		transactionDAO.addTransaction(userId, LocalDate.of(2026, 1, 10), Money.of(80000), "EXPENSE", food, null, true, false);
+		CashFlowStats regular = summaryDAO.getCashFlowStats(userId, true);
+		assertEquals(100000, regular.getTotalExpense(), 0.001);
+		assertEquals(1, regular.getMonthCount());
+		assertEquals(LocalDate.of(2025, 1, 15), regular.getFirstDate());
+		assertEquals(LocalDate.of(2025, 1, 20), regular.getLastDate());
+		assertEquals(200000, regular.getAverageMonthlyProfit(), 0.001);
+	}
+
+	@Test
+	void rebuildRepairsDrift() throws SQLException {
+		transactionDAO.addTransaction(userId, LocalDate.of(2025, 5, 1), Money.of(500), "EXPENSE", food, null, false, false);
+		try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+			stmt.execute("UPDATE transaction_rollups SET total_minor = 1 WHERE user_id = " + userId);
+		}
+		assertEquals(1, rollupDAO.findMismatches(userId).size());
+
+		assertTrue(rollupDAO.rebuild(userId));
+		assertTrue(rollupDAO.findMismatches(userId).isEmpty());
+	}
+}
@@ -0,0 +1,92 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * v8 で REAL の金額と TEXT の取引日を整数の列に移したとき、既存のデータが同じ値のまま読めることを確認するテスト。
+ */
+class SchemaMigratorTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void v8ConvertsAmountsAndDatesInPlace() throws SQLException {
+		SQLiteConfig config = new SQLiteConfig();
+		config.enforceForeignKeys(true);
+		SQLiteDataSource dataSource = new SQLiteDataSource(config);
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("v7.db"));
+		SchemaMigrator.migrate(dataSource, 7);
+		execute(dataSource,
+				"INSERT INTO users(id, username, password_hash) VALUES(1, 'old', 'hash')",
+				"INSERT INTO categories(id, user_id, name, type) VALUES(1, 1, '食費', 'EXPENSE')",
+				"INSERT INTO goals(id, user_id, name, target_amount, current_amount, target_date) VALUES(1, 1, '旅行', 1000.5, 0.1, '2025-01-01')",
+				"INSERT INTO transactions(user_id, date, amount, type, category_id, goal_id) VALUES(1, '2024-02-29', 123.45, 'EXPENSE', 1, 1)",
+				"INSERT INTO transactions(user_id, date, amount, type, category_id, goal_id) VALUES(1, '2024-02-01', 0.7, 'EXPENSE', 1, NULL)",
+				"INSERT INTO transactions(user_id, date, amount, type, category_id, goal_id) VALUES(1, '1969-12-31', 0.3, 'INCOME', NULL, NULL)",
+				"INSERT INTO assets(user_id, name, quantity, purchase_price, current_price) VALUES(1, '株', 1.5, 99.99, 120.01)",
+				"INSERT INTO budgets(user_id, year_month, category_id, amount) VALUES(1, '2024-02', 1, 30000.25)");
+
+		SchemaMigrator.migrate(dataSource);
+
+		List<Transaction> transactions = new TransactionDAO(dataSource).getAllTransactions(1);
+		assertEquals(3, transactions.size());
+		assertEquals(LocalDate.of(2024, 2, 29), transactions.get(0).getDate());
+		assertEquals(Money.ofMinor(12345), transactions.get(0).getAmount());
+		assertEquals(LocalDate.of(1969, 12, 31), transactions.get(2).getDate());
+		assertEquals(Money.ofMinor(30), transactions.get(2).getAmount());
+		assertEquals(1, new TransactionDAO(dataSource)
+				.getFilteredTransactions(1, LocalDate.of(2024, 2, 2), LocalDate.of(2024, 2, 29), null, null).size());
+
+		assertTrue(new RollupDAO(dataSource).findMismatches(1).isEmpty());
+		List<MonthlySummary> monthly = new SummaryDAO(dataSource).getMonthlySummaries(1, null, null);
+		assertEquals("1969-12", monthly.get(0).getMonth());
+		assertEquals("2024-02", monthly.get(1).getMonth());
+		assertEquals(124.15, monthly.get(1).getTotalExpense());
+
+		Goal goal = new GoalDAO(dataSource).getAllGoals(1).get(0);
+		assertEquals(Money.ofMinor(100050), goal.getTargetAmount());
+		assertEquals(Money.ofMinor(12355), goal.getCurrentAmount());
+		Asset asset = new AssetDAO(dataSource).getAllAssets(1).get(0);
+		assertEquals(Money.ofMinor(9999), asset.getPurchasePrice());
+		assertEquals(Money.ofMinor(12001), asset.getCurrentPrice());
+		Budget budget = new BudgetDAO(dataSource).getBudgetsForMonth("2024-02", 1).get(0);
+		assertEquals(Money.ofMinor(3000025), budget.getBudgetAmount());
+		assertEquals(Money.ofMinor(12415), budget.getActualAmount());
+
+		assertFalse(hasColumn(dataSource, "transactions", "date"));
+		assertFalse(hasColumn(dataSource, "transactions", "amount"));
+		assertFalse(hasColumn(dataSource, "goals", "target_amount"));
+	}
+
+	private static void execute(SQLiteDataSource dataSource, String... statements) throws SQLException {
+		try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+			for (String sql : statements) {
+				stmt.execute(sql);
+			}
+		}
+	}
+
+	private static boolean hasColumn(SQLiteDataSource dataSource, String table, String column) throws SQLException {
+		try (Connection conn = dataSource.getConnection();
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT 1 FROM pragma_table_info('" + table + "') WHERE name = '" + column + "'")) {
+			return rs.next();
+		}
+	}
+}
@@ -0,0 +1,321 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * シャード化したときに、ユーザーのデータが割り当てられたシャードのファイルだけに書き込まれ、
+ * ShardRebalancer で移したユーザーのデータが同じ ID・同じ集計結果のままで、移動後に追加した行も移動先の ID の範囲から振られることを確認するテスト。
+ */
+class ShardedDataSourceTest {
+
+	@TempDir
+	Path tempDir;
+
+	private DataSource directory;
+	private List<DataSource> shards;
+	private int legacyUserId;
+	private ShardedDataSource sharded;
+	private WriteQueue writeQueue;
+	private TransactionProjection projection;
+	private CategoryDAO categoryDAO;
+	private TransactionDAO transactionDAO;
+	private ShardRebalancer rebalancer;
+
+	@BeforeEach
+	void setUp() {
+		directory = file("directory.db");
+		// シャード化する前からいるユーザー（データはディレクトリDBに残る）
+		User legacy = new User("legacy_user", "hash");
+		new UserDAO(directory).saveUser(legacy);
+		legacyUserId = legacy.getId();
+		new TransactionDAO(directory).addTransaction(legacyUserId, LocalDate.of(2024, 1, 5), Money.of(1000), "EXPENSE", 0, null, false, false);
+
+		shards = List.of(file("shard-0.db"), file("shard-1.db"));
+		sharded = new ShardedDataSource(directory, shards);
+		writeQueue = new WriteQueue(sharded, 64, 256, 1000);
+		projection = new TransactionProjection(sharded, 1024 * 1024);
+		categoryDAO = new CategoryDAO(sharded, new DataVersions(), writeQueue, CategoryDAO.DEFAULT_CACHE_USERS);
+		transactionDAO = new TransactionDAO(sharded, new DataVersions(), writeQueue, projection);
+		rebalancer = new ShardRebalancer(sharded, writeQueue, projection, categoryDAO);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		writeQueue.shutdown();
+	}
+
+	@Test
+	void writesGoOnlyToTheUsersShard() throws SQLException {
+		int first = register("first_user");
+		int second = register("second_user");
+		assertEquals(first % 2, sharded.shardOf(first));
+		assertEquals(second % 2, sharded.shardOf(second));
+		assertEquals(ShardedDataSource.DIRECTORY, sharded.shardOf(legacyUserId));
+
+		transactionDAO.addTransaction(first, LocalDate.of(2024, 2, 1), Money.of(500), "EXPENSE", categoryId(first, "食費"), null, false, false);
+		transactionDAO.addTransaction(second, LocalDate.of(2024, 2, 1), Money.of(700), "INCOME", categoryId(second, "給料"), null, false, false);
+		transactionDAO.addTransaction(legacyUserId, LocalDate.of(2024, 2, 1), Money.of(900), "EXPENSE", 0, null, false, false);
+
+		assertEquals(1, count(shards.get(first % 2), "transactions", first));
+		assertEquals(0, count(shards.get(second % 2), "transactions", first));
+		assertEquals(1, count(shards.get(second % 2), "transactions", second));
+		assertEquals(2, count(directory, "transactions", legacyUserId));
+		assertEquals(0, count(directory, "categories", first)); // 新規ユーザーのデータはディレクトリDBに置かない
+		assertInRange(first % 2, categoryId(first, "食費"));
+		assertInRange(second % 2, transactionDAO.getAllTransactions(second).get(0).getId());
+		assertInRange(ShardedDataSource.DIRECTORY, transactionDAO.getAllTransactions(legacyUserId).get(0).getId());
+		assertEquals(2, transactionDAO.getAllTransactions(legacyUserId).size());
+		assertEquals(3, writeQueue.snapshot().writers);
+	}
+
+	@Test
+	void userFxAndRollupWritesGoThroughTheWriteQueue() throws SQLException {
+		long writes = writeQueue.snapshot().writes;
+		int userId = register("queued_user"); // ディレクトリDBとシャードに1件ずつ
+		assertEquals(writes + 2, writeQueue.snapshot().writes);
+		assertFalse(new UserDAO(sharded, writeQueue).saveUser(new User("QUEUED_USER", "hash")));
+		assertEquals(writes + 3, writeQueue.snapshot().writes);
+		assertEquals(1, writeQueue.snapshot().failedWrites);
+
+		assertTrue(new FxRateDAO(sharded, writeQueue).save(new FxQuote("USDJPY", 150.5, Instant.ofEpochMilli(1000))));
+		assertEquals(150.5, new FxRateDAO(directory).findLatest("USDJPY").getPrice(), 0.0001); // ディレクトリDBに保存される
+		transactionDAO.addTransaction(userId, LocalDate.of(2024, 2, 1), Money.of(500), "EXPENSE", categoryId(userId, "食費"), null, false, false);
+		assertTrue(new RollupDAO(sharded, new DataVersions(), writeQueue).rebuild(userId));
+		assertEquals(writes + 6, writeQueue.snapshot().writes);
+		assertTrue(new RollupDAO(sharded).findMismatches(userId).isEmpty());
+	}
+
+	@Test
+	void movedUsersKeepTheirIds() throws SQLException {
+		int userId = register("moving_user");
+		int from = sharded.shardOf(userId);
+		int food = categoryId(userId, "食費");
+		GoalDAO goalDAO = new GoalDAO(sharded, new DataVersions(), writeQueue, projection);
+		Goal goal = new Goal();
+		goal.setName("旅行");
+		goal.setTargetAmount(Money.of(100000));
+		goal.setTargetDate("2025-12-31");
+		goalDAO.addGoal(goal, userId);
+		int goalId = goalDAO.getAllGoals(userId).get(0).getId();
+		for (int day = 1; day <= 28; day++) {
+			transactionDAO.addTransaction(userId, LocalDate.of(2024, 3, day), Money.of(100 * day), "EXPENSE", food,
+					day % 7 == 0 ? goalId : null, false, false);
+		}
+		BudgetDAO budgetDAO = new BudgetDAO(sharded, new DataVersions(), writeQueue, projection);
+		budgetDAO.saveOrUpdateBudget("2024-03", food, Money.of(30000), userId);
+		SummaryDAO summaryDAO = new SummaryDAO(sharded, projection, categoryDAO);
+		double expense = summaryDAO.getMonthlySummaries(userId, null, null).get(0).getTotalExpense();
+		Money saved = goalDAO.getAllGoals(userId).get(0).getCurrentAmount();
+		List<Integer> ids = transactionIds(userId);
+
+		ShardRebalancer.Move move = rebalancer.moveUser(userId, 1 - from);
+		assertEquals(10 + 1 + 28 + 1, move.rows); // カテゴリ・目標・取引・予算
+		assertEquals(1 - from, sharded.shardOf(userId));
+		assertEquals(0, count(shards.get(from), "transactions", userId));
+		assertEquals(0, count(shards.get(from), "users", userId));
+		assertEquals(28, count(shards.get(1 - from), "transactions", userId));
+
+		assertEquals(expense, summaryDAO.getMonthlySummaries(userId, null, null).get(0).getTotalExpense(), 0.001);
+		assertEquals(saved, goalDAO.getAllGoals(userId).get(0).getCurrentAmount());
+		Budget budget = budgetDAO.getBudgetsForMonth("2024-03", userId).stream()
+				.filter(b -> b.getCategoryName().equals("食費")).findFirst().get();
+		assertEquals(Money.of(30000), budget.getBudgetAmount());
+		assertEquals(expense, budget.getActualAmount().toDouble(), 0.001);
+		assertTrue(new RollupDAO(sharded).findMismatches(userId).isEmpty());
+		assertEquals(ids, transactionIds(userId));
+		assertEquals(food, categoryId(userId, "食費"));
+		assertEquals(goalId, goalDAO.getAllGoals(userId).get(0).getId());
+
+		// 移動先で追加した行は移動先の範囲から振られ、元に戻しても ID は変わらない
+		transactionDAO.addTransaction(userId, LocalDate.of(2024, 4, 1), Money.of(100), "EXPENSE", food, null, false, false);
+		List<Integer> afterAdd = transactionIds(userId);
+		assertInRange(1 - from, afterAdd.get(afterAdd.size() - 1));
+		rebalancer.moveUser(userId, from);
+		assertEquals(afterAdd, transactionIds(userId));
+		// 上の範囲の行が入ってきても、移動先は自分の範囲から振る
+		transactionDAO.addTransaction(userId, LocalDate.of(2024, 4, 2), Money.of(100), "EXPENSE", food, null, false, false);
+		List<Integer> afterReturn = transactionIds(userId);
+		afterReturn.removeAll(afterAdd);
+		assertEquals(1, afterReturn.size());
+		assertInRange(from, afterReturn.get(0));
+		assertTrue(transactionDAO.deleteTransaction(ids.get(0), userId)); // 移動前の ID で同じ行を消せる
+		assertTrue(new RollupDAO(sharded).findMismatches(userId).isEmpty());
+
+		// ディレクトリDBに残っていたユーザーも移し、シャード間の人数をならす
+		List<ShardRebalancer.Move> moves = rebalancer.rebalance(10);
+		assertEquals(1, moves.size());
+		assertEquals(ShardedDataSource.DIRECTORY, moves.get(0).from);
+		Map<Integer, Integer> counts = rebalancer.userCounts();
+		assertEquals(1, counts.get(0));
+		assertEquals(1, counts.get(1));
+		assertEquals(1, count(directory, "users", legacyUserId)); // ログイン用の行はディレクトリDBに残る
+		assertEquals(0, count(directory, "transactions", legacyUserId));
+		assertEquals(1, transactionDAO.getAllTransactions(legacyUserId).size());
+	}
+
+	@Test
+	void largeMovesAreCommittedInChunksOnTheTargetLane() throws Exception {
+		int userId = register("large_user");
+		int from = sharded.shardOf(userId);
+		int neighbour = register("neighbour_user");
+		if (sharded.shardOf(neighbour) == from) {
+			neighbour = register("neighbour_user_2");
+		}
+		int food = categoryId(userId, "食費");
+		List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+		for (int i = 0; i < 2500; i++) {
+			pending.add(transactionDAO.addTransactionAsync(userId, LocalDate.of(2024, 1, 1).plusDays(i % 365), Money.of(100),
+					"EXPENSE", food, null, false, false));
+			if (pending.size() == 200) {
+				pending.forEach(CompletableFuture::join);
+				pending.clear();
+			}
+		}
+		pending.forEach(CompletableFuture::join);
+		List<Integer> ids = transactionIds(userId);
+		long commits = writeQueue.snapshot().commits;
+
+		// 移動中も移動先の他のユーザーの書き込みは移動先の書き込みスレッドで通る
+		int target = neighbour;
+		List<CompletableFuture<Boolean>> neighbourWrites = new ArrayList<>();
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < 20; i++) {
+				neighbourWrites.add(transactionDAO.addTransactionAsync(target, LocalDate.of(2024, 5, 1), Money.of(100), "EXPENSE",
+						0, null, false, false));
+			}
+		});
+		writer.start();
+		ShardRebalancer.Move move = rebalancer.moveUser(userId, 1 - from);
+		writer.join();
+		for (CompletableFuture<Boolean> write : neighbourWrites) {
+			assertTrue(write.join());
+		}
+
+		assertEquals(10 + 2500, move.rows);
+		assertEquals(ids, transactionIds(userId));
+		assertEquals(0, count(shards.get(from), "transactions", userId));
+		assertEquals(20, count(shards.get(1 - from), "transactions", neighbour));
+		// 残りの削除とユーザー行・カテゴリ・取引3回分が、それぞれ別のコミットとして移動先のキューを通る
+		assertTrue(writeQueue.snapshot().commits - commits >= 1 + 1 + 3);
+		transactionDAO.addTransaction(neighbour, LocalDate.of(2024, 5, 2), Money.of(100), "EXPENSE", 0, null, false, false);
+		assertInRange(1 - from, transactionIds(neighbour).get(transactionIds(neighbour).size() - 1));
+		assertTrue(new RollupDAO(sharded).findMismatches(userId).isEmpty());
+	}
+
+	@Test
+	void writesQueuedBehindAMoveAreRejected() throws Exception {
+		int userId = register("busy_user");
+		int from = sharded.shardOf(userId);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Boolean> blocker = writeQueue.submit(userId, conn -> {
+			started.countDown();
+			await(release); // 書き込みスレッドを止めている間に、移動とその後の書き込みをキューに溜める
+			return true;
+		});
+		await(started);
+
+		List<ShardRebalancer.Move> moved = new ArrayList<>();
+		Thread mover = new Thread(() -> {
+			try {
+				moved.add(rebalancer.moveUser(userId, 1 - from));
+			} catch (SQLException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		mover.start();
+		while (writeQueue.snapshot().queued < 1) {
+			Thread.sleep(1);
+		}
+		CompletableFuture<Boolean> late = transactionDAO.addTransactionAsync(userId, LocalDate.of(2024, 4, 1), Money.of(100), "EXPENSE",
+				0, null, false, false);
+		release.countDown();
+		mover.join();
+
+		assertTrue(blocker.join());
+		assertEquals(1, moved.size());
+		CompletionException failure = assertThrows(CompletionException.class, late::join);
+		assertInstanceOf(WriteQueue.ShardMovedException.class, failure.getCause());
+		assertEquals(0, transactionDAO.getAllTransactions(userId).size());
+	}
+
+	private int register(String username) {
+		User user = new User(username, "hash");
+		assertTrue(new UserDAO(sharded, writeQueue).saveUser(user));
+		return user.getId();
+	}
+
+	private int categoryId(int userId, String name) {
+		return categoryDAO.getAllCategories(userId).stream().filter(c -> c.getName().equals(name)).findFirst().get().getId();
+	}
+
+	private List<Integer> transactionIds(int userId) {
+		List<Integer> ids = new ArrayList<>();
+		for (Transaction t : transactionDAO.getAllTransactions(userId)) {
+			ids.add(t.getId());
+		}
+		ids.sort(null);
+		return ids;
+	}
+
+	private static void assertInRange(int shard, int id) {
+		assertTrue(id >= ShardedDataSource.firstId(shard) && id < ShardedDataSource.firstId(shard + 1),
+				"ID " + id + " がシャード " + shard + " の範囲にありません");
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private DataSource file(String name) {
+		SQLiteConfig config = new SQLiteConfig();
+		config.enforceForeignKeys(true);
+		config.setBusyTimeout(5000);
+		SQLiteDataSource dataSource = new SQLiteDataSource(config);
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve(name));
+		SchemaMigrator.migrate(dataSource);
+		return dataSource;
+	}
+
+	private static int count(DataSource dataSource, String table, int userId) throws SQLException {
+		String column = table.equals("users") ? "id" : "user_id";
+		try (Connection conn = dataSource.getConnection();
+				PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM " + table + " WHERE " + column + " = ?")) {
+			pstmt.setInt(1, userId);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				return rs.getInt(1);
+			}
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * 一括変更で、操作ごとの結果が返り、条件指定の変更が小分けのコミットで全件に反映され、
+ * ロールアップが取引テーブルと一致したままであることを確認するテスト。
+ */
+class TransactionBatchTest {
+
+	@TempDir
+	Path tempDir;
+
+	private SQLiteDataSource dataSource;
+	private CategoryDAO categoryDAO;
+	private TransactionDAO transactionDAO;
+	private TransactionBatch batch;
+	private int userId;
+	private int food;
+
+	@BeforeEach
+	void setUp() {
+		SQLiteConfig config = new SQLiteConfig();
+		config.enforceForeignKeys(true);
+		dataSource = new SQLiteDataSource(config);
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("batch.db"));
+		SchemaMigrator.migrate(dataSource);
+		User user = new User("batch_user", "hash");
+		new UserDAO(dataSource).saveUser(user);
+		userId = user.getId();
+		categoryDAO = new CategoryDAO(dataSource);
+		transactionDAO = new TransactionDAO(dataSource);
+		// 小分けに実行されることを確かめるため、1回の書き込みは3件まで
+		batch = new TransactionBatch(transactionDAO, categoryDAO, 3, 100);
+		food = categoryId("食費");
+	}
+
+	@Test
+	void rowOperationsReportResultPerOperation() {
+		transactionDAO.addTransaction(userId, LocalDate.of(2024, 5, 1), Money.of(1000), "EXPENSE", food, null, false, false);
+		int existing = transactionDAO.getAllTransactions(userId).get(0).getId();
+
+		List<TransactionBatch.Operation> operations = new ArrayList<>();
+		for (int i = 1; i <= 4; i++) {
+			operations.add(create(LocalDate.of(2024, 5, i + 1), 100 * i, "expense", food));
+		}
+		operations.add(update(existing, LocalDate.of(2024, 5, 1), 1500, "EXPENSE", food));
+		operations.add(delete(999999));
+		operations.add(create(LocalDate.of(2024, 5, 9), 100, "TRANSFER", 0));
+		operations.add(create(LocalDate.of(2024, 5, 9), 100, "EXPENSE", 999999));
+		operations.add(new TransactionBatch.Operation());
+
+		List<TransactionBatch.OperationResult> results = batch.execute(userId, operations);
+
+		assertEquals(9, results.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals("OK", results.get(i).status, "operation " + i);
+			assertEquals(1, results.get(i).affected);
+		}
+		assertNotNull(results.get(0).id);
+		assertNull(results.get(4).id);
+		assertEquals("NOT_FOUND", results.get(5).status);
+		assertEquals("INVALID", results.get(6).status);
+		assertEquals("INVALID", results.get(7).status);
+		assertEquals("INVALID", results.get(8).status);
+
+		List<Transaction> rows = transactionDAO.getAllTransactions(userId);
+		assertEquals(5, rows.size());
+		assertEquals(Money.of(1500), transactionDAO.getTransactionById(existing, userId).getAmount());
+		assertEquals("EXPENSE", transactionDAO.getTransactionById(results.get(0).id, userId).getType());
+		assertTrue(new RollupDAO(dataSource).findMismatches(userId).isEmpty());
+	}
+
+	@Test
+	void filteredOperationsRunInChunksUntilDone() {
+		for (int day = 1; day <= 10; day++) {
+			transactionDAO.addTransaction(userId, LocalDate.of(2024, 6, day), Money.of(day * 100), "EXPENSE", 0, null, false, false);
+		}
+		transactionDAO.addTransaction(userId, LocalDate.of(2024, 6, 11), Money.of(5000), "INCOME", 0, null, false, false);
+		transactionDAO.addTransaction(userId, LocalDate.of(2024, 7, 1), Money.of(300), "EXPENSE", 0, null, false, false);
+
+		// 6月の未分類をすべて食費に（収入は種別が違うため対象外）
+		TransactionBatch.Operation recategorize = new TransactionBatch.Operation();
+		recategorize.op = "recategorize";
+		recategorize.filter = filter(LocalDate.of(2024, 6, 1), LocalDate.of(2024, 6, 30), 0);
+		recategorize.categoryId = food;
+		// 6月前半を削除
+		TransactionBatch.Operation deleteRange = new TransactionBatch.Operation();
+		deleteRange.op = "deleteRange";
+		deleteRange.filter = filter(LocalDate.of(2024, 6, 1), LocalDate.of(2024, 6, 5), null);
+		TransactionBatch.Operation unbounded = new TransactionBatch.Operation();
+		unbounded.op = "deleteRange";
+
+		List<TransactionBatch.OperationResult> results = batch.execute(userId, List.of(recategorize, deleteRange, unbounded));
+
+		assertEquals("OK", results.get(0).status);
+		assertEquals(10, results.get(0).affected);
+		assertEquals("OK", results.get(1).status);
+		assertEquals(5, results.get(1).affected);
+		assertEquals("INVALID", results.get(2).status);
+
+		List<Transaction> rows = transactionDAO.getAllTransactions(userId);
+		assertEquals(7, rows.size());
+		assertEquals(5, rows.stream().filter(t -> t.getCategoryId() == food).count());
+		assertTrue(new RollupDAO(dataSource).findMismatches(userId).isEmpty());
+	}
+
+	@Test
+	void tooManyOperationsAreRejected() {
+		List<TransactionBatch.Operation> operations = new ArrayList<>();
+		for (int i = 0; i < 101; i++) {
+			operations.add(delete(i + 1));
+		}
+		assertThrows(IllegalArgumentException.class, () -> batch.execute(userId, operations));
+	}
+
+	private static TransactionBatch.Operation create(LocalDate date, double amount, String type, int categoryId) {
+		TransactionBatch.Operation operation = new TransactionBatch.Operation();
+		operation.op = "create";
+		operation.transaction = new Transaction(0, date, Money.of(amount), type, categoryId, null, null, null, false, false);
+		return operation;
+	}
+
+	private static TransactionBatch.Operation update(int id, LocalDate date, double amount, String type, int categoryId) {
+		TransactionBatch.Operation operation = create(date, amount, type, categoryId);
+		operation.op = "update";
+		operation.id = id;
+		return operation;
+	}
+
+	private static TransactionBatch.Operation delete(int id) {
+		TransactionBatch.Operation operation = new TransactionBatch.Operation();
+		operation.op = "delete";
+		operation.id = id;
+		return operation;
+	}
+
+	private static TransactionBatch.Filter filter(LocalDate startDate, LocalDate endDate, Integer categoryId) {
+		TransactionBatch.Filter filter = new TransactionBatch.Filter();
+		filter.startDate = startDate;
+		filter.endDate = endDate;
+		filter.categoryId = categoryId;
+		return filter;
+	}
+
+	private int categoryId(String name) {
+		return categoryDAO.getAllCategories(userId).stream()
+				.filter(c -> c.getName().equals(name)).findFirst().orElseThrow().getId();
+	}
+}
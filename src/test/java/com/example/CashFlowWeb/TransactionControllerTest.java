@@ -0,0 +1,94 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * 資産予測で、期日を過ぎた目標と予測できる期間より先の目標が、別の月の確率で代用されずに null で返ることを確認するテスト。
+ */
+class TransactionControllerTest {
+
+	@TempDir
+	Path tempDir;
+
+	private SQLiteDataSource dataSource;
+	private MonteCarloForecaster forecaster;
+	private TransactionController controller;
+	private UserDetails principal;
+	private int userId;
+
+	@BeforeEach
+	void setUp() {
+		SQLiteConfig config = new SQLiteConfig();
+		config.enforceForeignKeys(true);
+		dataSource = new SQLiteDataSource(config);
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("forecast.db"));
+		SchemaMigrator.migrate(dataSource);
+		UserDAO userDAO = new UserDAO(dataSource);
+		User user = new User("forecast_user", "hash");
+		assertTrue(userDAO.saveUser(user));
+		userId = user.getId();
+		principal = org.springframework.security.core.userdetails.User.withUsername("forecast_user").password("hash").roles("USER").build();
+
+		forecaster = new MonteCarloForecaster(1, 1);
+		controller = new TransactionController(null, null, new AssetDAO(dataSource), new UserIdentityCache(userDAO, 16),
+				new GoalDAO(dataSource), new SummaryDAO(dataSource), forecaster, null, null);
+	}
+
+	@AfterEach
+	void tearDown() {
+		forecaster.shutdown();
+	}
+
+	@Test
+	void goalsOutsideTheForecastHorizonHaveNoProbability() {
+		assertTrue(new AssetDAO(dataSource).addAsset(new Asset(0, "預金", null, 1, Money.of(1000000), Money.of(1000000), "CASH"), userId));
+		LocalDate today = LocalDate.now();
+		addGoal("期日切れ", today.minusMonths(3));
+		addGoal("半年後", today.plusMonths(6));
+		addGoal("20年後", today.plusMonths(TransactionController.MAX_PREDICT_MONTHS + 120));
+
+		List<ForecastResult.GoalProbability> probabilities = controller
+				.forecastAssetGrowth(24, 1000, true, 1L, principal).getBody().getGoalProbabilities();
+		assertEquals(3, probabilities.size());
+		assertNull(probability(probabilities, "期日切れ"));
+		assertEquals(1.0, probability(probabilities, "半年後"), 1e-9); // 収支がないので資産はそのまま
+		assertNull(probability(probabilities, "20年後"));
+	}
+
+	@Test
+	void goalMonthIsZeroOutsideTheHorizon() {
+		LocalDate today = LocalDate.of(2024, 1, 15);
+		assertEquals(0, TransactionController.goalMonth(today, LocalDate.of(2024, 1, 14)));
+		assertEquals(1, TransactionController.goalMonth(today, LocalDate.of(2024, 1, 31))); // 1か月未満先は1か月後で評価する
+		assertEquals(6, TransactionController.goalMonth(today, LocalDate.of(2024, 7, 15)));
+		assertEquals(TransactionController.MAX_PREDICT_MONTHS,
+				TransactionController.goalMonth(today, today.plusMonths(TransactionController.MAX_PREDICT_MONTHS)));
+		assertEquals(0, TransactionController.goalMonth(today, today.plusMonths(TransactionController.MAX_PREDICT_MONTHS + 1)));
+	}
+
+	private void addGoal(String name, LocalDate targetDate) {
+		Goal goal = new Goal();
+		goal.setName(name);
+		goal.setTargetAmount(Money.of(500000));
+		goal.setTargetDate(targetDate.toString());
+		assertTrue(new GoalDAO(dataSource).addGoal(goal, userId));
+	}
+
+	private static Double probability(List<ForecastResult.GoalProbability> probabilities, String name) {
+		return probabilities.stream().filter(p -> p.getGoalName().equals(name)).findFirst().get().getProbability();
+	}
+}
@@ -0,0 +1,185 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * CSV / OFX の取り込みで、読めない行だけがエラーになり、カテゴリが名前・摘要から割り当てられ、
+ * 塊ごとの一括 INSERT の後もロールアップと集計が取引テーブルと一致することを確認するテスト。
+ */
+class TransactionImporterTest {
+
+	@TempDir
+	Path tempDir;
+
+	private SQLiteDataSource dataSource;
+	private CategoryDAO categoryDAO;
+	private TransactionDAO transactionDAO;
+	private int userId;
+
+	@BeforeEach
+	void setUp() {
+		SQLiteConfig config = new SQLiteConfig();
+		config.enforceForeignKeys(true);
+		dataSource = new SQLiteDataSource(config);
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("import.db"));
+		SchemaMigrator.migrate(dataSource);
+		User user = new User("import_user", "hash");
+		new UserDAO(dataSource).saveUser(user);
+		userId = user.getId();
+		categoryDAO = new CategoryDAO(dataSource);
+		transactionDAO = new TransactionDAO(dataSource);
+	}
+
+	@Test
+	void csvReportsBadRowsAndMapsCategories() throws IOException {
+		String csv = "日付,金額,種別,カテゴリ,摘要\n"
+				+ "2024/01/05,\"1,200\",支出,食費,スーパー\n"
+				+ "2024-01-06,-300,,,コンビニ 日用品\n"
+				+ "2024-02-30,100,支出,,\n"
+				+ "\n"
+				+ "20240125,250000,収入,給料,\"1月分, 本給\"\n"
+				+ "2024-01-26,abc,支出,,\n"
+				+ "2024-01-27,500円,支出,,\"複数行の\n摘要\"\n";
+
+		TransactionImporter.Result result = importer(2).importTransactions(userId, "csv", new StringReader(csv));
+
+		assertEquals(4, result.imported);
+		assertEquals(2, result.failed);
+		assertEquals(1, result.uncategorized);
+		assertEquals(4, result.errors.get(0).line);
+		assertEquals(7, result.errors.get(1).line);
+
+		List<Transaction> rows = transactionDAO.getAllTransactions(userId);
+		assertEquals(4, rows.size());
+		Transaction salary = find(rows, LocalDate.of(2024, 1, 25));
+		assertEquals("INCOME", salary.getType());
+		assertEquals(Money.ofMinor(25000000), salary.getAmount());
+		assertEquals(categoryId("給料"), salary.getCategoryId());
+		Transaction daily = find(rows, LocalDate.of(2024, 1, 6));
+		assertEquals("EXPENSE", daily.getType());
+		assertEquals(Money.ofMinor(30000), daily.getAmount());
+		assertEquals(categoryId("日用品"), daily.getCategoryId());
+		assertEquals(0, find(rows, LocalDate.of(2024, 1, 27)).getCategoryId());
+	}
+
+	@Test
+	void csvWithoutAmountColumnIsRejected() {
+		assertThrows(IllegalArgumentException.class,
+				() -> importer(10).importTransactions(userId, "csv", new StringReader("日付,摘要\n2024-01-01,x\n")));
+		assertThrows(IllegalArgumentException.class,
+				() -> importer(10).importTransactions(userId, "qif", new StringReader("")));
+	}
+
+	@Test
+	void ofxUsesSignForTypeAndMemoForCategory() throws IOException {
+		String ofx = "OFXHEADER:100\nDATA:OFXSGML\n\n<OFX><BANKMSGSRSV1><STMTTRNRS><STMTRS>\n"
+				+ "<BANKACCTFROM><BANKID>0001<ACCTID>1234567</BANKACCTFROM>\n"
+				+ "<BANKTRANLIST>\n"
+				+ "<STMTTRN><TRNTYPE>DEBIT<DTPOSTED>20240310120000[+9:JST]<TRNAMT>-980<NAME>JR 交通費 精算</STMTTRN>\n"
+				+ "<STMTTRN><TRNTYPE>CREDIT<DTPOSTED>20240325<TRNAMT>3000.50<MEMO>副業 報酬</MEMO></STMTTRN>\n"
+				+ "<STMTTRN><DTPOSTED>2024<TRNAMT>1</STMTTRN>\n"
+				+ "</BANKTRANLIST></STMTRS></STMTTRNRS></BANKMSGSRSV1></OFX>\n";
+
+		TransactionImporter.Result result = importer(10).importTransactions(userId, "ofx", new StringReader(ofx));
+
+		assertEquals(2, result.imported);
+		assertEquals(1, result.failed);
+		assertEquals(9, result.errors.get(0).line);
+		List<Transaction> rows = transactionDAO.getAllTransactions(userId);
+		Transaction fare = find(rows, LocalDate.of(2024, 3, 10));
+		assertEquals("EXPENSE", fare.getType());
+		assertEquals(Money.ofMinor(98000), fare.getAmount());
+		assertEquals(categoryId("交通費"), fare.getCategoryId());
+		Transaction side = find(rows, LocalDate.of(2024, 3, 25));
+		assertEquals("INCOME", side.getType());
+		assertEquals(Money.ofMinor(300050), side.getAmount());
+		assertEquals(categoryId("副業"), side.getCategoryId());
+	}
+
+	@Test
+	void chunkedImportKeepsRollupsConsistent() throws IOException {
+		StringBuilder csv = new StringBuilder("date,amount,type,category\n");
+		LocalDate day = LocalDate.of(2023, 1, 1);
+		for (int i = 0; i < 2500; i++) {
+			csv.append(day.plusDays(i % 400)).append(',').append(i % 97 + 0.25).append(',')
+					.append(i % 5 == 0 ? "INCOME,給料" : "EXPENSE,食費").append('\n');
+		}
+
+		TransactionImporter.Result result = importer(700).importTransactions(userId, "csv", new StringReader(csv.toString()));
+
+		assertEquals(2500, result.imported);
+		assertEquals(0, result.failed);
+		assertEquals(2500, transactionDAO.getAllTransactions(userId).size());
+		assertTrue(new RollupDAO(dataSource).findMismatches(userId).isEmpty());
+	}
+
+	@Test
+	void overlappingStatementsAreNotImportedTwice() throws IOException {
+		// 1月〜2月の明細を取り込んだ後、2月〜3月の明細を取り込む（2月分が重なる）
+		String january = statement(LocalDate.of(2024, 1, 1), 31);
+		String february = statement(LocalDate.of(2024, 2, 1), 29);
+		String march = statement(LocalDate.of(2024, 3, 1), 31);
+		String header = "日付,金額,摘要,口座\n";
+
+		TransactionImporter.Result first = importer(20).importTransactions(userId, "csv",
+				new StringReader(header + january + february));
+		assertEquals(120, first.imported);
+		assertEquals(0, first.duplicates);
+
+		// 全角・空白の違いは同じ摘要として扱う
+		String februaryAgain = february.replace("コンビニ", "コンビニ ").replace("ATM", "ＡＴＭ");
+		TransactionImporter.Result second = importer(20).importTransactions(userId, "csv",
+				new StringReader(header + februaryAgain + march));
+		assertEquals(62, second.imported);
+		assertEquals(58, second.duplicates);
+		// 新しい行（3月分）の大半は Bloom フィルタだけで判定され、インデックスを引かない
+		assertTrue(second.indexLookups < 58 + 10, "indexLookups=" + second.indexLookups);
+		assertEquals(182, transactionDAO.getAllTransactions(userId).size());
+		assertTrue(new RollupDAO(dataSource).findMismatches(userId).isEmpty());
+
+		// 同じ日に同じ金額・摘要の行が2件ある明細は、2件とも別の取引として取り込む
+		TransactionImporter.Result again = importer(20).importTransactions(userId, "csv",
+				new StringReader(header + "2024-04-01,-500,コンビニ,普通 123\n2024-04-01,-500,コンビニ,普通 123\n"));
+		assertEquals(2, again.imported);
+	}
+
+	/**
+	 * 1日2件（同じ日のコンビニと ATM）の明細。
+	 */
+	private static String statement(LocalDate from, int days) {
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < days; i++) {
+			LocalDate day = from.plusDays(i);
+			csv.append(day).append(",-").append(300 + day.getDayOfMonth()).append(",コンビニ,普通 123\n");
+			csv.append(day).append(",-10000,ATM 引き出し,普通 123\n");
+		}
+		return csv.toString();
+	}
+
+	private TransactionImporter importer(int chunkSize) {
+		return new TransactionImporter(transactionDAO, categoryDAO, chunkSize);
+	}
+
+	private int categoryId(String name) {
+		return categoryDAO.getAllCategories(userId).stream()
+				.filter(c -> c.getName().equals(name)).findFirst().orElseThrow().getId();
+	}
+
+	private static Transaction find(List<Transaction> rows, LocalDate date) {
+		return rows.stream().filter(t -> t.getDate().equals(date)).findFirst().orElseThrow();
+	}
+}
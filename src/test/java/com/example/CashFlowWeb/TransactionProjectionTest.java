@@ -0,0 +1,200 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * 取引の列指向コピーからの集計が SQL（ロールアップ・取引テーブル）の集計と一致し、
+ * DAO の書き込みがコミット後に反映され、予算を超えると古いユーザーから捨てられることを確認するテスト。
+ */
+class TransactionProjectionTest {
+
+	private static final double DELTA = 0.001;
+
+	@TempDir
+	Path tempDir;
+
+	private SQLiteDataSource dataSource;
+	private TransactionProjection projection;
+	private CategoryDAO categoryDAO;
+	private TransactionDAO transactionDAO;
+	private GoalDAO goalDAO;
+	private int userId;
+	private int food;
+	private int goalId;
+
+	@BeforeEach
+	void setUp() {
+		SQLiteConfig config = new SQLiteConfig();
+		config.enforceForeignKeys(true);
+		dataSource = new SQLiteDataSource(config);
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("projection.db"));
+		SchemaMigrator.migrate(dataSource);
+		User user = new User("projection_user", "hash");
+		new UserDAO(dataSource).saveUser(user);
+		userId = user.getId();
+
+		projection = new TransactionProjection(dataSource, 1024 * 1024);
+		categoryDAO = new CategoryDAO(dataSource);
+		transactionDAO = new TransactionDAO(dataSource, new DataVersions(), WriteQueue.direct(dataSource), projection);
+		goalDAO = new GoalDAO(dataSource, new DataVersions(), WriteQueue.direct(dataSource), projection);
+		food = categoryId("食費");
+		Goal goal = new Goal();
+		goal.setName("旅行");
+		goal.setTargetAmount(Money.of(500000));
+		goal.setCurrentAmount(Money.of(10000));
+		goal.setTargetDate("2026-01-01");
+		goalDAO.addGoal(goal, userId);
+		goalId = new GoalDAO(dataSource).getAllGoals(userId).get(0).getId();
+
+		// 2年分: 給料・支出（カテゴリあり/なし）・臨時収支・将来の予定・目標への積立
+		Random random = new Random(7);
+		int[] expenseCategories = { food, categoryId("家賃"), categoryId("娯楽"), 0 };
+		for (LocalDate day = LocalDate.of(2023, 1, 1); day.isBefore(LocalDate.of(2025, 1, 1)); day = day.plusDays(3)) {
+			if (day.getDayOfMonth() <= 3) {
+				transactionDAO.addTransaction(userId, day, Money.of(300000), "INCOME", categoryId("給料"), null, false, false);
+			}
+			int category = expenseCategories[random.nextInt(expenseCategories.length)];
+			transactionDAO.addTransaction(userId, day, Money.of(100 + random.nextInt(20000) + 0.25), "EXPENSE", category,
+					random.nextInt(10) == 0 ? goalId : null, day.getYear() == 2024 && day.getMonthValue() == 12,
+					random.nextInt(20) == 0);
+		}
+	}
+
+	@Test
+	void aggregatesMatchTheSqlQueries() {
+		SummaryDAO sql = new SummaryDAO(dataSource);
+		SummaryDAO projected = new SummaryDAO(dataSource, projection, categoryDAO);
+		LocalDate[][] ranges = {
+				{ null, null },
+				{ LocalDate.of(2023, 4, 1), LocalDate.of(2024, 3, 31) }, // 月単位（ロールアップ）
+				{ LocalDate.of(2023, 4, 10), LocalDate.of(2023, 6, 20) }, // 日単位（取引テーブル）
+		};
+		for (LocalDate[] range : ranges) {
+			assertMonthlyEquals(sql.getMonthlySummaries(userId, range[0], range[1]),
+					projected.getMonthlySummaries(userId, range[0], range[1]));
+			for (String type : List.of("INCOME", "EXPENSE")) {
+				assertCategoriesEqual(sql.getCategorySummaries(userId, type, range[0], range[1]),
+						projected.getCategorySummaries(userId, type, range[0], range[1]));
+			}
+		}
+		for (boolean excludeIrregular : new boolean[] { true, false }) {
+			CashFlowStats expected = sql.getCashFlowStats(userId, excludeIrregular);
+			CashFlowStats actual = projected.getCashFlowStats(userId, excludeIrregular);
+			assertEquals(expected.getTotalIncome(), actual.getTotalIncome(), DELTA);
+			assertEquals(expected.getTotalExpense(), actual.getTotalExpense(), DELTA);
+			assertEquals(expected.getFirstDate(), actual.getFirstDate());
+			assertEquals(expected.getLastDate(), actual.getLastDate());
+			assertEquals(expected.getMonthCount(), actual.getMonthCount());
+			assertArrayEquals(sql.getMonthlyNetFlows(userId, excludeIrregular),
+					projected.getMonthlyNetFlows(userId, excludeIrregular), DELTA);
+		}
+
+		assertEquals(new GoalDAO(dataSource).getAllGoals(userId).get(0).getCurrentAmount(),
+				goalDAO.getAllGoals(userId).get(0).getCurrentAmount());
+		BudgetDAO budgetSql = new BudgetDAO(dataSource);
+		BudgetDAO budgetProjected = new BudgetDAO(dataSource, new DataVersions(), WriteQueue.direct(dataSource), projection);
+		budgetSql.saveOrUpdateBudget("2024-05", food, Money.of(30000), userId);
+		List<Budget> expected = budgetSql.getBudgetsForMonth("2024-05", userId);
+		List<Budget> actual = budgetProjected.getBudgetsForMonth("2024-05", userId);
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getCategoryName(), actual.get(i).getCategoryName());
+			assertEquals(expected.get(i).getBudgetAmount(), actual.get(i).getBudgetAmount());
+			assertEquals(expected.get(i).getActualAmount(), actual.get(i).getActualAmount());
+		}
+		assertEquals(1, projection.snapshot().loads);
+	}
+
+	@Test
+	void committedWritesAreAppliedToTheLoadedColumns() {
+		SummaryDAO projected = new SummaryDAO(dataSource, projection, categoryDAO);
+		SummaryDAO sql = new SummaryDAO(dataSource);
+		projected.getMonthlySummaries(userId, null, null); // 読み込み
+
+		transactionDAO.addTransaction(userId, LocalDate.of(2023, 2, 14), Money.of(5000), "expense", food, goalId, false, false);
+		Transaction first = transactionDAO.getAllTransactions(userId).get(transactionDAO.getAllTransactions(userId).size() - 1);
+		transactionDAO.updateTransaction(new Transaction(first.getId(), LocalDate.of(2024, 7, 7), Money.of(123.45), "INCOME",
+				0, null, null, null, false, true), userId);
+		Transaction latest = transactionDAO.getAllTransactions(userId).get(0);
+		transactionDAO.deleteTransaction(latest.getId(), userId);
+		goalDAO.deleteGoal(goalId, userId);
+
+		assertMonthlyEquals(sql.getMonthlySummaries(userId, null, null), projected.getMonthlySummaries(userId, null, null));
+		assertCategoriesEqual(sql.getCategorySummaries(userId, "EXPENSE", null, null),
+				projected.getCategorySummaries(userId, "EXPENSE", null, null));
+		assertArrayEquals(sql.getMonthlyNetFlows(userId, true), projected.getMonthlyNetFlows(userId, true), DELTA);
+		assertEquals(1, projection.snapshot().loads);
+
+		TransactionColumns columns = projection.columns(userId);
+		assertEquals(transactionDAO.getAllTransactions(userId).size(), columns.size());
+		assertArrayEquals(new long[] { 0 }, columns.goalTotals(new int[] { goalId }));
+	}
+
+	@Test
+	void leastRecentlyUsedUsersAreEvictedOverBudget() {
+		User other = new User("other_user", "hash");
+		new UserDAO(dataSource).saveUser(other);
+		transactionDAO.addTransaction(other.getId(), LocalDate.of(2024, 1, 1), Money.of(1000), "EXPENSE", 0, null, false, false);
+
+		long oneUser = projection.columns(userId).estimatedBytes();
+		TransactionProjection small = new TransactionProjection(dataSource, oneUser + 100);
+		TransactionColumns first = small.columns(userId);
+		assertSame(first, small.columns(userId));
+		assertNotNull(small.columns(other.getId()));
+		assertEquals(1, small.snapshot().users);
+		assertEquals(1, small.snapshot().evictions);
+		assertTrue(small.snapshot().usedBytes <= oneUser + 100);
+
+		small.invalidate(other.getId());
+		assertEquals(0, small.snapshot().users);
+		assertNull(TransactionProjection.disabled().columns(userId));
+	}
+
+	@Test
+	void monthIndexMatchesLocalDate() {
+		for (LocalDate day = LocalDate.of(1899, 12, 1); day.isBefore(LocalDate.of(2101, 3, 1)); day = day.plusDays(1)) {
+			YearMonth month = YearMonth.from(day);
+			int index = TransactionColumns.monthIndex((int) day.toEpochDay());
+			assertEquals(month.getYear() * 12 + month.getMonthValue() - 1, index);
+			assertEquals(month.atDay(1).toEpochDay(), TransactionColumns.firstDayOfMonth(index));
+		}
+	}
+
+	private int categoryId(String name) {
+		return categoryDAO.getAllCategories(userId).stream().filter(c -> c.getName().equals(name)).findFirst().get().getId();
+	}
+
+	private static void assertMonthlyEquals(List<MonthlySummary> expected, List<MonthlySummary> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getMonth(), actual.get(i).getMonth());
+			assertEquals(expected.get(i).getTotalIncome(), actual.get(i).getTotalIncome(), DELTA);
+			assertEquals(expected.get(i).getTotalExpense(), actual.get(i).getTotalExpense(), DELTA);
+		}
+	}
+
+	private static void assertCategoriesEqual(List<CategorySummary> expected, List<CategorySummary> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getCategoryName(), actual.get(i).getCategoryName());
+			assertEquals(expected.get(i).getTotalAmount(), actual.get(i).getTotalAmount(), DELTA);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * ログイン中のユーザーIDが principal から DB を引かずに求まり、
+ * principal が User でない場合だけ検索して上限付きでキャッシュされることを確認するテスト。
+ */
+class UserIdentityCacheTest {
+
+	@TempDir
+	Path tempDir;
+
+	private final AtomicInteger lookups = new AtomicInteger();
+	private UserDAO userDAO;
+
+	@BeforeEach
+	void setUp() {
+		SQLiteDataSource dataSource = new SQLiteDataSource();
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("users.db"));
+		SchemaMigrator.migrate(dataSource);
+		userDAO = new UserDAO(dataSource) {
+			@Override
+			public User findByUsername(String username) {
+				lookups.incrementAndGet();
+				return super.findByUsername(username);
+			}
+		};
+		for (String name : new String[] { "alice", "bob", "carol" }) {
+			assertTrue(userDAO.saveUser(new User(name, "hash")));
+		}
+		lookups.set(0);
+	}
+
+	@Test
+	void usernamesAreUniqueIgnoringCase() {
+		assertFalse(userDAO.saveUser(new User("ALICE", "hash")));
+		assertEquals("alice", userDAO.findByUsername("Alice").getUsername());
+	}
+
+	@Test
+	void loggedInUserNeedsNoLookup() {
+		UserIdentityCache cache = new UserIdentityCache(userDAO, 2);
+		User alice = userDAO.findByUsername("alice");
+		lookups.set(0);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(alice.getId(), cache.userId(alice));
+		}
+		assertEquals(0, lookups.get());
+	}
+
+	@Test
+	void otherPrincipalsAreLookedUpOnceAndEvictedByLeastRecentUse() {
+		UserIdentityCache cache = new UserIdentityCache(userDAO, 2);
+		int alice = cache.userId(principal("Alice"));
+		cache.userId(principal("bob"));
+		assertEquals(alice, cache.userId(principal("ALICE")));
+		assertEquals(2, lookups.get());
+
+		// 上限2件: 最近使っていない bob が捨てられ、alice は残る
+		cache.userId(principal("carol"));
+		assertEquals(2, cache.size());
+		cache.userId(principal("alice"));
+		assertEquals(3, lookups.get());
+		cache.userId(principal("bob"));
+		assertEquals(4, lookups.get());
+
+		assertThrows(UsernameNotFoundException.class, () -> cache.userId(principal("deleted")));
+	}
+
+	private static UserDetails principal(String username) {
+		return org.springframework.security.core.userdetails.User.withUsername(username)
+				.password("x").roles("USER").build();
+	}
+}
@@ -0,0 +1,148 @@
+package com.example.CashFlowWeb;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * 16スレッドが同時に取引を登録したときの1件あたりの所要時間（分布）を、
+ * 各スレッドがそれぞれ接続を借りてコミットする direct と、書き込みキューでまとめてコミットする queue で比べる JMH ベンチマーク。
+ * shards が0なら1ファイル、1以上ならそのシャード数に分けた ShardedDataSource（16人のユーザーが各シャードに均等に入る）。
+ * DataSource は DBManager と同じ設定（WAL、synchronous=NORMAL、busy_timeout、8接続のプール）。
+ *
+ * 実行方法:
+ *   mvn -B test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.example.CashFlowWeb.WriteQueueBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class WriteQueueBenchmark {
+
+	private static final int USERS = 16;
+
+	@Param({ "direct", "queue" })
+	String mode;
+
+	@Param({ "0", "4" })
+	int shards;
+
+	private Path dir;
+	private DataSource dataSource;
+	private WriteQueue writeQueue;
+	private TransactionDAO transactionDAO;
+	private final int[] userIds = new int[USERS];
+	private final AtomicInteger nextUser = new AtomicInteger();
+	private final AtomicInteger day = new AtomicInteger();
+
+	/**
+	 * スレッドごとに別のユーザーとして書き込む。
+	 */
+	@State(Scope.Thread)
+	public static class Writer {
+		int userId;
+
+		@Setup(Level.Trial)
+		public void setUp(WriteQueueBenchmark bench) {
+			userId = bench.userIds[bench.nextUser.getAndIncrement() % USERS];
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("write-queue-bench");
+		DataSource directory = pool("bench.db");
+		SchemaMigrator.migrate(directory);
+		if (shards > 0) {
+			List<DataSource> pools = new ArrayList<>();
+			for (int shard = 0; shard < shards; shard++) {
+				DataSource pool = pool("bench-shard-" + shard + ".db");
+				SchemaMigrator.migrate(pool);
+				pools.add(pool);
+			}
+			dataSource = new ShardedDataSource(directory, pools);
+		} else {
+			dataSource = directory;
+		}
+
+		for (int i = 0; i < USERS; i++) {
+			User user = new User("bench_user_" + i, "hash");
+			new UserDAO(dataSource).saveUser(user);
+			userIds[i] = user.getId();
+		}
+		writeQueue = mode.equals("queue") ? new WriteQueue(dataSource, 1024, 256, 1000) : WriteQueue.direct(dataSource);
+		transactionDAO = new TransactionDAO(dataSource, new DataVersions(), writeQueue);
+	}
+
+	private HikariDataSource pool(String file) {
+		SQLiteConfig sqliteConfig = new SQLiteConfig();
+		sqliteConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+		sqliteConfig.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+		sqliteConfig.setBusyTimeout(5000);
+		sqliteConfig.enforceForeignKeys(true);
+		SQLiteDataSource sqliteDataSource = new SQLiteDataSource(sqliteConfig);
+		sqliteDataSource.setUrl("jdbc:sqlite:" + dir.resolve(file));
+
+		HikariConfig config = new HikariConfig();
+		config.setDataSource(sqliteDataSource);
+		config.setMaximumPoolSize(8);
+		config.setConnectionTimeout(30_000);
+		return new HikariDataSource(config);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		WriteQueue.Snapshot snapshot = writeQueue.snapshot();
+		System.out.printf("%n[%s/%d] writes=%d commits=%d avgBatchSize=%.1f largestBatch=%d failed=%d%n", mode, shards,
+				snapshot.writes, snapshot.commits, snapshot.avgBatchSize, snapshot.largestBatch, snapshot.failedWrites);
+		writeQueue.shutdown();
+		((AutoCloseable) dataSource).close();
+		try (var files = Files.walk(dir)) {
+			files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public boolean addTransaction(Writer writer) {
+		LocalDate date = LocalDate.of(2020, 1, 1).plusDays(day.incrementAndGet() % 3650);
+		return transactionDAO.addTransaction(writer.userId, date, Money.of(1200), "EXPENSE", 0, null, false, false);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(WriteQueueBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,146 @@
+package com.example.CashFlowWeb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * 書き込みキューが溜まった書き込みを1回のコミットにまとめ、失敗した1件だけを取り消し、
+ * 一杯のときは待たずに断ることを確認するテスト。
+ */
+class WriteQueueTest {
+
+	@TempDir
+	Path tempDir;
+
+	private SQLiteDataSource dataSource;
+	private WriteQueue writeQueue;
+
+	@BeforeEach
+	void setUp() throws SQLException {
+		dataSource = new SQLiteDataSource();
+		dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("writer.db"));
+		try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+			stmt.execute("CREATE TABLE notes (id INTEGER PRIMARY KEY, body TEXT NOT NULL UNIQUE)");
+		}
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		if (writeQueue != null) {
+			writeQueue.shutdown();
+		}
+	}
+
+	@Test
+	void queuedWritesShareOneCommitAndAFailureOnlyUndoesItself() throws Exception {
+		writeQueue = new WriteQueue(dataSource, 64, 256, 1000);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Boolean> blocker = writeQueue.submit(conn -> {
+			started.countDown();
+			await(release); // 書き込みスレッドを止めている間に残りをキューに溜める
+			return insert(conn, "first");
+		});
+		await(started);
+
+		List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			String body = "note-" + i;
+			futures.add(writeQueue.submit(conn -> insert(conn, body)));
+		}
+		CompletableFuture<Boolean> duplicate = writeQueue.submit(conn -> insert(conn, "note-3"));
+		CompletableFuture<Boolean> reported = writeQueue.submitUpdate(1, "重複", conn -> insert(conn, "note-4"));
+		release.countDown();
+
+		assertTrue(blocker.join());
+		futures.forEach(f -> assertTrue(f.join()));
+		CompletionException failure = assertThrows(CompletionException.class, duplicate::join);
+		assertInstanceOf(SQLException.class, failure.getCause());
+		assertFalse(reported.join());
+
+		assertEquals(11, count());
+		WriteQueue.Snapshot snapshot = writeQueue.snapshot();
+		assertEquals(13, snapshot.writes);
+		assertEquals(2, snapshot.commits); // 止めていた1件と、その間に溜まった12件
+		assertEquals(12, snapshot.largestBatch);
+		assertEquals(2, snapshot.failedWrites);
+	}
+
+	@Test
+	void fullQueueRejectsAfterTheOfferTimeout() throws Exception {
+		writeQueue = new WriteQueue(dataSource, 1, 256, 50);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Boolean> blocker = writeQueue.submit(conn -> {
+			started.countDown();
+			await(release);
+			return insert(conn, "first");
+		});
+		await(started);
+		CompletableFuture<Boolean> queued = writeQueue.submit(conn -> insert(conn, "second"));
+
+		CompletableFuture<Boolean> rejected = writeQueue.submitUpdate(1, "拒否", conn -> insert(conn, "third"));
+		WriteQueue.QueueFullException e = assertThrows(WriteQueue.QueueFullException.class,
+				() -> WriteQueue.await(rejected));
+		assertTrue(e.getMessage().contains("混み合って"));
+		assertEquals(1, writeQueue.snapshot().rejected);
+
+		release.countDown();
+		assertTrue(blocker.join());
+		assertTrue(queued.join());
+		assertEquals(2, count());
+	}
+
+	@Test
+	void directModeCommitsOnTheCallingThread() throws Exception {
+		WriteQueue direct = WriteQueue.direct(dataSource);
+		assertTrue(direct.submit(conn -> insert(conn, "direct")).isDone());
+		assertFalse(WriteQueue.await(direct.submitUpdate(1, "重複", conn -> insert(conn, "direct"))));
+		assertEquals(1, count());
+		assertEquals(2, direct.snapshot().writes);
+		assertEquals(1, direct.snapshot().commits);
+	}
+
+	private static boolean insert(Connection conn, String body) throws SQLException {
+		try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO notes(body) VALUES(?)")) {
+			pstmt.setString(1, body);
+			return pstmt.executeUpdate() > 0;
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private int count() throws SQLException {
+		try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM notes")) {
+			return rs.getInt(1);
+		}
+	}
+}